@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.Access;
+import com.mycila.jmx.Accessors;
+import com.mycila.jmx.BeanProperty;
+import com.mycila.jmx.JmxAttribute;
+import com.mycila.jmx.MBeanAttribute;
+import com.mycila.jmx.MBeanProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares attribute reads and writes through generated (method handle) accessors
+ * and through the reflection fallback.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessorBenchmark {
+
+    private final Sample sample = new Sample();
+
+    private JmxAttribute handleField;
+    private JmxAttribute reflectiveField;
+    private JmxAttribute handleProperty;
+    private JmxAttribute reflectiveProperty;
+
+    @Setup
+    public void setup() throws Exception {
+        Field field = Sample.class.getDeclaredField("counter");
+        BeanProperty property = BeanProperty.findProperty(Sample.class, "name");
+        handleField = new MBeanAttribute(field, Accessors.of(field), "counter", "", Access.RW);
+        reflectiveField = new MBeanAttribute(field, Accessors.reflective(field), "counter", "", Access.RW);
+        handleProperty = new MBeanProperty(property, Accessors.of(property), "Name", "", Access.RW);
+        reflectiveProperty = new MBeanProperty(property, Accessors.reflective(property), "Name", "", Access.RW);
+    }
+
+    @Benchmark
+    public Object field_get_handle() throws Exception {
+        return handleField.get(sample);
+    }
+
+    @Benchmark
+    public Object field_get_reflection() throws Exception {
+        return reflectiveField.get(sample);
+    }
+
+    @Benchmark
+    public void field_set_handle() throws Exception {
+        handleField.set(sample, 42L);
+    }
+
+    @Benchmark
+    public void field_set_reflection() throws Exception {
+        reflectiveField.set(sample, 42L);
+    }
+
+    @Benchmark
+    public Object property_get_handle() throws Exception {
+        return handleProperty.get(sample);
+    }
+
+    @Benchmark
+    public Object property_get_reflection() throws Exception {
+        return reflectiveProperty.get(sample);
+    }
+
+    @Benchmark
+    public void property_set_handle() throws Exception {
+        handleProperty.set(sample, "name");
+    }
+
+    @Benchmark
+    public void property_set_reflection() throws Exception {
+        reflectiveProperty.set(sample, "name");
+    }
+
+    public static class Sample {
+        private long counter = 1;
+        private String name = "sample";
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.IntrospectionCache;
+import com.mycila.jmx.JmxMetadataAssembler;
+import com.mycila.jmx.PublicMetadataAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembles the metadata of generated classes having 10, 100 and 1000 members: a quarter
+ * of fields, a quarter of read-write properties (so half of the methods are accessors)
+ * and a quarter of plain operations. The <code>cold</code> benchmarks clear the shared
+ * introspection caches before each call. Running this benchmark requires a JDK.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssemblyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int members;
+
+    private final JmxMetadataAssembler publicAssembler = new PublicMetadataAssembler(false);
+    private final JmxMetadataAssembler annotationAssembler = new AnnotationMetadataAssembler();
+    private Class<?> plain;
+    private Class<?> annotated;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        File dir = File.createTempFile("jmx-assembly", "");
+        if (!dir.delete() || !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        File plainSource = write(dir, "Plain" + members, false);
+        File annotatedSource = write(dir, "Annotated" + members, true);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("AssemblyBenchmark requires a JDK to generate its classes");
+        String classpath = new File(AnnotationMetadataAssembler.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        if (compiler.run(null, null, null, "-cp", classpath, "-d", dir.getPath(), plainSource.getPath(), annotatedSource.getPath()) != 0)
+            throw new IllegalStateException("Unable to compile generated classes in " + dir);
+        ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+        plain = loader.loadClass("Plain" + members);
+        annotated = loader.loadClass("Annotated" + members);
+    }
+
+    @Benchmark
+    public Object public_assembler() {
+        return publicAssembler.getMetadata(plain);
+    }
+
+    @Benchmark
+    public Object annotation_assembler() {
+        return annotationAssembler.getMetadata(annotated);
+    }
+
+    @Benchmark
+    public Object public_assembler_cold(ColdState cold) {
+        return publicAssembler.getMetadata(plain);
+    }
+
+    @Benchmark
+    public Object annotation_assembler_cold(ColdState cold) {
+        return annotationAssembler.getMetadata(annotated);
+    }
+
+    @State(Scope.Thread)
+    public static class ColdState {
+        @Setup(Level.Invocation)
+        public void clear() {
+            for (IntrospectionCache<?> cache : IntrospectionCache.getSharedCaches().values())
+                cache.invalidateAll();
+        }
+    }
+
+    private File write(File dir, String className, boolean annotate) throws IOException {
+        int each = Math.max(1, members / 4);
+        StringBuilder sb = new StringBuilder();
+        if (annotate)
+            sb.append("@com.mycila.jmx.annotation.JmxBean(\"bench:type=").append(className).append("\")\n");
+        sb.append("public class ").append(className).append(" {\n");
+        for (int i = 0; i < each; i++) {
+            if (annotate)
+                sb.append("    @com.mycila.jmx.annotation.JmxField\n");
+            sb.append("    public int field").append(i).append(";\n");
+        }
+        for (int i = 0; i < each; i++) {
+            if (annotate)
+                sb.append("    @com.mycila.jmx.annotation.JmxProperty(access = com.mycila.jmx.Access.RW)\n");
+            sb.append("    public long getProperty").append(i).append("() { return ").append(i).append("; }\n");
+            sb.append("    public void setProperty").append(i).append("(long v) { }\n");
+        }
+        for (int i = 0; i < each; i++) {
+            if (annotate)
+                sb.append("    @com.mycila.jmx.annotation.JmxMethod\n");
+            sb.append("    public void operation").append(i).append("(String a) { }\n");
+        }
+        sb.append("}\n");
+        File source = new File(dir, className + ".java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+        return source;
+    }
+}
@@ -0,0 +1,417 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.Access;
+import com.mycila.jmx.CustomMetadataAssembler;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.mycila.jmx.annotation.JmxProperty;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Managed classes shared by the benchmarks: a small one with one member of each kind,
+ * and a wide one with 32 fields, 16 read-write properties and 16 operations.
+ * Both can be exported by all the assemblers.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class Beans {
+
+    private Beans() {
+    }
+
+    /**
+     * @return An assembler exporting all the annotated members of the given class
+     */
+    static CustomMetadataAssembler custom(Class<?> c) {
+        CustomMetadataAssembler assembler = new CustomMetadataAssembler();
+        for (Field field : c.getDeclaredFields())
+            if (field.isAnnotationPresent(JmxField.class))
+                assembler.addAttribute(field);
+        for (Method method : c.getDeclaredMethods())
+            if (method.isAnnotationPresent(JmxProperty.class))
+                assembler.addProperty(c, Character.toLowerCase(method.getName().charAt(3)) + method.getName().substring(4));
+            else if (method.isAnnotationPresent(JmxMethod.class))
+                assembler.addOperation(method);
+        return assembler;
+    }
+
+    @JmxBean("com.mycila.jmx.benchmark:type=Small")
+    public static class Small {
+        @JmxField(access = Access.RW)
+        public int count = 1;
+
+        private String name = "small";
+
+        @JmxProperty(access = Access.RW)
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        @JmxMethod
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.benchmark:type=Wide")
+    public static class Wide {
+        @JmxField(access = Access.RW)
+        public long field00 = 0;
+
+        @JmxField(access = Access.RW)
+        public long field01 = 1;
+
+        @JmxField(access = Access.RW)
+        public long field02 = 2;
+
+        @JmxField(access = Access.RW)
+        public long field03 = 3;
+
+        @JmxField(access = Access.RW)
+        public long field04 = 4;
+
+        @JmxField(access = Access.RW)
+        public long field05 = 5;
+
+        @JmxField(access = Access.RW)
+        public long field06 = 6;
+
+        @JmxField(access = Access.RW)
+        public long field07 = 7;
+
+        @JmxField(access = Access.RW)
+        public long field08 = 8;
+
+        @JmxField(access = Access.RW)
+        public long field09 = 9;
+
+        @JmxField(access = Access.RW)
+        public long field10 = 10;
+
+        @JmxField(access = Access.RW)
+        public long field11 = 11;
+
+        @JmxField(access = Access.RW)
+        public long field12 = 12;
+
+        @JmxField(access = Access.RW)
+        public long field13 = 13;
+
+        @JmxField(access = Access.RW)
+        public long field14 = 14;
+
+        @JmxField(access = Access.RW)
+        public long field15 = 15;
+
+        @JmxField(access = Access.RW)
+        public long field16 = 16;
+
+        @JmxField(access = Access.RW)
+        public long field17 = 17;
+
+        @JmxField(access = Access.RW)
+        public long field18 = 18;
+
+        @JmxField(access = Access.RW)
+        public long field19 = 19;
+
+        @JmxField(access = Access.RW)
+        public long field20 = 20;
+
+        @JmxField(access = Access.RW)
+        public long field21 = 21;
+
+        @JmxField(access = Access.RW)
+        public long field22 = 22;
+
+        @JmxField(access = Access.RW)
+        public long field23 = 23;
+
+        @JmxField(access = Access.RW)
+        public long field24 = 24;
+
+        @JmxField(access = Access.RW)
+        public long field25 = 25;
+
+        @JmxField(access = Access.RW)
+        public long field26 = 26;
+
+        @JmxField(access = Access.RW)
+        public long field27 = 27;
+
+        @JmxField(access = Access.RW)
+        public long field28 = 28;
+
+        @JmxField(access = Access.RW)
+        public long field29 = 29;
+
+        @JmxField(access = Access.RW)
+        public long field30 = 30;
+
+        @JmxField(access = Access.RW)
+        public long field31 = 31;
+
+        private long property00;
+        private long property01;
+        private long property02;
+        private long property03;
+        private long property04;
+        private long property05;
+        private long property06;
+        private long property07;
+        private long property08;
+        private long property09;
+        private long property10;
+        private long property11;
+        private long property12;
+        private long property13;
+        private long property14;
+        private long property15;
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty00() {
+            return property00;
+        }
+
+        public void setProperty00(long value) {
+            property00 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty01() {
+            return property01;
+        }
+
+        public void setProperty01(long value) {
+            property01 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty02() {
+            return property02;
+        }
+
+        public void setProperty02(long value) {
+            property02 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty03() {
+            return property03;
+        }
+
+        public void setProperty03(long value) {
+            property03 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty04() {
+            return property04;
+        }
+
+        public void setProperty04(long value) {
+            property04 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty05() {
+            return property05;
+        }
+
+        public void setProperty05(long value) {
+            property05 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty06() {
+            return property06;
+        }
+
+        public void setProperty06(long value) {
+            property06 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty07() {
+            return property07;
+        }
+
+        public void setProperty07(long value) {
+            property07 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty08() {
+            return property08;
+        }
+
+        public void setProperty08(long value) {
+            property08 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty09() {
+            return property09;
+        }
+
+        public void setProperty09(long value) {
+            property09 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty10() {
+            return property10;
+        }
+
+        public void setProperty10(long value) {
+            property10 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty11() {
+            return property11;
+        }
+
+        public void setProperty11(long value) {
+            property11 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty12() {
+            return property12;
+        }
+
+        public void setProperty12(long value) {
+            property12 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty13() {
+            return property13;
+        }
+
+        public void setProperty13(long value) {
+            property13 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty14() {
+            return property14;
+        }
+
+        public void setProperty14(long value) {
+            property14 = value;
+        }
+
+        @JmxProperty(access = Access.RW)
+        public long getProperty15() {
+            return property15;
+        }
+
+        public void setProperty15(long value) {
+            property15 = value;
+        }
+
+        @JmxMethod
+        public long operation00(long value) {
+            return value + 0;
+        }
+
+        @JmxMethod
+        public long operation01(long value) {
+            return value + 1;
+        }
+
+        @JmxMethod
+        public long operation02(long value) {
+            return value + 2;
+        }
+
+        @JmxMethod
+        public long operation03(long value) {
+            return value + 3;
+        }
+
+        @JmxMethod
+        public long operation04(long value) {
+            return value + 4;
+        }
+
+        @JmxMethod
+        public long operation05(long value) {
+            return value + 5;
+        }
+
+        @JmxMethod
+        public long operation06(long value) {
+            return value + 6;
+        }
+
+        @JmxMethod
+        public long operation07(long value) {
+            return value + 7;
+        }
+
+        @JmxMethod
+        public long operation08(long value) {
+            return value + 8;
+        }
+
+        @JmxMethod
+        public long operation09(long value) {
+            return value + 9;
+        }
+
+        @JmxMethod
+        public long operation10(long value) {
+            return value + 10;
+        }
+
+        @JmxMethod
+        public long operation11(long value) {
+            return value + 11;
+        }
+
+        @JmxMethod
+        public long operation12(long value) {
+            return value + 12;
+        }
+
+        @JmxMethod
+        public long operation13(long value) {
+            return value + 13;
+        }
+
+        @JmxMethod
+        public long operation14(long value) {
+            return value + 14;
+        }
+
+        @JmxMethod
+        public long operation15(long value) {
+            return value + 15;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.Assemblers;
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.GeneratedMetadataAssembler;
+import com.mycila.jmx.JmxMetadata;
+import com.mycila.jmx.JmxMetadataAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.Attribute;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the assembler generated at build time by
+ * {@link com.mycila.jmx.processor.JmxAssemblerProcessor} for {@link Beans.Wide} with the
+ * reflective {@link AnnotationMetadataAssembler}: cost of building the metadata, and of
+ * reading, writing and invoking through the resulting MBeans.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneratedAssemblerBenchmark {
+
+    private static final String[] LONG_SIG = {"long"};
+
+    private final JmxMetadataAssembler reflective = new AnnotationMetadataAssembler();
+    private final Object[] args = {3L};
+    private final Attribute field = new Attribute("field07", 7L);
+    private final Attribute property = new Attribute("Property07", 7L);
+    private JmxMetadataAssembler generated;
+    private DefaultDynamicMBean reflectiveMBean;
+    private DefaultDynamicMBean generatedMBean;
+
+    @Setup
+    public void setUp() {
+        generated = Assemblers.get(Beans.Wide.class);
+        if (!(generated instanceof GeneratedMetadataAssembler))
+            throw new IllegalStateException("No generated assembler for " + Beans.Wide.class.getName() + ": the benchmarks must be compiled with the annotation processor");
+        reflectiveMBean = new DefaultDynamicMBean(new Beans.Wide(), reflective.getMetadata(Beans.Wide.class));
+        generatedMBean = new DefaultDynamicMBean(new Beans.Wide(), generated.getMetadata(Beans.Wide.class));
+    }
+
+    @Benchmark
+    public JmxMetadata metadata_reflective() {
+        return reflective.getMetadata(Beans.Wide.class);
+    }
+
+    @Benchmark
+    public JmxMetadata metadata_generated() {
+        return generated.getMetadata(Beans.Wide.class);
+    }
+
+    @Benchmark
+    public Object get_field_reflective() throws Exception {
+        return reflectiveMBean.getAttribute("field07");
+    }
+
+    @Benchmark
+    public Object get_field_generated() throws Exception {
+        return generatedMBean.getAttribute("field07");
+    }
+
+    @Benchmark
+    public void set_property_reflective() throws Exception {
+        reflectiveMBean.setAttribute(property);
+    }
+
+    @Benchmark
+    public void set_property_generated() throws Exception {
+        generatedMBean.setAttribute(property);
+    }
+
+    @Benchmark
+    public void set_field_reflective() throws Exception {
+        reflectiveMBean.setAttribute(field);
+    }
+
+    @Benchmark
+    public void set_field_generated() throws Exception {
+        generatedMBean.setAttribute(field);
+    }
+
+    @Benchmark
+    public Object invoke_reflective() throws Exception {
+        return reflectiveMBean.invoke("operation07", args, LONG_SIG);
+    }
+
+    @Benchmark
+    public Object invoke_generated() throws Exception {
+        return generatedMBean.invoke("operation07", args, LONG_SIG);
+    }
+}
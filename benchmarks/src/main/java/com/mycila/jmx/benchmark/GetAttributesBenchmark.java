@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.PublicMetadataAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.AttributeList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads 32 attributes of a wide bean in one call, plus 8 names the bean does not have,
+ * as a collector polling several versions of an application would. Compares the
+ * {@link AttributeList} API to the bulk read filling reusable arrays.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GetAttributesBenchmark {
+
+    private final DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Wide(), new PublicMetadataAssembler().getMetadata(Wide.class));
+    private final String[] known = new String[32];
+    private final String[] mixed = new String[40];
+    private final String[] names = new String[40];
+    private final Object[] values = new Object[40];
+
+    public GetAttributesBenchmark() {
+        for (int i = 0; i < known.length; i++)
+            known[i] = mixed[i] = String.format("attr%02d", i);
+        for (int i = known.length; i < mixed.length; i++)
+            mixed[i] = "missing" + i;
+    }
+
+    @Benchmark
+    public AttributeList attribute_list_known() {
+        return mBean.getAttributes(known);
+    }
+
+    @Benchmark
+    public AttributeList attribute_list_mixed() {
+        return mBean.getAttributes(mixed);
+    }
+
+    @Benchmark
+    public int bulk_known() {
+        return mBean.getAttributes(known, names, values);
+    }
+
+    @Benchmark
+    public int bulk_mixed() {
+        return mBean.getAttributes(mixed, names, values);
+    }
+
+    public static class Wide {
+        public long attr00 = 0;
+        public long attr01 = 1;
+        public long attr02 = 2;
+        public long attr03 = 3;
+        public long attr04 = 4;
+        public long attr05 = 5;
+        public long attr06 = 6;
+        public long attr07 = 7;
+        public long attr08 = 8;
+        public long attr09 = 9;
+        public long attr10 = 10;
+        public long attr11 = 11;
+        public long attr12 = 12;
+        public long attr13 = 13;
+        public long attr14 = 14;
+        public long attr15 = 15;
+        public long attr16 = 16;
+        public long attr17 = 17;
+        public long attr18 = 18;
+        public long attr19 = 19;
+        public long attr20 = 20;
+        public long attr21 = 21;
+        public long attr22 = 22;
+        public long attr23 = 23;
+        public long attr24 = 24;
+        public long attr25 = 25;
+        public long attr26 = 26;
+        public long attr27 = 27;
+        public long attr28 = 28;
+        public long attr29 = 29;
+        public long attr30 = 30;
+        public long attr31 = 31;
+    }
+}
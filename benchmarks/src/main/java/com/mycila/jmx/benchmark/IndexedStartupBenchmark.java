@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.IntrospectionCache;
+import com.mycila.jmx.JmxBeanIndex;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.mycila.jmx.RegistrationReport;
+import com.mycila.jmx.processor.JmxAssemblerProcessor;
+import com.mycila.jmx.processor.JmxBeanIndexProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.MBeanServerFactory;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of an application exporting one singleton per class, for 50 and 500 generated
+ * <code>@JmxBean</code> classes of 40 members each, listed in a {@link JmxBeanIndex}:
+ * registration one at a time and through {@link MycilaJmxExporter#registerAll(java.util.Collection)}
+ * on a thread pool, versus {@link MycilaJmxExporter#prepare(java.util.Collection) preparing} the
+ * metadata of the indexed classes on the thread pool before the instances exist, and registering
+ * them afterwards. The shared introspection caches are cleared before each iteration.
+ * Running this benchmark requires a JDK.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IndexedStartupBenchmark {
+
+    private static final int MEMBERS = 40;
+
+    @Param({"50", "500"})
+    public int classes;
+
+    private final List<Object> services = new ArrayList<Object>();
+    private Set<Class<?>> indexed;
+    private ExecutorService executor;
+    private MycilaJmxExporter exporter;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        File dir = File.createTempFile("jmx-index", "");
+        if (!dir.delete() || !dir.mkdirs())
+            throw new IOException("Unable to create " + dir);
+        List<String> args = new ArrayList<String>();
+        args.add("-A" + JmxBeanIndexProcessor.OPTION);
+        args.add("-A" + JmxAssemblerProcessor.OPTION);
+        args.add("-cp");
+        args.add(new File(AnnotationMetadataAssembler.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        args.add("-d");
+        args.add(dir.getPath());
+        for (int i = 0; i < classes; i++)
+            args.add(write(dir, "Service" + i).getPath());
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("IndexedStartupBenchmark requires a JDK to generate its classes");
+        if (compiler.run(null, null, null, args.toArray(new String[args.size()])) != 0)
+            throw new IllegalStateException("Unable to compile generated classes in " + dir);
+        ClassLoader loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+        // only the generated classes: the index of the benchmarks is visible from the parent class loader
+        indexed = JmxBeanIndex.load(loader).getClasses();
+        for (Class<?> c : indexed)
+            if (c.getClassLoader() == loader)
+                services.add(c.newInstance());
+        if (services.size() != classes)
+            throw new IllegalStateException("Expected " + classes + " indexed classes but found " + services.size());
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        executor.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void newExporter() {
+        clearCaches();
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setBatchExecutor(executor);
+    }
+
+    @Benchmark
+    public int register_one_by_one() {
+        for (Object service : services)
+            exporter.register(service);
+        return exporter.getMBeanServer().getMBeanCount();
+    }
+
+    @Benchmark
+    public RegistrationReport register_all_parallel() {
+        return exporter.registerAll(services);
+    }
+
+    @Benchmark
+    public Set<Class<?>> prepare_parallel() {
+        return exporter.prepare(indexed);
+    }
+
+    @Benchmark
+    public RegistrationReport register_all_prepared(Prepared prepared) {
+        return prepared.exporter.registerAll(services);
+    }
+
+    @State(Scope.Benchmark)
+    public static class Prepared {
+        MycilaJmxExporter exporter;
+
+        @Setup(Level.Iteration)
+        public void prepare(IndexedStartupBenchmark benchmark) {
+            clearCaches();
+            exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+            exporter.setBatchExecutor(benchmark.executor);
+            exporter.prepare(benchmark.indexed);
+        }
+    }
+
+    private static void clearCaches() {
+        for (IntrospectionCache<?> cache : IntrospectionCache.getSharedCaches().values())
+            cache.invalidateAll();
+    }
+
+    private static File write(File dir, String className) throws IOException {
+        int each = MEMBERS / 4;
+        StringBuilder sb = new StringBuilder();
+        sb.append("@com.mycila.jmx.annotation.JmxBean(\"bench:type=").append(className).append("\")\n");
+        sb.append("public class ").append(className).append(" {\n");
+        for (int i = 0; i < each; i++)
+            sb.append("    @com.mycila.jmx.annotation.JmxField\n    public int field").append(i).append(";\n");
+        for (int i = 0; i < each; i++) {
+            sb.append("    @com.mycila.jmx.annotation.JmxProperty(access = com.mycila.jmx.Access.RW)\n");
+            sb.append("    public long getProperty").append(i).append("() { return ").append(i).append("; }\n");
+            sb.append("    public void setProperty").append(i).append("(long v) { }\n");
+        }
+        for (int i = 0; i < each; i++)
+            sb.append("    @com.mycila.jmx.annotation.JmxMethod\n    public void operation").append(i).append("(String a) { }\n");
+        sb.append("}\n");
+        File source = new File(dir, className + ".java");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(source), "UTF-8");
+        try {
+            writer.write(sb.toString());
+        } finally {
+            writer.close();
+        }
+        return source;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.IntrospectionCache;
+import com.mycila.jmx.JmxMetadataAssembler;
+import com.mycila.jmx.PublicMetadataAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assembles metadata from many threads at once, without the per-class metadata
+ * cache, so that every call goes through the shared introspection caches
+ * (declared methods, bean properties, assembler instances). Their statistics
+ * are printed at the end of each trial.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class IntrospectionCacheBenchmark {
+
+    private static final Class<?>[] CLASSES = {
+        Thread.class, String.class, ArrayList.class, HashMap.class, ConcurrentHashMap.class, AtomicInteger.class, StringBuilder.class
+    };
+
+    private final JmxMetadataAssembler publicAssembler = new PublicMetadataAssembler();
+    private final JmxMetadataAssembler annotationAssembler = new AnnotationMetadataAssembler();
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (IntrospectionCache<?> cache : IntrospectionCache.getSharedCaches().values())
+            cache.invalidateAll();
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        for (IntrospectionCache<?> cache : IntrospectionCache.getSharedCaches().values())
+            System.out.println(String.format("%n%-16s hitRate=%.4f %s", cache.getName(), cache.getStats().hitRate(), cache.getStats()));
+    }
+
+    @Benchmark
+    public Object public_assembler() {
+        Class<?> c = CLASSES[(next.getAndIncrement() & Integer.MAX_VALUE) % CLASSES.length];
+        return publicAssembler.getMetadata(c);
+    }
+
+    @Benchmark
+    public Object annotation_assembler() {
+        Class<?> c = CLASSES[(next.getAndIncrement() & Integer.MAX_VALUE) % CLASSES.length];
+        return annotationAssembler.getMetadata(c);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.JmxMetadata;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Invokes overloaded operations through {@link DefaultDynamicMBean#invoke(String, Object[], String[])},
+ * which looks them up by their exported name and parameter type names, versus resolving the
+ * parameter classes first and looking the operation up by {@link Class} signature. The
+ * <code>monitored</code> benchmarks measure the overhead of {@link JmxBean#statistics()}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InvokeBenchmark {
+
+    private static final String[] NO_SIG = new String[0];
+    private static final String[] STRING_SIG = {"java.lang.String"};
+    private static final String[] INT_INT_SIG = {"int", "int"};
+
+    private final Service service = new Service();
+    private final JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+    private final DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, metadata);
+    private final DefaultDynamicMBean monitoredMBean = new DefaultDynamicMBean(new MonitoredService(), new AnnotationMetadataAssembler().getMetadata(MonitoredService.class));
+    private final Object[] noArgs = new Object[0];
+    private final Object[] stringArgs = {"bob"};
+    private final Object[] intArgs = {2, 3};
+
+    @Benchmark
+    public Object dispatch_no_arg() throws Exception {
+        return mBean.invoke("ping", noArgs, NO_SIG);
+    }
+
+    @Benchmark
+    public Object dispatch_string() throws Exception {
+        return mBean.invoke("greet", stringArgs, STRING_SIG);
+    }
+
+    @Benchmark
+    public Object dispatch_int_int() throws Exception {
+        return mBean.invoke("add", intArgs, INT_INT_SIG);
+    }
+
+    @Benchmark
+    public Object monitored_no_arg() throws Exception {
+        return monitoredMBean.invoke("ping", noArgs, NO_SIG);
+    }
+
+    @Benchmark
+    public Object monitored_int_int() throws Exception {
+        return monitoredMBean.invoke("add", intArgs, INT_INT_SIG);
+    }
+
+    @Benchmark
+    public Object resolve_no_arg() throws Exception {
+        return metadata.getOperation("ping", resolve(NO_SIG)).invoke(service, noArgs);
+    }
+
+    @Benchmark
+    public Object resolve_string() throws Exception {
+        return metadata.getOperation("greet", resolve(STRING_SIG)).invoke(service, stringArgs);
+    }
+
+    @Benchmark
+    public Object resolve_int_int() throws Exception {
+        return metadata.getOperation("add", resolve(INT_INT_SIG)).invoke(service, intArgs);
+    }
+
+    private Class<?>[] resolve(String[] signature) throws ClassNotFoundException {
+        Class<?>[] types = new Class<?>[signature.length];
+        for (int i = 0; i < signature.length; i++)
+            types[i] = "int".equals(signature[i]) ? int.class : Class.forName(signature[i], false, Service.class.getClassLoader());
+        return types;
+    }
+
+    @JmxBean("com.mycila.jmx.benchmark:type=Invoke")
+    public static class Service {
+        @JmxMethod
+        public void ping() {
+        }
+
+        @JmxMethod
+        public String greet(String name) {
+            return name;
+        }
+
+        @JmxMethod
+        public String greet() {
+            return "";
+        }
+
+        @JmxMethod
+        public int add(int a, int b) {
+            return a + b;
+        }
+    }
+
+    @JmxBean(value = "com.mycila.jmx.benchmark:type=MonitoredInvoke", statistics = true)
+    public static class MonitoredService extends Service {
+    }
+}
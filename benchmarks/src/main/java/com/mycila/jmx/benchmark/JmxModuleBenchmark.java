@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mycila.jmx.JmxModule;
+import com.mycila.jmx.JmxRegistrationQueue;
+import com.mycila.jmx.JmxSelfNaming;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provisions 10k prototype-scoped <code>@JmxBean</code> instances from a Guice injector using the
+ * {@link JmxModule}, which registers each of them on the injecting thread, versus with deferred
+ * registration on a background thread. The <code>awaited</code> benchmark also waits for the
+ * deferred registrations to complete.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class JmxModuleBenchmark {
+
+    private static final int PROVISIONS = 10000;
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private ExecutorService executor;
+    private Injector immediate;
+    private Injector deferred;
+    private JmxRegistrationQueue queue;
+
+    @Setup(Level.Trial)
+    public void createInjectors() {
+        executor = Executors.newSingleThreadExecutor();
+        immediate = Guice.createInjector(new JmxModule());
+        deferred = Guice.createInjector(new JmxModule().deferRegistration(executor));
+        queue = deferred.getInstance(JmxRegistrationQueue.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        executor.shutdown();
+    }
+
+    @TearDown(Level.Iteration)
+    public void unregister() throws Exception {
+        queue.flush();
+        if (!queue.await(1, TimeUnit.MINUTES))
+            throw new IllegalStateException("Registrations still pending: " + queue.getPendingCount());
+        for (ObjectName name : server.queryNames(ObjectName.getInstance("com.mycila.jmx.benchmark:type=Provisioned,*"), null))
+            server.unregisterMBean(name);
+    }
+
+    @Benchmark
+    public Object provision_immediate() {
+        return provision(immediate);
+    }
+
+    @Benchmark
+    public Object provision_deferred() {
+        return provision(deferred);
+    }
+
+    @Benchmark
+    public Object provision_deferred_awaited() throws InterruptedException {
+        Object last = provision(deferred);
+        queue.await(1, TimeUnit.MINUTES);
+        return last;
+    }
+
+    private static Object provision(Injector injector) {
+        Object last = null;
+        for (int i = 0; i < PROVISIONS; i++)
+            last = injector.getInstance(Provisioned.class);
+        return last;
+    }
+
+    @JmxBean
+    public static class Provisioned implements JmxSelfNaming {
+        @JmxField
+        final int id = IDS.incrementAndGet();
+        @JmxField
+        long requests;
+
+        @JmxMethod
+        public void reset() {
+            requests = 0;
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.mycila.jmx.benchmark:type=Provisioned,id=" + id);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.JsonHttpBridge;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerConnection;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXConnectorServer;
+import javax.management.remote.JMXConnectorServerFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads over loopback all the attributes of 100 {@link Beans.Wide} beans (48 attributes each),
+ * and one attribute of one bean: through the RMI connector, one round-trip per bean, and through
+ * the {@link JsonHttpBridge}, in one batched request. The HTTP server of the JDK is run without
+ * Nagle's algorithm, which otherwise delays the body of small responses sent after their headers.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class JsonBridgeBenchmark {
+
+    private static final int BEANS = 100;
+    private static final byte[] READ_ALL = "{\"type\":\"read\",\"mbean\":\"com.mycila.jmx.benchmark:type=Wide,*\"}".getBytes();
+
+    private final byte[] bytes = new byte[8192];
+
+    private Registry registry;
+    private JMXConnectorServer connectorServer;
+    private JMXConnector connector;
+    private MBeanServerConnection connection;
+    private HttpServer httpServer;
+    private URL batchUrl;
+    private URL readUrl;
+    private ObjectName pattern;
+    private ObjectName first;
+    private String[] attributes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        for (int i = 0; i < BEANS; i++)
+            exporter.register(new Beans.Wide(), ObjectName.getInstance("com.mycila.jmx.benchmark:type=Wide,id=" + i));
+        pattern = ObjectName.getInstance("com.mycila.jmx.benchmark:type=Wide,*");
+        first = ObjectName.getInstance("com.mycila.jmx.benchmark:type=Wide,id=0");
+        MBeanAttributeInfo[] infos = server.getMBeanInfo(first).getAttributes();
+        attributes = new String[infos.length];
+        for (int i = 0; i < infos.length; i++)
+            attributes[i] = infos[i].getName();
+
+        int port = freePort();
+        registry = LocateRegistry.createRegistry(port);
+        JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://127.0.0.1:" + port + "/jmxrmi");
+        connectorServer = JMXConnectorServerFactory.newJMXConnectorServer(url, null, server);
+        connectorServer.start();
+        connector = JMXConnectorFactory.connect(url);
+        connection = connector.getMBeanServerConnection();
+
+        httpServer = new JsonHttpBridge(exporter).start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        batchUrl = new URL("http://127.0.0.1:" + httpServer.getAddress().getPort() + "/jmx");
+        readUrl = new URL(batchUrl + "/read?mbean=com.mycila.jmx.benchmark:type=Wide,id=0&attribute=field00");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        connector.close();
+        connectorServer.stop();
+        UnicastRemoteObject.unexportObject(registry, true);
+        httpServer.stop(0);
+    }
+
+    @Benchmark
+    public int rmi_read_all() throws IOException, JMException {
+        int count = 0;
+        for (ObjectName name : connection.queryNames(pattern, null)) {
+            AttributeList values = connection.getAttributes(name, attributes);
+            count += values.size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int http_read_all() throws IOException {
+        HttpURLConnection http = (HttpURLConnection) batchUrl.openConnection();
+        http.setRequestMethod("POST");
+        http.setDoOutput(true);
+        OutputStream out = http.getOutputStream();
+        out.write(READ_ALL);
+        out.close();
+        return consume(http);
+    }
+
+    @Benchmark
+    public Object rmi_read_one() throws IOException, JMException {
+        return connection.getAttribute(first, "field00");
+    }
+
+    @Benchmark
+    public int http_read_one() throws IOException {
+        return consume((HttpURLConnection) readUrl.openConnection());
+    }
+
+    private int consume(HttpURLConnection http) throws IOException {
+        InputStream in = http.getInputStream();
+        int count = 0;
+        for (int n; (n = in.read(bytes)) != -1; )
+            count += n;
+        in.close();
+        return count;
+    }
+
+    private static int freePort() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.MycilaJmxExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of attribute reads and writes and of operation invocations on an exported
+ * {@link Beans.Wide} bean, directly on its {@link DefaultDynamicMBean} and through a real
+ * {@link MBeanServer}, as a JMX client would.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MBeanAccessBenchmark {
+
+    private static final String[] ATTRIBUTES = {"field00", "field07", "field15", "field31", "Property00", "Property07", "Property15"};
+    private static final Object[] PARAMS = {1L};
+    private static final String[] SIGNATURE = {"long"};
+
+    private final Attribute fieldValue = new Attribute("field00", 42L);
+    private final Attribute propertyValue = new Attribute("Property00", 42L);
+    private DefaultDynamicMBean mBean;
+    private MBeanServer server;
+    private ObjectName objectName;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        Beans.Wide bean = new Beans.Wide();
+        objectName = exporter.register(bean);
+        server = exporter.getMBeanServer();
+        mBean = new DefaultDynamicMBean(bean, exporter.getMetadataAssembler().getMetadata(Beans.Wide.class));
+    }
+
+    @Benchmark
+    public Object raw_get_field() throws Exception {
+        return mBean.getAttribute("field00");
+    }
+
+    @Benchmark
+    public Object raw_get_property() throws Exception {
+        return mBean.getAttribute("Property00");
+    }
+
+    @Benchmark
+    public AttributeList raw_get_attributes() {
+        return mBean.getAttributes(ATTRIBUTES);
+    }
+
+    @Benchmark
+    public void raw_set_field() throws Exception {
+        mBean.setAttribute(fieldValue);
+    }
+
+    @Benchmark
+    public void raw_set_property() throws Exception {
+        mBean.setAttribute(propertyValue);
+    }
+
+    @Benchmark
+    public Object raw_invoke() throws Exception {
+        return mBean.invoke("operation00", PARAMS, SIGNATURE);
+    }
+
+    @Benchmark
+    public Object server_get_field() throws Exception {
+        return server.getAttribute(objectName, "field00");
+    }
+
+    @Benchmark
+    public Object server_get_property() throws Exception {
+        return server.getAttribute(objectName, "Property00");
+    }
+
+    @Benchmark
+    public AttributeList server_get_attributes() throws Exception {
+        return server.getAttributes(objectName, ATTRIBUTES);
+    }
+
+    @Benchmark
+    public void server_set_field() throws Exception {
+        server.setAttribute(objectName, fieldValue);
+    }
+
+    @Benchmark
+    public void server_set_property() throws Exception {
+        server.setAttribute(objectName, propertyValue);
+    }
+
+    @Benchmark
+    public Object server_invoke() throws Exception {
+        return server.invoke(objectName, "operation00", PARAMS, SIGNATURE);
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.JmxMetadata;
+import com.mycila.jmx.JmxMetadataAssembler;
+import com.mycila.jmx.PublicMetadataAssembler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link JmxMetadataAssembler#getMetadata(Class)} for each assembler shipped,
+ * on {@link Beans.Small} and {@link Beans.Wide}. The assemblers are not wrapped into a
+ * {@link com.mycila.jmx.CachingMetadataAssembler}: the metadata is built on each call.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetadataBenchmark {
+
+    private final JmxMetadataAssembler annotation = new AnnotationMetadataAssembler();
+    private final JmxMetadataAssembler publicMembers = new PublicMetadataAssembler(false);
+    private final JmxMetadataAssembler customSmall = Beans.custom(Beans.Small.class);
+    private final JmxMetadataAssembler customWide = Beans.custom(Beans.Wide.class);
+
+    @Benchmark
+    public JmxMetadata annotation_small() {
+        return annotation.getMetadata(Beans.Small.class);
+    }
+
+    @Benchmark
+    public JmxMetadata annotation_wide() {
+        return annotation.getMetadata(Beans.Wide.class);
+    }
+
+    @Benchmark
+    public JmxMetadata public_small() {
+        return publicMembers.getMetadata(Beans.Small.class);
+    }
+
+    @Benchmark
+    public JmxMetadata public_wide() {
+        return publicMembers.getMetadata(Beans.Wide.class);
+    }
+
+    @Benchmark
+    public JmxMetadata custom_small() {
+        return customSmall.getMetadata(Beans.Small.class);
+    }
+
+    @Benchmark
+    public JmxMetadata custom_wide() {
+        return customWide.getMetadata(Beans.Wide.class);
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.metric.Meter;
+import com.mycila.jmx.metric.MeterTicker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates the moving averages of 10k and 50k meters from a single {@link MeterTicker}, which
+ * is the work its thread does every 5 seconds.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeterTickerBenchmark {
+
+    @Param({"10000", "50000"})
+    public int meters;
+
+    private ScheduledExecutorService scheduler;
+    private MeterTicker ticker;
+    private Meter[] all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        ticker = new MeterTicker(scheduler);
+        all = new Meter[meters];
+        for (int i = 0; i < meters; i++) {
+            all[i] = new Meter();
+            all[i].mark(i);
+            ticker.add(all[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ticker.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void tick() {
+        ticker.tick();
+    }
+}
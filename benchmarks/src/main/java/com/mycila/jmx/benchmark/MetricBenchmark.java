@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.metric.Counter;
+import com.mycila.jmx.metric.Gauge;
+import com.mycila.jmx.metric.Histogram;
+import com.mycila.jmx.metric.Meter;
+import com.mycila.jmx.metric.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Updates a single metric shared by 1, 4 and 16 threads: a striped {@link Counter} against an
+ * {@link AtomicLong} and a synchronized increment, plus {@link Gauge}, {@link Timer},
+ * {@link Histogram} and {@link Meter} updates.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricBenchmark {
+
+    private final Object lock = new Object();
+    private final AtomicLong atomicLong = new AtomicLong();
+    private final Counter counter = new Counter();
+    private final Gauge gauge = new Gauge();
+    private final Timer timer = new Timer();
+    private final Histogram histogram = new Histogram();
+    private final Meter meter = new Meter();
+    private long value;
+
+    @Benchmark
+    @Threads(1)
+    public void atomic_long_1() {
+        atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void synchronized_1() {
+        synchronized (lock) {
+            value++;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void counter_1() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void gauge_1() {
+        gauge.max(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void timer_1() {
+        timer.update(100, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void histogram_1() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void meter_1() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void atomic_long_4() {
+        atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void synchronized_4() {
+        synchronized (lock) {
+            value++;
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void counter_4() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void gauge_4() {
+        gauge.max(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void timer_4() {
+        timer.update(100, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogram_4() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void meter_4() {
+        meter.mark();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void atomic_long_16() {
+        atomicLong.incrementAndGet();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void synchronized_16() {
+        synchronized (lock) {
+            value++;
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void counter_16() {
+        counter.increment();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void gauge_16() {
+        gauge.max(System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void timer_16() {
+        timer.update(100, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void histogram_16() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void meter_16() {
+        meter.mark();
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.MetricsFile;
+import com.mycila.jmx.MetricsFileReader;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One update of a {@link MetricsFile} publishing 1k and 10k MBeans having 4 metric attributes each, and the read
+ * of all the values of the file by a {@link MetricsFileReader}, which is what an external process does.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsFileBenchmark {
+
+    @Param({"1000", "10000"})
+    public int mBeans;
+
+    private File file;
+    private MetricsFile metricsFile;
+    private List<MetricsFileReader.Entry> entries;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        for (int i = 0; i < mBeans; i++)
+            exporter.register(new Gauges(), ObjectName.getInstance("com.mycila.jmx.benchmark:type=Gauges,id=" + i));
+        file = File.createTempFile("mycila-jmx-", ".metrics");
+        metricsFile = new MetricsFile(exporter, file, 64 * 1024 * 1024);
+        metricsFile.update();
+        entries = MetricsFileReader.open(file).getEntries();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        metricsFile.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public void update() {
+        metricsFile.update();
+    }
+
+    @Benchmark
+    public double read() {
+        double sum = 0;
+        for (MetricsFileReader.Entry entry : entries)
+            sum += entry.doubleValue();
+        return sum;
+    }
+
+    @JmxBean("com.mycila.jmx.benchmark:type=Gauges")
+    public static class Gauges {
+        @JmxField
+        @JmxMetric
+        volatile int queueSize = 500;
+
+        @JmxField
+        @JmxMetric
+        volatile double heapUsage = 0.5;
+
+        @JmxField
+        @JmxMetric
+        volatile long connections = 10;
+
+        @JmxField
+        @JmxMetric
+        volatile int workers = 8;
+    }
+}
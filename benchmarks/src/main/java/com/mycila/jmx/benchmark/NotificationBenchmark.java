@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.NotificationDispatcher;
+import com.mycila.jmx.NotificationPublisher;
+import com.mycila.jmx.OverflowPolicy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes notifications from 4 threads to a listener taking about a microsecond per
+ * notification, with each {@link OverflowPolicy}: publishing threads are only slowed
+ * down by the listener with {@link OverflowPolicy#BLOCK}. The dropped and coalesced
+ * notifications are printed at the end of each trial.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationBenchmark {
+
+    @Param({"DROP", "COALESCE", "BLOCK"})
+    public OverflowPolicy policy;
+
+    private NotificationDispatcher dispatcher;
+    private NotificationPublisher publisher;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dispatcher = new NotificationDispatcher("benchmark-notifications", 8192);
+        publisher = new NotificationPublisher(dispatcher, policy);
+        publisher.addNotificationListener(new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                long end = System.nanoTime() + 1000;
+                while (System.nanoTime() < end) ;
+            }
+        }, null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.println();
+        System.out.println(policy + ": " + publisher.getDroppedCount() + " dropped, " + publisher.getCoalescedCount() + " coalesced");
+        dispatcher.shutdown();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void publish() {
+        publisher.publish("benchmark", "notification");
+    }
+}
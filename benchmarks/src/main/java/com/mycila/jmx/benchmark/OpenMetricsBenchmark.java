@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.JmxSelfNaming;
+import com.mycila.jmx.MetricType;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.mycila.jmx.OpenMetricsEndpoint;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.metric.Counter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scrape of 1k and 10k MBeans having 4 metrics each: by the {@link OpenMetricsEndpoint}, compared
+ * to a scraper going through the MBeanServer, which reads the MBeanInfo of each MBean and formats
+ * the samples with strings. The output is discarded.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OpenMetricsBenchmark {
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
+
+    @Param({"1000", "10000"})
+    public int mBeans;
+
+    private MBeanServer server;
+    private OpenMetricsEndpoint endpoint;
+    private ObjectName pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedObjectNameException {
+        server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        pattern = ObjectName.getInstance("com.company:*");
+        endpoint = new OpenMetricsEndpoint(exporter, pattern);
+        List<Pool> beans = new ArrayList<Pool>(mBeans);
+        for (int i = 0; i < mBeans; i++)
+            beans.add(new Pool(i));
+        if (!exporter.registerAll(beans).isSuccessful())
+            throw new IllegalStateException("Unable to register MBeans");
+    }
+
+    @Benchmark
+    public void endpoint() throws IOException {
+        endpoint.writeTo(DISCARD);
+    }
+
+    @Benchmark
+    public void mbean_server() throws JMException, IOException {
+        StringBuilder sb = new StringBuilder();
+        for (ObjectName name : server.queryNames(pattern, null)) {
+            MBeanAttributeInfo[] infos = server.getMBeanInfo(name).getAttributes();
+            String[] attributes = new String[infos.length];
+            for (int i = 0; i < infos.length; i++)
+                attributes[i] = infos[i].getName();
+            for (Attribute attribute : server.getAttributes(name, attributes).asList()) {
+                sb.append(name.getDomain()).append('_').append(attribute.getName()).append('{');
+                for (Map.Entry<String, String> property : name.getKeyPropertyList().entrySet())
+                    sb.append(property.getKey()).append("=\"").append(property.getValue()).append("\",");
+                sb.append("} ").append(String.valueOf(attribute.getValue())).append('\n');
+            }
+        }
+        DISCARD.write(sb.toString().getBytes("UTF-8"));
+    }
+
+    @JmxBean
+    public static class Pool implements JmxSelfNaming {
+        private final int id;
+
+        @JmxField
+        @JmxMetric
+        final Counter borrowed = new Counter();
+
+        @JmxField
+        @JmxMetric(type = MetricType.COUNTER)
+        volatile long created = 100;
+
+        @JmxField
+        @JmxMetric(unit = "connections")
+        volatile int active = 8;
+
+        @JmxField
+        @JmxMetric(unit = "ratio")
+        volatile double usage = 0.42;
+
+        Pool(int id) {
+            this.id = id;
+            borrowed.add(id);
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.company:type=Pool,id=" + id);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.AttributeRecorder;
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.JmxMetadata;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One recording pass of an {@link AttributeRecorder} over 2.5k and 10k MBeans having 4 metric
+ * attributes each with an history of 60 samples (10k and 40k attributes): this is the work done
+ * by its thread every period, writing into off-heap buffers without allocating.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecorderBenchmark {
+
+    @Param({"2500", "10000"})
+    public int mBeans;
+
+    private ScheduledExecutorService scheduler;
+    private AttributeRecorder recorder;
+    private DefaultDynamicMBean[] all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        recorder = new AttributeRecorder(scheduler, 1, TimeUnit.HOURS, Long.MAX_VALUE);
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Gauges.class);
+        all = new DefaultDynamicMBean[mBeans];
+        for (int i = 0; i < mBeans; i++) {
+            all[i] = new DefaultDynamicMBean(new Gauges(), metadata);
+            recorder.add(all[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recorder.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void record() {
+        recorder.record();
+    }
+
+    @JmxBean(value = "com.mycila.jmx.benchmark:type=Gauges", history = 60)
+    public static class Gauges {
+        @JmxField
+        @JmxMetric
+        volatile int queueSize = 500;
+
+        @JmxField
+        @JmxMetric
+        volatile double heapUsage = 0.5;
+
+        @JmxField
+        @JmxMetric
+        volatile long connections = 10;
+
+        @JmxField
+        @JmxMetric
+        volatile int workers = 8;
+    }
+}
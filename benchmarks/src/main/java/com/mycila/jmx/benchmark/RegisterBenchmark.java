@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.MycilaJmxExporter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link MycilaJmxExporter#register(Object)} followed by an unregistration, so
+ * that the MBeanServer does not grow, for a small and a wide bean, eagerly and lazily.
+ * Metadata is cached by the exporter: this measures naming, MBean creation and registration.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterBenchmark {
+
+    private final Beans.Small small = new Beans.Small();
+    private final Beans.Wide wide = new Beans.Wide();
+    private MycilaJmxExporter exporter;
+    private MycilaJmxExporter lazyExporter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        lazyExporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        lazyExporter.setLazy(true);
+    }
+
+    @Benchmark
+    public ObjectName register_small() {
+        ObjectName objectName = exporter.register(small);
+        exporter.unregister(objectName);
+        return objectName;
+    }
+
+    @Benchmark
+    public ObjectName register_wide() {
+        ObjectName objectName = exporter.register(wide);
+        exporter.unregister(objectName);
+        return objectName;
+    }
+
+    @Benchmark
+    public ObjectName register_wide_lazy() {
+        ObjectName objectName = lazyExporter.register(wide);
+        lazyExporter.unregister(objectName);
+        return objectName;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.AttributeSampler;
+import com.mycila.jmx.DefaultDynamicMBean;
+import com.mycila.jmx.JmxMetadata;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxThreshold;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One sampling pass of an {@link AttributeSampler} over 2.5k and 10k MBeans having 4 attributes
+ * with thresholds each (10k and 40k attributes), all MBeans having a listener: this is the
+ * work done by its thread every period, instead of the polling of every attribute by clients.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamplerBenchmark {
+
+    @Param({"2500", "10000"})
+    public int mBeans;
+
+    private ScheduledExecutorService scheduler;
+    private AttributeSampler sampler;
+    private DefaultDynamicMBean[] all;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        sampler = new AttributeSampler(scheduler);
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Gauges.class);
+        NotificationListener listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+            }
+        };
+        all = new DefaultDynamicMBean[mBeans];
+        for (int i = 0; i < mBeans; i++) {
+            all[i] = new DefaultDynamicMBean(new Gauges(), metadata);
+            all[i].addNotificationListener(listener, null, null);
+            sampler.add(all[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sampler.stop();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public void sample() {
+        sampler.sample();
+    }
+
+    @JmxBean("com.mycila.jmx.benchmark:type=Gauges")
+    public static class Gauges {
+        @JmxField
+        @JmxThreshold(high = 1000, low = 100)
+        volatile int queueSize = 500;
+
+        @JmxField
+        @JmxThreshold(high = 0.9)
+        volatile double heapUsage = 0.5;
+
+        @JmxField
+        @JmxThreshold(delta = 100)
+        volatile long connections = 10;
+
+        @JmxField
+        @JmxThreshold(low = 1)
+        volatile int workers = 8;
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.JmxSelfNaming;
+import com.mycila.jmx.MBeanSnapshot;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads every attribute of every MBean matching a pattern, as a health endpoint does, with 1k, 10k
+ * and 100k MBeans of 4 attributes each: through the MBeanServer (query, then MBeanInfo and attributes
+ * of each MBean) compared to an exporter snapshot, read from the calling thread or on a fork-join pool.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int mBeans;
+
+    private MBeanServer server;
+    private MycilaJmxExporter exporter;
+    private ForkJoinPool pool;
+    private ObjectName pattern;
+
+    @Setup(Level.Trial)
+    public void setUp() throws MalformedObjectNameException {
+        server = MBeanServerFactory.newMBeanServer();
+        exporter = new MycilaJmxExporter(server);
+        pool = new ForkJoinPool();
+        pattern = ObjectName.getInstance("com.company:*");
+        List<Health> beans = new ArrayList<Health>(mBeans);
+        for (int i = 0; i < mBeans; i++)
+            beans.add(new Health(i));
+        if (!exporter.registerAll(beans).isSuccessful())
+            throw new IllegalStateException("Unable to register MBeans");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public int mbean_server() throws JMException {
+        int count = 0;
+        for (ObjectName name : server.queryNames(pattern, null)) {
+            MBeanAttributeInfo[] infos = server.getMBeanInfo(name).getAttributes();
+            String[] attributes = new String[infos.length];
+            for (int i = 0; i < infos.length; i++)
+                attributes[i] = infos[i].getName();
+            AttributeList values = server.getAttributes(name, attributes);
+            count += values.size();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public MBeanSnapshot snapshot() {
+        return exporter.snapshot(pattern);
+    }
+
+    @Benchmark
+    public MBeanSnapshot snapshot_parallel() {
+        return exporter.snapshot(pattern, pool);
+    }
+
+    @JmxBean
+    public static class Health implements JmxSelfNaming {
+        private final int id;
+
+        @JmxField
+        volatile boolean up = true;
+
+        @JmxField
+        volatile long requests = 1000;
+
+        @JmxField
+        volatile double latency = 12.5;
+
+        @JmxField
+        volatile String status = "OK";
+
+        Health(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.company:type=Health,id=" + id);
+        }
+    }
+}
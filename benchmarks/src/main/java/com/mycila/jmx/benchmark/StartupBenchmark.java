@@ -0,0 +1,196 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.benchmark;
+
+import com.mycila.jmx.JmxSelfNaming;
+import com.mycila.jmx.MycilaJmxExporter;
+import com.mycila.jmx.RegistrationReport;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.mycila.jmx.annotation.JmxProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registers a whole application worth of MBeans in a fresh MBeanServer, as done at startup:
+ * one at a time through {@link MycilaJmxExporter#register(Object)}, and in one batch through
+ * {@link MycilaJmxExporter#registerAll(java.util.Collection)} on the calling thread and on a thread pool,
+ * and in lazy mode, where metadata is not assembled at registration.
+ * The beans are spread over 4 classes.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class StartupBenchmark {
+
+    @Param({"10000", "50000", "100000"})
+    public int beans;
+
+    private final List<Object> managedResources = new ArrayList<Object>();
+    private ExecutorService executor;
+    private MycilaJmxExporter exporter;
+
+    @Setup(Level.Trial)
+    public void createBeans() {
+        for (int i = 0; i < beans; i++) {
+            switch (i % 4) {
+                case 0:
+                    managedResources.add(new Cache(i));
+                    break;
+                case 1:
+                    managedResources.add(new Queue(i));
+                    break;
+                case 2:
+                    managedResources.add(new Pool(i));
+                    break;
+                default:
+                    managedResources.add(new Session(i));
+            }
+        }
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        executor.shutdown();
+    }
+
+    @Setup(Level.Iteration)
+    public void newServer() {
+        // a new exporter each time so that metadata is assembled again, as on a real startup
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+    }
+
+    @Benchmark
+    public int register_one_by_one() {
+        for (Object managedResource : managedResources)
+            exporter.register(managedResource);
+        return exporter.getMBeanServer().getMBeanCount();
+    }
+
+    @Benchmark
+    public RegistrationReport register_all() {
+        return exporter.registerAll(managedResources);
+    }
+
+    @Benchmark
+    public RegistrationReport register_all_parallel() {
+        exporter.setBatchExecutor(executor);
+        return exporter.registerAll(managedResources);
+    }
+
+    @Benchmark
+    public RegistrationReport register_all_lazy() {
+        exporter.setLazy(true);
+        return exporter.registerAll(managedResources);
+    }
+
+    public static abstract class Named implements JmxSelfNaming {
+        private final int id;
+
+        Named(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.mycila.jmx.benchmark:type=" + getClass().getSimpleName() + ",id=" + id);
+        }
+    }
+
+    @JmxBean
+    public static class Cache extends Named {
+        @JmxField
+        long hits;
+        @JmxField
+        long misses;
+
+        Cache(int id) {
+            super(id);
+        }
+
+        @JmxMethod
+        public void clear() {
+        }
+    }
+
+    @JmxBean
+    public static class Queue extends Named {
+        @JmxField
+        int depth;
+
+        Queue(int id) {
+            super(id);
+        }
+
+        @JmxProperty
+        public int getCapacity() {
+            return 1024;
+        }
+    }
+
+    @JmxBean
+    public static class Pool extends Named {
+        @JmxField
+        int active;
+        @JmxField
+        int idle;
+
+        Pool(int id) {
+            super(id);
+        }
+
+        @JmxMethod
+        public void evict(int count) {
+        }
+    }
+
+    @JmxBean
+    public static class Session extends Named {
+        @JmxField
+        String user = "";
+
+        Session(int id) {
+            super(id);
+        }
+    }
+}
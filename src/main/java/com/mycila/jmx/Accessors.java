@@ -0,0 +1,209 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Builds {@link AttributeAccessor} for exported fields and properties, and {@link OperationInvoker}
+ * for exported methods.
+ * <p>Accessors are backed by {@link MethodHandle} adapted to a generic
+ * <code>(Object)Object</code> shape so that reads and writes do not go through
+ * {@link Field#get(Object)} or {@link Method#invoke(Object, Object...)}.
+ * If a handle cannot be created (i.e. because of a security manager or module
+ * restrictions), a reflection based accessor is returned instead.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Accessors {
+
+    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private Accessors() {
+    }
+
+    public static AttributeAccessor of(Field field) {
+        try {
+            makeAccessible(field);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            boolean isStatic = Modifier.isStatic(field.getModifiers());
+            MethodHandle getter = adapt(lookup.unreflectGetter(field), isStatic, GETTER);
+            MethodHandle setter = Modifier.isFinal(field.getModifiers()) ? null : adapt(lookup.unreflectSetter(field), isStatic, SETTER);
+            return new FieldHandleAccessor(field, getter, setter);
+        } catch (IllegalAccessException e) {
+            return reflective(field);
+        } catch (RuntimeException e) {
+            return reflective(field);
+        }
+    }
+
+    public static AttributeAccessor of(BeanProperty property) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            MethodHandle getter = null;
+            MethodHandle setter = null;
+            if (property.isReadable()) {
+                Method read = property.getReadMethod();
+                makeAccessible(read);
+                getter = adapt(lookup.unreflect(read), Modifier.isStatic(read.getModifiers()), GETTER);
+            }
+            if (property.isWritable()) {
+                Method write = property.getWriteMethod();
+                makeAccessible(write);
+                setter = adapt(lookup.unreflect(write), Modifier.isStatic(write.getModifiers()), SETTER);
+            }
+            return new PropertyHandleAccessor(property, getter, setter);
+        } catch (IllegalAccessException e) {
+            return reflective(property);
+        } catch (RuntimeException e) {
+            return reflective(property);
+        }
+    }
+
+    public static AttributeAccessor reflective(final Field field) {
+        return new AttributeAccessor() {
+            @Override
+            public Object get(Object managedResource) throws Throwable {
+                makeAccessible(field);
+                return field.get(managedResource);
+            }
+
+            @Override
+            public void set(Object managedResource, Object value) throws Throwable {
+                makeAccessible(field);
+                field.set(managedResource, value);
+            }
+
+            @Override
+            public String toString() {
+                return field.toString();
+            }
+        };
+    }
+
+    public static AttributeAccessor reflective(final BeanProperty property) {
+        return new AttributeAccessor() {
+            @Override
+            public Object get(Object managedResource) throws Throwable {
+                return property.get(managedResource);
+            }
+
+            @Override
+            public void set(Object managedResource, Object value) throws Throwable {
+                property.set(managedResource, value);
+            }
+
+            @Override
+            public String toString() {
+                return property.toString();
+            }
+        };
+    }
+
+    public static OperationInvoker reflective(final Method method) {
+        return new OperationInvoker() {
+            @Override
+            public Object invoke(Object managedResource, Object... params) throws Throwable {
+                return method.invoke(managedResource, params);
+            }
+
+            @Override
+            public String toString() {
+                return method.toString();
+            }
+        };
+    }
+
+    private static void makeAccessible(AccessibleObject object) {
+        if (!object.isAccessible())
+            object.setAccessible(true);
+    }
+
+    private static MethodHandle adapt(MethodHandle handle, boolean isStatic, MethodType type) {
+        if (isStatic)
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        return handle.asType(type);
+    }
+
+    private static final class FieldHandleAccessor implements AttributeAccessor {
+        private final Field field;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        FieldHandleAccessor(Field field, MethodHandle getter, MethodHandle setter) {
+            this.field = field;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object managedResource) throws Throwable {
+            return (Object) getter.invokeExact(managedResource);
+        }
+
+        @Override
+        public void set(Object managedResource, Object value) throws Throwable {
+            if (setter == null)
+                // final fields can only be written by reflection
+                field.set(managedResource, value);
+            else
+                setter.invokeExact(managedResource, value);
+        }
+
+        @Override
+        public String toString() {
+            return field.toString();
+        }
+    }
+
+    private static final class PropertyHandleAccessor implements AttributeAccessor {
+        private final BeanProperty property;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        PropertyHandleAccessor(BeanProperty property, MethodHandle getter, MethodHandle setter) {
+            this.property = property;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        public Object get(Object managedResource) throws Throwable {
+            if (getter == null)
+                throw new IllegalStateException("Property not readable: " + property);
+            return (Object) getter.invokeExact(managedResource);
+        }
+
+        @Override
+        public void set(Object managedResource, Object value) throws Throwable {
+            if (setter == null)
+                throw new IllegalStateException("Property not writable: " + property);
+            setter.invokeExact(managedResource, value);
+        }
+
+        @Override
+        public String toString() {
+            return property.toString();
+        }
+    }
+}
@@ -16,15 +16,26 @@
 package com.mycila.jmx;
 
 import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxCached;
 import com.mycila.jmx.annotation.JmxField;
 import com.mycila.jmx.annotation.JmxMethod;
 import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.annotation.JmxNotification;
 import com.mycila.jmx.annotation.JmxParam;
 import com.mycila.jmx.annotation.JmxProperty;
+import com.mycila.jmx.annotation.JmxThreshold;
 
 import javax.management.Descriptor;
+import javax.management.MBeanNotificationInfo;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
@@ -33,6 +44,67 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
 
     // MBEAN
 
+    /**
+     * Operations of beans having {@link JmxBean#statistics()} enabled are wrapped in
+     * {@link MonitoredOperation}s, and their statistics added to the attributes.
+     * Beans having a {@link JmxBean#history()} get the operations of an {@link AttributeHistory}
+     * of their {@link AttributeHistory#isRecordable(JmxAttribute) recordable} attributes.
+     */
+    @Override
+    protected Collection<JmxOperation> postProcess(Class<?> managedClass, Collection<JmxAttribute> attributes, Collection<JmxOperation> operations) {
+        JmxBean bean = isAnnotated(managedClass) ? managedClass.getAnnotation(JmxBean.class) : null;
+        if (bean == null)
+            return operations;
+        if (bean.statistics()) {
+            Set<String> names = new HashSet<String>();
+            for (JmxAttribute attribute : attributes)
+                names.add(attribute.getName());
+            Map<String, MonitoredOperation.Statistics> statistics = new LinkedHashMap<String, MonitoredOperation.Statistics>();
+            List<JmxOperation> monitored = new ArrayList<JmxOperation>(operations.size());
+            for (JmxOperation operation : operations) {
+                String name = operation.getMetadata().getName();
+                MonitoredOperation.Statistics stats = statistics.get(name);
+                if (stats == null) {
+                    statistics.put(name, stats = new MonitoredOperation.Statistics(name, statistics.size()));
+                    for (JmxAttribute attribute : stats.getAttributes())
+                        if (!names.add(attribute.getName()))
+                            throw new IllegalArgumentException("Statistic " + attribute.getName() + " of " + managedClass.getName() + " clashes with an attribute of the same name");
+                    attributes.addAll(stats.getAttributes());
+                }
+                monitored.add(new MonitoredOperation(operation, stats));
+            }
+            operations = monitored;
+        }
+        if (bean.history() > 0) {
+            List<JmxAttribute> recorded = new ArrayList<JmxAttribute>();
+            for (JmxAttribute attribute : attributes)
+                if (AttributeHistory.isRecordable(attribute))
+                    recorded.add(attribute);
+            if (!recorded.isEmpty()) {
+                operations = new ArrayList<JmxOperation>(operations);
+                operations.addAll(new AttributeHistory(recorded, bean.history()).getOperations());
+            }
+        }
+        return operations;
+    }
+
+    /**
+     * @return The notifications declared by the {@link JmxNotification} annotations of the fields of the managed class
+     */
+    @Override
+    protected Collection<MBeanNotificationInfo> getMBeanNotifications(Class<?> managedClass) {
+        if (!isAnnotated(managedClass))
+            return super.getMBeanNotifications(managedClass);
+        List<MBeanNotificationInfo> notifications = new ArrayList<MBeanNotificationInfo>();
+        for (Class<?> c = managedClass; c != null && c != Object.class; c = c.getSuperclass())
+            for (Field field : c.getDeclaredFields()) {
+                JmxNotification notification = field.getAnnotation(JmxNotification.class);
+                if (notification != null)
+                    notifications.add(new MBeanNotificationInfo(notification.value(), notification.notificationClass().getName(), notification.description()));
+            }
+        return notifications;
+    }
+
     @Override
     protected String getMBeanDescription(Class<?> managedClass) {
         return isAnnotated(managedClass) ?
@@ -46,6 +118,58 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
 
     // ATTRIBUTES
 
+    @Override
+    protected Collection<JmxAttribute> getMBeanAttributes(Class<?> managedClass, Collection<BeanProperty> properties) {
+        Collection<JmxAttribute> attributes = super.getMBeanAttributes(managedClass, properties);
+        List<JmxAttribute> counters = new ArrayList<JmxAttribute>();
+        for (JmxAttribute attribute : attributes) {
+            if (attribute instanceof ThresholdAttribute)
+                attribute = ((ThresholdAttribute) attribute).getDelegate();
+            if (attribute instanceof CachedAttribute) {
+                counters.add(((CachedAttribute) attribute).getHitsAttribute());
+                counters.add(((CachedAttribute) attribute).getMissesAttribute());
+            }
+        }
+        if (!counters.isEmpty()) {
+            Set<String> names = new HashSet<String>();
+            for (JmxAttribute attribute : attributes)
+                names.add(attribute.getName());
+            for (JmxAttribute counter : counters)
+                if (!names.add(counter.getName()))
+                    throw new IllegalArgumentException("Cache counter " + counter.getName() + " of " + managedClass.getName() + " clashes with an attribute of the same name");
+            attributes.addAll(counters);
+        }
+        return attributes;
+    }
+
+    @Override
+    protected Collection<JmxAttribute> buildMetricAttributes(Class<?> managedClass, Field field) {
+        if (field.isAnnotationPresent(JmxCached.class) || field.isAnnotationPresent(JmxThreshold.class))
+            throw new IllegalArgumentException("@JmxCached and @JmxThreshold cannot be used on metric field " + field);
+        return super.buildMetricAttributes(managedClass, field);
+    }
+
+    @Override
+    protected JmxAttribute buildAttribute(Class<?> managedClass, Field field) {
+        return decorate(super.buildAttribute(managedClass, field), field.getType(),
+            field.getAnnotation(JmxCached.class), field.getAnnotation(JmxThreshold.class));
+    }
+
+    /**
+     * Wrap an attribute in a {@link CachedAttribute} and then in a {@link ThresholdAttribute}, if annotated
+     */
+    private static JmxAttribute decorate(JmxAttribute attribute, Class<?> type, JmxCached cached, JmxThreshold threshold) {
+        if (cached != null)
+            attribute = new CachedAttribute(attribute, cached.ttl(), cached.unit());
+        if (threshold == null)
+            return attribute;
+        if (!attribute.getMetadata().isReadable())
+            throw new IllegalArgumentException("@JmxThreshold cannot be used on write-only attribute " + attribute);
+        if (type == boolean.class || type == char.class || !type.isPrimitive() && !Number.class.isAssignableFrom(type))
+            throw new IllegalArgumentException("@JmxThreshold cannot be used on non-numeric attribute " + attribute + " of type " + type.getName());
+        return new ThresholdAttribute(attribute, threshold.high(), threshold.low(), threshold.delta());
+    }
+
     @Override
     public boolean canInclude(Class<?> managedClass, Field field) {
         return isAnnotated(managedClass) && field.isAnnotationPresent(JmxField.class);
@@ -74,6 +198,10 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
         super.populateAttributeDescriptor(managedClass, attribute, desc);
         JmxMetric metric = attribute.getAnnotation(JmxMetric.class);
         if (metric != null) fillMetric(metric, desc);
+        JmxCached cached = attribute.getAnnotation(JmxCached.class);
+        if (cached != null) fillCached(cached, desc);
+        JmxThreshold threshold = attribute.getAnnotation(JmxThreshold.class);
+        if (threshold != null) fillThreshold(threshold, desc);
     }
 
     // OPERATIONS
@@ -120,14 +248,20 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
     }
 
     @Override
-    protected void populateOperationDescriptor(Class<?> managedClass, Method operation, Descriptor desc) {
-        super.populateOperationDescriptor(managedClass, operation, desc);
+    protected void populateOperationDescriptor(Class<?> managedClass, Method operation, Role role, Descriptor desc) {
+        super.populateOperationDescriptor(managedClass, operation, role, desc);
         JmxMetric metric = operation.getAnnotation(JmxMetric.class);
         if (metric != null) fillMetric(metric, desc);
     }
 
     // PROPERTIES
 
+    @Override
+    protected JmxAttribute buildProperty(Class<?> managedClass, BeanProperty property) {
+        return decorate(super.buildProperty(managedClass, property), property.getType(),
+            property.getAnnotation(JmxCached.class), property.getAnnotation(JmxThreshold.class));
+    }
+
     @Override
     public boolean canInclude(Class<?> managedClass, BeanProperty property) {
         return isAnnotated(managedClass) && property.isAnnotationPresent(JmxProperty.class);
@@ -156,6 +290,10 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
         super.populatePropertyDescriptor(managedClass, property, desc);
         JmxMetric metric = property.getAnnotation(JmxMetric.class);
         if (metric != null) fillMetric(metric, desc);
+        JmxCached cached = property.getAnnotation(JmxCached.class);
+        if (cached != null) fillCached(cached, desc);
+        JmxThreshold threshold = property.getAnnotation(JmxThreshold.class);
+        if (threshold != null) fillThreshold(threshold, desc);
     }
 
     // METRICS
@@ -167,4 +305,21 @@ public class AnnotationMetadataAssembler extends ReflectionMetadataAssemblerSkel
             desc.setField("metricCategory", metric.category());
         desc.setField("metricType", metric.type().toString());
     }
+
+    // CACHE
+
+    private void fillCached(JmxCached cached, Descriptor desc) {
+        desc.setField("cacheTtl", cached.unit().toMillis(cached.ttl()));
+    }
+
+    // THRESHOLDS
+
+    private void fillThreshold(JmxThreshold threshold, Descriptor desc) {
+        if (!Double.isNaN(threshold.high()))
+            desc.setField("thresholdHigh", threshold.high());
+        if (!Double.isNaN(threshold.low()))
+            desc.setField("thresholdLow", threshold.low());
+        if (!Double.isNaN(threshold.delta()))
+            desc.setField("thresholdDelta", threshold.delta());
+    }
 }
@@ -15,44 +15,58 @@
  */
 package com.mycila.jmx;
 
+import com.google.common.cache.CacheLoader;
 import com.mycila.jmx.annotation.JmxBean;
 
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
-import java.util.Map;
-import java.util.WeakHashMap;
-
 /**
+ * Finds the assembler of a managed class: the one of its {@link JmxBean} annotation, or the
+ * {@link PublicMetadataAssembler} if it is not annotated. The default {@link AnnotationMetadataAssembler}
+ * is replaced by the {@link GeneratedMetadataAssembler} of the class when one has been generated at build time.
+ *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public final class Assemblers {
 
-    private static final Map<Class<? extends JmxMetadataAssembler>, Reference<JmxMetadataAssembler>> cache = new WeakHashMap<>();
+    private static final IntrospectionCache<JmxMetadataAssembler> cache = IntrospectionCache.shared("assemblers", new CacheLoader<Class<?>, JmxMetadataAssembler>() {
+        @Override
+        public JmxMetadataAssembler load(Class<?> exp) throws Exception {
+            return exp.asSubclass(JmxMetadataAssembler.class).getConstructor().newInstance();
+        }
+    });
+
+    private static final IntrospectionCache<JmxMetadataAssembler> generated = IntrospectionCache.shared("generatedAssemblers", new CacheLoader<Class<?>, JmxMetadataAssembler>() {
+        @Override
+        public JmxMetadataAssembler load(Class<?> mbeanClass) throws Exception {
+            ClassLoader classLoader = mbeanClass.getClassLoader();
+            if (classLoader != null) {
+                try {
+                    Class<?> assembler = Class.forName(mbeanClass.getName() + GeneratedMetadataAssembler.SUFFIX, true, classLoader);
+                    if (GeneratedMetadataAssembler.class.isAssignableFrom(assembler)) {
+                        GeneratedMetadataAssembler instance = assembler.asSubclass(GeneratedMetadataAssembler.class).getConstructor().newInstance();
+                        if (instance.getManagedClass() == mbeanClass)
+                            return instance;
+                    }
+                } catch (ClassNotFoundException ignored) {
+                }
+            }
+            return Assemblers.load(AnnotationMetadataAssembler.class);
+        }
+    });
 
     private Assemblers() {
     }
 
     public static JmxMetadataAssembler get(Class<?> mbeanClass) {
         JmxBean jmxBean = mbeanClass.getAnnotation(JmxBean.class);
-        return jmxBean == null ? load(PublicMetadataAssembler.class) : load(jmxBean.assembler());
+        if (jmxBean == null)
+            return load(PublicMetadataAssembler.class);
+        if (jmxBean.assembler() == AnnotationMetadataAssembler.class)
+            return generated.get(mbeanClass);
+        return load(jmxBean.assembler());
     }
 
     private static JmxMetadataAssembler load(Class<? extends JmxMetadataAssembler> exp) {
-        if (exp == null) exp = AnnotationMetadataAssembler.class;
-        Reference<JmxMetadataAssembler> ref = cache.get(exp);
-        JmxMetadataAssembler exposure;
-        if (ref != null) {
-            exposure = ref.get();
-            if (exposure != null)
-                return exposure;
-        }
-        try {
-            exposure = exp.getConstructor().newInstance();
-        } catch (Throwable e) {
-            throw ExceptionUtils.rethrow(e);
-        }
-        cache.put(exp, new WeakReference<JmxMetadataAssembler>(exposure));
-        return exposure;
+        return cache.get(exp);
     }
 
 }
@@ -0,0 +1,29 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+/**
+ * Reads and writes the value of an exported member on a managed resource.
+ * Implementations are built once when the metadata is assembled and are then
+ * shared by all the instances of the managed class.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface AttributeAccessor {
+    Object get(Object managedResource) throws Throwable;
+
+    void set(Object managedResource, Object value) throws Throwable;
+}
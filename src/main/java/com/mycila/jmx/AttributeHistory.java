@@ -0,0 +1,327 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+
+import javax.management.Descriptor;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ReflectionException;
+import javax.management.modelmbean.ModelMBeanOperationInfo;
+import javax.management.openmbean.ArrayType;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last samples of numeric attributes of a managed class, recorded by an {@link AttributeRecorder}.
+ * The samples of each managed resource are kept in a ring buffer allocated outside of the heap when the
+ * resource is added to the recorder, which never grows: once full, the oldest samples are overwritten.
+ * They are queried with the operations <code>attributeHistory(String attribute, int count)</code>, for the
+ * last samples, and <code>attributeHistory(String attribute, long from, long to)</code>, for the samples
+ * taken between two times in milliseconds. Both return a {@link CompositeData} holding the
+ * <code>attribute</code> name and two arrays of the same length: <code>timestamps</code> and <code>values</code>.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class AttributeHistory {
+
+    public static final String OPERATION = "attributeHistory";
+
+    private static final Set<String> NUMERIC_TYPES = new HashSet<String>(Arrays.asList(
+        "byte", "short", "int", "long", "float", "double",
+        Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+        Float.class.getName(), Double.class.getName(), Number.class.getName(),
+        AtomicInteger.class.getName(), AtomicLong.class.getName()));
+    private static final CompositeType SAMPLES;
+
+    static {
+        try {
+            SAMPLES = new CompositeType(
+                "AttributeHistory",
+                "Samples of an attribute",
+                new String[]{"attribute", "timestamps", "values"},
+                new String[]{"Name of the attribute", "Times of the samples in milliseconds", "Values of the samples"},
+                new OpenType<?>[]{SimpleType.STRING, ArrayType.getPrimitiveArrayType(long[].class), ArrayType.getPrimitiveArrayType(double[].class)});
+        } catch (OpenDataException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final ConcurrentMap<Object, Ring> rings = new MapMaker().weakKeys().makeMap();
+    private final JmxAttribute[] attributes;
+    private final Map<String, Integer> columns = new HashMap<String, Integer>();
+    private final int capacity;
+    private final Collection<JmxOperation> operations;
+
+    /**
+     * @param attributes The attributes to record, which must be {@link #isRecordable(JmxAttribute) recordable}
+     * @param capacity   The number of samples kept for each managed resource
+     */
+    public AttributeHistory(Collection<JmxAttribute> attributes, int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.attributes = attributes.toArray(new JmxAttribute[attributes.size()]);
+        this.capacity = capacity;
+        for (int i = 0; i < this.attributes.length; i++) {
+            if (!isRecordable(this.attributes[i]))
+                throw new IllegalArgumentException("Attribute cannot be recorded: " + this.attributes[i].getName());
+            columns.put(this.attributes[i].getName(), i);
+        }
+        if (getBytesPerResource() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity + " samples of " + this.attributes.length + " attributes do not fit in a buffer");
+        this.operations = Collections.<JmxOperation>unmodifiableList(Arrays.asList(
+            new Query(int.class, new MBeanParameterInfo("count", int.class.getName(), "Maximum number of samples, from the most recent")),
+            new Query(long.class, new MBeanParameterInfo("from", long.class.getName(), "Time in milliseconds of the oldest sample"),
+                new MBeanParameterInfo("to", long.class.getName(), "Time in milliseconds of the most recent sample"))));
+    }
+
+    /**
+     * @return true if the attribute is readable, numeric and describes a metric (see {@link com.mycila.jmx.annotation.JmxMetric})
+     */
+    public static boolean isRecordable(JmxAttribute attribute) {
+        Descriptor desc = attribute.getMetadata().getDescriptor();
+        return attribute.getMetadata().isReadable()
+            && NUMERIC_TYPES.contains(attribute.getMetadata().getType())
+            && desc != null && desc.getFieldValue("metricType") != null;
+    }
+
+    /**
+     * @return The history exported by the operations of the given metadata, or null if there is none
+     */
+    public static AttributeHistory of(JmxMetadata metadata) {
+        try {
+            JmxOperation operation = metadata.getOperation(OPERATION, String.class, int.class);
+            return operation instanceof Query ? ((Query) operation).getHistory() : null;
+        } catch (OperationNotFoundException e) {
+            return null;
+        }
+    }
+
+    public Collection<JmxOperation> getOperations() {
+        return operations;
+    }
+
+    public List<String> getAttributes() {
+        List<String> names = new ArrayList<String>(attributes.length);
+        for (JmxAttribute attribute : attributes)
+            names.add(attribute.getName());
+        return names;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The size of the ring buffer of a managed resource: a timestamp and a value per attribute for each sample
+     */
+    public long getBytesPerResource() {
+        return 8L * capacity * (1 + attributes.length);
+    }
+
+    /**
+     * Allocate the ring buffer of a managed resource
+     *
+     * @return false if the managed resource already had one
+     */
+    boolean allocate(Object managedResource) {
+        return rings.get(managedResource) == null
+            && rings.putIfAbsent(managedResource, new Ring(ByteBuffer.allocateDirect((int) getBytesPerResource()).order(ByteOrder.nativeOrder()))) == null;
+    }
+
+    /**
+     * Release the ring buffer of a managed resource
+     *
+     * @return false if the managed resource had none
+     */
+    boolean release(Object managedResource) {
+        return rings.remove(managedResource) != null;
+    }
+
+    /**
+     * Read the attributes of a managed resource having a ring buffer into a new sample.
+     * Values which cannot be read are recorded as NaN.
+     */
+    void record(Object managedResource, long timestamp) {
+        Ring ring = rings.get(managedResource);
+        if (ring == null)
+            return;
+        synchronized (ring) {
+            int slot = (int) (ring.count % capacity);
+            ring.buffer.putLong(slot << 3, timestamp);
+            for (int column = 0; column < attributes.length; column++)
+                ring.buffer.putDouble(offset(column, slot), read(attributes[column], managedResource));
+            ring.count++;
+        }
+    }
+
+    /**
+     * @return The last samples of an attribute of a managed resource, from the oldest to the most recent
+     */
+    CompositeData last(Object managedResource, String attribute, int count) {
+        int column = column(attribute);
+        Ring ring = rings.get(managedResource);
+        if (ring == null || count <= 0)
+            return samples(attribute, new long[0], new double[0]);
+        synchronized (ring) {
+            int n = (int) Math.min(count, Math.min(ring.count, capacity));
+            long[] timestamps = new long[n];
+            double[] values = new double[n];
+            for (int i = 0; i < n; i++) {
+                int slot = (int) ((ring.count - n + i) % capacity);
+                timestamps[i] = ring.buffer.getLong(slot << 3);
+                values[i] = ring.buffer.getDouble(offset(column, slot));
+            }
+            return samples(attribute, timestamps, values);
+        }
+    }
+
+    /**
+     * @return The samples of an attribute of a managed resource taken between two times, from the oldest to the most recent
+     */
+    CompositeData between(Object managedResource, String attribute, long from, long to) {
+        int column = column(attribute);
+        Ring ring = rings.get(managedResource);
+        if (ring == null)
+            return samples(attribute, new long[0], new double[0]);
+        synchronized (ring) {
+            int available = (int) Math.min(ring.count, capacity);
+            long[] timestamps = new long[available];
+            double[] values = new double[available];
+            int n = 0;
+            for (int i = 0; i < available; i++) {
+                int slot = (int) ((ring.count - available + i) % capacity);
+                long timestamp = ring.buffer.getLong(slot << 3);
+                if (timestamp >= from && timestamp <= to) {
+                    timestamps[n] = timestamp;
+                    values[n++] = ring.buffer.getDouble(offset(column, slot));
+                }
+            }
+            return samples(attribute, Arrays.copyOf(timestamps, n), Arrays.copyOf(values, n));
+        }
+    }
+
+    private int offset(int column, int slot) {
+        return (capacity * (column + 1) + slot) << 3;
+    }
+
+    private int column(String attribute) {
+        Integer column = columns.get(attribute);
+        if (column == null)
+            throw new IllegalArgumentException("Attribute not recorded: " + attribute);
+        return column;
+    }
+
+    private static double read(JmxAttribute attribute, Object managedResource) {
+        try {
+            Object value = attribute.get(managedResource);
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        } catch (ReflectionException e) {
+            return Double.NaN;
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static CompositeData samples(String attribute, long[] timestamps, double[] values) {
+        try {
+            return new CompositeDataSupport(SAMPLES, new String[]{"attribute", "timestamps", "values"}, new Object[]{attribute, timestamps, values});
+        } catch (OpenDataException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * The samples of a managed resource: the timestamps of the samples, then the values of each attribute
+     */
+    private static final class Ring {
+        final ByteBuffer buffer;
+        long count;
+
+        Ring(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * The operations querying the last samples or the samples taken between two times
+     */
+    private final class Query implements JmxOperation {
+        private final Signature signature;
+        private final ModelMBeanOperationInfo operationInfo;
+
+        Query(Class<?> type, MBeanParameterInfo... parameters) {
+            this.signature = type == int.class ?
+                new Signature(OPERATION, String.class, int.class) :
+                new Signature(OPERATION, String.class, long.class, long.class);
+            MBeanParameterInfo[] params = new MBeanParameterInfo[parameters.length + 1];
+            params[0] = new MBeanParameterInfo("attribute", String.class.getName(), "Name of the attribute, one of " + getAttributes());
+            System.arraycopy(parameters, 0, params, 1, parameters.length);
+            this.operationInfo = new ModelMBeanOperationInfo(
+                OPERATION,
+                type == int.class ? "Last samples of an attribute" : "Samples of an attribute taken between two times",
+                params,
+                CompositeData.class.getName(),
+                MBeanOperationInfo.INFO);
+        }
+
+        AttributeHistory getHistory() {
+            return AttributeHistory.this;
+        }
+
+        @Override
+        public Signature getSignature() {
+            return signature;
+        }
+
+        @Override
+        public ModelMBeanOperationInfo getMetadata() {
+            return operationInfo;
+        }
+
+        @Override
+        public Object invoke(Object managedResource, Object... params) throws ReflectionException {
+            String attribute = (String) params[0];
+            return params.length == 2 ?
+                last(managedResource, attribute, (Integer) params[1]) :
+                between(managedResource, attribute, (Long) params[1], (Long) params[2]);
+        }
+
+        @Override
+        public String toString() {
+            return signature.toString();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the {@link AttributeHistory} of many MBeans from a single task, scheduled when the first
+ * MBean is added. The ring buffers of the MBeans are allocated when they are added, within a maximum
+ * amount of memory: an MBean which would exceed it is not recorded. MBeans are weakly referenced: the
+ * memory of an MBean is released when it is removed, or once it has been garbage collected.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class AttributeRecorder {
+
+    private final Map<DefaultDynamicMBean, AttributeHistory> mBeans = new MapMaker().weakKeys().makeMap();
+    private final ScheduledExecutorService scheduler;
+    private final long periodNanos;
+    private final long maxBytes;
+    private long allocatedBytes;
+    private long addedBytes;
+    private volatile ScheduledFuture<?> task;
+
+    public AttributeRecorder(ScheduledExecutorService scheduler) {
+        this(scheduler, 1, TimeUnit.SECONDS, 64 * 1024 * 1024);
+    }
+
+    /**
+     * @param scheduler Scheduler of the recording task, not owned by the recorder
+     * @param period    Time between two samples of the attributes
+     * @param maxBytes  Maximum memory of the ring buffers of all the MBeans
+     */
+    public AttributeRecorder(ScheduledExecutorService scheduler, long period, TimeUnit unit, long maxBytes) {
+        if (scheduler == null) throw new NullPointerException("Scheduler cannot be null");
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period: " + period);
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("Invalid maximum memory: " + maxBytes);
+        this.scheduler = scheduler;
+        this.periodNanos = unit.toNanos(period);
+        this.maxBytes = maxBytes;
+    }
+
+    public long getPeriod(TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return The memory of the ring buffers of the MBeans recorded, including the ones garbage collected since the last record
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Record the attribute history of an MBean, if it has one
+     *
+     * @return false if the MBean has no {@link AttributeHistory}, or if its ring buffer would exceed the maximum memory
+     */
+    public boolean add(DefaultDynamicMBean mBean) {
+        AttributeHistory history = AttributeHistory.of(mBean.getJmxMetadata());
+        if (history == null)
+            return false;
+        long bytes = history.getBytesPerResource();
+        synchronized (this) {
+            if (mBeans.containsKey(mBean))
+                return true;
+            if (allocatedBytes + bytes > maxBytes || !history.allocate(mBean.getManagedResource()))
+                return false;
+            allocatedBytes += bytes;
+            addedBytes += bytes;
+            mBeans.put(mBean, history);
+        }
+        if (task == null)
+            start();
+        return true;
+    }
+
+    public synchronized void remove(DefaultDynamicMBean mBean) {
+        AttributeHistory history = mBeans.remove(mBean);
+        if (history != null && history.release(mBean.getManagedResource()))
+            allocatedBytes -= history.getBytesPerResource();
+    }
+
+    public int size() {
+        return mBeans.size();
+    }
+
+    /**
+     * Take a sample of all the attributes now, and account for the memory of the MBeans garbage collected
+     */
+    public void record() {
+        synchronized (this) {
+            addedBytes = 0;
+        }
+        long now = System.currentTimeMillis();
+        long liveBytes = 0;
+        for (Map.Entry<DefaultDynamicMBean, AttributeHistory> entry : mBeans.entrySet()) {
+            try {
+                entry.getValue().record(entry.getKey().getManagedResource(), now);
+            } catch (RuntimeException ignored) {
+                // a failing MBean must not stop the recording of the others
+            }
+            liveBytes += entry.getValue().getBytesPerResource();
+        }
+        synchronized (this) {
+            // MBeans added during the pass may be counted twice, which only delays their memory to be available
+            allocatedBytes = Math.min(allocatedBytes, liveBytes + addedBytes);
+        }
+    }
+
+    /**
+     * Cancel the recording task, which is scheduled again when an MBean is added
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (task != null)
+            return;
+        try {
+            task = scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    record();
+                }
+            }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // the scheduler has been shut down: attributes are only recorded by record()
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the {@link ThresholdAttribute}s of many MBeans from a single task, scheduled when the first
+ * MBean is added, instead of one monitor per attribute. An MBean is only sampled while it has notification
+ * listeners. The MBeans given to {@link DefaultDynamicMBean#setAttributeSampler(AttributeSampler)} are added
+ * once registered and removed once unregistered; they are weakly referenced.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class AttributeSampler {
+
+    private final Set<DefaultDynamicMBean> mBeans = Collections.newSetFromMap(new MapMaker().weakKeys().<DefaultDynamicMBean, Boolean>makeMap());
+    private final ScheduledExecutorService scheduler;
+    private final long periodNanos;
+    private volatile ScheduledFuture<?> task;
+
+    public AttributeSampler(ScheduledExecutorService scheduler) {
+        this(scheduler, 5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param scheduler Scheduler of the sampling task, not owned by the sampler
+     * @param period    Time between two samples of the attributes
+     */
+    public AttributeSampler(ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+        if (scheduler == null) throw new NullPointerException("Scheduler cannot be null");
+        if (period <= 0)
+            throw new IllegalArgumentException("Invalid period: " + period);
+        this.scheduler = scheduler;
+        this.periodNanos = unit.toNanos(period);
+    }
+
+    public long getPeriod(TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void add(DefaultDynamicMBean mBean) {
+        mBeans.add(mBean);
+        if (task == null)
+            start();
+    }
+
+    public void remove(DefaultDynamicMBean mBean) {
+        mBeans.remove(mBean);
+    }
+
+    public int size() {
+        return mBeans.size();
+    }
+
+    /**
+     * Sample all the attributes now
+     */
+    public void sample() {
+        for (DefaultDynamicMBean mBean : mBeans) {
+            try {
+                mBean.sampleThresholds();
+            } catch (RuntimeException ignored) {
+                // a failing MBean must not stop the sampling of the others
+            }
+        }
+    }
+
+    /**
+     * Cancel the sampling task, which is scheduled again when an MBean is added
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (task != null)
+            return;
+        try {
+            task = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    sample();
+                }
+            }, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // the scheduler has been shut down: attributes are only sampled by sample()
+        }
+    }
+}
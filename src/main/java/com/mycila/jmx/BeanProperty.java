@@ -19,6 +19,13 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
@@ -72,6 +79,13 @@ public final class BeanProperty implements AnnotatedElement {
         writeMethod = null;
     }
 
+    /**
+     * @return a new property with the same accessors, which can be cleared independently
+     */
+    public BeanProperty copy() {
+        return new BeanProperty(name, readMethod, writeMethod);
+    }
+
     public Object get(Object o) throws Throwable {
         if (!isReadable())
             throw new IllegalStateException("Property not readable: " + this);
@@ -155,6 +169,63 @@ public final class BeanProperty implements AnnotatedElement {
         return result;
     }
 
+    /**
+     * Find all the properties of a class with one walk of its hierarchy: same result as calling
+     * {@link #findProperty(Class, Method)} for each method of {@link ReflectionUtils#getDeclaredMethods(Class)},
+     * without searching the class hierarchy again for each accessor.
+     */
+    static Collection<BeanProperty> findProperties(Class<?> clazz) {
+        // accessor candidates by name, in the order ReflectionUtils.findMethod() would find them
+        Map<String, List<Method>> accessors = new HashMap<String, List<Method>>();
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            for (Method method : c.isInterface() ? c.getMethods() : c.getDeclaredMethods()) {
+                if (method.getParameterTypes().length <= 1) {
+                    List<Method> named = accessors.get(method.getName());
+                    if (named == null)
+                        accessors.put(method.getName(), named = new ArrayList<Method>(1));
+                    named.add(method);
+                }
+            }
+        }
+        Set<BeanProperty> properties = new LinkedHashSet<BeanProperty>();
+        for (Method method : ReflectionUtils.getDeclaredMethods(clazz)) {
+            String property;
+            Class<?> type;
+            if (ReflectionUtils.isIsMethod(method)) {
+                property = StringUtils.uncapitalize(method.getName().substring(2));
+                type = method.getReturnType();
+            } else if (ReflectionUtils.isGetMethod(method)) {
+                property = StringUtils.uncapitalize(method.getName().substring(3));
+                type = method.getReturnType();
+            } else if (ReflectionUtils.isSetter(method)) {
+                property = StringUtils.uncapitalize(method.getName().substring(3));
+                type = method.getParameterTypes()[0];
+            } else
+                continue;
+            String name = StringUtils.capitalize(property);
+            Method is = findAccessor(accessors.get("is" + name), type, null);
+            Method get = findAccessor(accessors.get("get" + name), type, null);
+            Method setter = findAccessor(accessors.get("set" + name), Void.TYPE, type);
+            Method getter = get != null ? get : is;
+            if (setter == null && getter == null
+                || setter != null && getter != null && !setter.getParameterTypes()[0].equals(getter.getReturnType()))
+                continue;
+            properties.add(new BeanProperty(property, getter, setter));
+        }
+        return properties;
+    }
+
+    private static Method findAccessor(List<Method> methods, Class<?> returnType, Class<?> paramType) {
+        if (methods != null)
+            for (Method method : methods) {
+                Class<?>[] params = method.getParameterTypes();
+                if (method.getReturnType().equals(returnType)
+                    && (paramType == null ? params.length == 0 : params.length == 1 && params[0].equals(paramType)))
+                    return method;
+            }
+        return null;
+    }
+
     public static BeanProperty findProperty(Class<?> clazz, Method method) {
         if (ReflectionUtils.isIsMethod(method))
             return findProperty(clazz, StringUtils.uncapitalize(method.getName().substring(2)), method.getReturnType());
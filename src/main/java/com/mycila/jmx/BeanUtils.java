@@ -15,39 +15,37 @@
  */
 package com.mycila.jmx;
 
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
-import java.lang.reflect.Method;
+import com.google.common.cache.CacheLoader;
+
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 final class BeanUtils {
 
-    private static final Map<Class<?>, Reference<Collection<BeanProperty>>> cache = new WeakHashMap<Class<?>, Reference<Collection<BeanProperty>>>();
+    private static final IntrospectionCache<Collection<BeanProperty>> cache = IntrospectionCache.shared("beanProperties", new CacheLoader<Class<?>, Collection<BeanProperty>>() {
+        @Override
+        public Collection<BeanProperty> load(Class<?> clazz) {
+            return Collections.unmodifiableCollection(BeanProperty.findProperties(clazz));
+        }
+    });
 
     private BeanUtils() {
     }
 
+    /**
+     * @return copies of the cached properties of a class: assemblers are allowed to
+     *         modify them (i.e. clear an accessor) without affecting other threads
+     */
     public static Collection<BeanProperty> getProperties(Class<?> clazz) {
-        Reference<Collection<BeanProperty>> ref = cache.get(clazz);
-        if (ref != null) {
-            Collection<BeanProperty> list = ref.get();
-            if (list != null)
-                return list;
-        }
-        Set<BeanProperty> properties = new LinkedHashSet<BeanProperty>();
-        for (Method method : ReflectionUtils.getDeclaredMethods(clazz)) {
-            BeanProperty prop = BeanProperty.findProperty(clazz, method);
-            if (prop != null)
-                properties.add(prop);
-        }
-        cache.put(clazz, new WeakReference<Collection<BeanProperty>>(properties));
+        Collection<BeanProperty> cached = cache.get(clazz);
+        List<BeanProperty> properties = new ArrayList<BeanProperty>(cached.size());
+        for (BeanProperty property : cached)
+            properties.add(property.copy());
         return properties;
     }
 
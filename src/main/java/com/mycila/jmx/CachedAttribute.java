@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ReflectionException;
+import javax.management.modelmbean.ModelMBeanAttributeInfo;
+import java.lang.ref.SoftReference;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the value of an attribute for a given time, per managed resource.
+ * Concurrent reads of an expired value trigger only one read of the underlying attribute.
+ * <p>
+ * Cached values are held softly: a value referencing its managed resource does not prevent the
+ * resource from being collected once memory is needed, and a cleared value is read again.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CachedAttribute implements JmxAttribute {
+
+    private static final Object NULL = new Object();
+
+    private final JmxAttribute delegate;
+    private final long ttlNanos;
+    private final ConcurrentMap<Object, Entry> entries = new MapMaker().weakKeys().makeMap();
+    private final JmxAttribute hits;
+    private final JmxAttribute misses;
+
+    public CachedAttribute(JmxAttribute delegate, long ttl, TimeUnit unit) {
+        if (ttl < 0)
+            throw new IllegalArgumentException("Invalid TTL for attribute " + delegate + ": " + ttl);
+        this.delegate = delegate;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.hits = new CounterAttribute(delegate.getName() + "CacheHits", "Number of reads of " + delegate.getName() + " served from the cache") {
+            @Override
+            long count(Entry entry) {
+                return entry.hits.get();
+            }
+        };
+        this.misses = new CounterAttribute(delegate.getName() + "CacheMisses", "Number of reads of " + delegate.getName() + " which had to get the value") {
+            @Override
+            long count(Entry entry) {
+                return entry.misses.get();
+            }
+        };
+    }
+
+    public JmxAttribute getDelegate() {
+        return delegate;
+    }
+
+    public long getTtl(TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return A read-only attribute counting the reads served from the cache
+     */
+    public JmxAttribute getHitsAttribute() {
+        return hits;
+    }
+
+    /**
+     * @return A read-only attribute counting the reads of the underlying attribute
+     */
+    public JmxAttribute getMissesAttribute() {
+        return misses;
+    }
+
+    /**
+     * Discard the cached value of this attribute for the given managed resource
+     */
+    public void invalidate(Object managedResource) {
+        Entry entry = entries.get(managedResource);
+        if (entry != null)
+            entry.expiresAt = 0;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public MBeanAttributeInfo getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public Object get(Object managedResource) throws ReflectionException {
+        Entry entry = entry(managedResource);
+        Object value = entry.get(System.nanoTime());
+        if (value != null) {
+            entry.hits.incrementAndGet();
+            return value == NULL ? null : value;
+        }
+        synchronized (entry) {
+            value = entry.get(System.nanoTime());
+            if (value != null) {
+                entry.hits.incrementAndGet();
+                return value == NULL ? null : value;
+            }
+            entry.misses.incrementAndGet();
+            value = delegate.get(managedResource);
+            entry.value = new SoftReference<Object>(value == null ? NULL : value);
+            entry.expiresAt = System.nanoTime() + ttlNanos;
+            return value;
+        }
+    }
+
+    @Override
+    public void set(Object managedResource, Object value) throws InvalidAttributeValueException, ReflectionException {
+        delegate.set(managedResource, value);
+        invalidate(managedResource);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    private Entry entry(Object managedResource) {
+        Entry entry = entries.get(managedResource);
+        if (entry == null) {
+            Entry existing = entries.putIfAbsent(managedResource, entry = new Entry());
+            if (existing != null)
+                entry = existing;
+        }
+        return entry;
+    }
+
+    private static final class Entry {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        volatile SoftReference<Object> value;
+        // 0 means not loaded. Written after value, read before it.
+        volatile long expiresAt;
+
+        /**
+         * @return The cached value, {@link #NULL} for a cached null, or null if expired or cleared
+         */
+        Object get(long now) {
+            long expiresAt = this.expiresAt;
+            return expiresAt != 0 && now - expiresAt < 0 ? value.get() : null;
+        }
+    }
+
+    private abstract class CounterAttribute implements JmxAttribute {
+        private final ModelMBeanAttributeInfo attributeInfo;
+
+        CounterAttribute(String name, String description) {
+            this.attributeInfo = new ModelMBeanAttributeInfo(name, long.class.getName(), description, true, false, false);
+        }
+
+        abstract long count(Entry entry);
+
+        @Override
+        public String getName() {
+            return getMetadata().getName();
+        }
+
+        @Override
+        public ModelMBeanAttributeInfo getMetadata() {
+            return attributeInfo;
+        }
+
+        @Override
+        public Object get(Object managedResource) throws ReflectionException {
+            Entry entry = entries.get(managedResource);
+            return entry == null ? 0L : count(entry);
+        }
+
+        @Override
+        public void set(Object managedResource, Object value) throws InvalidAttributeValueException, ReflectionException {
+            throw new ReflectionException(new IllegalAccessException("Attribute not writable: " + this), "Attribute not writable: " + this);
+        }
+
+        @Override
+        public String toString() {
+            return getName();
+        }
+    }
+}
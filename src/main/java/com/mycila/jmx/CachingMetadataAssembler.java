@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the {@link JmxMetadata} built by another assembler for each managed class,
+ * so that registering many instances of the same class only introspects it once.
+ * <p>Classes are weakly referenced and the cached metadata softly referenced: an entry lives
+ * as long as an exported MBean uses it or until the memory is needed. Since the metadata references
+ * its class, a class loader can only be collected once its entries are cleared, under memory pressure.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class CachingMetadataAssembler implements JmxMetadataAssembler {
+
+    private final JmxMetadataAssembler delegate;
+    private final IntrospectionCache<JmxMetadata> cache;
+
+    public CachingMetadataAssembler(final JmxMetadataAssembler delegate) {
+        if (delegate == null) throw new NullPointerException("Assembler cannot be null");
+        this.delegate = delegate;
+        this.cache = IntrospectionCache.create("metadata", new CacheLoader<Class<?>, JmxMetadata>() {
+            @Override
+            public JmxMetadata load(Class<?> clazz) {
+                return delegate.getMetadata(clazz);
+            }
+        });
+    }
+
+    @Override
+    public JmxMetadata getMetadata(Class<?> clazz) {
+        return cache.get(clazz);
+    }
+
+    public JmxMetadataAssembler getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts of this cache. Entries collected
+     *         by the garbage collector are reported as evictions.
+     */
+    public CacheStats getStats() {
+        return cache.getStats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Forget the metadata of a class, i.e. after having changed the configuration
+     * of the delegate assembler.
+     */
+    public void invalidate(Class<?> clazz) {
+        cache.invalidate(clazz);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+}
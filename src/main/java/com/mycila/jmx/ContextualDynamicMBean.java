@@ -20,14 +20,23 @@ import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.DynamicMBean;
 import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
 import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
-public final class ContextualDynamicMBean implements DynamicMBean {
+public final class ContextualDynamicMBean implements DynamicMBean, NotificationEmitter, MBeanRegistration {
 
     private final DynamicMBean delegate;
     private final ClassLoader classLoader;
@@ -100,8 +109,58 @@ public final class ContextualDynamicMBean implements DynamicMBean {
         }
     }
 
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        getEmitter().addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        getEmitter().removeNotificationListener(listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        getEmitter().removeNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return getMBeanInfo().getNotifications();
+    }
+
+    private NotificationEmitter getEmitter() {
+        DynamicMBean mBean = getDelegate();
+        if (!(mBean instanceof NotificationEmitter))
+            throw new RuntimeOperationsException(new IllegalArgumentException(mBean.getClass().getName() + " does not emit notifications"), "Exception occurred trying to manage the listeners of a " + getClass().getSimpleName());
+        return (NotificationEmitter) mBean;
+    }
+
     @Override
     public MBeanInfo getMBeanInfo() {
         return getDelegate().getMBeanInfo();
     }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        return getDelegate() instanceof MBeanRegistration ? ((MBeanRegistration) getDelegate()).preRegister(server, name) : name;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+        if (getDelegate() instanceof MBeanRegistration)
+            ((MBeanRegistration) getDelegate()).postRegister(registrationDone);
+    }
+
+    @Override
+    public void preDeregister() throws Exception {
+        if (getDelegate() instanceof MBeanRegistration)
+            ((MBeanRegistration) getDelegate()).preDeregister();
+    }
+
+    @Override
+    public void postDeregister() {
+        if (getDelegate() instanceof MBeanRegistration)
+            ((MBeanRegistration) getDelegate()).postDeregister();
+    }
 }
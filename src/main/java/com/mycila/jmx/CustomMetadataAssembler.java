@@ -28,6 +28,7 @@ public final class CustomMetadataAssembler extends ReflectionMetadataAssemblerSk
     private final Collection<Field> fields = new HashSet<Field>();
     private final Collection<Method> methods = new HashSet<Method>();
     private final Collection<BeanProperty> properties = new HashSet<BeanProperty>();
+    private final Collection<Method> accessors = new HashSet<Method>();
 
     @Override
     public boolean canInclude(Class<?> managedClass, Field field) {
@@ -36,12 +37,7 @@ public final class CustomMetadataAssembler extends ReflectionMetadataAssemblerSk
 
     @Override
     public boolean canInclude(Class<?> managedClass, Method method) {
-        for (BeanProperty property : properties) {
-            if (method.equals(property.getReadMethod())
-                || method.equals(property.getWriteMethod()))
-                return true;
-        }
-        return methods.contains(method);
+        return accessors.contains(method) || methods.contains(method);
     }
 
     @Override
@@ -86,6 +82,10 @@ public final class CustomMetadataAssembler extends ReflectionMetadataAssemblerSk
     public CustomMetadataAssembler addProperty(BeanProperty property) {
         if (property == null) throw new NullPointerException("Property cannot be null");
         properties.add(property);
+        if (property.isReadable())
+            accessors.add(property.getReadMethod());
+        if (property.isWritable())
+            accessors.add(property.getWriteMethod());
         return this;
     }
 
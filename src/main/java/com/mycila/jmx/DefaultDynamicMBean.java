@@ -15,27 +15,59 @@
  */
 package com.mycila.jmx;
 
+import com.mycila.jmx.metric.MeterTicker;
+
 import javax.management.Attribute;
+import javax.management.AttributeChangeNotification;
 import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.DynamicMBean;
 import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanException;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.RuntimeOperationsException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
+ * Binds a managed resource to the metadata of its class. Notification listeners are added to
+ * the {@link NotificationPublisher} fields of the managed resource, and receive the attribute
+ * changes of the {@link ThresholdAttribute}s sampled by an {@link AttributeSampler}. Since generic clients
+ * subscribe to all the MBeans, an MBean without any notification accepts the listeners and never notifies them.
+ *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
-public final class DefaultDynamicMBean implements DynamicMBean {
+public final class DefaultDynamicMBean implements DynamicMBean, NotificationEmitter, MBeanRegistration {
 
     private final Object managedResource;
     private final JmxMetadata jmxMetadata;
+    private final IndexedJmxMetadata indexedJmxMetadata;
+    private volatile ObjectName objectName;
+    private volatile AttributeChanges attributeChanges;
+    private volatile AttributeSampler attributeSampler;
+    private volatile AttributeRecorder attributeRecorder;
+    private volatile MeterTicker meterTicker;
+    private volatile NotificationPublisher silentPublisher;
+    // statistics of the monitored operations of the managed resource, by index. Copied on write.
+    private volatile MonitoredOperation.Entry[] statistics = new MonitoredOperation.Entry[0];
 
     public DefaultDynamicMBean(Object managedResource, JmxMetadata jmxMetadata) {
         this.managedResource = managedResource;
         this.jmxMetadata = jmxMetadata;
+        this.indexedJmxMetadata = jmxMetadata instanceof IndexedJmxMetadata ? (IndexedJmxMetadata) jmxMetadata : new Indexed(jmxMetadata);
     }
 
     @Override
@@ -52,20 +84,57 @@ public final class DefaultDynamicMBean implements DynamicMBean {
         // validation from javax.management.modelmbean.RequiredModelMBean
         if (attributes == null)
             throw new RuntimeOperationsException(new IllegalArgumentException("attributeNames must not be null"), "Exception occurred trying to get attributes of a " + getClass().getSimpleName());
-        AttributeList list = new AttributeList();
+        IndexedJmxMetadata metadata = getIndexedJmxMetadata();
+        Object resource = getManagedResource();
+        AttributeList list = new AttributeList(attributes.length);
         for (String attribute : attributes) {
             if (attribute == null)
                 throw new RuntimeOperationsException(new IllegalArgumentException("attributeName must not be null"), "Exception occurred trying to get attribute of a " + getClass().getSimpleName());
+            int slot = metadata.getAttributeSlot(attribute);
+            if (slot == -1)
+                continue;
+            JmxAttribute attr = metadata.getAttribute(slot);
             try {
-                JmxAttribute attr = getJmxMetadata().getAttribute(attribute);
-                list.add(new Attribute(attr.getMetadata().getName(), attr.get(getManagedResource())));
-            } catch (AttributeNotFoundException ignored) {
+                list.add(new Attribute(attr.getMetadata().getName(), attr.get(resource)));
             } catch (ReflectionException ignored) {
             }
         }
         return list;
     }
 
+    /**
+     * Bulk read of attributes without building an {@link AttributeList}. Unknown attributes and attributes
+     * which cannot be read are skipped, as in {@link #getAttributes(String[])}, but without any exception
+     * being thrown for unknown names.
+     *
+     * @param attributes The names of the attributes to read
+     * @param names      Receives the names of the attributes read. Must be at least as long as <code>attributes</code>
+     * @param values     Receives the values of the attributes read. Must be at least as long as <code>attributes</code>
+     * @return The number of attributes read, which is the number of entries filled in <code>names</code> and <code>values</code>
+     */
+    public int getAttributes(String[] attributes, String[] names, Object[] values) {
+        // validation from javax.management.modelmbean.RequiredModelMBean
+        if (attributes == null)
+            throw new RuntimeOperationsException(new IllegalArgumentException("attributeNames must not be null"), "Exception occurred trying to get attributes of a " + getClass().getSimpleName());
+        IndexedJmxMetadata metadata = getIndexedJmxMetadata();
+        Object resource = getManagedResource();
+        int count = 0;
+        for (String attribute : attributes) {
+            if (attribute == null)
+                throw new RuntimeOperationsException(new IllegalArgumentException("attributeName must not be null"), "Exception occurred trying to get attribute of a " + getClass().getSimpleName());
+            int slot = metadata.getAttributeSlot(attribute);
+            if (slot == -1)
+                continue;
+            JmxAttribute attr = metadata.getAttribute(slot);
+            try {
+                values[count] = attr.get(resource);
+                names[count++] = attr.getMetadata().getName();
+            } catch (ReflectionException ignored) {
+            }
+        }
+        return count;
+    }
+
     @Override
     public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
         // validation from javax.management.modelmbean.RequiredModelMBean
@@ -100,21 +169,45 @@ public final class DefaultDynamicMBean implements DynamicMBean {
         if (actionName == null)
             throw new RuntimeOperationsException(new IllegalArgumentException("Method name must not be null"), "An exception occurred while trying to invoke a method on a " + getClass().getSimpleName());
         Object o = getManagedResource();
+        JmxOperation op = getIndexedJmxMetadata().findOperation(actionName, signature);
+        if (op == null)
+            // invoked by method name, or signature not given with Class.getName() (i.e. "java.lang.String[]"): resolve the classes
+            op = resolveOperation(o, actionName, signature);
+        if (op instanceof MonitoredOperation)
+            return ((MonitoredOperation) op).invoke(getStatistics(((MonitoredOperation) op).getStatistics()), o, params);
+        return op.invoke(o, params);
+    }
+
+    private MonitoredOperation.Entry getStatistics(MonitoredOperation.Statistics stats) {
+        MonitoredOperation.Entry[] entries = statistics;
+        int index = stats.getIndex();
+        if (index < entries.length && entries[index] != null)
+            return entries[index];
+        synchronized (this) {
+            entries = statistics;
+            if (index < entries.length && entries[index] != null)
+                return entries[index];
+            entries = Arrays.copyOf(entries, Math.max(entries.length, index + 1));
+            entries[index] = stats.entry(getManagedResource());
+            statistics = entries;
+            return entries[index];
+        }
+    }
+
+    private JmxOperation resolveOperation(Object o, String actionName, String[] signature) throws ReflectionException {
         ClassLoader loader = o.getClass().getClassLoader();
-        Class[] paramTypes = new Class[signature.length];
+        Class[] paramTypes = new Class[signature == null ? 0 : signature.length];
         try {
-            for (int i = 0; i < signature.length; i++)
+            for (int i = 0; i < paramTypes.length; i++)
                 paramTypes[i] = ClassUtils.forName(signature[i], loader);
         } catch (ClassNotFoundException e) {
             throw new ReflectionException(e, "An exception occurred while trying to invoke a method on a " + getClass().getSimpleName());
         }
-        JmxOperation op;
         try {
-            op = getJmxMetadata().getOperation(actionName, paramTypes);
+            return getJmxMetadata().getOperation(actionName, paramTypes);
         } catch (OperationNotFoundException e) {
             throw new RuntimeOperationsException(e, "An exception occurred while trying to find method " + actionName + " on " + getClass().getSimpleName());
         }
-        return op.invoke(o, params);
     }
 
     @Override
@@ -122,12 +215,288 @@ public final class DefaultDynamicMBean implements DynamicMBean {
         return jmxMetadata.getMBeanInfo();
     }
 
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        for (NotificationPublisher publisher : publishers())
+            publisher.addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        boolean found = false;
+        for (NotificationPublisher publisher : publishers()) {
+            try {
+                publisher.removeNotificationListener(listener);
+                found = true;
+            } catch (ListenerNotFoundException ignored) {
+            }
+        }
+        if (!found)
+            throw new ListenerNotFoundException("Listener not registered: " + listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        boolean found = false;
+        for (NotificationPublisher publisher : publishers()) {
+            try {
+                publisher.removeNotificationListener(listener, filter, handback);
+                found = true;
+            } catch (ListenerNotFoundException ignored) {
+            }
+        }
+        if (!found)
+            throw new ListenerNotFoundException("Listener not registered: " + listener);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return getMBeanInfo().getNotifications();
+    }
+
+    /**
+     * @return true if this MBean has attributes to sample for an {@link AttributeSampler}
+     */
+    public boolean hasThresholds() {
+        return getAttributeChanges().samples.length > 0;
+    }
+
+    /**
+     * Read the attributes having thresholds, and notify the listeners of the values crossing a threshold
+     * or changing by more than a delta. Nothing is read while there is no listener.
+     */
+    void sampleThresholds() {
+        AttributeChanges changes = getAttributeChanges();
+        if (changes.publisher == null || !changes.publisher.hasListeners())
+            return;
+        Object resource = getManagedResource();
+        for (ThresholdAttribute.Sample sample : changes.samples) {
+            ThresholdAttribute attribute = sample.getAttribute();
+            Object value;
+            try {
+                value = attribute.get(resource);
+            } catch (ReflectionException ignored) {
+                continue;
+            }
+            if (!(value instanceof Number))
+                continue;
+            String reason;
+            Object previous;
+            synchronized (sample) {
+                previous = sample.getPrevious();
+                reason = sample.update(value);
+            }
+            if (reason != null) {
+                ObjectName name = objectName;
+                changes.publisher.publish(new AttributeChangeNotification(
+                    name == null ? this : name,
+                    changes.publisher.nextSequenceNumber(),
+                    System.currentTimeMillis(),
+                    reason,
+                    attribute.getName(),
+                    attribute.getMetadata().getType(),
+                    previous,
+                    value));
+            }
+        }
+    }
+
+    @Override
+    public ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        this.objectName = name;
+        return name;
+    }
+
+    @Override
+    public void postRegister(Boolean registrationDone) {
+        if (!Boolean.TRUE.equals(registrationDone))
+            return;
+        AttributeSampler sampler = attributeSampler;
+        if (sampler != null)
+            sampler.add(this);
+        AttributeRecorder recorder = attributeRecorder;
+        if (recorder != null)
+            recorder.add(this);
+        MeterTicker ticker = meterTicker;
+        if (ticker != null)
+            Metrics.tickMeters(getManagedResource(), ticker);
+    }
+
+    @Override
+    public void preDeregister() throws Exception {
+    }
+
+    @Override
+    public void postDeregister() {
+        AttributeSampler sampler = attributeSampler;
+        if (sampler != null)
+            sampler.remove(this);
+        AttributeRecorder recorder = attributeRecorder;
+        if (recorder != null)
+            recorder.remove(this);
+        MeterTicker ticker = meterTicker;
+        if (ticker != null)
+            Metrics.untickMeters(getManagedResource(), ticker);
+    }
+
+    /**
+     * Set the sampler of the attributes having thresholds: this MBean is added to it once registered,
+     * and removed once unregistered. Must be set before the registration.
+     */
+    public void setAttributeSampler(AttributeSampler attributeSampler) {
+        this.attributeSampler = attributeSampler;
+    }
+
+    /**
+     * Set the recorder of the {@link AttributeHistory} of this MBean: this MBean is added to it once registered,
+     * and removed once unregistered. Must be set before the registration.
+     */
+    public void setAttributeRecorder(AttributeRecorder attributeRecorder) {
+        this.attributeRecorder = attributeRecorder;
+    }
+
+    /**
+     * Set the ticker of the {@link com.mycila.jmx.metric.Meter} fields of the managed resource: they are added
+     * to it once registered, and removed once unregistered. Must be set before the registration.
+     */
+    public void setMeterTicker(MeterTicker meterTicker) {
+        this.meterTicker = meterTicker;
+    }
+
     public JmxMetadata getJmxMetadata() {
         return jmxMetadata;
     }
 
+    /**
+     * @return the metadata given to this MBean, or an adapter if it is not an {@link IndexedJmxMetadata}
+     */
+    public IndexedJmxMetadata getIndexedJmxMetadata() {
+        return indexedJmxMetadata;
+    }
+
     public Object getManagedResource() {
         return managedResource;
     }
 
+    private List<NotificationPublisher> publishers() {
+        List<NotificationPublisher> publishers = Notifications.publishers(getManagedResource());
+        if (hasThresholds())
+            publishers.add(getAttributeChanges().publisher);
+        if (publishers.isEmpty())
+            publishers.add(getSilentPublisher());
+        return publishers;
+    }
+
+    /**
+     * @return The publisher holding the listeners of an MBean which has no notification, which never publishes
+     */
+    private NotificationPublisher getSilentPublisher() {
+        NotificationPublisher publisher = silentPublisher;
+        if (publisher == null) {
+            synchronized (this) {
+                publisher = silentPublisher;
+                if (publisher == null)
+                    silentPublisher = publisher = new NotificationPublisher();
+            }
+        }
+        return publisher;
+    }
+
+    private AttributeChanges getAttributeChanges() {
+        AttributeChanges changes = attributeChanges;
+        if (changes == null) {
+            synchronized (this) {
+                changes = attributeChanges;
+                if (changes == null)
+                    attributeChanges = changes = AttributeChanges.of(getIndexedJmxMetadata());
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * The state of the sampled attributes and the listeners of their changes
+     */
+    private static final class AttributeChanges {
+        static final AttributeChanges NONE = new AttributeChanges(null, new ThresholdAttribute.Sample[0]);
+
+        final NotificationPublisher publisher;
+        final ThresholdAttribute.Sample[] samples;
+
+        AttributeChanges(NotificationPublisher publisher, ThresholdAttribute.Sample[] samples) {
+            this.publisher = publisher;
+            this.samples = samples;
+        }
+
+        static AttributeChanges of(IndexedJmxMetadata metadata) {
+            List<ThresholdAttribute.Sample> samples = new ArrayList<ThresholdAttribute.Sample>(0);
+            for (int i = 0; i < metadata.getAttributeCount(); i++)
+                if (metadata.getAttribute(i) instanceof ThresholdAttribute)
+                    samples.add(((ThresholdAttribute) metadata.getAttribute(i)).new Sample());
+            return samples.isEmpty() ?
+                NONE :
+                new AttributeChanges(new NotificationPublisher(), samples.toArray(new ThresholdAttribute.Sample[samples.size()]));
+        }
+    }
+
+    /**
+     * Slots of a {@link JmxMetadata} which is not an {@link IndexedJmxMetadata}, following its {@link MBeanInfo}.
+     * Operations are always found by resolving the classes of their signature.
+     */
+    private static final class Indexed implements IndexedJmxMetadata {
+        private final JmxMetadata delegate;
+        private final Map<String, Integer> slots = new HashMap<String, Integer>();
+        private final JmxAttribute[] attributes;
+
+        Indexed(JmxMetadata delegate) {
+            this.delegate = delegate;
+            MBeanAttributeInfo[] infos = delegate.getMBeanInfo().getAttributes();
+            this.attributes = new JmxAttribute[infos.length];
+            for (int i = 0; i < infos.length; i++) {
+                try {
+                    attributes[i] = delegate.getAttribute(infos[i].getName());
+                } catch (AttributeNotFoundException e) {
+                    throw new IllegalArgumentException("Attribute " + infos[i].getName() + " of the MBeanInfo not found in " + delegate, e);
+                }
+                slots.put(infos[i].getName(), i);
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return delegate.getMBeanInfo();
+        }
+
+        @Override
+        public JmxAttribute getAttribute(String attribute) throws AttributeNotFoundException {
+            return delegate.getAttribute(attribute);
+        }
+
+        @Override
+        public JmxOperation getOperation(String operation, Class<?>... paramTypes) throws OperationNotFoundException {
+            return delegate.getOperation(operation, paramTypes);
+        }
+
+        @Override
+        public int getAttributeSlot(String attribute) {
+            Integer slot = slots.get(attribute);
+            return slot == null ? -1 : slot;
+        }
+
+        @Override
+        public JmxAttribute getAttribute(int slot) {
+            return attributes[slot];
+        }
+
+        @Override
+        public int getAttributeCount() {
+            return attributes.length;
+        }
+
+        @Override
+        public JmxOperation findOperation(String operation, String[] signature) {
+            return null;
+        }
+    }
+
 }
\ No newline at end of file
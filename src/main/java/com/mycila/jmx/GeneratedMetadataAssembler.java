@@ -0,0 +1,174 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Base class of the assemblers generated at build time for the classes annotated by
+ * {@link com.mycila.jmx.annotation.JmxBean} (see {@link com.mycila.jmx.processor.JmxAssemblerProcessor}),
+ * named after the managed class with the suffix {@value #SUFFIX} and found by {@link Assemblers#get(Class)}.
+ * <p/>
+ * The metadata is the one of the {@link AnnotationMetadataAssembler}, but the exported members are listed
+ * at build time instead of being discovered by walking the class hierarchy and reading the annotations of each
+ * member, and the generated code reads and writes the fields and calls the methods directly, by their index,
+ * instead of creating method handles. The members which are not accessible from the generated class (i.e.
+ * private ones) are accessed like the {@link AnnotationMetadataAssembler} does. Subclasses of the managed class
+ * are assembled like the {@link AnnotationMetadataAssembler} does.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public abstract class GeneratedMetadataAssembler extends AnnotationMetadataAssembler {
+
+    public static final String SUFFIX = "$JmxAssembler";
+
+    private final Class<?> managedClass;
+
+    protected GeneratedMetadataAssembler(Class<?> managedClass) {
+        this.managedClass = managedClass;
+    }
+
+    public final Class<?> getManagedClass() {
+        return managedClass;
+    }
+
+    /**
+     * @return The fields annotated by {@link com.mycila.jmx.annotation.JmxField} of the managed class and its superclasses
+     */
+    protected abstract Collection<Field> getFields() throws NoSuchFieldException;
+
+    /**
+     * @return The methods annotated by {@link com.mycila.jmx.annotation.JmxMethod} of the managed class and its superclasses,
+     *         or null if they cannot be listed by the generated code
+     */
+    protected abstract Collection<Method> getMethods() throws NoSuchMethodException;
+
+    /**
+     * @return The index of a field accessed by the generated code, or -1
+     */
+    protected abstract int getFieldIndex(Field field);
+
+    protected abstract Object readField(int index, Object managedResource);
+
+    /**
+     * @return false if the field cannot be written by the generated code (i.e. a final field)
+     */
+    protected abstract boolean writeField(int index, Object managedResource, Object value);
+
+    /**
+     * @return The index of a method called by the generated code, or -1
+     */
+    protected abstract int getMethodIndex(Method method);
+
+    protected abstract Object invokeMethod(int index, Object managedResource, Object[] params) throws Throwable;
+
+    @Override
+    protected Collection<Field> getAttributes(Class<?> managedClass) {
+        if (managedClass != this.managedClass)
+            return super.getAttributes(managedClass);
+        try {
+            return getFields();
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Outdated " + getClass().getName() + ", missing field: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected Collection<Method> getMethodOperations(Class<?> managedClass) {
+        if (managedClass != this.managedClass)
+            return super.getMethodOperations(managedClass);
+        Collection<Method> methods;
+        try {
+            methods = getMethods();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Outdated " + getClass().getName() + ", missing method: " + e.getMessage(), e);
+        }
+        return methods == null ? super.getMethodOperations(managedClass) : methods;
+    }
+
+    @Override
+    protected AttributeAccessor getAttributeAccessor(Class<?> managedClass, final Field field) {
+        final int index = managedClass == this.managedClass ? getFieldIndex(field) : -1;
+        if (index < 0)
+            return super.getAttributeAccessor(managedClass, field);
+        return new AttributeAccessor() {
+            @Override
+            public Object get(Object managedResource) throws Throwable {
+                return readField(index, managedResource);
+            }
+
+            @Override
+            public void set(Object managedResource, Object value) throws Throwable {
+                if (!writeField(index, managedResource, value))
+                    // final fields can only be written by reflection
+                    Accessors.reflective(field).set(managedResource, value);
+            }
+
+            @Override
+            public String toString() {
+                return field.toString();
+            }
+        };
+    }
+
+    @Override
+    protected AttributeAccessor getPropertyAccessor(Class<?> managedClass, final BeanProperty property) {
+        final int getter = managedClass == this.managedClass && property.isReadable() ? getMethodIndex(property.getReadMethod()) : -1;
+        final int setter = managedClass == this.managedClass && property.isWritable() ? getMethodIndex(property.getWriteMethod()) : -1;
+        if (property.isReadable() && getter < 0 || property.isWritable() && setter < 0)
+            return super.getPropertyAccessor(managedClass, property);
+        return new AttributeAccessor() {
+            @Override
+            public Object get(Object managedResource) throws Throwable {
+                if (getter < 0)
+                    throw new IllegalStateException("Property not readable: " + property);
+                return invokeMethod(getter, managedResource, null);
+            }
+
+            @Override
+            public void set(Object managedResource, Object value) throws Throwable {
+                if (setter < 0)
+                    throw new IllegalStateException("Property not writable: " + property);
+                invokeMethod(setter, managedResource, new Object[]{value});
+            }
+
+            @Override
+            public String toString() {
+                return property.toString();
+            }
+        };
+    }
+
+    @Override
+    protected OperationInvoker getOperationInvoker(Class<?> managedClass, final Method operation) {
+        final int index = managedClass == this.managedClass ? getMethodIndex(operation) : -1;
+        if (index < 0)
+            return super.getOperationInvoker(managedClass, operation);
+        return new OperationInvoker() {
+            @Override
+            public Object invoke(Object managedResource, Object... params) throws Throwable {
+                return invokeMethod(index, managedResource, params);
+            }
+
+            @Override
+            public String toString() {
+                return operation.toString();
+            }
+        };
+    }
+}
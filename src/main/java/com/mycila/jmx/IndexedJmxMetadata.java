@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+/**
+ * {@link JmxMetadata} giving access to its attributes by slot and to its operations by their
+ * JMX signature, used by {@link DefaultDynamicMBean} to read and invoke without building keys.
+ * {@link MBeanMetadata} implements it: other {@link JmxMetadata} are adapted by {@link DefaultDynamicMBean}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public interface IndexedJmxMetadata extends JmxMetadata {
+
+    /**
+     * @return The slot of the attribute, between 0 and {@link #getAttributeCount()} excluded,
+     *         or -1 if there is no such attribute. Slots follow the order of the attributes in the {@link javax.management.MBeanInfo}.
+     */
+    int getAttributeSlot(String attribute);
+
+    JmxAttribute getAttribute(int slot);
+
+    int getAttributeCount();
+
+    /**
+     * Find an operation from its exported name and the type names of its parameters,
+     * as received by {@link javax.management.DynamicMBean#invoke(String, Object[], String[])}.
+     * No class is loaded: the lookup is done against the parameter types of the operation metadata.
+     *
+     * @return the operation, or null if the signature does not match the parameter types of an operation exported with this name
+     */
+    JmxOperation findOperation(String operation, String[] signature);
+}
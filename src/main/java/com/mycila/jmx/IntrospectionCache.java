@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent cache of introspection results keyed by class.
+ * <p>Reads are lock-free and writes are striped across the segments of the
+ * underlying Guava cache, so many threads can introspect classes at the same time.
+ * Concurrent requests for the same missing class compute the value only once.
+ * Keys are weakly referenced and values are softly referenced: entries stay cached
+ * until the memory is needed. Values referencing their class (methods, fields...), a class loader
+ * can only be collected once its entries are cleared, which is delayed until memory pressure.
+ * <p>Shared caches (declared methods, bean properties, assembler instances...) are
+ * registered by name and their statistics can be read through {@link #getSharedCaches()}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class IntrospectionCache<V> {
+
+    private static final ConcurrentMap<String, IntrospectionCache<?>> sharedCaches = new ConcurrentHashMap<String, IntrospectionCache<?>>();
+
+    private final String name;
+    private final LoadingCache<Class<?>, V> cache;
+
+    private IntrospectionCache(String name, CacheLoader<Class<?>, V> loader) {
+        this.name = name;
+        this.cache = CacheBuilder.newBuilder()
+            .weakKeys()
+            .softValues()
+            .recordStats()
+            .build(loader);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(Class<?> clazz) {
+        try {
+            return cache.getUnchecked(clazz);
+        } catch (UncheckedExecutionException e) {
+            throw ExceptionUtils.rethrow(e.getCause());
+        } catch (ExecutionError e) {
+            throw ExceptionUtils.rethrow(e.getCause());
+        }
+    }
+
+    /**
+     * @return hit, miss, load and eviction counts of this cache. Entries collected
+     *         by the garbage collector are reported as evictions.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void invalidate(Class<?> clazz) {
+        cache.invalidate(clazz);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getStats();
+    }
+
+    /**
+     * @return the caches shared by the introspection utilities, by name
+     */
+    public static Map<String, IntrospectionCache<?>> getSharedCaches() {
+        return Collections.unmodifiableMap(sharedCaches);
+    }
+
+    static <V> IntrospectionCache<V> create(String name, CacheLoader<Class<?>, V> loader) {
+        return new IntrospectionCache<V>(name, loader);
+    }
+
+    static <V> IntrospectionCache<V> shared(String name, CacheLoader<Class<?>, V> loader) {
+        IntrospectionCache<V> cache = new IntrospectionCache<V>(name, loader);
+        if (sharedCaches.putIfAbsent(name, cache) != null)
+            throw new IllegalStateException("Duplicate introspection cache: " + name);
+        return cache;
+    }
+
+}
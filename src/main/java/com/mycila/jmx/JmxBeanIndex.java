@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Modifier;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The classes annotated by {@link com.mycila.jmx.annotation.JmxBean}, listed at build time in
+ * {@link #LOCATION} by {@link com.mycila.jmx.processor.JmxBeanIndexProcessor}. All the indexes
+ * visible from a class loader are merged, and the classes which cannot be loaded, or which are not concrete
+ * classes annotated by {@link com.mycila.jmx.annotation.JmxBean} anymore, are ignored.
+ * <p>The metadata of the indexed classes can be assembled before their instances exist with
+ * {@link MycilaJmxExporter#prepare(Collection)}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class JmxBeanIndex {
+
+    public static final String LOCATION = "META-INF/mycila-jmx/beans";
+
+    private final Set<Class<?>> classes;
+
+    private JmxBeanIndex(Set<Class<?>> classes) {
+        this.classes = Collections.unmodifiableSet(classes);
+    }
+
+    public Set<Class<?>> getClasses() {
+        return classes;
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    public boolean contains(Class<?> clazz) {
+        return classes.contains(clazz);
+    }
+
+    /**
+     * @return the given managed resources whose class is indexed, in the same order
+     */
+    public List<Object> select(Collection<?> managedResources) {
+        List<Object> selected = new ArrayList<Object>(managedResources.size());
+        for (Object managedResource : managedResources)
+            if (managedResource != null && classes.contains(AopUtils.getTargetClass(managedResource)))
+                selected.add(managedResource);
+        return selected;
+    }
+
+    @Override
+    public String toString() {
+        return LOCATION + classes;
+    }
+
+    public static JmxBeanIndex load() {
+        return load(ClassUtils.getDefaultClassLoader());
+    }
+
+    public static JmxBeanIndex load(ClassLoader classLoader) throws JmxExportException {
+        Set<Class<?>> classes = new LinkedHashSet<Class<?>>();
+        try {
+            Enumeration<URL> indexes = classLoader.getResources(LOCATION);
+            while (indexes.hasMoreElements()) {
+                URL index = indexes.nextElement();
+                BufferedReader reader = new BufferedReader(new InputStreamReader(index.openStream(), "UTF-8"));
+                try {
+                    for (String line; (line = reader.readLine()) != null; ) {
+                        line = line.trim();
+                        if (line.length() == 0 || line.startsWith("#"))
+                            continue;
+                        try {
+                            Class<?> c = Class.forName(line, false, classLoader);
+                            // the index may be older than the class, if it was compiled without the processor
+                            if (c.isAnnotationPresent(JmxBean.class) && !c.isInterface() && !Modifier.isAbstract(c.getModifiers()))
+                                classes.add(c);
+                        } catch (ClassNotFoundException ignored) {
+                            // removed since the index was written
+                        } catch (LinkageError ignored) {
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException e) {
+            throw new JmxExportException("Unable to read " + LOCATION, e);
+        }
+        return new JmxBeanIndex(classes);
+    }
+}
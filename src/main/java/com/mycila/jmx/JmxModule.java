@@ -28,14 +28,55 @@ import javax.inject.Provider;
 import javax.inject.Singleton;
 import javax.management.MBeanServer;
 import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  * @date 2013-06-08
  */
 public class JmxModule extends AbstractModule {
+
+    private Executor registrationExecutor;
+    private int batchSize = JmxRegistrationQueue.DEFAULT_BATCH_SIZE;
+    private boolean holdRegistration;
+
+    /**
+     * Queue the {@link JmxBean} injectees and register them in batches on the given executor, instead of
+     * registering them on the injecting thread. The pending registrations are managed through the
+     * {@link JmxRegistrationQueue} bound in the injector.
+     */
+    public JmxModule deferRegistration(Executor executor) {
+        return deferRegistration(executor, JmxRegistrationQueue.DEFAULT_BATCH_SIZE);
+    }
+
+    public JmxModule deferRegistration(Executor executor, int batchSize) {
+        if (executor == null) throw new NullPointerException("Executor cannot be null");
+        if (batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.registrationExecutor = executor;
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * With deferred registration, hold the injectees until the {@link JmxRegistrationQueue} is released, i.e.
+     * once the injector has created the eager singletons: <code>injector.getInstance(JmxRegistrationQueue.class).release()</code>
+     */
+    public JmxModule holdRegistration() {
+        this.holdRegistration = true;
+        return this;
+    }
+
     @Override
     protected void configure() {
+        if (registrationExecutor != null)
+            configureDeferred();
+        else if (holdRegistration)
+            addError("Registration can only be held when deferred");
+        else
+            configureImmediate();
+    }
+
+    private void configureImmediate() {
         bindListener(ClassToTypeLiteralMatcherAdapter.adapt(Matchers.annotatedWith(JmxBean.class)), new TypeListener() {
             @Override
             public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
@@ -50,6 +91,34 @@ public class JmxModule extends AbstractModule {
         });
     }
 
+    private void configureDeferred() {
+        final Executor executor = registrationExecutor;
+        final int size = batchSize;
+        final boolean hold = holdRegistration;
+        final Provider<JmxExporter> exporter = getProvider(JmxExporter.class);
+        bind(JmxRegistrationQueue.class).toProvider(new com.google.inject.Provider<JmxRegistrationQueue>() {
+            @Override
+            public JmxRegistrationQueue get() {
+                JmxRegistrationQueue queue = new JmxRegistrationQueue(exporter.get(), executor, size);
+                if (hold)
+                    queue.hold();
+                return queue;
+            }
+        }).in(Singleton.class);
+        bindListener(ClassToTypeLiteralMatcherAdapter.adapt(Matchers.annotatedWith(JmxBean.class)), new TypeListener() {
+            @Override
+            public <I> void hear(TypeLiteral<I> type, TypeEncounter<I> encounter) {
+                final Provider<JmxRegistrationQueue> queue = encounter.getProvider(JmxRegistrationQueue.class);
+                encounter.register(new InjectionListener<I>() {
+                    @Override
+                    public void afterInjection(I injectee) {
+                        queue.get().add(injectee);
+                    }
+                });
+            }
+        });
+    }
+
     @Provides
     @Singleton
     protected JmxExporter jmxExporter(MBeanServer server) {
@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registers managed resources in the background: they are queued by {@link #add(Object)} and
+ * registered on an executor, in batches given to {@link MycilaJmxExporter#registerAll(java.util.Collection)}
+ * when the exporter supports it, one at a time otherwise.
+ * While {@link #hold() held}, the managed resources are only queued until {@link #release()}.
+ * <p>The last {@value #MAX_FAILURES} registration failures are kept, with their managed resources, until
+ * retrieved with {@link #drainFailures()}: older ones are only counted.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class JmxRegistrationQueue {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int MAX_FAILURES = 100;
+
+    private final JmxExporter exporter;
+    private final Executor executor;
+    private final int batchSize;
+    private final Queue<Object> queue = new ConcurrentLinkedQueue<Object>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Object drainLock = new Object();
+    private final Queue<RegistrationReport.Failure> failures = new ArrayDeque<RegistrationReport.Failure>();
+    private long failureCount;
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduled.set(false);
+            if (!held)
+                drain();
+        }
+    };
+    private volatile boolean held;
+    private int pending;
+
+    public JmxRegistrationQueue(JmxExporter exporter, Executor executor) {
+        this(exporter, executor, DEFAULT_BATCH_SIZE);
+    }
+
+    public JmxRegistrationQueue(JmxExporter exporter, Executor executor, int batchSize) {
+        if (exporter == null) throw new NullPointerException("Exporter cannot be null");
+        if (executor == null) throw new NullPointerException("Executor cannot be null");
+        if (batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+        this.exporter = exporter;
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    public void add(Object managedResource) {
+        synchronized (this) {
+            pending++;
+        }
+        queue.add(managedResource);
+        schedule();
+    }
+
+    /**
+     * Stop registering the managed resources added, until {@link #release()} is called.
+     */
+    public void hold() {
+        held = true;
+    }
+
+    /**
+     * Register in the background the managed resources added while held.
+     */
+    public void release() {
+        held = false;
+        schedule();
+    }
+
+    public boolean isHeld() {
+        return held;
+    }
+
+    /**
+     * Register the managed resources queued on the calling thread, even if held, and wait for the
+     * ones being registered in the background.
+     */
+    public void flush() {
+        drain();
+    }
+
+    /**
+     * Wait for all the managed resources added to be registered. While held, this only returns
+     * on timeout.
+     *
+     * @return false if the timeout elapsed before
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (pending > 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of managed resources added and not registered yet
+     */
+    public synchronized int getPendingCount() {
+        return pending;
+    }
+
+    /**
+     * @return the last {@value #MAX_FAILURES} registration failures, oldest first, which are kept
+     */
+    public List<RegistrationReport.Failure> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<RegistrationReport.Failure>(failures);
+        }
+    }
+
+    /**
+     * @return the last {@value #MAX_FAILURES} registration failures, oldest first, which are not kept anymore
+     */
+    public List<RegistrationReport.Failure> drainFailures() {
+        synchronized (failures) {
+            List<RegistrationReport.Failure> drained = new ArrayList<RegistrationReport.Failure>(failures);
+            failures.clear();
+            return drained;
+        }
+    }
+
+    /**
+     * @return the number of registrations which failed, including the failures drained or not kept
+     */
+    public long getFailureCount() {
+        synchronized (failures) {
+            return failureCount;
+        }
+    }
+
+    public JmxExporter getExporter() {
+        return exporter;
+    }
+
+    private void schedule() {
+        if (!held && !queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                drainTask.run();
+            }
+        }
+    }
+
+    private void drain() {
+        synchronized (drainLock) {
+            List<Object> batch = new ArrayList<Object>();
+            for (Object managedResource; (managedResource = queue.poll()) != null; ) {
+                batch.add(managedResource);
+                if (batch.size() == batchSize) {
+                    register(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty())
+                register(batch);
+        }
+    }
+
+    private void failed(Collection<RegistrationReport.Failure> failed) {
+        if (failed.isEmpty())
+            return;
+        synchronized (failures) {
+            failureCount += failed.size();
+            for (RegistrationReport.Failure failure : failed) {
+                if (failures.size() == MAX_FAILURES)
+                    failures.poll();
+                failures.add(failure);
+            }
+        }
+    }
+
+    private static RegistrationReport.Failure failure(Object managedResource, Throwable e) {
+        return new RegistrationReport.Failure(managedResource, e instanceof JmxExportException ? (JmxExportException) e : new JmxExportException("Unable to export MBean [" + managedResource.getClass().getName() + "]", e));
+    }
+
+    private void register(List<Object> batch) {
+        try {
+            if (exporter instanceof MycilaJmxExporter)
+                failed(((MycilaJmxExporter) exporter).registerAll(batch).getFailures());
+            else
+                for (Object managedResource : batch)
+                    try {
+                        exporter.register(managedResource);
+                    } catch (Throwable e) {
+                        failed(Collections.singletonList(failure(managedResource, e)));
+                    }
+        } catch (Throwable e) {
+            // the failure of a whole batch must not stop the draining of the next ones
+            List<RegistrationReport.Failure> failed = new ArrayList<RegistrationReport.Failure>(batch.size());
+            for (Object managedResource : batch)
+                failed.add(failure(managedResource, e));
+            failed(failed);
+        } finally {
+            synchronized (this) {
+                pending -= batch.size();
+                if (pending == 0)
+                    notifyAll();
+            }
+        }
+    }
+}
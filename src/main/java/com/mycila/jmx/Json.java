@@ -0,0 +1,398 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the {@link JsonHttpBridge}: a parser of requests into maps, lists, strings,
+ * numbers, booleans and nulls, and a writer streaming responses.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class Json {
+
+    /**
+     * The maximum nesting of arrays and objects: deeper values are rejected by the parser and written as null
+     */
+    static final int MAX_DEPTH = 16;
+
+    private final String text;
+    private int pos;
+    private int depth;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return The parsed value: a {@link Map}, a {@link List}, a {@link String}, a {@link Long}, a {@link Double}, a {@link Boolean} or null
+     * @throws IllegalArgumentException If the text is not valid JSON or is nested deeper than {@value #MAX_DEPTH} levels
+     */
+    static Object parse(String text) {
+        Json json = new Json(text);
+        Object value = json.value();
+        json.skipWhitespaces();
+        if (json.pos != text.length())
+            throw json.error("Unexpected character");
+        return value;
+    }
+
+    private Object value() {
+        skipWhitespaces();
+        if (pos == text.length())
+            throw error("Unexpected end");
+        char c = text.charAt(pos);
+        switch (c) {
+            case '{':
+                return object();
+            case '[':
+                return array();
+            case '"':
+                return string();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || c >= '0' && c <= '9')
+                    return number();
+                throw error("Unexpected character");
+        }
+    }
+
+    private Map<String, Object> object() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        enter();
+        skipWhitespaces();
+        if (peek() == '}') {
+            pos++;
+            depth--;
+            return map;
+        }
+        while (true) {
+            skipWhitespaces();
+            if (peek() != '"')
+                throw error("Expected a name");
+            String name = string();
+            skipWhitespaces();
+            expect(':');
+            map.put(name, value());
+            skipWhitespaces();
+            if (peek() == ',') {
+                pos++;
+                continue;
+            }
+            expect('}');
+            depth--;
+            return map;
+        }
+    }
+
+    private List<Object> array() {
+        List<Object> list = new ArrayList<Object>();
+        enter();
+        skipWhitespaces();
+        if (peek() == ']') {
+            pos++;
+            depth--;
+            return list;
+        }
+        while (true) {
+            list.add(value());
+            skipWhitespaces();
+            if (peek() == ',') {
+                pos++;
+                continue;
+            }
+            expect(']');
+            depth--;
+            return list;
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while (true) {
+            if (pos >= text.length())
+                throw error("Unterminated string");
+            char c = text.charAt(pos++);
+            if (c == '"')
+                return sb.toString();
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos >= text.length())
+                throw error("Unterminated string");
+            c = text.charAt(pos++);
+            switch (c) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (pos + 4 > text.length())
+                        throw error("Invalid escape");
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid escape");
+                    }
+                    pos += 4;
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+    }
+
+    private Object number() {
+        int start = pos;
+        boolean decimal = false;
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c == '.' || c == 'e' || c == 'E')
+                decimal = true;
+            else if (!(c == '-' || c == '+' || c >= '0' && c <= '9'))
+                break;
+            pos++;
+        }
+        String number = text.substring(start, pos);
+        try {
+            return decimal ? (Object) Double.valueOf(number) : (Object) Long.valueOf(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number");
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!text.startsWith(literal, pos))
+            throw error("Unexpected character");
+        pos += literal.length();
+        return value;
+    }
+
+    private void expect(char c) {
+        if (peek() != c)
+            throw error("Expected '" + c + "'");
+        pos++;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : 0;
+    }
+
+    private void skipWhitespaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+            pos++;
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH)
+            throw error("Nested deeper than " + MAX_DEPTH + " levels");
+        pos++;
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at position " + pos + " of JSON text");
+    }
+
+    /**
+     * Writes JSON to a character stream as values are given, separating the values of arrays and objects.
+     * Any object can be written: numbers, booleans, strings, arrays, collections, maps and open data are
+     * written as JSON values, other objects as their string representation.
+     */
+    static final class Writer {
+
+        private final java.io.Writer out;
+        private boolean[] first = new boolean[32];
+        private int depth;
+        private boolean afterName;
+
+        Writer(java.io.Writer out) {
+            this.out = out;
+        }
+
+        Writer beginObject() throws IOException {
+            return begin('{');
+        }
+
+        Writer endObject() throws IOException {
+            return end('}');
+        }
+
+        Writer beginArray() throws IOException {
+            return begin('[');
+        }
+
+        Writer endArray() throws IOException {
+            return end(']');
+        }
+
+        Writer name(String name) throws IOException {
+            separate();
+            string(name);
+            out.write(':');
+            afterName = true;
+            return this;
+        }
+
+        Writer value(Object value) throws IOException {
+            return value(value, 0);
+        }
+
+        void flush() throws IOException {
+            out.flush();
+        }
+
+        private Writer value(Object value, int level) throws IOException {
+            if (value == null || level > MAX_DEPTH) {
+                separate();
+                out.write("null");
+            } else if (value instanceof Boolean) {
+                separate();
+                out.write(value.toString());
+            } else if (value instanceof Number) {
+                separate();
+                double d = ((Number) value).doubleValue();
+                out.write(Double.isNaN(d) || Double.isInfinite(d) ? "null" : value.toString());
+            } else if (value instanceof Date) {
+                separate();
+                out.write(String.valueOf(((Date) value).getTime()));
+            } else if (value instanceof Map) {
+                beginObject();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet())
+                    name(String.valueOf(entry.getKey())).value(entry.getValue(), level + 1);
+                endObject();
+            } else if (value instanceof Collection) {
+                beginArray();
+                for (Object o : (Collection<?>) value)
+                    value(o, level + 1);
+                endArray();
+            } else if (value.getClass().isArray()) {
+                beginArray();
+                for (int i = 0, length = Array.getLength(value); i < length; i++)
+                    value(Array.get(value, i), level + 1);
+                endArray();
+            } else if (value instanceof CompositeData) {
+                CompositeData data = (CompositeData) value;
+                beginObject();
+                for (String key : data.getCompositeType().keySet())
+                    name(key).value(data.get(key), level + 1);
+                endObject();
+            } else if (value instanceof TabularData) {
+                beginArray();
+                for (Object row : ((TabularData) value).values())
+                    value(row, level + 1);
+                endArray();
+            } else if (value instanceof ObjectName) {
+                separate();
+                string(((ObjectName) value).getCanonicalName());
+            } else {
+                separate();
+                string(value.toString());
+            }
+            return this;
+        }
+
+        private Writer begin(char c) throws IOException {
+            separate();
+            out.write(c);
+            if (++depth == first.length)
+                first = Arrays.copyOf(first, depth * 2);
+            first[depth] = true;
+            return this;
+        }
+
+        private Writer end(char c) throws IOException {
+            out.write(c);
+            depth--;
+            return this;
+        }
+
+        private void separate() throws IOException {
+            if (afterName) {
+                afterName = false;
+                return;
+            }
+            if (depth > 0) {
+                if (first[depth])
+                    first[depth] = false;
+                else
+                    out.write(',');
+            }
+        }
+
+        private void string(String s) throws IOException {
+            out.write('"');
+            int start = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\')
+                    continue;
+                out.write(s, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"':
+                        out.write("\\\"");
+                        break;
+                    case '\\':
+                        out.write("\\\\");
+                        break;
+                    case '\n':
+                        out.write("\\n");
+                        break;
+                    case '\r':
+                        out.write("\\r");
+                        break;
+                    case '\t':
+                        out.write("\\t");
+                        break;
+                    default:
+                        out.write(String.format("\\u%04x", (int) c));
+                }
+            }
+            out.write(s, start, s.length() - start);
+            out.write('"');
+        }
+    }
+}
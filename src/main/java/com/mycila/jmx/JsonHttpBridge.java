@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.base.Throwables;
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Attribute;
+import javax.management.AttributeNotFoundException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the MBeans of the MBeanServer of a {@link MycilaJmxExporter} as JSON over the HTTP server of the JDK.
+ * A request is a JSON object with a <code>type</code>, posted alone or in an array to batch several requests in
+ * one round-trip, or given by the query parameters of a GET on <code>/jmx/&lt;type&gt;</code>:
+ * <ul>
+ * <li><code>read</code>: the values of the <code>attribute</code>s (one, several or all if none) of the <code>mbean</code>, which can be a pattern</li>
+ * <li><code>write</code>: set the <code>value</code> of the <code>attribute</code> of the <code>mbean</code>, returning its previous value</li>
+ * <li><code>exec</code>: invoke the <code>operation</code> of the <code>mbean</code> with the <code>arguments</code> array</li>
+ * <li><code>list</code>: the attributes and operations of the MBeans matching the <code>mbean</code> pattern, all by default</li>
+ * <li><code>search</code>: the ObjectNames matching the <code>mbean</code> pattern</li>
+ * </ul>
+ * Each request gets a response object with its <code>status</code> and either its <code>value</code> or an <code>error</code>.
+ * The attributes of the MBeans registered by the exporter are read directly from their managed resources and
+ * written to the response as they are read. Small responses are sent with their length, larger ones in chunks.
+ * <p/>
+ * The endpoint is not authenticated unless an {@link Authenticator} is given to {@link #start(InetSocketAddress, Authenticator)}.
+ * It is read-only by default: writes and invocations are refused with a <code>403</code> status until enabled with
+ * {@link #setWritable(boolean)}, and even then are only accepted when posted with a <code>application/json</code>
+ * content type, which a browser does not send cross-origin without the consent of the server, so that another web
+ * site cannot make a browser forge them.
+ * <p/>
+ * The HTTP server of the JDK writes the headers and the body of a response separately: for a low latency
+ * on small requests, run it without Nagle's algorithm with <code>-Dsun.net.httpserver.nodelay=true</code>.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class JsonHttpBridge implements HttpHandler {
+
+    public static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String CONTEXT = "/jmx";
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private final MycilaJmxExporter exporter;
+    private final MBeanServer server;
+    private volatile boolean writable;
+
+    public JsonHttpBridge(MycilaJmxExporter exporter) {
+        this.exporter = exporter;
+        this.server = exporter.getMBeanServer();
+    }
+
+    /**
+     * Start an HTTP server serving the MBeans on <code>/jmx</code>. Requests are handled by the
+     * dispatching thread of the server.
+     *
+     * @return The started server, to stop when done
+     */
+    public HttpServer start(InetSocketAddress address) throws IOException {
+        return start(address, null);
+    }
+
+    /**
+     * Start an HTTP server serving the MBeans on <code>/jmx</code> to the requests accepted by the authenticator.
+     *
+     * @param authenticator The authenticator of the requests, or null to accept all requests
+     * @return The started server, to stop when done
+     */
+    public HttpServer start(InetSocketAddress address, Authenticator authenticator) throws IOException {
+        HttpServer httpServer = HttpServer.create(address, 0);
+        HttpContext context = httpServer.createContext(CONTEXT, this);
+        if (authenticator != null)
+            context.setAuthenticator(authenticator);
+        httpServer.start();
+        return httpServer;
+    }
+
+    /**
+     * Allow <code>write</code> and <code>exec</code> requests, posted with a JSON content type. Disabled by default.
+     */
+    public void setWritable(boolean writable) {
+        this.writable = writable;
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            Object request;
+            String forbidden = writable ? null : "Writes and invocations are disabled";
+            try {
+                if ("GET".equals(exchange.getRequestMethod())) {
+                    request = parseQuery(exchange);
+                    if (forbidden == null)
+                        forbidden = "Writes and invocations must be posted as application/json";
+                } else if ("POST".equals(exchange.getRequestMethod())) {
+                    if (forbidden == null && !isJson(exchange.getRequestHeaders().getFirst("Content-Type")))
+                        forbidden = "Writes and invocations must be posted as application/json";
+                    request = Json.parse(readBody(exchange.getRequestBody()));
+                } else {
+                    exchange.getResponseHeaders().set("Allow", "GET, POST");
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                Response response = new Response(exchange, 400);
+                Json.Writer writer = response.writer();
+                writer.beginObject().name("status").value(400).name("error").value(e.getMessage()).endObject();
+                writer.flush();
+                response.finish();
+                return;
+            }
+            Response response = new Response(exchange, 200);
+            Json.Writer writer = response.writer();
+            if (request instanceof List) {
+                writer.beginArray();
+                for (Object o : (List<?>) request)
+                    respond(writer, o, forbidden);
+                writer.endArray();
+            } else
+                respond(writer, request, forbidden);
+            writer.flush();
+            response.finish();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param forbidden Why writes and invocations are refused, or null if they are allowed
+     */
+    private void respond(Json.Writer writer, Object request, String forbidden) throws IOException {
+        writer.beginObject();
+        int status;
+        String error;
+        try {
+            if (!(request instanceof Map))
+                throw new IllegalArgumentException("A request must be a JSON object");
+            Map<?, ?> r = (Map<?, ?>) request;
+            String type = string(r, "type", true);
+            if (forbidden != null && ("write".equals(type) || "exec".equals(type))) {
+                writer.name("status").value(403).name("error").value(forbidden).endObject();
+                return;
+            }
+            if ("read".equals(type))
+                read(writer, r);
+            else if ("write".equals(type))
+                write(writer, r);
+            else if ("exec".equals(type))
+                exec(writer, r);
+            else if ("list".equals(type))
+                list(writer, r);
+            else if ("search".equals(type))
+                search(writer, r);
+            else
+                throw new IllegalArgumentException("Invalid request type: " + type);
+            writer.name("status").value(200).endObject();
+            return;
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            error = e.getMessage();
+        } catch (MalformedObjectNameException e) {
+            status = 400;
+            error = e.getMessage();
+        } catch (InstanceNotFoundException e) {
+            status = 404;
+            error = "MBean not found: " + e.getMessage();
+        } catch (AttributeNotFoundException e) {
+            status = 404;
+            error = "Attribute not found: " + e.getMessage();
+        } catch (OperationNotFoundException e) {
+            status = 404;
+            error = e.getMessage();
+        } catch (JMException e) {
+            status = 500;
+            error = Throwables.getRootCause(e).toString();
+        } catch (RuntimeException e) {
+            status = 500;
+            error = e.toString();
+        }
+        writer.name("status").value(status).name("error").value(error).endObject();
+    }
+
+    // REQUESTS
+
+    private void read(Json.Writer writer, Map<?, ?> request) throws IOException, JMException {
+        ObjectName objectName = ObjectName.getInstance(string(request, "mbean", true));
+        Object attribute = request.get("attribute");
+        String[] attributes = attribute == null ? null : attribute instanceof List ? strings((List<?>) attribute) : new String[]{attribute.toString()};
+        if (!objectName.isPattern()) {
+            if (attribute instanceof String) {
+                Object value = readAttribute(objectName, (String) attribute);
+                writer.name("value").value(value);
+            } else {
+                if (!server.isRegistered(objectName))
+                    throw new InstanceNotFoundException(objectName.toString());
+                writer.name("value");
+                writeAttributes(writer, objectName, attributes);
+            }
+        } else {
+            writer.name("value").beginObject();
+            for (ObjectName name : server.queryNames(objectName, null)) {
+                writer.name(name.getCanonicalName());
+                writeAttributes(writer, name, attributes);
+            }
+            writer.endObject();
+        }
+    }
+
+    private void write(Json.Writer writer, Map<?, ?> request) throws IOException, JMException {
+        ObjectName objectName = ObjectName.getInstance(string(request, "mbean", true));
+        String attribute = string(request, "attribute", true);
+        if (!request.containsKey("value"))
+            throw new IllegalArgumentException("Missing value");
+        MBeanAttributeInfo info = null;
+        for (MBeanAttributeInfo candidate : server.getMBeanInfo(objectName).getAttributes())
+            if (candidate.getName().equals(attribute))
+                info = candidate;
+        if (info == null || !info.isWritable())
+            throw new AttributeNotFoundException(attribute);
+        Object previous = info.isReadable() ? server.getAttribute(objectName, attribute) : null;
+        server.setAttribute(objectName, new Attribute(attribute, convert(request.get("value"), info.getType())));
+        writer.name("value").value(previous);
+    }
+
+    private void exec(Json.Writer writer, Map<?, ?> request) throws IOException, JMException {
+        ObjectName objectName = ObjectName.getInstance(string(request, "mbean", true));
+        String operation = string(request, "operation", true);
+        Object arguments = request.get("arguments");
+        List<?> args = arguments == null ? Collections.emptyList() : arguments instanceof List ? (List<?>) arguments : Collections.singletonList(arguments);
+        for (MBeanOperationInfo info : server.getMBeanInfo(objectName).getOperations()) {
+            if (!info.getName().equals(operation) || info.getSignature().length != args.size())
+                continue;
+            MBeanParameterInfo[] parameters = info.getSignature();
+            Object[] params = new Object[parameters.length];
+            String[] signature = new String[parameters.length];
+            for (int i = 0; i < parameters.length; i++) {
+                signature[i] = parameters[i].getType();
+                params[i] = convert(args.get(i), signature[i]);
+            }
+            Object result = server.invoke(objectName, operation, params, signature);
+            writer.name("value").value(result);
+            return;
+        }
+        throw new OperationNotFoundException("Operation not found: " + operation + " with " + args.size() + " arguments");
+    }
+
+    private void list(Json.Writer writer, Map<?, ?> request) throws IOException, JMException {
+        String mbean = string(request, "mbean", false);
+        writer.name("value").beginObject();
+        for (ObjectName name : server.queryNames(mbean == null ? null : ObjectName.getInstance(mbean), null)) {
+            MBeanInfo info;
+            try {
+                info = server.getMBeanInfo(name);
+            } catch (JMException e) {
+                continue;
+            }
+            writer.name(name.getCanonicalName()).beginObject()
+                .name("class").value(info.getClassName())
+                .name("description").value(info.getDescription())
+                .name("attributes").beginObject();
+            for (MBeanAttributeInfo attribute : info.getAttributes()) {
+                writer.name(attribute.getName()).beginObject()
+                    .name("type").value(attribute.getType())
+                    .name("readable").value(attribute.isReadable())
+                    .name("writable").value(attribute.isWritable())
+                    .name("description").value(attribute.getDescription())
+                    .endObject();
+            }
+            writer.endObject().name("operations").beginArray();
+            for (MBeanOperationInfo operation : info.getOperations()) {
+                writer.beginObject()
+                    .name("name").value(operation.getName())
+                    .name("returnType").value(operation.getReturnType())
+                    .name("description").value(operation.getDescription())
+                    .name("arguments").beginArray();
+                for (MBeanParameterInfo parameter : operation.getSignature())
+                    writer.beginObject().name("name").value(parameter.getName()).name("type").value(parameter.getType()).endObject();
+                writer.endArray().endObject();
+            }
+            writer.endArray().endObject();
+        }
+        writer.endObject();
+    }
+
+    private void search(Json.Writer writer, Map<?, ?> request) throws IOException, JMException {
+        ObjectName pattern = ObjectName.getInstance(string(request, "mbean", true));
+        writer.name("value").beginArray();
+        for (ObjectName name : server.queryNames(pattern, null))
+            writer.value(name.getCanonicalName());
+        writer.endArray();
+    }
+
+    // ATTRIBUTES
+
+    private Object readAttribute(ObjectName objectName, String attribute) throws JMException {
+        Object mBean = exporter.exportedMBean(objectName);
+        DefaultDynamicMBean dynamicMBean = MycilaJmxExporter.unwrap(mBean);
+        if (dynamicMBean == null)
+            return server.getAttribute(objectName, attribute);
+        int slot = dynamicMBean.getIndexedJmxMetadata().getAttributeSlot(attribute);
+        if (slot == -1 || !dynamicMBean.getIndexedJmxMetadata().getAttribute(slot).getMetadata().isReadable())
+            throw new AttributeNotFoundException(attribute);
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ClassLoader classLoader = MycilaJmxExporter.classLoader(mBean);
+        if (classLoader != null)
+            thread.setContextClassLoader(classLoader);
+        try {
+            return dynamicMBean.getIndexedJmxMetadata().getAttribute(slot).get(dynamicMBean.getManagedResource());
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    /**
+     * Write the given attributes of an MBean, or all its readable attributes if null, as a JSON object.
+     * Attributes which do not exist are skipped and attributes which cannot be read are null.
+     */
+    private void writeAttributes(Json.Writer writer, ObjectName objectName, String[] attributes) throws IOException {
+        Object mBean = exporter.exportedMBean(objectName);
+        DefaultDynamicMBean dynamicMBean = MycilaJmxExporter.unwrap(mBean);
+        writer.beginObject();
+        if (dynamicMBean != null) {
+            IndexedJmxMetadata metadata = dynamicMBean.getIndexedJmxMetadata();
+            Object resource = dynamicMBean.getManagedResource();
+            Thread thread = Thread.currentThread();
+            ClassLoader original = thread.getContextClassLoader();
+            ClassLoader classLoader = MycilaJmxExporter.classLoader(mBean);
+            if (classLoader != null)
+                thread.setContextClassLoader(classLoader);
+            try {
+                int count = attributes == null ? metadata.getAttributeCount() : attributes.length;
+                for (int i = 0; i < count; i++) {
+                    int slot = attributes == null ? i : metadata.getAttributeSlot(attributes[i]);
+                    if (slot == -1 || !metadata.getAttribute(slot).getMetadata().isReadable())
+                        continue;
+                    JmxAttribute attribute = metadata.getAttribute(slot);
+                    Object value;
+                    try {
+                        value = attribute.get(resource);
+                    } catch (Exception e) {
+                        value = null;
+                    }
+                    writer.name(attribute.getName()).value(value);
+                }
+            } finally {
+                thread.setContextClassLoader(original);
+            }
+        } else {
+            try {
+                if (attributes == null) {
+                    List<String> readable = new ArrayList<String>();
+                    for (MBeanAttributeInfo info : server.getMBeanInfo(objectName).getAttributes())
+                        if (info.isReadable())
+                            readable.add(info.getName());
+                    attributes = readable.toArray(new String[readable.size()]);
+                }
+                for (Attribute attribute : server.getAttributes(objectName, attributes).asList())
+                    writer.name(attribute.getName()).value(attribute.getValue());
+            } catch (JMException ignored) {
+            }
+        }
+        writer.endObject();
+    }
+
+    // UTILS
+
+    static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] bytes = new byte[4096];
+        for (int n; (n = in.read(bytes)) != -1; ) {
+            if (body.size() + n > MAX_BODY_SIZE)
+                throw new IllegalArgumentException("Request body larger than " + MAX_BODY_SIZE + " bytes");
+            body.write(bytes, 0, n);
+        }
+        return new String(body.toByteArray(), UTF_8);
+    }
+
+    private static boolean isJson(String contentType) {
+        if (contentType == null)
+            return false;
+        int semicolon = contentType.indexOf(';');
+        return (semicolon == -1 ? contentType : contentType.substring(0, semicolon)).trim().equalsIgnoreCase("application/json");
+    }
+
+    /**
+     * Build a request from the type in the path and the query parameters. The attributes are separated
+     * by commas, the value and the arguments are JSON values or strings.
+     */
+    private static Map<String, Object> parseQuery(HttpExchange exchange) throws UnsupportedEncodingException {
+        Map<String, Object> request = new LinkedHashMap<String, Object>();
+        String path = exchange.getRequestURI().getPath();
+        String contextPath = exchange.getHttpContext().getPath();
+        if (path.length() > contextPath.length() + 1)
+            request.put("type", path.substring(contextPath.length() + 1));
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null)
+            return request;
+        for (String parameter : query.split("&")) {
+            int eq = parameter.indexOf('=');
+            String name = URLDecoder.decode(eq == -1 ? parameter : parameter.substring(0, eq), "UTF-8");
+            String value = eq == -1 ? "" : URLDecoder.decode(parameter.substring(eq + 1), "UTF-8");
+            if ("attribute".equals(name))
+                request.put(name, value.indexOf(',') == -1 ? value : Arrays.asList(value.split(",")));
+            else if ("value".equals(name) || "arguments".equals(name)) {
+                try {
+                    request.put(name, Json.parse(value));
+                } catch (IllegalArgumentException e) {
+                    request.put(name, value);
+                }
+            } else
+                request.put(name, value);
+        }
+        return request;
+    }
+
+    private static String string(Map<?, ?> request, String name, boolean required) {
+        Object value = request.get(name);
+        if (value == null && required)
+            throw new IllegalArgumentException("Missing " + name);
+        return value == null ? null : value.toString();
+    }
+
+    private static String[] strings(List<?> list) {
+        String[] strings = new String[list.size()];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = String.valueOf(list.get(i));
+        return strings;
+    }
+
+    /**
+     * The body of a response, sent with its length when it fits in a buffer of {@value #BUFFER_SIZE} bytes,
+     * or streamed in chunks once it does not
+     */
+    private static final class Response extends OutputStream {
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final HttpExchange exchange;
+        private final int status;
+        private byte[] buffer = new byte[4096];
+        private int size;
+        private OutputStream chunked;
+
+        Response(HttpExchange exchange, int status) {
+            this.exchange = exchange;
+            this.status = status;
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        }
+
+        Json.Writer writer() {
+            return new Json.Writer(new BufferedWriter(new OutputStreamWriter(this, UTF_8), 8192));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (chunked == null && size + len > BUFFER_SIZE) {
+                exchange.sendResponseHeaders(status, 0);
+                chunked = exchange.getResponseBody();
+                chunked.write(buffer, 0, size);
+            }
+            if (chunked != null) {
+                chunked.write(b, off, len);
+                return;
+            }
+            if (size + len > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.min(BUFFER_SIZE, Math.max(buffer.length * 2, size + len)));
+            System.arraycopy(b, off, buffer, size, len);
+            size += len;
+        }
+
+        void finish() throws IOException {
+            if (chunked == null) {
+                exchange.sendResponseHeaders(status, size);
+                exchange.getResponseBody().write(buffer, 0, size);
+            }
+        }
+    }
+
+    /**
+     * Convert a JSON value to the given JMX type
+     */
+    static Object convert(Object value, String type) {
+        if (value == null)
+            return null;
+        try {
+            if (type.equals(String.class.getName()))
+                return value.toString();
+            if (type.equals("int") || type.equals(Integer.class.getName()))
+                return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString());
+            if (type.equals("long") || type.equals(Long.class.getName()))
+                return value instanceof Number ? ((Number) value).longValue() : Long.valueOf(value.toString());
+            if (type.equals("double") || type.equals(Double.class.getName()))
+                return value instanceof Number ? ((Number) value).doubleValue() : Double.valueOf(value.toString());
+            if (type.equals("float") || type.equals(Float.class.getName()))
+                return value instanceof Number ? ((Number) value).floatValue() : Float.valueOf(value.toString());
+            if (type.equals("short") || type.equals(Short.class.getName()))
+                return value instanceof Number ? ((Number) value).shortValue() : Short.valueOf(value.toString());
+            if (type.equals("byte") || type.equals(Byte.class.getName()))
+                return value instanceof Number ? ((Number) value).byteValue() : Byte.valueOf(value.toString());
+            if (type.equals("boolean") || type.equals(Boolean.class.getName()))
+                return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+            if ((type.equals("char") || type.equals(Character.class.getName())) && value.toString().length() == 1)
+                return value.toString().charAt(0);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for type " + type + ": " + value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheLoader;
+import com.mycila.jmx.metric.MeterTicker;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InvalidAttributeValueException;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanConstructorInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import javax.management.RuntimeOperationsException;
+
+/**
+ * A placeholder MBean which creates the real MBean, and thus assembles its metadata,
+ * on the first access after its registration.
+ * <p/>
+ * The MBeanServer reads the MBeanInfo when registering an MBean: until the registration
+ * is done, a placeholder MBeanInfo without any member is returned so that nothing is built.
+ * Placeholders are shared by all the instances of a class.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class LazyDynamicMBean implements DynamicMBean, NotificationEmitter, MBeanRegistration {
+
+    private static final IntrospectionCache<MBeanInfo> PLACEHOLDERS = IntrospectionCache.shared("placeholders", new CacheLoader<Class<?>, MBeanInfo>() {
+        @Override
+        public MBeanInfo load(Class<?> managedClass) {
+            return new MBeanInfo(managedClass.getName(), managedClass.getName(), new MBeanAttributeInfo[0], new MBeanConstructorInfo[0], new MBeanOperationInfo[0], new MBeanNotificationInfo[0]);
+        }
+    });
+
+    private final MBeanInfo placeholder;
+    private final Supplier<? extends DynamicMBean> factory;
+    private volatile DynamicMBean delegate;
+    private volatile boolean registered;
+    private volatile MeterTicker meterTicker;
+    private volatile Object managedResource;
+    // guarded by this: replayed to the MBean created after the registration
+    private MBeanServer server;
+    private ObjectName objectName;
+
+    public LazyDynamicMBean(Class<?> managedClass, Supplier<? extends DynamicMBean> factory) {
+        this.placeholder = PLACEHOLDERS.get(managedClass);
+        this.factory = factory;
+    }
+
+    /**
+     * Set the ticker of the {@link com.mycila.jmx.metric.Meter} fields of the managed resource, which are ticked
+     * from the registration even if the real MBean is not created yet, and until the unregistration.
+     * Must be set before the registration.
+     */
+    public void setMeterTicker(MeterTicker meterTicker, Object managedResource) {
+        this.meterTicker = meterTicker;
+        this.managedResource = managedResource;
+    }
+
+    /**
+     * @return true if the real MBean has been created
+     */
+    public boolean isMaterialized() {
+        return delegate != null;
+    }
+
+    public DynamicMBean getDelegate() {
+        DynamicMBean mBean = delegate;
+        if (mBean == null) {
+            synchronized (this) {
+                mBean = delegate;
+                if (mBean == null) {
+                    mBean = factory.get();
+                    if (objectName != null)
+                        replayRegistration(mBean);
+                    delegate = mBean;
+                }
+            }
+        }
+        return mBean;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException, MBeanException, ReflectionException {
+        return getDelegate().getAttribute(attribute);
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        return getDelegate().getAttributes(attributes);
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException, MBeanException, ReflectionException {
+        getDelegate().setAttribute(attribute);
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return getDelegate().setAttributes(attributes);
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException, ReflectionException {
+        return getDelegate().invoke(actionName, params, signature);
+    }
+
+    @Override
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        getEmitter().addNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        getEmitter().removeNotificationListener(listener);
+    }
+
+    @Override
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        getEmitter().removeNotificationListener(listener, filter, handback);
+    }
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return getMBeanInfo().getNotifications();
+    }
+
+    private NotificationEmitter getEmitter() {
+        DynamicMBean mBean = getDelegate();
+        if (!(mBean instanceof NotificationEmitter))
+            throw new RuntimeOperationsException(new IllegalArgumentException(mBean.getClass().getName() + " does not emit notifications"), "Exception occurred trying to manage the listeners of a " + getClass().getSimpleName());
+        return (NotificationEmitter) mBean;
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        return registered || isMaterialized() ? getDelegate().getMBeanInfo() : placeholder;
+    }
+
+    @Override
+    public synchronized ObjectName preRegister(MBeanServer server, ObjectName name) throws Exception {
+        this.server = server;
+        this.objectName = name;
+        if (delegate instanceof MBeanRegistration)
+            ((MBeanRegistration) delegate).preRegister(server, name);
+        return name;
+    }
+
+    @Override
+    public synchronized void postRegister(Boolean registrationDone) {
+        registered = Boolean.TRUE.equals(registrationDone);
+        MeterTicker ticker = meterTicker;
+        if (ticker != null && registered)
+            Metrics.tickMeters(managedResource, ticker);
+        if (delegate instanceof MBeanRegistration)
+            ((MBeanRegistration) delegate).postRegister(registrationDone);
+    }
+
+    @Override
+    public void preDeregister() throws Exception {
+        if (delegate instanceof MBeanRegistration)
+            ((MBeanRegistration) delegate).preDeregister();
+    }
+
+    @Override
+    public void postDeregister() {
+        MeterTicker ticker = meterTicker;
+        if (ticker != null)
+            Metrics.untickMeters(managedResource, ticker);
+        if (delegate instanceof MBeanRegistration)
+            ((MBeanRegistration) delegate).postDeregister();
+    }
+
+    private void replayRegistration(DynamicMBean mBean) {
+        if (mBean instanceof MBeanRegistration) {
+            try {
+                ((MBeanRegistration) mBean).preRegister(server, objectName);
+            } catch (Exception e) {
+                throw new IllegalStateException("Unable to create the MBean registered as " + objectName + ": " + e.getMessage(), e);
+            }
+            if (registered)
+                ((MBeanRegistration) mBean).postRegister(true);
+        }
+    }
+}
@@ -26,12 +26,27 @@ import java.lang.reflect.Field;
 public final class MBeanAttribute implements JmxAttribute {
 
     private final Field field;
+    private final Class<?> type;
+    private final AttributeAccessor accessor;
     private final ModelMBeanAttributeInfo attributeInfo;
 
     public MBeanAttribute(Field field, String exportName, String description, Access access) {
+        this(field, Accessors.of(field), exportName, description, access);
+    }
+
+    public MBeanAttribute(Field field, AttributeAccessor accessor, String exportName, String description, Access access) {
+        this(field, field.getType(), accessor, exportName, description, access);
+    }
+
+    /**
+     * @param type The type of the exported value, when it differs from the type of the field (i.e. a metric)
+     */
+    public MBeanAttribute(Field field, Class<?> type, AttributeAccessor accessor, String exportName, String description, Access access) {
         this.field = field;
+        this.type = type;
+        this.accessor = accessor;
         this.attributeInfo = new ModelMBeanAttributeInfo(
-            exportName, field.getType().getName(), description,
+            exportName, type.getName(), description,
             access == Access.RO || access == Access.RW,
             access == Access.WO || access == Access.RW,
             false);
@@ -51,11 +66,9 @@ public final class MBeanAttribute implements JmxAttribute {
     public Object get(Object managedResource) throws ReflectionException {
         if (!getMetadata().isReadable())
             throw new ReflectionException(new IllegalAccessException("Attribute not readable: " + this), "Attribute not readable: " + this);
-        if (!field.isAccessible())
-            field.setAccessible(true);
         try {
-            return field.get(managedResource);
-        } catch (Exception e) {
+            return accessor.get(managedResource);
+        } catch (Throwable e) {
             throw JmxUtils.rethrow(e);
         }
     }
@@ -64,13 +77,11 @@ public final class MBeanAttribute implements JmxAttribute {
     public void set(Object managedResource, Object value) throws InvalidAttributeValueException, ReflectionException {
         if (!getMetadata().isWritable())
             throw new ReflectionException(new IllegalAccessException("Attribute not writable: " + this), "Attribute not writable: " + this);
-        if (!field.isAccessible())
-            field.setAccessible(true);
-        if (!ClassUtils.isAssignableValue(field.getType(), value))
+        if (!ClassUtils.isAssignableValue(type, value))
             throw new InvalidAttributeValueException("Invalid type specified for attribute " + this + ": " + value);
         try {
-            field.set(managedResource, value);
-        } catch (Exception e) {
+            accessor.set(managedResource, value);
+        } catch (Throwable e) {
             throw JmxUtils.rethrow(e);
         }
     }
@@ -85,11 +96,11 @@ public final class MBeanAttribute implements JmxAttribute {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MBeanAttribute that = (MBeanAttribute) o;
-        return field.equals(that.field);
+        return field.equals(that.field) && getName().equals(that.getName());
     }
 
     @Override
     public int hashCode() {
-        return field.hashCode();
+        return 31 * field.hashCode() + getName().hashCode();
     }
 }
@@ -16,38 +16,61 @@
 package com.mycila.jmx;
 
 import javax.management.AttributeNotFoundException;
+import javax.management.Descriptor;
 import javax.management.ImmutableDescriptor;
 import javax.management.MBeanAttributeInfo;
 import javax.management.MBeanInfo;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
+ * Immutable description of a managed class, shared by all the MBeans exporting an instance
+ * of this class: each {@link DefaultDynamicMBean} only binds a managed resource to it.
+ * <p/>
+ * The published {@link MBeanInfo} only contains plain feature infos with {@link ImmutableDescriptor}s,
+ * so that it can be handed out as is, without the mutable descriptors of the model MBean infos
+ * used while assembling the metadata.
+ *
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
-public final class MBeanMetadata implements JmxMetadata {
+public final class MBeanMetadata implements IndexedJmxMetadata {
 
     private final MBeanInfo mBeanInfo;
     private final Map<String, JmxAttribute> attributes = new HashMap<String, JmxAttribute>();
+    private final Map<String, Integer> attributeSlots = new HashMap<String, Integer>();
+    private final JmxAttribute[] slots;
     private final Map<Signature, JmxOperation> operations;
+    private final Map<String, OperationEntry[]> dispatch = new HashMap<String, OperationEntry[]>();
 
     public MBeanMetadata(String className, String description, Collection<JmxAttribute> attributes, Collection<JmxOperation> operations) {
+        this(className, description, attributes, operations, Collections.<MBeanNotificationInfo>emptyList());
+    }
+
+    public MBeanMetadata(String className, String description, Collection<JmxAttribute> attributes, Collection<JmxOperation> operations, Collection<MBeanNotificationInfo> notifications) {
         List<MBeanAttributeInfo> attrs = new ArrayList<MBeanAttributeInfo>(attributes.size());
+        this.slots = new JmxAttribute[attributes.size()];
         for (JmxAttribute attribute : attributes) {
             if (this.attributes.put(attribute.getName(), attribute) != null)
                 throw new IllegalArgumentException("Duplicate attribute found: " + attribute.getName());
-            attrs.add(attribute.getMetadata());
+            attributeSlots.put(attribute.getName(), attrs.size());
+            slots[attrs.size()] = attribute;
+            attrs.add(freeze(attribute.getMetadata()));
         }
-        List<MBeanOperationInfo> ops = new ArrayList<MBeanOperationInfo>(attributes.size());
+        List<MBeanOperationInfo> ops = new ArrayList<MBeanOperationInfo>(operations.size());
         this.operations = new HashMap<Signature, JmxOperation>();
         for (JmxOperation operation : operations) {
             if (this.operations.put(operation.getSignature(), operation) != null)
                 throw new IllegalArgumentException("Duplicate operation found: " + operation.getSignature());
-            ops.add(operation.getMetadata());
+            ops.add(freeze(operation.getMetadata()));
+            index(operation.getMetadata().getName(), new OperationEntry(operation));
         }
         this.mBeanInfo = new MBeanInfo(
             className,
@@ -55,7 +78,7 @@ public final class MBeanMetadata implements JmxMetadata {
             attrs.toArray(new MBeanAttributeInfo[attrs.size()]),
             null,
             ops.toArray(new MBeanOperationInfo[ops.size()]),
-            null,
+            notifications.toArray(new MBeanNotificationInfo[notifications.size()]),
             new ImmutableDescriptor("immutableInfo=true"));
     }
 
@@ -66,6 +89,22 @@ public final class MBeanMetadata implements JmxMetadata {
         return att;
     }
 
+    @Override
+    public int getAttributeSlot(String attribute) {
+        Integer slot = attributeSlots.get(attribute);
+        return slot == null ? -1 : slot;
+    }
+
+    @Override
+    public JmxAttribute getAttribute(int slot) {
+        return slots[slot];
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return slots.length;
+    }
+
     @Override
     public JmxOperation getOperation(String operation, Class<?>... paramTypes) throws OperationNotFoundException {
         Signature signature = new Signature(operation, paramTypes);
@@ -74,9 +113,72 @@ public final class MBeanMetadata implements JmxMetadata {
         return op;
     }
 
+    @Override
+    public JmxOperation findOperation(String operation, String[] signature) {
+        OperationEntry[] entries = dispatch.get(operation);
+        if (entries != null)
+            for (OperationEntry entry : entries)
+                if (entry.matches(signature))
+                    return entry.operation;
+        return null;
+    }
+
     @Override
     public MBeanInfo getMBeanInfo() {
         return mBeanInfo;
     }
 
+    private static MBeanAttributeInfo freeze(MBeanAttributeInfo info) {
+        return new MBeanAttributeInfo(
+            info.getName(), info.getType(), info.getDescription(),
+            info.isReadable(), info.isWritable(), info.isIs(),
+            freeze(info.getDescriptor()));
+    }
+
+    private static MBeanOperationInfo freeze(MBeanOperationInfo info) {
+        return new MBeanOperationInfo(
+            info.getName(), info.getDescription(), info.getSignature(),
+            info.getReturnType(), info.getImpact(),
+            freeze(info.getDescriptor()));
+    }
+
+    private static Descriptor freeze(Descriptor descriptor) {
+        if (descriptor instanceof ImmutableDescriptor)
+            return descriptor;
+        String[] names = descriptor.getFieldNames();
+        return names.length == 0 ?
+            ImmutableDescriptor.EMPTY_DESCRIPTOR :
+            new ImmutableDescriptor(names, descriptor.getFieldValues(names));
+    }
+
+    private void index(String name, OperationEntry entry) {
+        OperationEntry[] entries = dispatch.get(name);
+        if (entries == null)
+            entries = new OperationEntry[]{entry};
+        else {
+            entries = Arrays.copyOf(entries, entries.length + 1);
+            entries[entries.length - 1] = entry;
+        }
+        dispatch.put(name, entries);
+    }
+
+    private static final class OperationEntry {
+        private static final String[] NO_PARAMS = new String[0];
+
+        final JmxOperation operation;
+        final String[] paramTypes;
+
+        OperationEntry(JmxOperation operation) {
+            this.operation = operation;
+            MBeanParameterInfo[] params = operation.getMetadata().getSignature();
+            this.paramTypes = new String[params.length];
+            for (int i = 0; i < params.length; i++)
+                paramTypes[i] = params[i].getType();
+        }
+
+        boolean matches(String[] signature) {
+            return Arrays.equals(paramTypes, signature == null ? NO_PARAMS : signature);
+        }
+    }
+
 }
@@ -27,11 +27,15 @@ import java.lang.reflect.Method;
 public final class MBeanOperation implements JmxOperation {
 
     private final Signature signature;
-    private final Method operation;
+    private final OperationInvoker invoker;
     private final ModelMBeanOperationInfo operationInfo;
 
     public MBeanOperation(Method operation, String exportName, String description, MBeanParameterInfo... parameters) {
-        this.operation = operation;
+        this(operation, Accessors.reflective(operation), exportName, description, parameters);
+    }
+
+    public MBeanOperation(Method operation, OperationInvoker invoker, String exportName, String description, MBeanParameterInfo... parameters) {
+        this.invoker = invoker;
         this.signature = new Signature(operation);
         this.operationInfo = new ModelMBeanOperationInfo(
             exportName,
@@ -54,7 +58,7 @@ public final class MBeanOperation implements JmxOperation {
     @Override
     public Object invoke(Object managedResource, Object... params) throws ReflectionException {
         try {
-            return operation.invoke(managedResource, params);
+            return invoker.invoke(managedResource, params);
         } catch (Throwable e) {
             throw JmxUtils.rethrow(e);
         }
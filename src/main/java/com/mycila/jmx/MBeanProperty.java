@@ -26,10 +26,16 @@ import javax.management.modelmbean.ModelMBeanAttributeInfo;
 public final class MBeanProperty implements JmxAttribute {
 
     private final BeanProperty beanProperty;
+    private final AttributeAccessor accessor;
     private final ModelMBeanAttributeInfo attributeInfo;
 
     public MBeanProperty(BeanProperty beanProperty, String exportName, String description, Access access) {
+        this(beanProperty, Accessors.of(beanProperty), exportName, description, access);
+    }
+
+    public MBeanProperty(BeanProperty beanProperty, AttributeAccessor accessor, String exportName, String description, Access access) {
         this.beanProperty = beanProperty;
+        this.accessor = accessor;
         try {
             this.attributeInfo = new ModelMBeanAttributeInfo(
                 exportName,
@@ -56,7 +62,7 @@ public final class MBeanProperty implements JmxAttribute {
         if (!getMetadata().isReadable())
             throw new ReflectionException(new IllegalAccessException("Property not readable: " + this), "Property not readable: " + this);
         try {
-            return beanProperty.get(managedResource);
+            return accessor.get(managedResource);
         } catch (Throwable e) {
             throw JmxUtils.rethrow(e);
         }
@@ -69,7 +75,7 @@ public final class MBeanProperty implements JmxAttribute {
         if (!ClassUtils.isAssignableValue(beanProperty.getType(), value))
             throw new InvalidAttributeValueException("Invalid type specified for property " + this + ": " + value);
         try {
-            beanProperty.set(managedResource, value);
+            accessor.set(managedResource, value);
         } catch (Throwable e) {
             throw JmxUtils.rethrow(e);
         }
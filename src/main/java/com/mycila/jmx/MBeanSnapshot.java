@@ -0,0 +1,229 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Values of the readable attributes of many MBeans, taken at once by {@link MycilaJmxExporter#snapshot(ObjectName)}.
+ * The MBeans are grouped into {@link Table}s, one per exported class, storing the names of the attributes
+ * once and their values column by column. The rows of a table are in no particular order.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MBeanSnapshot implements Iterable<MBeanSnapshot.Table> {
+
+    private static final int CHUNK_SIZE = 256;
+
+    private final long timestamp;
+    private final List<Table> tables;
+
+    MBeanSnapshot(long timestamp, List<Table> tables) {
+        this.timestamp = timestamp;
+        this.tables = Collections.unmodifiableList(tables);
+    }
+
+    /**
+     * @return The time in milliseconds at which this snapshot was started
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<Table> getTables() {
+        return tables;
+    }
+
+    @Override
+    public Iterator<Table> iterator() {
+        return tables.iterator();
+    }
+
+    /**
+     * @return The number of MBeans in this snapshot
+     */
+    public int size() {
+        int size = 0;
+        for (Table table : tables)
+            size += table.getRowCount();
+        return size;
+    }
+
+    /**
+     * @return The value of the attribute of the given MBean, or null if the MBean or the attribute are not in this snapshot.
+     *         This is a linear search: iterate over the tables to read many values.
+     */
+    public Object getValue(ObjectName objectName, String attribute) {
+        for (Table table : tables) {
+            int column = table.getColumn(attribute);
+            if (column == -1)
+                continue;
+            for (int row = 0; row < table.getRowCount(); row++)
+                if (table.getObjectName(row).equals(objectName))
+                    return table.getValue(row, column);
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "tables=" + tables.size() + ", mBeans=" + size();
+    }
+
+    /**
+     * Read the given MBeans sharing the same metadata into a table, on the given pool if not null.
+     */
+    static Table read(IndexedJmxMetadata metadata, ObjectName[] objectNames, DefaultDynamicMBean[] mBeans, ClassLoader[] classLoaders, ForkJoinPool pool) {
+        List<JmxAttribute> readable = new ArrayList<JmxAttribute>(metadata.getAttributeCount());
+        for (int i = 0; i < metadata.getAttributeCount(); i++)
+            if (metadata.getAttribute(i).getMetadata().isReadable())
+                readable.add(metadata.getAttribute(i));
+        JmxAttribute[] attributes = readable.toArray(new JmxAttribute[readable.size()]);
+        String[] names = new String[attributes.length];
+        for (int i = 0; i < attributes.length; i++)
+            names[i] = attributes[i].getName();
+        Table table = new Table(metadata.getMBeanInfo().getClassName(), names, objectNames);
+        Read read = new Read(table, attributes, mBeans, classLoaders, 0, mBeans.length);
+        if (pool == null || mBeans.length <= CHUNK_SIZE)
+            read.compute();
+        else
+            pool.invoke(read);
+        return table;
+    }
+
+    /**
+     * The attributes of the MBeans of one class: a row per MBean and a column per readable attribute.
+     * The value of an attribute which could not be read is null.
+     */
+    public static final class Table {
+        private final String className;
+        private final String[] attributes;
+        private final ObjectName[] objectNames;
+        private final Object[][] columns;
+
+        Table(String className, String[] attributes, ObjectName[] objectNames) {
+            this.className = className;
+            this.attributes = attributes;
+            this.objectNames = objectNames;
+            this.columns = new Object[attributes.length][objectNames.length];
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public int getRowCount() {
+            return objectNames.length;
+        }
+
+        public int getColumnCount() {
+            return attributes.length;
+        }
+
+        public ObjectName getObjectName(int row) {
+            return objectNames[row];
+        }
+
+        public String getAttribute(int column) {
+            return attributes[column];
+        }
+
+        /**
+         * @return The column of the given attribute, or -1 if there is no such readable attribute
+         */
+        public int getColumn(String attribute) {
+            for (int i = 0; i < attributes.length; i++)
+                if (attributes[i].equals(attribute))
+                    return i;
+            return -1;
+        }
+
+        public Object getValue(int row, int column) {
+            return columns[column][row];
+        }
+
+        void setValue(int row, int column, Object value) {
+            columns[column][row] = value;
+        }
+
+        @Override
+        public String toString() {
+            return className + " (" + objectNames.length + " x " + attributes.length + ")";
+        }
+    }
+
+    /**
+     * Reads a range of rows, split in chunks of {@value #CHUNK_SIZE} MBeans when run on a fork-join pool.
+     * The context class loader is only switched between two rows when they have a different one.
+     */
+    private static final class Read extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Table table;
+        private final JmxAttribute[] attributes;
+        private final DefaultDynamicMBean[] mBeans;
+        private final ClassLoader[] classLoaders;
+        private final int from;
+        private final int to;
+
+        Read(Table table, JmxAttribute[] attributes, DefaultDynamicMBean[] mBeans, ClassLoader[] classLoaders, int from, int to) {
+            this.table = table;
+            this.attributes = attributes;
+            this.mBeans = mBeans;
+            this.classLoaders = classLoaders;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (getPool() != null && to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Read(table, attributes, mBeans, classLoaders, from, middle),
+                    new Read(table, attributes, mBeans, classLoaders, middle, to));
+                return;
+            }
+            Thread thread = Thread.currentThread();
+            ClassLoader original = thread.getContextClassLoader();
+            ClassLoader current = original;
+            try {
+                for (int row = from; row < to; row++) {
+                    ClassLoader classLoader = classLoaders[row];
+                    if (classLoader != null && classLoader != current)
+                        thread.setContextClassLoader(current = classLoader);
+                    Object resource = mBeans[row].getManagedResource();
+                    for (int column = 0; column < attributes.length; column++) {
+                        try {
+                            table.columns[column][row] = attributes[column].get(resource);
+                        } catch (ReflectionException ignored) {
+                        } catch (RuntimeException ignored) {
+                        }
+                    }
+                }
+            } finally {
+                if (current != original)
+                    thread.setContextClassLoader(original);
+            }
+        }
+    }
+}
@@ -15,44 +15,126 @@
  */
 package com.mycila.jmx;
 
+import javax.management.AttributeChangeNotification;
 import javax.management.Descriptor;
+import javax.management.MBeanNotificationInfo;
 import javax.management.MBeanParameterInfo;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler {
+    /**
+     * The properties of the managed class are introspected once and shared by the assembly
+     * of attributes and operations: operations which are accessors of a property get their
+     * role from an index of the property accessors.
+     */
     @Override
     public JmxMetadata getMetadata(Class<?> managedClass) {
+        Collection<BeanProperty> properties = getProperties(managedClass);
+        Collection<JmxAttribute> attributes = getMBeanAttributes(managedClass, properties);
+        Collection<JmxOperation> operations = postProcess(managedClass, attributes, getMBeanOperations(managedClass, getAccessorRoles(properties)));
         return new MBeanMetadata(
             managedClass.getName(),
             getMBeanDescription(managedClass),
-            getMBeanAttributes(managedClass),
-            getMBeanOperations(managedClass));
+            attributes,
+            operations,
+            getMBeanNotifications(managedClass, attributes));
+    }
+
+    /**
+     * Called once the attributes and operations of the managed class are built, to decorate the operations
+     * or to add members derived from the others.
+     *
+     * @param attributes The attributes of the managed class, to which attributes can be added
+     * @return The operations of the managed class: the given ones by default
+     */
+    protected Collection<JmxOperation> postProcess(Class<?> managedClass, Collection<JmxAttribute> attributes, Collection<JmxOperation> operations) {
+        return operations;
     }
 
     protected String getMBeanDescription(Class<?> managedClass) {
         return managedClass.getName();
     }
 
-    protected Collection<JmxAttribute> getMBeanAttributes(Class<?> managedClass) {
+    /**
+     * @return The notifications emitted by the MBeans of the managed class. None by default.
+     */
+    protected Collection<MBeanNotificationInfo> getMBeanNotifications(Class<?> managedClass) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return The notifications of the managed class, plus the attribute changes if some attributes have thresholds
+     */
+    protected Collection<MBeanNotificationInfo> getMBeanNotifications(Class<?> managedClass, Collection<JmxAttribute> attributes) {
+        List<MBeanNotificationInfo> notifications = new ArrayList<MBeanNotificationInfo>(getMBeanNotifications(managedClass));
+        for (JmxAttribute attribute : attributes)
+            if (attribute instanceof ThresholdAttribute) {
+                notifications.add(new MBeanNotificationInfo(
+                    new String[]{AttributeChangeNotification.ATTRIBUTE_CHANGE},
+                    AttributeChangeNotification.class.getName(),
+                    "Sent when an attribute crosses a threshold or changes by more than a delta"));
+                break;
+            }
+        return notifications;
+    }
+
+    protected Collection<JmxAttribute> getMBeanAttributes(Class<?> managedClass, Collection<BeanProperty> properties) {
         List<JmxAttribute> jmxAttributes = new LinkedList<JmxAttribute>();
-        for (BeanProperty property : getProperties(managedClass))
+        for (BeanProperty property : properties)
             jmxAttributes.add(buildProperty(managedClass, property));
-        for (Field field : getAttributes(managedClass))
-            jmxAttributes.add(buildAttribute(managedClass, field));
+        for (Field field : getAttributes(managedClass)) {
+            if (Metrics.isMetric(field.getType()))
+                jmxAttributes.addAll(buildMetricAttributes(managedClass, field));
+            else
+                jmxAttributes.add(buildAttribute(managedClass, field));
+        }
+        return jmxAttributes;
+    }
+
+    /**
+     * Build the read-only attributes exporting the statistics of a metric field
+     * (see {@link com.mycila.jmx.metric}), named after the export name of the field.
+     */
+    protected Collection<JmxAttribute> buildMetricAttributes(Class<?> managedClass, Field field) {
+        AttributeAccessor metricAccessor = getAttributeAccessor(managedClass, field);
+        String exportName = getAttributeExportName(managedClass, field);
+        String description = getAttributeDescription(managedClass, field);
+        List<JmxAttribute> jmxAttributes = new LinkedList<JmxAttribute>();
+        for (Metrics.Stat stat : Metrics.stats(field.getType())) {
+            MBeanAttribute jmxAttribute = new MBeanAttribute(
+                field,
+                stat.type,
+                stat.accessor(metricAccessor),
+                exportName + stat.suffix,
+                description,
+                Access.RO);
+            Descriptor desc = jmxAttribute.getMetadata().getDescriptor();
+            populateAttributeDescriptor(managedClass, field, desc);
+            desc.setField("metricType", stat.metricType.toString());
+            if (stat.units != null)
+                desc.setField("units", stat.units);
+            jmxAttribute.getMetadata().setDescriptor(desc);
+            jmxAttributes.add(jmxAttribute);
+        }
         return jmxAttributes;
     }
 
     protected JmxAttribute buildAttribute(Class<?> managedClass, Field field) {
         MBeanAttribute jmxAttribute = new MBeanAttribute(
             field,
+            getAttributeAccessor(managedClass, field),
             getAttributeExportName(managedClass, field),
             getAttributeDescription(managedClass, field),
             getAttributeAccess(managedClass, field));
@@ -65,6 +147,7 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
     protected JmxAttribute buildProperty(Class<?> managedClass, BeanProperty property) {
         MBeanProperty jmxAttribute = new MBeanProperty(
             property,
+            getPropertyAccessor(managedClass, property),
             getPropertyExportName(managedClass, property),
             getPropertyDescription(managedClass, property),
             getPropertyAccess(managedClass, property));
@@ -74,25 +157,42 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
         return jmxAttribute;
     }
 
-    protected Collection<JmxOperation> getMBeanOperations(Class<?> managedClass) {
+    protected Collection<JmxOperation> getMBeanOperations(Class<?> managedClass, Map<Method, Role> accessorRoles) {
         List<JmxOperation> jmxOperations = new LinkedList<JmxOperation>();
-        for (Method method : getMethodOperations(managedClass))
-            jmxOperations.add(buildOperation(managedClass, method));
+        for (Method method : getMethodOperations(managedClass)) {
+            Role role = accessorRoles.get(method);
+            jmxOperations.add(buildOperation(managedClass, method, role == null ? Role.OPERATION : role));
+        }
         return jmxOperations;
     }
 
-    protected JmxOperation buildOperation(Class<?> managedClass, Method operation) {
+    protected JmxOperation buildOperation(Class<?> managedClass, Method operation, Role role) {
         MBeanOperation jmxOperation = new MBeanOperation(
             operation,
+            getOperationInvoker(managedClass, operation),
             getOperationExportName(managedClass, operation),
             getOperationDescription(managedClass, operation),
             getOperationParameters(managedClass, operation));
         Descriptor desc = jmxOperation.getMetadata().getDescriptor();
-        populateOperationDescriptor(managedClass, operation, desc);
+        populateOperationDescriptor(managedClass, operation, role, desc);
         jmxOperation.getMetadata().setDescriptor(desc);
         return jmxOperation;
     }
 
+    /**
+     * @return The role of the accessor methods of the given properties
+     */
+    protected Map<Method, Role> getAccessorRoles(Collection<BeanProperty> properties) {
+        Map<Method, Role> roles = new HashMap<Method, Role>(properties.size() * 4);
+        for (BeanProperty property : properties) {
+            if (property.isReadable() && !roles.containsKey(property.getReadMethod()))
+                roles.put(property.getReadMethod(), Role.GETTER);
+            if (property.isWritable() && !roles.containsKey(property.getWriteMethod()))
+                roles.put(property.getWriteMethod(), Role.SETTER);
+        }
+        return roles;
+    }
+
     // attributes
 
     protected abstract Collection<Field> getAttributes(Class<?> managedClass);
@@ -109,6 +209,10 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
         return Modifier.isFinal(attribute.getModifiers()) ? Access.RO : Access.RW;
     }
 
+    protected AttributeAccessor getAttributeAccessor(Class<?> managedClass, Field attribute) {
+        return Accessors.of(attribute);
+    }
+
     protected void populateAttributeDescriptor(Class<?> managedClass, Field attribute, Descriptor desc) {
         JmxUtils.populateDeprecation(desc, attribute);
         JmxUtils.populateEnable(desc, true);
@@ -138,6 +242,10 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
         return Access.NONE;
     }
 
+    protected AttributeAccessor getPropertyAccessor(Class<?> managedClass, BeanProperty property) {
+        return Accessors.of(property);
+    }
+
     protected void populatePropertyDescriptor(Class<?> managedClass, BeanProperty property, Descriptor desc) {
         JmxUtils.populateDeprecation(desc, property.getReadMethod());
         JmxUtils.populateDeprecation(desc, property.getWriteMethod());
@@ -159,6 +267,10 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
         return "";
     }
 
+    protected OperationInvoker getOperationInvoker(Class<?> managedClass, Method operation) {
+        return Accessors.reflective(operation);
+    }
+
     protected MBeanParameterInfo[] getOperationParameters(Class<?> managedClass, Method operation) {
         Class<?>[] paramTypes = operation.getParameterTypes();
         MBeanParameterInfo[] params = new MBeanParameterInfo[paramTypes.length];
@@ -178,25 +290,12 @@ public abstract class MetadataAssemblerSkeleton implements JmxMetadataAssembler
         return "";
     }
 
-    protected void populateOperationDescriptor(Class<?> managedClass, Method operation, Descriptor desc) {
+    protected void populateOperationDescriptor(Class<?> managedClass, Method operation, Role role, Descriptor desc) {
         JmxUtils.populateDeprecation(desc, operation);
         JmxUtils.populateEnable(desc, true);
         JmxUtils.populateDisplayName(desc, operation.getName());
-        JmxUtils.populateVisibility(desc, 1);
-        JmxUtils.populateRole(desc, Role.OPERATION);
-        // verify if this is a property
-        Collection<BeanProperty> beanProperties = getProperties(managedClass);
-        for (BeanProperty beanProperty : beanProperties) {
-            if (operation.equals(beanProperty.getReadMethod())) {
-                JmxUtils.populateRole(desc, Role.GETTER);
-                JmxUtils.populateVisibility(desc, 4);
-                break;
-            } else if (operation.equals(beanProperty.getWriteMethod())) {
-                JmxUtils.populateRole(desc, Role.SETTER);
-                JmxUtils.populateVisibility(desc, 4);
-                break;
-            }
-        }
+        JmxUtils.populateVisibility(desc, role == Role.OPERATION ? 1 : 4);
+        JmxUtils.populateRole(desc, role);
     }
 
 }
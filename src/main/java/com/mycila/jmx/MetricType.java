@@ -27,7 +27,17 @@ public enum MetricType {
     /**
      * The measurement values will always increase
      */
-    COUNTER;
+    COUNTER,
+
+    /**
+     * The measurement values are statistics (i.e. percentiles) of the distribution of recorded values
+     */
+    HISTOGRAM,
+
+    /**
+     * The measurement values are rates of events (i.e. events per second)
+     */
+    METER;
 
     @Override
     public String toString() {
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.cache.CacheLoader;
+import com.mycila.jmx.metric.Counter;
+import com.mycila.jmx.metric.Gauge;
+import com.mycila.jmx.metric.Histogram;
+import com.mycila.jmx.metric.Meter;
+import com.mycila.jmx.metric.MeterTicker;
+import com.mycila.jmx.metric.Timer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Describes how the metric types of {@link com.mycila.jmx.metric} are exported: each metric
+ * field is exported as one attribute per statistic of the metric.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class Metrics {
+
+    private static final String NANOSECONDS = "nanoseconds";
+    private static final String EVENTS_PER_SECOND = "events/second";
+
+    private static final IntrospectionCache<List<Field>> meterFields = IntrospectionCache.shared("meterFields", new CacheLoader<Class<?>, List<Field>>() {
+        @Override
+        public List<Field> load(Class<?> clazz) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass())
+                for (Field field : c.getDeclaredFields())
+                    if (field.getType() == Meter.class) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+            return fields;
+        }
+    });
+
+    private Metrics() {
+    }
+
+    static boolean isMetric(Class<?> type) {
+        return !stats(type).isEmpty();
+    }
+
+    static List<Stat> stats(Class<?> type) {
+        if (type == Counter.class)
+            return COUNTER;
+        if (type == Gauge.class)
+            return GAUGE;
+        if (type == Timer.class)
+            return TIMER;
+        if (type == Histogram.class)
+            return HISTOGRAM;
+        if (type == Meter.class)
+            return METER;
+        return Collections.emptyList();
+    }
+
+    /**
+     * Add the {@link Meter}s referenced by the fields of a managed resource to a ticker
+     */
+    static void tickMeters(Object managedResource, MeterTicker ticker) {
+        for (Meter meter : meters(managedResource))
+            ticker.add(meter);
+    }
+
+    /**
+     * Remove the {@link Meter}s referenced by the fields of a managed resource from a ticker
+     */
+    static void untickMeters(Object managedResource, MeterTicker ticker) {
+        for (Meter meter : meters(managedResource))
+            ticker.remove(meter);
+    }
+
+    private static List<Meter> meters(Object managedResource) {
+        List<Field> fields = meterFields.get(managedResource.getClass());
+        List<Meter> meters = new ArrayList<Meter>(fields.size());
+        for (Field field : fields) {
+            try {
+                Meter meter = (Meter) field.get(managedResource);
+                if (meter != null)
+                    meters.add(meter);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        return meters;
+    }
+
+    /**
+     * A value read from a metric, exported as an attribute named after the metric field and the suffix of the stat.
+     */
+    static abstract class Stat {
+        final String suffix;
+        final Class<?> type;
+        final MetricType metricType;
+        final String units;
+
+        Stat(String suffix, Class<?> type, MetricType metricType, String units) {
+            this.suffix = suffix;
+            this.type = type;
+            this.metricType = metricType;
+            this.units = units;
+        }
+
+        abstract Object read(Object metric);
+
+        /**
+         * @return An accessor reading this stat from the metric read by the given accessor
+         */
+        AttributeAccessor accessor(final AttributeAccessor metricAccessor) {
+            return new AttributeAccessor() {
+                @Override
+                public Object get(Object o) throws Throwable {
+                    Object metric = metricAccessor.get(o);
+                    return metric == null ? null : read(metric);
+                }
+
+                @Override
+                public void set(Object o, Object value) {
+                    throw new UnsupportedOperationException("Metrics are read-only");
+                }
+            };
+        }
+    }
+
+    private static final List<Stat> COUNTER = Collections.<Stat>singletonList(new Stat("", long.class, MetricType.COUNTER, null) {
+        @Override
+        Object read(Object metric) {
+            return ((Counter) metric).get();
+        }
+    });
+
+    private static final List<Stat> GAUGE = Collections.<Stat>singletonList(new Stat("", long.class, MetricType.GAUGE, null) {
+        @Override
+        Object read(Object metric) {
+            return ((Gauge) metric).get();
+        }
+    });
+
+    private static final List<Stat> TIMER = Arrays.<Stat>asList(
+        new Stat("Count", long.class, MetricType.COUNTER, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Timer) metric).getCount();
+            }
+        },
+        new Stat("TotalTime", long.class, MetricType.COUNTER, NANOSECONDS) {
+            @Override
+            Object read(Object metric) {
+                return ((Timer) metric).getTotalTime();
+            }
+        },
+        new Stat("MeanTime", double.class, MetricType.GAUGE, NANOSECONDS) {
+            @Override
+            Object read(Object metric) {
+                return ((Timer) metric).getMeanTime();
+            }
+        });
+
+    private static final List<Stat> HISTOGRAM = Arrays.<Stat>asList(
+        new Stat("Count", long.class, MetricType.COUNTER, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Histogram) metric).getSnapshot().getCount();
+            }
+        },
+        new Stat("Min", long.class, MetricType.HISTOGRAM, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Histogram) metric).getSnapshot().getMin();
+            }
+        },
+        new Stat("Max", long.class, MetricType.HISTOGRAM, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Histogram) metric).getSnapshot().getMax();
+            }
+        },
+        new Stat("Mean", double.class, MetricType.HISTOGRAM, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Histogram) metric).getSnapshot().getMean();
+            }
+        },
+        percentile("P50", 50),
+        percentile("P90", 90),
+        percentile("P99", 99),
+        percentile("P999", 99.9));
+
+    private static final List<Stat> METER = Arrays.<Stat>asList(
+        new Stat("Count", long.class, MetricType.COUNTER, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Meter) metric).getCount();
+            }
+        },
+        new Stat("MeanRate", double.class, MetricType.METER, EVENTS_PER_SECOND) {
+            @Override
+            Object read(Object metric) {
+                return ((Meter) metric).getMeanRate();
+            }
+        },
+        new Stat("OneMinuteRate", double.class, MetricType.METER, EVENTS_PER_SECOND) {
+            @Override
+            Object read(Object metric) {
+                return ((Meter) metric).getOneMinuteRate();
+            }
+        },
+        new Stat("FiveMinuteRate", double.class, MetricType.METER, EVENTS_PER_SECOND) {
+            @Override
+            Object read(Object metric) {
+                return ((Meter) metric).getFiveMinuteRate();
+            }
+        },
+        new Stat("FifteenMinuteRate", double.class, MetricType.METER, EVENTS_PER_SECOND) {
+            @Override
+            Object read(Object metric) {
+                return ((Meter) metric).getFifteenMinuteRate();
+            }
+        });
+
+    private static Stat percentile(String suffix, final double percentile) {
+        return new Stat(suffix, long.class, MetricType.HISTOGRAM, null) {
+            @Override
+            Object read(Object metric) {
+                return ((Histogram) metric).getSnapshot().getValueAtPercentile(percentile);
+            }
+        };
+    }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the metrics of the MBeans registered by a {@link MycilaJmxExporter} in a memory-mapped file, like
+ * the hsperfdata files of the JVM: the processes of the same machine map the file and read the values with a
+ * {@link MetricsFileReader}, without any connection to this JVM nor system call. The file layout is described
+ * by {@link MetricsFileReader}.
+ * <p/>
+ * The {@link AttributeHistory#isRecordable(JmxAttribute) numeric metric attributes} of the MBeans built from
+ * metadata are published, lazy MBeans once materialized. The file has a fixed size. Entries are only appended,
+ * and completely written before the count of entries in the header is updated: readers do not read an entry
+ * until all its fields are visible. The entries of unregistered MBeans are marked as removed, and reused when an MBean is
+ * registered again with the same name. Metrics which do not fit in the file are not published.
+ * <p/>
+ * The values are read on each update, on the {@link MycilaJmxExporter#getScheduler() scheduler} of the exporter once started, and written in place with plain writes
+ * of 8 aligned bytes, which are never torn. The file is left in place once closed, for post-mortem tools.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MetricsFile implements Closeable {
+
+    private static final Set<String> LONG_TYPES = new HashSet<String>(Arrays.asList(
+        "byte", "short", "int", "long",
+        Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+        AtomicInteger.class.getName(), AtomicLong.class.getName()));
+
+    private final MycilaJmxExporter exporter;
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final Map<IndexedJmxMetadata, Metric[]> metrics = new MapMaker().weakKeys().makeMap();
+    private final Map<ObjectName, Published> published = new HashMap<ObjectName, Published>();
+    private final Map<String, Integer> entries = new HashMap<String, Integer>();
+    private int used = MetricsFileReader.HEADER_SIZE;
+    private int count;
+    private int dropped;
+    private long pass;
+    private ScheduledFuture<?> task;
+
+    public MetricsFile(MycilaJmxExporter exporter, File file) throws IOException {
+        this(exporter, file, 1024 * 1024);
+    }
+
+    /**
+     * Create the file, replacing any existing one. Processes having mapped a previous file keep reading it.
+     *
+     * @param exporter The exporter of the MBeans to publish
+     * @param file     The file to create
+     * @param size     The size of the file, bounding the number of metrics published
+     */
+    public MetricsFile(MycilaJmxExporter exporter, File file, int size) throws IOException {
+        if (size < MetricsFileReader.HEADER_SIZE)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        this.exporter = exporter;
+        this.file = file;
+        if (file.exists() && !file.delete())
+            throw new IOException("Cannot replace " + file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close();
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.put(MetricsFileReader.ORDER, (byte) (buffer.order() == ByteOrder.BIG_ENDIAN ? 0 : 1));
+        buffer.put(MetricsFileReader.LAYOUT, MetricsFileReader.VERSION);
+        buffer.putInt(MetricsFileReader.CAPACITY, size);
+        buffer.putInt(MetricsFileReader.USED, used);
+        buffer.putLong(MetricsFileReader.PID, pid());
+        buffer.putLong(MetricsFileReader.CREATE_TIME, System.currentTimeMillis());
+        for (int i = 0; i < MetricsFileReader.MAGIC.length; i++)
+            buffer.put(i, MetricsFileReader.MAGIC[i]);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of entries of the file, including the removed ones
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return The number of times a metric could not be published because the file was full
+     */
+    public synchronized int getDroppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Update the file periodically on the {@link MycilaJmxExporter#getScheduler() scheduler} of the exporter
+     */
+    public synchronized MetricsFile start(long period, TimeUnit unit) {
+        if (task != null)
+            throw new IllegalStateException("Already started");
+        task = exporter.getScheduler().scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                update();
+            }
+        }, 0, period, unit);
+        return this;
+    }
+
+    /**
+     * Add the entries of the MBeans registered since the last update, mark the ones of the MBeans unregistered
+     * as removed, and write the current values of the metrics
+     */
+    public synchronized void update() {
+        pass++;
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ClassLoader current = original;
+        try {
+            for (Map.Entry<ObjectName, Object> entry : exporter.exportedMBeans()) {
+                Object mBean = entry.getValue();
+                if (mBean instanceof LazyDynamicMBean && !((LazyDynamicMBean) mBean).isMaterialized())
+                    continue;
+                DefaultDynamicMBean dynamicMBean = MycilaJmxExporter.unwrap(mBean);
+                if (dynamicMBean == null)
+                    continue;
+                Published p = published.get(entry.getKey());
+                if (p == null || p.mBean != dynamicMBean) {
+                    if (p != null)
+                        remove(p);
+                    published.put(entry.getKey(), p = publish(entry.getKey(), dynamicMBean, MycilaJmxExporter.classLoader(mBean)));
+                }
+                p.pass = pass;
+                if (p.classLoader != null && p.classLoader != current)
+                    thread.setContextClassLoader(current = p.classLoader);
+                write(p);
+            }
+        } finally {
+            if (current != original)
+                thread.setContextClassLoader(original);
+        }
+        for (Iterator<Published> it = published.values().iterator(); it.hasNext(); ) {
+            Published p = it.next();
+            if (p.pass != pass) {
+                remove(p);
+                it.remove();
+            }
+        }
+        buffer.putLong(MetricsFileReader.UPDATE_TIME, System.currentTimeMillis());
+    }
+
+    /**
+     * Stop the updates, and mark the file as closed. The file is not deleted.
+     */
+    @Override
+    public synchronized void close() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        buffer.putInt(MetricsFileReader.CLOSED, 1);
+        buffer.force();
+    }
+
+    private Published publish(ObjectName objectName, DefaultDynamicMBean mBean, ClassLoader classLoader) {
+        Metric[] m = metrics.get(mBean.getIndexedJmxMetadata());
+        if (m == null)
+            metrics.put(mBean.getIndexedJmxMetadata(), m = Metric.of(mBean.getIndexedJmxMetadata()));
+        int[] offsets = new int[m.length];
+        for (int i = 0; i < m.length; i++)
+            offsets[i] = entry(objectName.getCanonicalName(), m[i]);
+        return new Published(mBean, classLoader, m, offsets);
+    }
+
+    private int entry(String objectName, Metric metric) {
+        String key = objectName + '\u0000' + metric.attribute.getName();
+        Integer offset = entries.get(key);
+        // the type of an entry never changes, since readers keep it
+        if (offset != null && buffer.get(offset + MetricsFileReader.ENTRY_TYPE) == metric.type) {
+            buffer.putLong(offset + MetricsFileReader.ENTRY_VALUE, 0);
+            buffer.put(offset + MetricsFileReader.ENTRY_REMOVED, (byte) 0);
+            return offset;
+        }
+        byte[] name = objectName.getBytes(MetricsFileReader.UTF_8);
+        byte[] attribute = metric.attribute.getName().getBytes(MetricsFileReader.UTF_8);
+        int size = (MetricsFileReader.ENTRY_HEADER_SIZE + name.length + attribute.length + 7) & ~7;
+        if (name.length > 0xFFFF || attribute.length > 0xFFFF || size > buffer.capacity() - used) {
+            dropped++;
+            return -1;
+        }
+        buffer.putInt(used + MetricsFileReader.ENTRY_SIZE, size);
+        buffer.put(used + MetricsFileReader.ENTRY_TYPE, metric.type);
+        buffer.putShort(used + MetricsFileReader.ENTRY_OBJECT_NAME, (short) name.length);
+        buffer.putShort(used + MetricsFileReader.ENTRY_ATTRIBUTE, (short) attribute.length);
+        for (int i = 0; i < name.length; i++)
+            buffer.put(used + MetricsFileReader.ENTRY_HEADER_SIZE + i, name[i]);
+        for (int i = 0; i < attribute.length; i++)
+            buffer.put(used + MetricsFileReader.ENTRY_HEADER_SIZE + name.length + i, attribute[i]);
+        buffer.putInt(MetricsFileReader.COUNT, ++count);
+        entries.put(key, used);
+        offset = used;
+        buffer.putInt(MetricsFileReader.USED, used += size);
+        return offset;
+    }
+
+    private void write(Published p) {
+        Object resource = p.mBean.getManagedResource();
+        for (int i = 0; i < p.metrics.length; i++) {
+            if (p.offsets[i] < 0)
+                continue;
+            Object value;
+            try {
+                value = p.metrics[i].attribute.get(resource);
+            } catch (ReflectionException e) {
+                continue;
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (!(value instanceof Number))
+                continue;
+            if (p.metrics[i].type == MetricsFileReader.TYPE_LONG)
+                buffer.putLong(p.offsets[i] + MetricsFileReader.ENTRY_VALUE, ((Number) value).longValue());
+            else
+                buffer.putDouble(p.offsets[i] + MetricsFileReader.ENTRY_VALUE, ((Number) value).doubleValue());
+        }
+    }
+
+    private void remove(Published p) {
+        for (int offset : p.offsets)
+            if (offset >= 0)
+                buffer.put(offset + MetricsFileReader.ENTRY_REMOVED, (byte) 1);
+    }
+
+    private static long pid() {
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        try {
+            return Long.parseLong(at < 0 ? name : name.substring(0, at));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A metric attribute of a class and the type of its entries
+     */
+    private static final class Metric {
+        final JmxAttribute attribute;
+        final byte type;
+
+        private Metric(JmxAttribute attribute, byte type) {
+            this.attribute = attribute;
+            this.type = type;
+        }
+
+        static Metric[] of(IndexedJmxMetadata metadata) {
+            List<Metric> metrics = new ArrayList<Metric>();
+            for (int slot = 0; slot < metadata.getAttributeCount(); slot++) {
+                JmxAttribute attribute = metadata.getAttribute(slot);
+                if (AttributeHistory.isRecordable(attribute))
+                    metrics.add(new Metric(attribute, LONG_TYPES.contains(attribute.getMetadata().getType()) ? MetricsFileReader.TYPE_LONG : MetricsFileReader.TYPE_DOUBLE));
+            }
+            return metrics.toArray(new Metric[metrics.size()]);
+        }
+    }
+
+    /**
+     * The entries of a registered MBean
+     */
+    private static final class Published {
+        final DefaultDynamicMBean mBean;
+        final ClassLoader classLoader;
+        final Metric[] metrics;
+        final int[] offsets;
+        long pass;
+
+        Published(DefaultDynamicMBean mBean, ClassLoader classLoader, Metric[] metrics, int[] offsets) {
+            this.mBean = mBean;
+            this.classLoader = classLoader;
+            this.metrics = metrics;
+            this.offsets = offsets;
+        }
+    }
+}
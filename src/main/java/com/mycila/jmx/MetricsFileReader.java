@@ -0,0 +1,283 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a file published by a {@link MetricsFile}, from any process of the same machine. The file is mapped
+ * once: reading a value is a read of memory, without any system call. This class only depends on the JDK, so
+ * that it can be used by small tools, and can be run to print the metrics of a file:
+ * <pre>java -cp mycila-jmx.jar com.mycila.jmx.MetricsFileReader &lt;file&gt;</pre>
+ * <p/>
+ * The file layout, in the byte order given by its header, is the following. The header has a fixed size of
+ * {@value #HEADER_SIZE} bytes:
+ * <ul>
+ * <li>0: the magic bytes <code>MJMX</code>, written last when the file is created</li>
+ * <li>4: the byte order (0 for big endian, 1 for little endian) and 5: the version of the layout</li>
+ * <li>8: the size of the file and 12: the end of the last entry (int)</li>
+ * <li>16: the number of entries (int), written after the entries and 20: 1 once the publisher is closed (int)</li>
+ * <li>24: the process id of the publisher (long), -1 if unknown</li>
+ * <li>32: the creation time and 40: the time of the last update, in milliseconds (long)</li>
+ * </ul>
+ * The entries follow, each starting on a multiple of 8 bytes:
+ * <ul>
+ * <li>0: the size of the entry (int)</li>
+ * <li>4: the type of the value (<code>J</code> for long, <code>D</code> for double) and 5: 1 if removed</li>
+ * <li>6: the length of the ObjectName (unsigned short)</li>
+ * <li>8: the value (8 bytes)</li>
+ * <li>16: the length of the attribute name (unsigned short)</li>
+ * <li>18: the canonical ObjectName then the attribute name, in UTF-8</li>
+ * </ul>
+ * Java gives no ordering guarantee between the writes of a process to a mapped file and the reads of another
+ * process: a reader may see the count of entries before an entry. The file being zero-filled and no field of
+ * an entry being zero once written, an entry with a zero field is not read until a later refresh.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MetricsFileReader {
+
+    static final byte[] MAGIC = {'M', 'J', 'M', 'X'};
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final int ORDER = 4;
+    static final int LAYOUT = 5;
+    static final int CAPACITY = 8;
+    static final int USED = 12;
+    static final int COUNT = 16;
+    static final int CLOSED = 20;
+    static final int PID = 24;
+    static final int CREATE_TIME = 32;
+    static final int UPDATE_TIME = 40;
+
+    static final int ENTRY_SIZE = 0;
+    static final int ENTRY_TYPE = 4;
+    static final int ENTRY_REMOVED = 5;
+    static final int ENTRY_OBJECT_NAME = 6;
+    static final int ENTRY_VALUE = 8;
+    static final int ENTRY_ATTRIBUTE = 16;
+    static final int ENTRY_HEADER_SIZE = 18;
+
+    static final byte TYPE_LONG = 'J';
+    static final byte TYPE_DOUBLE = 'D';
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final List<Entry> entries = new ArrayList<Entry>();
+    private final Map<String, Entry> byName = new HashMap<String, Entry>();
+    private int position = HEADER_SIZE;
+
+    private MetricsFileReader(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Map a file published by a {@link MetricsFile} and read its entries
+     *
+     * @throws IOException If the file cannot be read or is not a metrics file
+     */
+    public static MetricsFileReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        MappedByteBuffer buffer;
+        try {
+            if (raf.length() < HEADER_SIZE)
+                throw new IOException("Not a metrics file: " + file);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            raf.close();
+        }
+        for (int i = 0; i < MAGIC.length; i++)
+            if (buffer.get(i) != MAGIC[i])
+                throw new IOException("Not a metrics file: " + file);
+        if (buffer.get(LAYOUT) != VERSION)
+            throw new IOException("Unsupported version " + buffer.get(LAYOUT) + " of metrics file: " + file);
+        buffer.order(buffer.get(ORDER) == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        MetricsFileReader reader = new MetricsFileReader(buffer);
+        reader.refresh();
+        return reader;
+    }
+
+    /**
+     * Read the entries added since the last refresh. An entry not completely visible yet is read by a later refresh.
+     *
+     * @return The number of entries added
+     */
+    public synchronized int refresh() {
+        int count = buffer.getInt(COUNT);
+        int added = 0;
+        while (entries.size() < count) {
+            int size = buffer.getInt(position + ENTRY_SIZE);
+            byte type = buffer.get(position + ENTRY_TYPE);
+            byte[] objectName = new byte[buffer.getShort(position + ENTRY_OBJECT_NAME) & 0xFFFF];
+            byte[] attribute = new byte[buffer.getShort(position + ENTRY_ATTRIBUTE) & 0xFFFF];
+            if (type != TYPE_LONG && type != TYPE_DOUBLE || objectName.length == 0 || attribute.length == 0
+                || size < ENTRY_HEADER_SIZE + objectName.length + attribute.length || size > buffer.capacity() - position
+                || !read(position + ENTRY_HEADER_SIZE, objectName) || !read(position + ENTRY_HEADER_SIZE + objectName.length, attribute))
+                break;
+            Entry entry = new Entry(position, new String(objectName, UTF_8), new String(attribute, UTF_8));
+            entries.add(entry);
+            byName.put(key(entry.objectName, entry.attribute), entry);
+            position += size;
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * @return The entries read by the last refresh, in the order of the file, including the removed ones
+     */
+    public synchronized List<Entry> getEntries() {
+        return Collections.unmodifiableList(new ArrayList<Entry>(entries));
+    }
+
+    /**
+     * @return The entry of an attribute of an MBean read by the last refresh, or null
+     */
+    public synchronized Entry get(ObjectName objectName, String attribute) {
+        return byName.get(key(objectName.getCanonicalName(), attribute));
+    }
+
+    public int getCapacity() {
+        return buffer.getInt(CAPACITY);
+    }
+
+    /**
+     * @return The process id of the publisher, or -1 if unknown
+     */
+    public long getPid() {
+        return buffer.getLong(PID);
+    }
+
+    public long getCreateTime() {
+        return buffer.getLong(CREATE_TIME);
+    }
+
+    /**
+     * @return The time in milliseconds of the last update of the values, or 0 if they have not been updated yet
+     */
+    public long getUpdateTime() {
+        return buffer.getLong(UPDATE_TIME);
+    }
+
+    /**
+     * @return true if the publisher has been closed: the values are not updated anymore. If it is not, and the
+     *         update time is old, its process may have died.
+     */
+    public boolean isClosed() {
+        return buffer.getInt(CLOSED) != 0;
+    }
+
+    /**
+     * @return false if a byte is still zero: UTF-8 names have no zero byte
+     */
+    private boolean read(int offset, byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++)
+            if ((bytes[i] = buffer.get(offset + i)) == 0)
+                return false;
+        return true;
+    }
+
+    private static String key(String objectName, String attribute) {
+        return objectName + '\u0000' + attribute;
+    }
+
+    /**
+     * Print the metrics of a file, one per line: ObjectName, attribute and value
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: java " + MetricsFileReader.class.getName() + " <file>");
+            System.exit(1);
+        }
+        for (Entry entry : open(new File(args[0])).getEntries())
+            if (!entry.isRemoved())
+                System.out.println(entry.getObjectName() + " " + entry.getAttribute() + " " + entry.getValue());
+    }
+
+    /**
+     * A metric of the file. Its value is read from the mapped file each time it is requested.
+     */
+    public final class Entry {
+        private final int offset;
+        private final String objectName;
+        private final String attribute;
+        private final boolean isDouble;
+
+        private Entry(int offset, String objectName, String attribute) {
+            this.offset = offset;
+            this.objectName = objectName;
+            this.attribute = attribute;
+            this.isDouble = buffer.get(offset + ENTRY_TYPE) == TYPE_DOUBLE;
+        }
+
+        public ObjectName getObjectName() {
+            try {
+                return ObjectName.getInstance(objectName);
+            } catch (MalformedObjectNameException e) {
+                throw new IllegalStateException("Invalid ObjectName in metrics file: " + objectName, e);
+            }
+        }
+
+        public String getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return true if the value is a double, false if it is a long
+         */
+        public boolean isDouble() {
+            return isDouble;
+        }
+
+        /**
+         * @return true if the MBean is not registered anymore: its value is not updated
+         */
+        public boolean isRemoved() {
+            return buffer.get(offset + ENTRY_REMOVED) != 0;
+        }
+
+        public long longValue() {
+            return isDouble ? (long) buffer.getDouble(offset + ENTRY_VALUE) : buffer.getLong(offset + ENTRY_VALUE);
+        }
+
+        public double doubleValue() {
+            return isDouble ? buffer.getDouble(offset + ENTRY_VALUE) : buffer.getLong(offset + ENTRY_VALUE);
+        }
+
+        public Number getValue() {
+            return isDouble ? (Number) doubleValue() : (Number) longValue();
+        }
+
+        @Override
+        public String toString() {
+            return objectName + " " + attribute + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+import com.mycila.jmx.metric.Counter;
+import com.mycila.jmx.metric.Gauge;
+
+import javax.management.Descriptor;
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanOperationInfo;
+import javax.management.ReflectionException;
+import javax.management.modelmbean.ModelMBeanAttributeInfo;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records, per managed resource, the number of invocations of an operation, the number of
+ * invocations which failed and their total and maximum durations. Overloaded operations
+ * share the same {@link Statistics}. A {@link DefaultDynamicMBean} keeps the statistics of its
+ * managed resource, so that invoking an operation through it does not look them up.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MonitoredOperation implements JmxOperation {
+
+    private final JmxOperation delegate;
+    private final Statistics statistics;
+
+    public MonitoredOperation(JmxOperation delegate, Statistics statistics) {
+        this.delegate = delegate;
+        this.statistics = statistics;
+    }
+
+    public JmxOperation getDelegate() {
+        return delegate;
+    }
+
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public Signature getSignature() {
+        return delegate.getSignature();
+    }
+
+    @Override
+    public MBeanOperationInfo getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public Object invoke(Object managedResource, Object... params) throws ReflectionException {
+        return invoke(statistics.entry(managedResource), managedResource, params);
+    }
+
+    Object invoke(Entry entry, Object managedResource, Object... params) throws ReflectionException {
+        boolean failed = true;
+        long start = System.nanoTime();
+        try {
+            Object result = delegate.invoke(managedResource, params);
+            failed = false;
+            return result;
+        } finally {
+            entry.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    /**
+     * Statistics of the invocations of the operations having the same exported name, exported
+     * as the read-only attributes <code>&lt;name&gt;CallCount</code>, <code>&lt;name&gt;ErrorCount</code>,
+     * <code>&lt;name&gt;TotalTime</code> and <code>&lt;name&gt;MaxTime</code>, durations being in nanoseconds.
+     */
+    public static final class Statistics {
+        private final ConcurrentMap<Object, Entry> entries = new MapMaker().weakKeys().makeMap();
+        private final int index;
+        private final Collection<JmxAttribute> attributes;
+
+        /**
+         * @param index Position of these statistics among the ones of the managed class, starting at 0
+         */
+        public Statistics(String operation, int index) {
+            if (index < 0)
+                throw new IllegalArgumentException("Invalid index: " + index);
+            this.index = index;
+            this.attributes = Arrays.<JmxAttribute>asList(
+                new StatAttribute(operation + "CallCount", "Number of invocations of " + operation, MetricType.COUNTER, null) {
+                    @Override
+                    long read(Entry entry) {
+                        return entry.calls.get();
+                    }
+                },
+                new StatAttribute(operation + "ErrorCount", "Number of invocations of " + operation + " which threw an exception", MetricType.COUNTER, null) {
+                    @Override
+                    long read(Entry entry) {
+                        return entry.errors.get();
+                    }
+                },
+                new StatAttribute(operation + "TotalTime", "Time spent in " + operation, MetricType.COUNTER, "nanoseconds") {
+                    @Override
+                    long read(Entry entry) {
+                        return entry.totalTime.get();
+                    }
+                },
+                new StatAttribute(operation + "MaxTime", "Longest invocation of " + operation, MetricType.GAUGE, "nanoseconds") {
+                    @Override
+                    long read(Entry entry) {
+                        return entry.maxTime.get();
+                    }
+                });
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return The read-only attributes exporting these statistics
+         */
+        public Collection<JmxAttribute> getAttributes() {
+            return attributes;
+        }
+
+        Entry entry(Object managedResource) {
+            Entry entry = entries.get(managedResource);
+            if (entry == null) {
+                Entry existing = entries.putIfAbsent(managedResource, entry = new Entry());
+                if (existing != null)
+                    entry = existing;
+            }
+            return entry;
+        }
+
+        private abstract class StatAttribute implements JmxAttribute {
+            private final ModelMBeanAttributeInfo attributeInfo;
+
+            StatAttribute(String name, String description, MetricType metricType, String units) {
+                ModelMBeanAttributeInfo info = new ModelMBeanAttributeInfo(name, long.class.getName(), description, true, false, false);
+                Descriptor desc = info.getDescriptor();
+                desc.setField("metricType", metricType.toString());
+                if (units != null)
+                    desc.setField("units", units);
+                info.setDescriptor(desc);
+                this.attributeInfo = info;
+            }
+
+            abstract long read(Entry entry);
+
+            @Override
+            public String getName() {
+                return getMetadata().getName();
+            }
+
+            @Override
+            public ModelMBeanAttributeInfo getMetadata() {
+                return attributeInfo;
+            }
+
+            @Override
+            public Object get(Object managedResource) throws ReflectionException {
+                Entry entry = entries.get(managedResource);
+                return entry == null ? 0L : read(entry);
+            }
+
+            @Override
+            public void set(Object managedResource, Object value) throws InvalidAttributeValueException, ReflectionException {
+                throw new ReflectionException(new IllegalAccessException("Attribute not writable: " + this), "Attribute not writable: " + this);
+            }
+
+            @Override
+            public String toString() {
+                return getName();
+            }
+        }
+    }
+
+    static final class Entry {
+        final Counter calls = new Counter();
+        final Counter errors = new Counter();
+        final Counter totalTime = new Counter();
+        final Gauge maxTime = new Gauge();
+
+        void record(long duration, boolean failed) {
+            calls.increment();
+            if (failed)
+                errors.increment();
+            totalTime.add(duration);
+            maxTime.max(duration);
+        }
+    }
+}
@@ -15,24 +15,76 @@
  */
 package com.mycila.jmx;
 
+import com.google.common.base.Supplier;
+import com.mycila.jmx.metric.MeterTicker;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.DynamicMBean;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
 import javax.management.MBeanServer;
+import javax.management.MBeanServerDelegate;
+import javax.management.MBeanServerNotification;
 import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
+import javax.management.relation.MBeanServerNotificationFilter;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 public class MycilaJmxExporter implements JmxExporter {
 
+    private static final int BATCH_CHUNK_SIZE = 256;
+    private static final Executor CALLER_RUNS = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     private final MBeanServer mBeanServer;
+    private final ScheduledThreadPoolExecutor scheduler = newScheduler();
+    private final MeterTicker defaultMeterTicker = new MeterTicker(scheduler);
+    private final AttributeSampler defaultAttributeSampler = new AttributeSampler(scheduler);
+    private final AttributeRecorder defaultAttributeRecorder = new AttributeRecorder(scheduler);
+    private final ConcurrentMap<ObjectName, Object> exported = new ConcurrentHashMap<ObjectName, Object>();
+    private final ConcurrentMap<Class<?>, JmxMetadata> prepared = new ConcurrentHashMap<Class<?>, JmxMetadata>();
+    private final AtomicBoolean listening = new AtomicBoolean();
+    private final NotificationListener unregistrations;
     private ExportBehavior exportBehavior = ExportBehavior.FAIL_ON_EXISTING;
     private JmxNamingStrategy namingStrategy = new MBeanNamingStrategy();
-    private JmxMetadataAssembler metadataAssembler = new DiscoveringMetadataAssembler();
+    private CachingMetadataAssembler metadataAssembler = new CachingMetadataAssembler(new DiscoveringMetadataAssembler());
     private boolean ensureUnique = false;
+    private boolean lazy = false;
+    private Executor batchExecutor = CALLER_RUNS;
+    private MeterTicker meterTicker = defaultMeterTicker;
+    private AttributeSampler attributeSampler = defaultAttributeSampler;
+    private AttributeRecorder attributeRecorder = defaultAttributeRecorder;
 
     public MycilaJmxExporter() {
         this(new JmxServerFactory().locateDefault());
@@ -40,39 +92,114 @@ public class MycilaJmxExporter implements JmxExporter {
 
     public MycilaJmxExporter(MBeanServer mBeanServer) {
         this.mBeanServer = mBeanServer;
+        this.unregistrations = new UnregistrationListener(this);
     }
 
     /* IMPL */
 
     @Override
     public void unregister(ObjectName objectName) {
+        forget(objectName);
         if (getMBeanServer().isRegistered(objectName))
             doUnregister(objectName);
     }
 
     @Override
     public ObjectName register(Object managedResource) throws JmxExportException {
-        try {
-            ObjectName objectName = namingStrategy.getObjectName(managedResource);
-            if (ensureUnique)
-                objectName = JmxUtils.appendIdentityToObjectName(objectName, managedResource);
-            register(managedResource, objectName);
-            return objectName;
-        } catch (MalformedObjectNameException e) {
-            throw new JmxExportException("Unable to generate ObjectName for MBean [" + managedResource.getClass().getName() + "]", e);
-        }
+        ObjectName objectName = getObjectName(managedResource);
+        register(managedResource, objectName);
+        return objectName;
     }
 
     @Override
     public void register(Object managedResource, ObjectName objectName) throws JmxExportException {
-        if (JmxUtils.isMBean(managedResource.getClass()))
-            doRegister(managedResource, objectName);
-        else {
-            DynamicMBean mbean = adaptMBeanIfPossible(managedResource);
-            if (mbean == null)
-                mbean = createMBean(managedResource);
-            doRegister(mbean, objectName);
+        if (doRegister(toMBean(managedResource), objectName))
+            Notifications.bind(managedResource, objectName);
+    }
+
+    /**
+     * Register several managed resources at once. Managed resources are grouped by class and
+     * their ObjectNames and MBeans are computed in parallel on the {@link #setBatchExecutor(Executor) batch executor},
+     * which by default is the calling thread. They are then registered in the order given.
+     * A managed resource which cannot be registered according to the {@link ExportBehavior} is
+     * reported as a failure and does not prevent the others to be registered. A managed resource whose
+     * ObjectName is already registered is reported as skipped with {@link ExportBehavior#SKIP_EXISTING}.
+     */
+    public RegistrationReport registerAll(Collection<?> managedResources) {
+        final Object[] resources = managedResources.toArray();
+        final ObjectName[] names = new ObjectName[resources.length];
+        final Object[] mBeans = new Object[resources.length];
+        final JmxExportException[] errors = new JmxExportException[resources.length];
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for (final int[] chunk : chunkByClass(resources)) {
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i : chunk) {
+                        try {
+                            names[i] = getObjectName(resources[i]);
+                            mBeans[i] = toMBean(resources[i]);
+                        } catch (JmxExportException e) {
+                            errors[i] = e;
+                        } catch (RuntimeException e) {
+                            errors[i] = new JmxExportException("Unable to export MBean [" + resources[i].getClass().getName() + "]", e);
+                        }
+                    }
+                }
+            });
+        }
+        runOnBatchExecutor(tasks, "Interrupted while preparing MBeans for registration");
+        RegistrationReport report = new RegistrationReport(resources.length);
+        for (int i = 0; i < resources.length; i++) {
+            if (errors[i] != null) {
+                report.failed(resources[i], errors[i]);
+                continue;
+            }
+            try {
+                if (doRegister(mBeans[i], names[i])) {
+                    Notifications.bind(resources[i], names[i]);
+                    report.registered(names[i]);
+                } else
+                    report.skipped(names[i]);
+            } catch (JmxExportException e) {
+                report.failed(resources[i], e);
+            }
         }
+        return report;
+    }
+
+    /**
+     * Assemble the metadata of the given classes in parallel on the {@link #setBatchExecutor(Executor) batch executor}
+     * and keep it in the {@link #getMetadataAssembler() metadata cache}, so that their instances are registered
+     * without introspection, i.e. the classes of a {@link JmxBeanIndex}. The exporter holds the prepared metadata,
+     * which otherwise could be cleared from the cache when the memory is needed. A class whose metadata cannot be
+     * assembled is skipped: the error is reported when its instances are registered.
+     *
+     * @return the classes whose metadata is ready
+     */
+    public Set<Class<?>> prepare(Collection<? extends Class<?>> classes) {
+        final Class<?>[] types = classes.toArray(new Class<?>[classes.size()]);
+        final boolean[] assembled = new boolean[types.length];
+        List<Runnable> tasks = new ArrayList<Runnable>(types.length);
+        for (int i = 0; i < types.length; i++) {
+            final int index = i;
+            tasks.add(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        prepared.put(types[index], getJmxMetadata(types[index]));
+                        assembled[index] = true;
+                    } catch (RuntimeException ignored) {
+                    }
+                }
+            });
+        }
+        runOnBatchExecutor(tasks, "Interrupted while preparing MBean metadata");
+        Set<Class<?>> ready = new LinkedHashSet<Class<?>>();
+        for (int i = 0; i < types.length; i++)
+            if (assembled[i])
+                ready.add(types[i]);
+        return ready;
     }
 
     @Override
@@ -80,44 +207,228 @@ public class MycilaJmxExporter implements JmxExporter {
         return mBeanServer;
     }
 
+    /**
+     * Read the attributes of the MBeans registered by this exporter matching the given pattern, from the
+     * calling thread. See {@link #snapshot(ObjectName, ForkJoinPool)}.
+     */
+    public MBeanSnapshot snapshot(ObjectName pattern) {
+        return snapshot(pattern, null);
+    }
+
+    /**
+     * Read the attributes of the MBeans registered by this exporter matching the given pattern. The MBeans
+     * built from metadata are read directly from their managed resources, without going through the
+     * MBeanServer, and MBeans of the same class are read together, split in chunks on the given pool.
+     * Lazy MBeans are assembled if they were not yet. Other MBeans are read through the MBeanServer.
+     * MBeans unregistered directly from the MBeanServer instead of this exporter are forgotten by the exporter
+     * when they are unregistered, from the notifications of the {@link MBeanServerDelegate}, until {@link #close()}
+     * or until the exporter is garbage collected, since the MBeanServer only references it weakly.
+     *
+     * @param pattern The ObjectName pattern of the MBeans to read, or null to read all MBeans
+     * @param pool    The pool on which to read the MBeans, or null to read them from the calling thread
+     */
+    public MBeanSnapshot snapshot(ObjectName pattern, ForkJoinPool pool) {
+        long timestamp = System.currentTimeMillis();
+        Map<IndexedJmxMetadata, List<Map.Entry<ObjectName, Object>>> groups = new IdentityHashMap<IndexedJmxMetadata, List<Map.Entry<ObjectName, Object>>>();
+        List<MBeanSnapshot.Table> tables = new ArrayList<MBeanSnapshot.Table>();
+        for (Map.Entry<ObjectName, Object> entry : exported.entrySet()) {
+            if (pattern != null && !pattern.apply(entry.getKey()))
+                continue;
+            DefaultDynamicMBean mBean = unwrap(entry.getValue());
+            if (mBean == null) {
+                MBeanSnapshot.Table table = readThroughServer(entry.getKey());
+                if (table != null)
+                    tables.add(table);
+                continue;
+            }
+            List<Map.Entry<ObjectName, Object>> group = groups.get(mBean.getIndexedJmxMetadata());
+            if (group == null)
+                groups.put(mBean.getIndexedJmxMetadata(), group = new ArrayList<Map.Entry<ObjectName, Object>>());
+            group.add(entry);
+        }
+        for (Map.Entry<IndexedJmxMetadata, List<Map.Entry<ObjectName, Object>>> group : groups.entrySet()) {
+            int size = group.getValue().size();
+            ObjectName[] names = new ObjectName[size];
+            DefaultDynamicMBean[] mBeans = new DefaultDynamicMBean[size];
+            ClassLoader[] classLoaders = new ClassLoader[size];
+            for (int i = 0; i < size; i++) {
+                Map.Entry<ObjectName, Object> entry = group.getValue().get(i);
+                names[i] = entry.getKey();
+                mBeans[i] = unwrap(entry.getValue());
+                classLoaders[i] = classLoader(entry.getValue());
+            }
+            tables.add(MBeanSnapshot.read(group.getKey(), names, mBeans, classLoaders, pool));
+        }
+        return new MBeanSnapshot(timestamp, tables);
+    }
+
     /* OVERRIDABLE */
 
     public void setEnsureUnique(boolean ensureUnique) {
         this.ensureUnique = ensureUnique;
     }
 
+    /**
+     * In lazy mode, a {@link LazyDynamicMBean} is registered instead of the MBean built
+     * from the metadata, which is only assembled on the first access to the MBean.
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public void setExportBehavior(ExportBehavior exportBehavior) {
         this.exportBehavior = exportBehavior;
     }
 
+    /**
+     * Set the assembler used to describe managed classes. The assembler is wrapped into a
+     * {@link CachingMetadataAssembler} so that a class is only introspected once whatever
+     * the number of its exported instances.
+     */
     public void setMetadataAssembler(JmxMetadataAssembler metadataAssembler) {
-        this.metadataAssembler = metadataAssembler;
+        this.metadataAssembler = metadataAssembler instanceof CachingMetadataAssembler ?
+            (CachingMetadataAssembler) metadataAssembler :
+            new CachingMetadataAssembler(metadataAssembler);
+    }
+
+    public CachingMetadataAssembler getMetadataAssembler() {
+        return metadataAssembler;
     }
 
     public void setNamingStrategy(JmxNamingStrategy namingStrategy) {
         this.namingStrategy = namingStrategy;
     }
 
+    /**
+     * Set the executor used by {@link #registerAll(Collection)} to compute ObjectNames and MBeans in parallel.
+     * Defaults to the calling thread.
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor == null ? CALLER_RUNS : batchExecutor;
+    }
+
+    /**
+     * Set the ticker updating the rates of the {@link com.mycila.jmx.metric.Meter} fields of the exported
+     * managed resources, which are ticked while registered. Each exporter has its own ticker by default, scheduled
+     * on the {@link #getScheduler() scheduler} of the exporter when the first meter is registered, and stopped when replaced: a ticker can be shared by several exporters.
+     */
+    public void setMeterTicker(MeterTicker meterTicker) {
+        if (meterTicker == null) throw new NullPointerException("Meter ticker cannot be null");
+        this.meterTicker = meterTicker;
+        if (meterTicker != defaultMeterTicker)
+            defaultMeterTicker.stop();
+    }
+
+    public MeterTicker getMeterTicker() {
+        return meterTicker;
+    }
+
+    /**
+     * Set the sampler of the {@link ThresholdAttribute}s of the exported MBeans, which are sampled while registered.
+     * Each exporter has its own sampler by default, scheduled on the {@link #getScheduler() scheduler} of the exporter
+     * when the first MBean with thresholds is registered, and stopped when replaced: a sampler can be shared by
+     * several exporters.
+     */
+    public void setAttributeSampler(AttributeSampler attributeSampler) {
+        if (attributeSampler == null) throw new NullPointerException("Attribute sampler cannot be null");
+        this.attributeSampler = attributeSampler;
+        if (attributeSampler != defaultAttributeSampler)
+            defaultAttributeSampler.stop();
+    }
+
+    public AttributeSampler getAttributeSampler() {
+        return attributeSampler;
+    }
+
+    /**
+     * Set the recorder of the {@link AttributeHistory} of the exported MBeans, which are recorded while registered.
+     * Each exporter has its own recorder by default, scheduled on the {@link #getScheduler() scheduler} of the exporter
+     * when the first MBean with a history is registered, and stopped when replaced: a recorder can be shared by several exporters.
+     */
+    public void setAttributeRecorder(AttributeRecorder attributeRecorder) {
+        if (attributeRecorder == null) throw new NullPointerException("Attribute recorder cannot be null");
+        this.attributeRecorder = attributeRecorder;
+        if (attributeRecorder != defaultAttributeRecorder)
+            defaultAttributeRecorder.stop();
+    }
+
+    public AttributeRecorder getAttributeRecorder() {
+        return attributeRecorder;
+    }
+
+    /**
+     * @return The scheduler running the periodic tasks of this exporter, on a single daemon thread started
+     *         by the first task scheduled, and stopped by {@link #close()}
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Stop the thread of the {@link #getScheduler() scheduler} of this exporter, and with it the periodic tasks
+     * scheduled on it, and stop listening to the unregistrations of the MBeanServer. The MBeans registered stay registered.
+     */
+    public void close() {
+        scheduler.shutdownNow();
+        if (listening.compareAndSet(true, false)) {
+            try {
+                getMBeanServer().removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, unregistrations);
+            } catch (JMException ignored) {
+            }
+        }
+    }
+
+    protected ObjectName getObjectName(Object managedResource) throws JmxExportException {
+        try {
+            ObjectName objectName = namingStrategy.getObjectName(managedResource);
+            if (ensureUnique)
+                objectName = JmxUtils.appendIdentityToObjectName(objectName, managedResource);
+            return objectName;
+        } catch (MalformedObjectNameException e) {
+            throw new JmxExportException("Unable to generate ObjectName for MBean [" + managedResource.getClass().getName() + "]", e);
+        }
+    }
+
+    protected Object toMBean(Object managedResource) throws JmxExportException {
+        if (JmxUtils.isMBean(managedResource.getClass()))
+            return managedResource;
+        DynamicMBean mbean = adaptMBeanIfPossible(managedResource);
+        if (mbean != null)
+            return mbean;
+        return lazy ? createLazyMBean(managedResource) : createMBean(managedResource);
+    }
+
     protected void doUnregister(ObjectName objectName) {
+        forget(objectName);
         try {
             getMBeanServer().unregisterMBean(objectName);
         } catch (JMException ignored) {
         }
     }
 
-    protected void doRegister(Object managedResource, ObjectName objectName) {
+    /**
+     * @return false if an MBean was already registered with this ObjectName and has been kept,
+     *         according to {@link ExportBehavior#SKIP_EXISTING}
+     */
+    protected boolean doRegister(Object managedResource, ObjectName objectName) {
+        listenToUnregistrations();
         try {
             getMBeanServer().registerMBean(managedResource, objectName);
+            exported.put(objectName, managedResource);
+            return true;
         } catch (InstanceAlreadyExistsException e) {
             if (exportBehavior == ExportBehavior.REPLACE_EXISTING) {
                 doUnregister(objectName);
                 try {
                     getMBeanServer().registerMBean(managedResource, objectName);
+                    exported.put(objectName, managedResource);
+                    return true;
                 } catch (JMException e2) {
                     throw new JmxExportException("Unable to register MBean [" + managedResource.getClass().getName() + "] with object name [" + objectName + "]", e2);
                 }
             } else if (exportBehavior == ExportBehavior.FAIL_ON_EXISTING)
                 throw new JmxExportException("Unable to register MBean [" + managedResource.getClass().getName() + "] with object name [" + objectName + "]", e);
+            return false;
         } catch (JMException e) {
             throw new JmxExportException("Unable to register MBean [" + managedResource.getClass().getName() + "] with object name [" + objectName + "]", e);
         }
@@ -156,12 +467,197 @@ public class MycilaJmxExporter implements JmxExporter {
     protected DynamicMBean createMBean(Object managedResource) {
         Class<?> targetClass = AopUtils.getTargetClass(managedResource);
         JmxMetadata metadata = getJmxMetadata(targetClass);
-        return new ContextualDynamicMBean(
-            new DefaultDynamicMBean(managedResource, metadata),
-            managedResource.getClass().getClassLoader());
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(managedResource, metadata);
+        if (mBean.hasThresholds())
+            mBean.setAttributeSampler(attributeSampler);
+        mBean.setAttributeRecorder(attributeRecorder);
+        mBean.setMeterTicker(meterTicker);
+        return new ContextualDynamicMBean(mBean, managedResource.getClass().getClassLoader());
+    }
+
+    protected DynamicMBean createLazyMBean(final Object managedResource) {
+        LazyDynamicMBean mBean = new LazyDynamicMBean(AopUtils.getTargetClass(managedResource), new Supplier<DynamicMBean>() {
+            @Override
+            public DynamicMBean get() {
+                return createMBean(managedResource);
+            }
+        });
+        mBean.setMeterTicker(meterTicker, managedResource);
+        return mBean;
     }
 
     protected JmxMetadata getJmxMetadata(Class<?> clazz) {
         return metadataAssembler.getMetadata(clazz);
     }
+
+    /**
+     * Run the given tasks on the batch executor, or on the calling thread if they are rejected, and wait for them.
+     */
+    private void runOnBatchExecutor(List<Runnable> tasks, String interruptedMessage) {
+        final CountDownLatch done = new CountDownLatch(tasks.size());
+        for (final Runnable task : tasks) {
+            Runnable counted = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            try {
+                batchExecutor.execute(counted);
+            } catch (RejectedExecutionException e) {
+                counted.run();
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JmxExportException(interruptedMessage, e);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "mycila-jmx-scheduler");
+                thread.setDaemon(true);
+                // do not pin the class loader of the thread creating the first task
+                thread.setContextClassLoader(null);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Split the indexes of the given managed resources into chunks of instances of the same class,
+     * so that a chunk only needs the metadata of one class.
+     */
+    private static List<int[]> chunkByClass(Object[] resources) {
+        Map<Class<?>, List<Integer>> byClass = new LinkedHashMap<Class<?>, List<Integer>>();
+        for (int i = 0; i < resources.length; i++) {
+            List<Integer> indexes = byClass.get(resources[i].getClass());
+            if (indexes == null)
+                byClass.put(resources[i].getClass(), indexes = new ArrayList<Integer>());
+            indexes.add(i);
+        }
+        List<int[]> chunks = new ArrayList<int[]>();
+        for (List<Integer> indexes : byClass.values()) {
+            for (int from = 0; from < indexes.size(); from += BATCH_CHUNK_SIZE) {
+                int[] chunk = new int[Math.min(BATCH_CHUNK_SIZE, indexes.size() - from)];
+                for (int i = 0; i < chunk.length; i++)
+                    chunk[i] = indexes.get(from + i);
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    private MBeanSnapshot.Table readThroughServer(ObjectName objectName) {
+        try {
+            MBeanInfo info = getMBeanServer().getMBeanInfo(objectName);
+            List<String> readable = new ArrayList<String>(info.getAttributes().length);
+            for (MBeanAttributeInfo attribute : info.getAttributes())
+                if (attribute.isReadable())
+                    readable.add(attribute.getName());
+            String[] names = readable.toArray(new String[readable.size()]);
+            MBeanSnapshot.Table table = new MBeanSnapshot.Table(info.getClassName(), names, new ObjectName[]{objectName});
+            AttributeList values = getMBeanServer().getAttributes(objectName, names);
+            for (Attribute attribute : values.asList()) {
+                int column = table.getColumn(attribute.getName());
+                if (column != -1)
+                    table.setValue(0, column, attribute.getValue());
+            }
+            return table;
+        } catch (JMException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forget the MBeans unregistered directly from the MBeanServer, so that they are not kept by this exporter
+     */
+    private void listenToUnregistrations() {
+        if (listening.get() || !listening.compareAndSet(false, true))
+            return;
+        MBeanServerNotificationFilter filter = new MBeanServerNotificationFilter();
+        filter.disableAllTypes();
+        filter.enableType(MBeanServerNotification.UNREGISTRATION_NOTIFICATION);
+        filter.enableAllObjectNames();
+        try {
+            getMBeanServer().addNotificationListener(MBeanServerDelegate.DELEGATE_NAME, unregistrations, filter, getMBeanServer());
+        } catch (JMException e) {
+            listening.set(false);
+            throw new JmxExportException("Unable to listen to the unregistrations of MBean server [" + getMBeanServer() + "]", e);
+        }
+    }
+
+    /**
+     * Stop tracking an MBean unregistered. Its attribute history and meters are released by its own deregistration.
+     */
+    private void forget(ObjectName objectName) {
+        exported.remove(objectName);
+    }
+
+    /**
+     * @return The MBeans registered by this exporter, by ObjectName
+     */
+    Collection<Map.Entry<ObjectName, Object>> exportedMBeans() {
+        return exported.entrySet();
+    }
+
+    /**
+     * @return The MBean registered by this exporter with the given ObjectName, or null
+     */
+    Object exportedMBean(ObjectName objectName) {
+        return exported.get(objectName);
+    }
+
+    /**
+     * @return The MBean built from metadata wrapped by the given registered MBean, or null if it is not built from metadata
+     */
+    static DefaultDynamicMBean unwrap(Object mBean) {
+        if (mBean instanceof LazyDynamicMBean)
+            mBean = ((LazyDynamicMBean) mBean).getDelegate();
+        if (mBean instanceof ContextualDynamicMBean)
+            mBean = ((ContextualDynamicMBean) mBean).getDelegate();
+        return mBean instanceof DefaultDynamicMBean ? (DefaultDynamicMBean) mBean : null;
+    }
+
+    static ClassLoader classLoader(Object mBean) {
+        if (mBean instanceof LazyDynamicMBean)
+            mBean = ((LazyDynamicMBean) mBean).getDelegate();
+        return mBean instanceof ContextualDynamicMBean ? ((ContextualDynamicMBean) mBean).getClassLoader() : null;
+    }
+
+    /**
+     * Forward the MBeans unregistered directly from the MBeanServer to the exporter, which is only weakly
+     * referenced so that the MBeanServer does not keep it alive: the listener removes itself once the
+     * exporter has been collected without being closed. The handback is the MBeanServer listened to.
+     */
+    private static final class UnregistrationListener implements NotificationListener {
+        private final WeakReference<MycilaJmxExporter> exporter;
+
+        UnregistrationListener(MycilaJmxExporter exporter) {
+            this.exporter = new WeakReference<MycilaJmxExporter>(exporter);
+        }
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            MycilaJmxExporter exporter = this.exporter.get();
+            if (exporter == null) {
+                try {
+                    ((MBeanServer) handback).removeNotificationListener(MBeanServerDelegate.DELEGATE_NAME, this);
+                } catch (JMException ignored) {
+                }
+            } else if (notification instanceof MBeanServerNotification)
+                exporter.forget(((MBeanServerNotification) notification).getMBeanName());
+        }
+    }
 }
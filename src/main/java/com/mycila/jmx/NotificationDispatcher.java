@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.metric.Counter;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers the notifications of many {@link NotificationPublisher}s to their listeners from a
+ * single daemon thread, started when the first notification is queued. Publishing only adds the
+ * notification to a bounded lock-free queue, so a slow listener delays the other notifications
+ * but never the publishing threads.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class NotificationDispatcher {
+
+    private static final int DEFAULT_CAPACITY = 8192;
+    private static final NotificationDispatcher SHARED = new NotificationDispatcher("mycila-jmx-notifications", DEFAULT_CAPACITY);
+
+    private final Queue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Counter dropped = new Counter();
+    private final String name;
+    private final int capacity;
+    private volatile Thread thread;
+    private volatile boolean parked;
+    private volatile boolean stopped;
+
+    /**
+     * @param name     Name of the dispatching thread
+     * @param capacity Maximum number of notifications waiting to be delivered
+     */
+    public NotificationDispatcher(String name, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.name = name;
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return The dispatcher used by default by all the publishers
+     */
+    public static NotificationDispatcher shared() {
+        return SHARED;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return The number of notifications waiting to be delivered
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return The number of notifications dropped by all the publishers using this dispatcher
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stop the dispatching thread once the notifications queued are delivered.
+     * It is started again if a notification is queued afterwards.
+     */
+    public synchronized void shutdown() {
+        stopped = true;
+        Thread t = thread;
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    boolean offer(Delivery delivery) {
+        int s;
+        do {
+            s = size.get();
+            if (s >= capacity)
+                return false;
+        } while (!size.compareAndSet(s, s + 1));
+        queue.offer(delivery);
+        Thread t = thread;
+        if (t == null)
+            start();
+        else if (parked)
+            LockSupport.unpark(t);
+        return true;
+    }
+
+    void dropped() {
+        dropped.increment();
+    }
+
+    boolean isDispatchingThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    private synchronized void start() {
+        if (thread != null)
+            return;
+        stopped = false;
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    dispatch();
+                } finally {
+                    exited();
+                }
+            }
+        }, name);
+        t.setDaemon(true);
+        // the thread is shared by the publishers of all the class loaders: it must not hold the one of the first publisher
+        t.setContextClassLoader(null);
+        thread = t;
+        t.start();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Delivery delivery = queue.poll();
+            if (delivery != null) {
+                size.decrementAndGet();
+                try {
+                    delivery.deliver();
+                } catch (Throwable ignored) {
+                    // the dispatching thread is shared: it must keep delivering the other notifications
+                }
+            } else if (stopped) {
+                synchronized (this) {
+                    if (queue.isEmpty()) {
+                        thread = null;
+                        return;
+                    }
+                }
+            } else {
+                // set before checking the queue again so that a publisher seeing it unparks this thread
+                parked = true;
+                if (queue.isEmpty())
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                parked = false;
+            }
+        }
+    }
+
+    /**
+     * Forget the dispatching thread if it stopped abnormally, and start a new one if notifications are still queued
+     */
+    private void exited() {
+        synchronized (this) {
+            if (thread != Thread.currentThread())
+                return;
+            thread = null;
+        }
+        if (!queue.isEmpty())
+            start();
+    }
+
+    /**
+     * A notification waiting to be delivered
+     */
+    static abstract class Delivery {
+        abstract void deliver();
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.metric.Counter;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends notifications to the listeners of the MBeans exporting a managed resource. Declare a
+ * field of this type annotated with {@link com.mycila.jmx.annotation.JmxNotification} in the
+ * managed resource, and publish the notifications through it.
+ * <p/>
+ * Publishing a notification queues it in a {@link NotificationDispatcher}, shared by default, which
+ * delivers it from its own thread. When the queue is full, the {@link OverflowPolicy} decides whether
+ * the notification is dropped or the publishing thread waits.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class NotificationPublisher {
+
+    private static final long BLOCK_PAUSE = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final NotificationDispatcher dispatcher;
+    private final OverflowPolicy overflowPolicy;
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Counter dropped = new Counter();
+    private final Counter coalesced = new Counter();
+    private volatile Object source = this;
+
+    public NotificationPublisher() {
+        this(OverflowPolicy.DROP);
+    }
+
+    public NotificationPublisher(OverflowPolicy overflowPolicy) {
+        this(NotificationDispatcher.shared(), overflowPolicy);
+    }
+
+    public NotificationPublisher(NotificationDispatcher dispatcher, OverflowPolicy overflowPolicy) {
+        this.dispatcher = dispatcher;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return The source of the notifications built by this publisher: the ObjectName of the MBean once exported
+     */
+    public Object getSource() {
+        return source;
+    }
+
+    /**
+     * Publish a notification of the given type, with the next sequence number and the current time
+     */
+    public void publish(String type, String message) {
+        publish(type, message, null);
+    }
+
+    /**
+     * Publish a notification of the given type, with the next sequence number and the current time
+     */
+    public void publish(String type, String message, Object userData) {
+        Notification notification = new Notification(type, source, nextSequenceNumber(), System.currentTimeMillis(), message);
+        notification.setUserData(userData);
+        publish(notification);
+    }
+
+    public void publish(Notification notification) {
+        if (overflowPolicy == OverflowPolicy.COALESCE) {
+            coalesce(notification);
+            return;
+        }
+        Delivery delivery = new Delivery(notification);
+        if (dispatcher.offer(delivery))
+            return;
+        if (overflowPolicy == OverflowPolicy.DROP) {
+            drop();
+            return;
+        }
+        // a listener publishing from the dispatching thread would wait for itself
+        if (dispatcher.isDispatchingThread()) {
+            delivery.deliver();
+            return;
+        }
+        boolean interrupted = false;
+        while (!dispatcher.offer(delivery)) {
+            LockSupport.parkNanos(this, BLOCK_PAUSE);
+            if (Thread.interrupted())
+                interrupted = true;
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * @return The number of notifications dropped because the queue of the dispatcher was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return The number of notifications replaced by a more recent one of the same type, with {@link OverflowPolicy#COALESCE}
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return The sequence number to give to the next notification built
+     */
+    public long nextSequenceNumber() {
+        return sequence.incrementAndGet();
+    }
+
+    public boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    public void addNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) {
+        if (listener == null)
+            throw new IllegalArgumentException("Listener can't be null");
+        listeners.add(new Listener(listener, filter, handback));
+    }
+
+    /**
+     * Remove all the registrations of a listener
+     */
+    public void removeNotificationListener(NotificationListener listener) throws ListenerNotFoundException {
+        List<Listener> removed = new ArrayList<Listener>(1);
+        for (Listener l : listeners)
+            if (l.listener == listener)
+                removed.add(l);
+        if (removed.isEmpty() || !listeners.removeAll(removed))
+            throw new ListenerNotFoundException("Listener not registered: " + listener);
+    }
+
+    /**
+     * Remove the registration of a listener with the given filter and handback
+     */
+    public void removeNotificationListener(NotificationListener listener, NotificationFilter filter, Object handback) throws ListenerNotFoundException {
+        for (Listener l : listeners)
+            if (l.listener == listener && l.filter == filter && l.handback == handback && listeners.remove(l))
+                return;
+        throw new ListenerNotFoundException("Listener not registered: " + listener);
+    }
+
+    /**
+     * Use the ObjectName of the MBean as source of the notifications, unless a source has already been bound
+     */
+    void bind(ObjectName objectName) {
+        if (source == this)
+            source = objectName;
+    }
+
+    private void coalesce(Notification notification) {
+        Slot slot = slots.get(notification.getType());
+        if (slot == null) {
+            Slot existing = slots.putIfAbsent(notification.getType(), slot = new Slot());
+            if (existing != null)
+                slot = existing;
+        }
+        if (slot.pending.getAndSet(notification) != null) {
+            // the slot is already queued and will deliver this notification instead
+            coalesced.increment();
+            return;
+        }
+        if (!dispatcher.offer(slot) && slot.pending.getAndSet(null) != null)
+            drop();
+    }
+
+    private void send(Notification notification) {
+        for (Listener l : listeners) {
+            try {
+                if (l.filter == null || l.filter.isNotificationEnabled(notification))
+                    l.listener.handleNotification(notification, l.handback);
+            } catch (Throwable ignored) {
+                // a failing listener must not prevent the others to be notified, nor stop the dispatching thread
+            }
+        }
+    }
+
+    private void drop() {
+        dropped.increment();
+        dispatcher.dropped();
+    }
+
+    private final class Delivery extends NotificationDispatcher.Delivery {
+        private final Notification notification;
+
+        Delivery(Notification notification) {
+            this.notification = notification;
+        }
+
+        @Override
+        void deliver() {
+            send(notification);
+        }
+    }
+
+    /**
+     * The notification of a type waiting to be delivered. The slot is queued when it gets a notification.
+     */
+    private final class Slot extends NotificationDispatcher.Delivery {
+        private final AtomicReference<Notification> pending = new AtomicReference<Notification>();
+
+        @Override
+        void deliver() {
+            Notification notification = pending.getAndSet(null);
+            if (notification != null)
+                send(notification);
+        }
+    }
+
+    private static final class Listener {
+        final NotificationListener listener;
+        final NotificationFilter filter;
+        final Object handback;
+
+        Listener(NotificationListener listener, NotificationFilter filter, Object handback) {
+            this.listener = listener;
+            this.filter = filter;
+            this.handback = handback;
+        }
+    }
+}
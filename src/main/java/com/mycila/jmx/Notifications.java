@@ -0,0 +1,71 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.cache.CacheLoader;
+
+import javax.management.ObjectName;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the {@link NotificationPublisher}s referenced by the fields of a managed resource.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+final class Notifications {
+
+    private static final IntrospectionCache<List<Field>> publisherFields = IntrospectionCache.shared("publisherFields", new CacheLoader<Class<?>, List<Field>>() {
+        @Override
+        public List<Field> load(Class<?> clazz) {
+            List<Field> fields = new ArrayList<Field>();
+            for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass())
+                for (Field field : c.getDeclaredFields())
+                    if (field.getType() == NotificationPublisher.class) {
+                        field.setAccessible(true);
+                        fields.add(field);
+                    }
+            return fields;
+        }
+    });
+
+    private Notifications() {
+    }
+
+    static List<NotificationPublisher> publishers(Object managedResource) {
+        List<Field> fields = publisherFields.get(managedResource.getClass());
+        List<NotificationPublisher> publishers = new ArrayList<NotificationPublisher>(fields.size());
+        for (Field field : fields) {
+            try {
+                NotificationPublisher publisher = (NotificationPublisher) field.get(managedResource);
+                if (publisher != null)
+                    publishers.add(publisher);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+        return publishers;
+    }
+
+    /**
+     * Use the ObjectName of the MBean as source of the notifications published by a managed resource
+     */
+    static void bind(Object managedResource, ObjectName objectName) {
+        for (NotificationPublisher publisher : publishers(managedResource))
+            publisher.bind(objectName);
+    }
+}
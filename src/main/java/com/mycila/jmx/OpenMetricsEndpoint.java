@@ -0,0 +1,424 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.collect.MapMaker;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.Descriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the numeric attributes of the MBeans registered by a {@link MycilaJmxExporter} in the OpenMetrics
+ * text format scraped by Prometheus, over the HTTP server of the JDK. Only the MBeans built from metadata are
+ * served, and they are read directly, without going through the MBeanServer.
+ * <p/>
+ * The metric families are described once per exported class, from the descriptors set by
+ * {@link com.mycila.jmx.annotation.JmxMetric}: <code>metricType</code> gives the type of the family
+ * (<code>counter</code> or <code>gauge</code>), <code>units</code> its unit and the suffix of its name, and
+ * <code>metricCategory</code> the prefix of its name, which defaults to the simple name of the class.
+ * The key properties of the ObjectName of an MBean are the labels of its samples, encoded once per MBean.
+ * A scrape is written into a buffer reused from one scrape to the next.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class OpenMetricsEndpoint implements HttpHandler {
+
+    public static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] EOF = "# EOF\n".getBytes(UTF_8);
+    private static final Set<String> NUMERIC_TYPES = new HashSet<String>(Arrays.asList(
+        "byte", "short", "int", "long", "float", "double", "boolean",
+        Byte.class.getName(), Short.class.getName(), Integer.class.getName(), Long.class.getName(),
+        Float.class.getName(), Double.class.getName(), Boolean.class.getName(), Number.class.getName(),
+        AtomicInteger.class.getName(), AtomicLong.class.getName(),
+        "java.math.BigInteger", "java.math.BigDecimal"));
+
+    private final MycilaJmxExporter exporter;
+    private final ObjectName pattern;
+    private final Map<IndexedJmxMetadata, Family[]> families = new MapMaker().weakKeys().makeMap();
+    private final Map<ObjectName, byte[]> labels = new MapMaker().weakKeys().makeMap();
+    private final Buffer buffer = new Buffer();
+
+    public OpenMetricsEndpoint(MycilaJmxExporter exporter) {
+        this(exporter, null);
+    }
+
+    /**
+     * @param exporter The exporter of the MBeans to serve
+     * @param pattern  The ObjectName pattern of the MBeans to serve, or null to serve all the MBeans of the exporter
+     */
+    public OpenMetricsEndpoint(MycilaJmxExporter exporter, ObjectName pattern) {
+        this.exporter = exporter;
+        this.pattern = pattern;
+    }
+
+    /**
+     * Start an HTTP server serving the metrics on <code>/metrics</code>. Scrapes are handled by the
+     * dispatching thread of the server.
+     *
+     * @return The started server, to stop when done
+     */
+    public HttpServer start(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", this);
+        server.start();
+        return server;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            synchronized (buffer) {
+                scrape();
+                exchange.sendResponseHeaders(200, buffer.size);
+                buffer.writeTo(exchange.getResponseBody());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Write the current values of the metrics to the given stream
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        synchronized (buffer) {
+            scrape();
+            buffer.writeTo(out);
+        }
+    }
+
+    private void scrape() {
+        buffer.reset();
+        Map<IndexedJmxMetadata, Rows> groups = new IdentityHashMap<IndexedJmxMetadata, Rows>();
+        for (Map.Entry<ObjectName, Object> entry : exporter.exportedMBeans()) {
+            if (pattern != null && !pattern.apply(entry.getKey()))
+                continue;
+            DefaultDynamicMBean mBean = MycilaJmxExporter.unwrap(entry.getValue());
+            if (mBean == null)
+                continue;
+            Rows rows = groups.get(mBean.getIndexedJmxMetadata());
+            if (rows == null)
+                groups.put(mBean.getIndexedJmxMetadata(), rows = new Rows());
+            rows.add(entry.getKey(), mBean, MycilaJmxExporter.classLoader(entry.getValue()));
+        }
+        // classes may share family names: the samples of a family must all follow its description
+        Map<String, List<Column>> byName = new LinkedHashMap<String, List<Column>>();
+        for (Map.Entry<IndexedJmxMetadata, Rows> group : groups.entrySet()) {
+            for (Family family : getFamilies(group.getKey())) {
+                List<Column> columns = byName.get(family.name);
+                if (columns == null)
+                    byName.put(family.name, columns = new ArrayList<Column>(1));
+                columns.add(new Column(family, group.getValue()));
+            }
+        }
+        for (List<Column> columns : byName.values()) {
+            buffer.write(columns.get(0).family.header);
+            for (Column column : columns)
+                writeSamples(column.family, column.rows);
+        }
+        buffer.write(EOF);
+    }
+
+    private void writeSamples(Family family, Rows rows) {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        ClassLoader current = original;
+        try {
+            for (int row = 0; row < rows.size; row++) {
+                ClassLoader classLoader = rows.classLoaders[row];
+                if (classLoader != null && classLoader != current)
+                    thread.setContextClassLoader(current = classLoader);
+                Object value;
+                try {
+                    value = family.attribute.get(rows.mBeans[row].getManagedResource());
+                } catch (ReflectionException e) {
+                    continue;
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                if (!(value instanceof Number) && !(value instanceof Boolean))
+                    continue;
+                buffer.write(family.sample);
+                buffer.write(getLabels(rows.objectNames[row]));
+                buffer.write(' ');
+                buffer.writeValue(value);
+                buffer.write('\n');
+            }
+        } finally {
+            if (current != original)
+                thread.setContextClassLoader(original);
+        }
+    }
+
+    private Family[] getFamilies(IndexedJmxMetadata metadata) {
+        Family[] f = families.get(metadata);
+        if (f == null)
+            families.put(metadata, f = Family.of(metadata));
+        return f;
+    }
+
+    private byte[] getLabels(ObjectName objectName) {
+        byte[] encoded = labels.get(objectName);
+        if (encoded == null) {
+            StringBuilder sb = new StringBuilder("{domain=\"");
+            escape(sb, objectName.getDomain());
+            sb.append('"');
+            for (Map.Entry<String, String> property : new TreeMap<String, String>(objectName.getKeyPropertyList()).entrySet()) {
+                String value = property.getValue();
+                if (value.length() > 1 && value.charAt(0) == '"')
+                    value = ObjectName.unquote(value);
+                sb.append(',').append(sanitize(property.getKey(), false)).append("=\"");
+                escape(sb, value);
+                sb.append('"');
+            }
+            labels.put(objectName, encoded = sb.append('}').toString().getBytes(UTF_8));
+        }
+        return encoded;
+    }
+
+    /**
+     * @param snakeCase true to split camel case words with underscores and lower their case
+     * @return A valid metric or label name
+     */
+    static String sanitize(String name, boolean snakeCase) {
+        StringBuilder sb = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                if (snakeCase && Character.isUpperCase(c)) {
+                    if (i > 0 && !Character.isUpperCase(name.charAt(i - 1)) && sb.length() > 0 && sb.charAt(sb.length() - 1) != '_')
+                        sb.append('_');
+                    c = Character.toLowerCase(c);
+                }
+                sb.append(c);
+            } else if (c == '/' && snakeCase) {
+                sb.append("_per_");
+            } else if (sb.length() == 0 || sb.charAt(sb.length() - 1) != '_')
+                sb.append('_');
+        }
+        if (sb.length() == 0 || Character.isDigit(sb.charAt(0)))
+            sb.insert(0, '_');
+        return sb.toString();
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"')
+                sb.append('\\').append(c);
+            else if (c == '\n')
+                sb.append("\\n");
+            else
+                sb.append(c);
+        }
+    }
+
+    /**
+     * A numeric attribute of a class, with its description and the name of its samples encoded once
+     */
+    private static final class Family {
+        final String name;
+        final JmxAttribute attribute;
+        final byte[] header;
+        final byte[] sample;
+
+        private Family(String name, JmxAttribute attribute, byte[] header, byte[] sample) {
+            this.name = name;
+            this.attribute = attribute;
+            this.header = header;
+            this.sample = sample;
+        }
+
+        static Family[] of(IndexedJmxMetadata metadata) {
+            String className = metadata.getMBeanInfo().getClassName();
+            String simpleName = className.substring(Math.max(className.lastIndexOf('.'), className.lastIndexOf('$')) + 1);
+            List<Family> families = new ArrayList<Family>(metadata.getAttributeCount());
+            for (int slot = 0; slot < metadata.getAttributeCount(); slot++) {
+                JmxAttribute attribute = metadata.getAttribute(slot);
+                MBeanAttributeInfo info = attribute.getMetadata();
+                if (!info.isReadable() || !NUMERIC_TYPES.contains(info.getType()))
+                    continue;
+                Descriptor desc = info.getDescriptor();
+                Object category = desc == null ? null : desc.getFieldValue("metricCategory");
+                Object units = desc == null ? null : desc.getFieldValue("units");
+                boolean counter = desc != null && MetricType.COUNTER.toString().equals(desc.getFieldValue("metricType"));
+                String name = sanitize(category == null ? simpleName : category.toString(), true) + "_" + sanitize(attribute.getName(), true);
+                if (counter && name.endsWith("_total"))
+                    name = name.substring(0, name.length() - 6);
+                String unit = units == null ? null : sanitize(units.toString(), true);
+                if (unit != null && !name.endsWith("_" + unit))
+                    name += "_" + unit;
+                StringBuilder header = new StringBuilder();
+                header.append("# TYPE ").append(name).append(counter ? " counter\n" : " gauge\n");
+                if (unit != null)
+                    header.append("# UNIT ").append(name).append(' ').append(unit).append('\n');
+                if (info.getDescription() != null && info.getDescription().length() > 0) {
+                    header.append("# HELP ").append(name).append(' ');
+                    escape(header, info.getDescription());
+                    header.append('\n');
+                }
+                families.add(new Family(name, attribute, header.toString().getBytes(UTF_8), (counter ? name + "_total" : name).getBytes(UTF_8)));
+            }
+            return families.toArray(new Family[families.size()]);
+        }
+    }
+
+    /**
+     * The MBeans of one class matching the pattern
+     */
+    private static final class Rows {
+        ObjectName[] objectNames = new ObjectName[8];
+        DefaultDynamicMBean[] mBeans = new DefaultDynamicMBean[8];
+        ClassLoader[] classLoaders = new ClassLoader[8];
+        int size;
+
+        void add(ObjectName objectName, DefaultDynamicMBean mBean, ClassLoader classLoader) {
+            if (size == mBeans.length) {
+                objectNames = Arrays.copyOf(objectNames, size * 2);
+                mBeans = Arrays.copyOf(mBeans, size * 2);
+                classLoaders = Arrays.copyOf(classLoaders, size * 2);
+            }
+            objectNames[size] = objectName;
+            mBeans[size] = mBean;
+            classLoaders[size++] = classLoader;
+        }
+    }
+
+    /**
+     * The samples of a family for the MBeans of one class
+     */
+    private static final class Column {
+        final Family family;
+        final Rows rows;
+
+        Column(Family family, Rows rows) {
+            this.family = family;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * A growing array of bytes, writing numbers without creating strings
+     */
+    private static final class Buffer {
+        private static final byte[] MIN_LONG = String.valueOf(Long.MIN_VALUE).getBytes(UTF_8);
+        private static final byte[] NAN = "NaN".getBytes(UTF_8);
+        private static final byte[] POSITIVE_INFINITY = "+Inf".getBytes(UTF_8);
+        private static final byte[] NEGATIVE_INFINITY = "-Inf".getBytes(UTF_8);
+
+        private final StringBuilder decimal = new StringBuilder(32);
+        private byte[] bytes = new byte[8192];
+        private int size;
+
+        void reset() {
+            size = 0;
+        }
+
+        void write(int b) {
+            ensure(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        void writeValue(Object value) {
+            if (value instanceof Boolean)
+                write(((Boolean) value) ? '1' : '0');
+            else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte
+                || value instanceof AtomicLong || value instanceof AtomicInteger)
+                writeLong(((Number) value).longValue());
+            else
+                writeDouble(((Number) value).doubleValue());
+        }
+
+        void writeLong(long v) {
+            if (v == Long.MIN_VALUE) {
+                write(MIN_LONG);
+                return;
+            }
+            if (v < 0) {
+                write('-');
+                v = -v;
+            }
+            int digits = 1;
+            for (long n = v; n >= 10; n /= 10)
+                digits++;
+            ensure(digits);
+            for (int i = size + digits - 1; i >= size; i--, v /= 10)
+                bytes[i] = (byte) ('0' + v % 10);
+            size += digits;
+        }
+
+        void writeDouble(double v) {
+            if (Double.isNaN(v))
+                write(NAN);
+            else if (v == Double.POSITIVE_INFINITY)
+                write(POSITIVE_INFINITY);
+            else if (v == Double.NEGATIVE_INFINITY)
+                write(NEGATIVE_INFINITY);
+            else if (v == (long) v && Math.abs(v) < 1e15)
+                writeLong((long) v);
+            else {
+                decimal.setLength(0);
+                decimal.append(v);
+                ensure(decimal.length());
+                for (int i = 0; i < decimal.length(); i++)
+                    bytes[size++] = (byte) decimal.charAt(i);
+            }
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(bytes, 0, size);
+        }
+
+        private void ensure(int length) {
+            if (size + length > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+/**
+ * What a {@link NotificationPublisher} does when the queue of its {@link NotificationDispatcher} is full
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public enum OverflowPolicy {
+    /**
+     * The notification is dropped and counted
+     */
+    DROP,
+
+    /**
+     * Only the latest notification of each type is kept while waiting to be dispatched: a notification
+     * replaces the pending one of the same type, so that a type never takes more than one slot of the queue.
+     * A notification which cannot be queued is dropped.
+     */
+    COALESCE,
+
+    /**
+     * The publishing thread waits until the notification can be queued
+     */
+    BLOCK
+}
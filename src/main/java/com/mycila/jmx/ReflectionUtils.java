@@ -15,22 +15,37 @@
  */
 package com.mycila.jmx;
 
-import java.lang.ref.Reference;
-import java.lang.ref.WeakReference;
+import com.google.common.cache.CacheLoader;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
 
 /**
  * @author Mathieu Carbou (mathieu.carbou@gmail.com)
  */
 final class ReflectionUtils {
 
-    private static final Map<Class<?>, Reference<Collection<Method>>> declaredMethods = new WeakHashMap<Class<?>, Reference<Collection<Method>>>();
+    private static final IntrospectionCache<Collection<Method>> declaredMethods = IntrospectionCache.shared("declaredMethods", new CacheLoader<Class<?>, Collection<Method>>() {
+        @Override
+        public Collection<Method> load(Class<?> clazz) {
+            Map<Signature, Method> signatureMethod = new LinkedHashMap<Signature, Method>();
+            for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+                Method[] methods = c.isInterface() ? c.getMethods() : c.getDeclaredMethods();
+                for (Method method : methods) {
+                    Signature signature = new Signature(method);
+                    if (method.isSynthetic() || method.isBridge() || signatureMethod.containsKey(signature))
+                        continue;
+                    signatureMethod.put(signature, method);
+                }
+            }
+            return Collections.unmodifiableCollection(signatureMethod.values());
+        }
+    });
 
     private ReflectionUtils() {
     }
@@ -61,26 +76,7 @@ final class ReflectionUtils {
     }
 
     public static Collection<Method> getDeclaredMethods(Class<?> clazz) {
-        Reference<Collection<Method>> ref = declaredMethods.get(clazz);
-        Collection<Method> list;
-        if (ref != null) {
-            list = ref.get();
-            if (list != null)
-                return list;
-        }
-        Map<Signature, Method> signatureMethod = new LinkedHashMap<Signature, Method>();
-        while (clazz != null) {
-            Method[] methods = clazz.isInterface() ? clazz.getMethods() : clazz.getDeclaredMethods();
-            for (Method method : methods) {
-                Signature signature = new Signature(method);
-                if (method.isSynthetic() || method.isBridge() || signatureMethod.containsKey(signature))
-                    continue;
-                signatureMethod.put(signature, method);
-            }
-            clazz = clazz.getSuperclass();
-        }
-        declaredMethods.put(clazz, new WeakReference<Collection<Method>>(list = signatureMethod.values()));
-        return list;
+        return declaredMethods.get(clazz);
     }
 
     /**
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import javax.management.ObjectName;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch registration: the ObjectNames registered, in the order of the
+ * managed resources given, the ObjectNames skipped because already registered,
+ * and the managed resources which could not be registered.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class RegistrationReport {
+
+    private final List<ObjectName> registered;
+    private final List<ObjectName> skipped = new ArrayList<ObjectName>();
+    private final List<Failure> failures = new ArrayList<Failure>();
+
+    RegistrationReport(int size) {
+        this.registered = new ArrayList<ObjectName>(size);
+    }
+
+    void registered(ObjectName objectName) {
+        registered.add(objectName);
+    }
+
+    void skipped(ObjectName objectName) {
+        skipped.add(objectName);
+    }
+
+    void failed(Object managedResource, JmxExportException exception) {
+        failures.add(new Failure(managedResource, exception));
+    }
+
+    public List<ObjectName> getRegistered() {
+        return Collections.unmodifiableList(registered);
+    }
+
+    /**
+     * @return The ObjectNames already registered, kept according to {@link ExportBehavior#SKIP_EXISTING}
+     */
+    public List<ObjectName> getSkipped() {
+        return Collections.unmodifiableList(skipped);
+    }
+
+    public List<Failure> getFailures() {
+        return Collections.unmodifiableList(failures);
+    }
+
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "registered=" + registered.size() + ", skipped=" + skipped.size() + ", failures=" + failures.size();
+    }
+
+    public static final class Failure {
+        private final Object managedResource;
+        private final JmxExportException exception;
+
+        Failure(Object managedResource, JmxExportException exception) {
+            this.managedResource = managedResource;
+            this.exception = exception;
+        }
+
+        public Object getManagedResource() {
+            return managedResource;
+        }
+
+        public JmxExportException getException() {
+            return exception;
+        }
+
+        @Override
+        public String toString() {
+            return exception.getMessage();
+        }
+    }
+}
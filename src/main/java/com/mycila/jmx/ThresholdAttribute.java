@@ -0,0 +1,140 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import javax.management.InvalidAttributeValueException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.ReflectionException;
+
+/**
+ * A numeric attribute sampled by an {@link AttributeSampler} to notify the listeners of its MBeans
+ * when its value crosses a threshold or changes by more than a delta. Thresholds and delta which
+ * are not used are {@link Double#NaN}.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class ThresholdAttribute implements JmxAttribute {
+
+    private final JmxAttribute delegate;
+    private final double high;
+    private final double low;
+    private final double delta;
+
+    public ThresholdAttribute(JmxAttribute delegate, double high, double low, double delta) {
+        if (Double.isNaN(high) && Double.isNaN(low) && Double.isNaN(delta))
+            throw new IllegalArgumentException("No threshold nor delta for attribute " + delegate);
+        if (!Double.isNaN(high) && !Double.isNaN(low) && low > high)
+            throw new IllegalArgumentException("Low threshold greater than high threshold for attribute " + delegate + ": " + low + " > " + high);
+        if (delta <= 0)
+            throw new IllegalArgumentException("Invalid delta for attribute " + delegate + ": " + delta);
+        this.delegate = delegate;
+        this.high = high;
+        this.low = low;
+        this.delta = delta;
+    }
+
+    public JmxAttribute getDelegate() {
+        return delegate;
+    }
+
+    public double getHigh() {
+        return high;
+    }
+
+    public double getLow() {
+        return low;
+    }
+
+    public double getDelta() {
+        return delta;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public MBeanAttributeInfo getMetadata() {
+        return delegate.getMetadata();
+    }
+
+    @Override
+    public Object get(Object managedResource) throws ReflectionException {
+        return delegate.get(managedResource);
+    }
+
+    @Override
+    public void set(Object managedResource, Object value) throws InvalidAttributeValueException, ReflectionException {
+        delegate.set(managedResource, value);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    /**
+     * The state of the attribute of an MBean between two samples
+     */
+    final class Sample {
+        private boolean initialized;
+        private boolean highArmed;
+        private boolean lowArmed;
+        private double notified;
+        private Object previous;
+
+        ThresholdAttribute getAttribute() {
+            return ThresholdAttribute.this;
+        }
+
+        Object getPrevious() {
+            return previous;
+        }
+
+        /**
+         * @return The reason to notify the listeners of this new value, or null
+         */
+        String update(Object value) {
+            double v = ((Number) value).doubleValue();
+            if (!initialized) {
+                initialized = true;
+                highArmed = !(v >= high);
+                lowArmed = !(v <= low);
+                notified = v;
+                previous = value;
+                return null;
+            }
+            String reason = null;
+            if (highArmed && v >= high) {
+                reason = getName() + " reached the high threshold " + high;
+                highArmed = false;
+            } else if (!highArmed && (Double.isNaN(low) ? v < high : v <= low))
+                highArmed = true;
+            if (lowArmed && v <= low) {
+                reason = getName() + " reached the low threshold " + low;
+                lowArmed = false;
+            } else if (!lowArmed && (Double.isNaN(high) ? v > low : v >= high))
+                lowArmed = true;
+            if (reason == null && Math.abs(v - notified) >= delta)
+                reason = getName() + " changed by more than " + delta;
+            if (reason != null)
+                notified = v;
+            previous = value;
+            return reason;
+        }
+    }
+}
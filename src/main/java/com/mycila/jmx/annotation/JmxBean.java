@@ -52,4 +52,20 @@ public @interface JmxBean {
      */
     Class<? extends JmxMetadataAssembler> assembler() default AnnotationMetadataAssembler.class;
 
+    /**
+     * Record the number of invocations, the errors and the total and maximum durations of each
+     * exported operation, and export them as attributes named after the operation: i.e.
+     * <code>reindexCallCount</code>, <code>reindexErrorCount</code>, <code>reindexTotalTime</code>
+     * and <code>reindexMaxTime</code>. Operations are not wrapped when disabled.
+     */
+    boolean statistics() default false;
+
+    /**
+     * Number of samples kept of each numeric metric attribute (see {@link JmxMetric}), recorded
+     * periodically by the {@link com.mycila.jmx.AttributeRecorder} of the exporter into a ring buffer
+     * allocated outside of the heap. The samples are queried with the <code>attributeHistory</code>
+     * operations (see {@link com.mycila.jmx.AttributeHistory}). Nothing is recorded when 0.
+     */
+    int history() default 0;
+
 }
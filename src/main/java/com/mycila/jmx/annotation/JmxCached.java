@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache the value of an attribute exposed with {@link JmxField} or {@link JmxProperty}.
+ * The value read is served to all callers until the TTL expires. When it expires, only
+ * one caller reads the field or calls the getter again; the others wait for its result.
+ * <p/>
+ * Two read-only attributes are added to the MBean for each cached attribute:
+ * <code>&lt;Name&gt;CacheHits</code> and <code>&lt;Name&gt;CacheMisses</code>.
+ * Writing the attribute invalidates its cached value.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmxCached {
+
+    /**
+     * Time during which the value read is kept
+     */
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+}
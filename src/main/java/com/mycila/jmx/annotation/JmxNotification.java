@@ -0,0 +1,53 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.annotation;
+
+import javax.management.Notification;
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declare the notifications sent through a {@link com.mycila.jmx.NotificationPublisher} field.
+ * They are described in the <code>MBeanInfo</code>, and the listeners added to the MBean
+ * receive the notifications published.
+ * <pre>
+ * &#64;JmxNotification(value = "cache.rebuilt", description = "Sent when the cache has been rebuilt")
+ * final NotificationPublisher notifications = new NotificationPublisher();
+ * </pre>
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmxNotification {
+
+    /**
+     * Types of the notifications sent, i.e. <code>cache.rebuilt</code>
+     */
+    String[] value();
+
+    String description() default "";
+
+    /**
+     * Class of the notifications sent
+     */
+    Class<? extends Notification> notificationClass() default Notification.class;
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Send an <code>AttributeChangeNotification</code> when the value of a numeric attribute exposed
+ * with {@link JmxField} or {@link JmxProperty} crosses a threshold or changes by more than a delta,
+ * so that clients can add a listener instead of polling the attribute.
+ * <p/>
+ * The attributes of all the MBeans of an exporter are sampled by a single thread, only while the MBean
+ * has listeners. As with <code>javax.management.monitor.GaugeMonitor</code>, when both thresholds are
+ * given, the high threshold is notified again only after the value went down to the low threshold
+ * and conversely, so that a value oscillating around a threshold does not flood the listeners.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@Target({ElementType.FIELD, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface JmxThreshold {
+
+    /**
+     * Notify when the value rises to or above this threshold
+     */
+    double high() default Double.NaN;
+
+    /**
+     * Notify when the value falls to or below this threshold
+     */
+    double low() default Double.NaN;
+
+    /**
+     * Notify when the value differs by at least this delta from the value last notified
+     */
+    double delta() default Double.NaN;
+
+}
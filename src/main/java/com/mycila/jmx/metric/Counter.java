@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter which can be incremented concurrently by many threads without contending on
+ * a single memory location. Updates go to a single value until two threads collide: from
+ * then on, each thread updates the stripe picked by a hash of its id, padded to its own cache
+ * line. There are as many stripes as processors, rounded up to a power of two (at most 64), and threads whose
+ * ids hash to the same stripe share it: contention is reduced, not removed. Reading sums
+ * the stripes, so a value read while updates are in progress is not an atomic snapshot.
+ * <p/>
+ * Exported as a <code>long</code> attribute when used as a JMX field.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Counter {
+
+    // number of longs in a cache line: stripes are spaced by this to avoid false sharing
+    private static final int PADDING = 8;
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLong base = new AtomicLong();
+    private volatile AtomicLongArray stripes;
+
+    public void increment() {
+        add(1);
+    }
+
+    public void decrement() {
+        add(-1);
+    }
+
+    public void add(long delta) {
+        AtomicLongArray s = stripes;
+        if (s == null) {
+            long value = base.get();
+            if (base.compareAndSet(value, value + delta))
+                return;
+            s = stripes();
+        }
+        s.getAndAdd(index(), delta);
+    }
+
+    /**
+     * @return The sum of all the updates
+     */
+    public long get() {
+        long sum = base.get();
+        AtomicLongArray s = stripes;
+        if (s != null)
+            for (int i = PADDING; i < s.length(); i += PADDING)
+                sum += s.get(i);
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+
+    private AtomicLongArray stripes() {
+        AtomicLongArray s = stripes;
+        if (s == null) {
+            synchronized (this) {
+                s = stripes;
+                if (s == null)
+                    stripes = s = new AtomicLongArray((STRIPES + 1) * PADDING);
+            }
+        }
+        return s;
+    }
+
+    private static int index() {
+        // spread thread ids so that consecutive ids do not end up on neighbour stripes
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        return (((int) (id >>> 32) & (STRIPES - 1)) + 1) * PADDING;
+    }
+
+    static int stripes(int processors) {
+        int stripes = 1;
+        while (stripes < processors && stripes < 64)
+            stripes <<= 1;
+        return stripes;
+    }
+}
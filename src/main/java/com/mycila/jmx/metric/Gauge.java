@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value which goes up and down, updated without locking.
+ * <p/>
+ * Exported as a <code>long</code> attribute when used as a JMX field.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Gauge {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public void set(long value) {
+        this.value.set(value);
+    }
+
+    public long add(long delta) {
+        return value.addAndGet(delta);
+    }
+
+    /**
+     * Set the value if it is greater than the current one
+     */
+    public void max(long value) {
+        long current;
+        while (value > (current = this.value.get()))
+            if (this.value.compareAndSet(current, value))
+                return;
+    }
+
+    /**
+     * Set the value if it is lower than the current one
+     */
+    public void min(long value) {
+        long current;
+        while (value < (current = this.value.get()))
+            if (this.value.compareAndSet(current, value))
+                return;
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(get());
+    }
+}
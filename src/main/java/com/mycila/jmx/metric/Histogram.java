@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of recorded values (i.e. latencies in nanoseconds) in a fixed number of
+ * log-linear buckets: each power of two is split in <code>2^precisionBits</code> buckets, so
+ * values are tracked with a relative error below <code>1 / 2^precisionBits</code> (about 3%
+ * with the default 5 bits). Memory does not grow with the number of samples and recording a
+ * value does not allocate nor lock.
+ * <p/>
+ * By default the statistics cover all the values recorded. With an interval, they cover the
+ * values recorded during the last complete interval: the interval is rotated when the
+ * statistics are read after it has elapsed, so all the statistics read during an interval are
+ * consistent. Min and max of an interval are precise up to the bucket resolution. Without an
+ * interval, a snapshot is reused until a value is recorded, so that reading all the statistics
+ * of an idle histogram copies its buckets once.
+ * <p/>
+ * Exported as the attributes <code>&lt;name&gt;Count</code>, <code>&lt;name&gt;Min</code>,
+ * <code>&lt;name&gt;Max</code>, <code>&lt;name&gt;Mean</code>, <code>&lt;name&gt;P50</code>,
+ * <code>&lt;name&gt;P90</code>, <code>&lt;name&gt;P99</code> and <code>&lt;name&gt;P999</code>.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Histogram {
+
+    private static final int DEFAULT_PRECISION_BITS = 5;
+    private static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    private final int precisionBits;
+    private final int subBuckets;
+    private final long highestTrackableValue;
+    private final long intervalNanos;
+    private final AtomicLongArray buckets;
+    private final Counter sum = new Counter();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+    // number of values recorded, incremented once a value is in its bucket
+    private final Counter recorded = new Counter();
+    private volatile Snapshot lastSnapshot;
+
+    // interval mode: cumulative values at the last rotation, and statistics of the last interval
+    private long[] previousBuckets;
+    private long previousSum;
+    private long rotatedAt;
+    private Snapshot lastInterval;
+
+    public Histogram() {
+        this(DEFAULT_HIGHEST_TRACKABLE_VALUE, DEFAULT_PRECISION_BITS);
+    }
+
+    /**
+     * @param highestTrackableValue Greater values are recorded as this value
+     * @param precisionBits         Number of bits of precision kept for each value, between 1 and 10
+     */
+    public Histogram(long highestTrackableValue, int precisionBits) {
+        this(highestTrackableValue, precisionBits, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param highestTrackableValue Greater values are recorded as this value
+     * @param precisionBits         Number of bits of precision kept for each value, between 1 and 10
+     * @param interval              Duration of an interval, or 0 to report statistics on all the values recorded
+     */
+    public Histogram(long highestTrackableValue, int precisionBits, long interval, TimeUnit intervalUnit) {
+        if (precisionBits < 1 || precisionBits > 10)
+            throw new IllegalArgumentException("Precision must be between 1 and 10 bits: " + precisionBits);
+        if (highestTrackableValue < 1)
+            throw new IllegalArgumentException("Invalid highest trackable value: " + highestTrackableValue);
+        if (interval < 0)
+            throw new IllegalArgumentException("Invalid interval: " + interval);
+        this.precisionBits = precisionBits;
+        this.subBuckets = 1 << precisionBits;
+        this.highestTrackableValue = highestTrackableValue;
+        this.intervalNanos = intervalUnit.toNanos(interval);
+        this.buckets = new AtomicLongArray(index(highestTrackableValue) + 1);
+        if (intervalNanos > 0) {
+            this.previousBuckets = new long[buckets.length()];
+            this.rotatedAt = System.nanoTime();
+            this.lastInterval = new Snapshot(new long[buckets.length()], 0, 0, -1, -1, 0);
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0)
+            value = 0;
+        else if (value > highestTrackableValue)
+            value = highestTrackableValue;
+        buckets.incrementAndGet(index(value));
+        sum.add(value);
+        long current;
+        while (value < (current = min.get()))
+            if (min.compareAndSet(current, value))
+                break;
+        while (value > (current = max.get()))
+            if (max.compareAndSet(current, value))
+                break;
+        recorded.increment();
+    }
+
+    public void record(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration));
+    }
+
+    /**
+     * @return The statistics of all the values recorded, or of the last complete interval
+     */
+    public Snapshot getSnapshot() {
+        return getSnapshot(System.nanoTime());
+    }
+
+    Snapshot getSnapshot(long now) {
+        if (intervalNanos == 0) {
+            long version = recorded.get();
+            Snapshot snapshot = lastSnapshot;
+            if (snapshot != null && snapshot.version == version)
+                return snapshot;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = buckets.get(i);
+            return lastSnapshot = new Snapshot(counts, sum.get(), count(counts), min.get(), max.get(), version);
+        }
+        synchronized (this) {
+            if (now - rotatedAt >= intervalNanos) {
+                long[] counts = new long[buckets.length()];
+                for (int i = 0; i < counts.length; i++) {
+                    long cumulated = buckets.get(i);
+                    counts[i] = cumulated - previousBuckets[i];
+                    previousBuckets[i] = cumulated;
+                }
+                long cumulatedSum = sum.get();
+                long count = count(counts);
+                lastInterval = new Snapshot(counts, cumulatedSum - previousSum, count,
+                    count == 0 ? -1 : Math.max(min.get(), lowestValue(first(counts))),
+                    count == 0 ? -1 : Math.min(max.get(), highestValue(last(counts))), 0);
+                previousSum = cumulatedSum;
+                rotatedAt = now;
+            }
+            return lastInterval;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return getSnapshot().toString();
+    }
+
+    int index(long value) {
+        if (value < subBuckets)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - precisionBits;
+        return (shift + 1) * subBuckets + (int) (value >>> shift) - subBuckets;
+    }
+
+    long lowestValue(int index) {
+        if (index < subBuckets)
+            return index;
+        int shift = index / subBuckets - 1;
+        return (long) (subBuckets + index % subBuckets) << shift;
+    }
+
+    long highestValue(int index) {
+        if (index < subBuckets)
+            return index;
+        int shift = index / subBuckets - 1;
+        return ((long) (subBuckets + index % subBuckets + 1) << shift) - 1;
+    }
+
+    private static long count(long[] counts) {
+        long count = 0;
+        for (long c : counts)
+            count += c;
+        return count;
+    }
+
+    private static int first(long[] counts) {
+        for (int i = 0; i < counts.length; i++)
+            if (counts[i] != 0)
+                return i;
+        return -1;
+    }
+
+    private static int last(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--)
+            if (counts[i] != 0)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Statistics of the values recorded in a histogram at a point in time
+     */
+    public final class Snapshot {
+        private final long[] counts;
+        private final long sum;
+        private final long count;
+        private final long min;
+        private final long max;
+        // number of values recorded before the buckets were copied
+        private final long version;
+
+        private Snapshot(long[] counts, long sum, long count, long min, long max, long version) {
+            this.counts = counts;
+            this.sum = sum;
+            this.count = count;
+            this.min = count == 0 ? 0 : min;
+            this.max = count == 0 ? 0 : max;
+            this.version = version;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile Between 0 and 100
+         * @return The highest value equivalent, at the bucket resolution, to the value at this percentile, or 0 if no value has been recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.max(min, Math.min(max, highestValue(i)));
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", min=" + min + ", max=" + max + ", mean=" + getMean()
+                + ", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99);
+        }
+    }
+}
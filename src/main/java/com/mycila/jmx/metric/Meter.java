@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rate of events: the mean rate since creation and the one, five and fifteen
+ * minutes exponentially weighted moving average rates, in events per second, as the UNIX
+ * load averages do. Marking an event only updates a striped {@link Counter}: the moving
+ * averages are updated every 5 seconds, from the count, by a {@link MeterTicker} or when
+ * the rates are read.
+ * <p/>
+ * Exported as the <code>long</code> attribute <code>&lt;name&gt;Count</code> and the
+ * <code>double</code> attributes <code>&lt;name&gt;MeanRate</code>, <code>&lt;name&gt;OneMinuteRate</code>,
+ * <code>&lt;name&gt;FiveMinuteRate</code> and <code>&lt;name&gt;FifteenMinuteRate</code>.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Meter {
+
+    static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    private final Counter count = new Counter();
+    private final long startTime;
+
+    // guarded by this
+    private final Ewma m1 = new Ewma(1);
+    private final Ewma m5 = new Ewma(5);
+    private final Ewma m15 = new Ewma(15);
+    private long lastTick;
+    private long lastCount;
+
+    public Meter() {
+        this(System.nanoTime());
+    }
+
+    Meter(long startTime) {
+        this.startTime = startTime;
+        this.lastTick = startTime;
+    }
+
+    public void mark() {
+        count.increment();
+    }
+
+    public void mark(long events) {
+        count.add(events);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The number of events per second since the creation of this meter
+     */
+    public double getMeanRate() {
+        long elapsed = System.nanoTime() - startTime;
+        return elapsed <= 0 ? 0 : getCount() * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * @return The one minute exponentially weighted moving average rate, in events per second
+     */
+    public synchronized double getOneMinuteRate() {
+        tick(System.nanoTime());
+        return m1.rate;
+    }
+
+    /**
+     * @return The five minutes exponentially weighted moving average rate, in events per second
+     */
+    public synchronized double getFiveMinuteRate() {
+        tick(System.nanoTime());
+        return m5.rate;
+    }
+
+    /**
+     * @return The fifteen minutes exponentially weighted moving average rate, in events per second
+     */
+    public synchronized double getFifteenMinuteRate() {
+        tick(System.nanoTime());
+        return m15.rate;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + getMeanRate() + ", m1=" + getOneMinuteRate()
+            + ", m5=" + getFiveMinuteRate() + ", m15=" + getFifteenMinuteRate();
+    }
+
+    /**
+     * Update the moving averages for each tick interval elapsed since the last update
+     */
+    synchronized void tick(long now) {
+        long ticks = (now - lastTick) / TICK_INTERVAL;
+        if (ticks <= 0)
+            return;
+        lastTick += ticks * TICK_INTERVAL;
+        long current = count.get();
+        long events = current - lastCount;
+        lastCount = current;
+        // events are accounted in the first interval, the others being idle
+        m1.update(events);
+        m5.update(events);
+        m15.update(events);
+        for (long i = 1; i < ticks; i++) {
+            m1.update(0);
+            m5.update(0);
+            m15.update(0);
+        }
+    }
+
+    private static final class Ewma {
+        private final double alpha;
+        private boolean initialized;
+        private double rate;
+
+        Ewma(int minutes) {
+            this.alpha = 1 - Math.exp(-TICK_INTERVAL / (double) TimeUnit.MINUTES.toNanos(minutes));
+        }
+
+        void update(long events) {
+            double instantRate = events * (double) TimeUnit.SECONDS.toNanos(1) / TICK_INTERVAL;
+            if (initialized)
+                rate += alpha * (instantRate - rate);
+            else {
+                rate = instantRate;
+                initialized = true;
+            }
+        }
+    }
+}
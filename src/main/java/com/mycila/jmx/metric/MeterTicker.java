@@ -0,0 +1,94 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import com.google.common.collect.MapMaker;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates the moving averages of many {@link Meter}s from a scheduler, on which the ticking task
+ * is scheduled when the first meter is added. Meters are weakly referenced: a meter which is not
+ * used anymore stops being ticked once garbage collected. The scheduler is not owned by the ticker:
+ * it is typically shared with the other periodic tasks of an exporter.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class MeterTicker {
+
+    private final Set<Meter> meters = Collections.newSetFromMap(new MapMaker().weakKeys().<Meter, Boolean>makeMap());
+    private final ScheduledExecutorService scheduler;
+    private volatile ScheduledFuture<?> task;
+
+    public MeterTicker(ScheduledExecutorService scheduler) {
+        if (scheduler == null) throw new NullPointerException("Scheduler cannot be null");
+        this.scheduler = scheduler;
+    }
+
+    public void add(Meter meter) {
+        meters.add(meter);
+        if (task == null)
+            start();
+    }
+
+    public void remove(Meter meter) {
+        meters.remove(meter);
+    }
+
+    public int size() {
+        return meters.size();
+    }
+
+    /**
+     * Update all the meters now
+     */
+    public void tick() {
+        long now = System.nanoTime();
+        for (Meter meter : meters)
+            meter.tick(now);
+    }
+
+    /**
+     * Cancel the ticking task, which is scheduled again when a meter is added.
+     * Meters are still updated when they are read.
+     */
+    public synchronized void stop() {
+        if (task != null) {
+            task.cancel(false);
+            task = null;
+        }
+    }
+
+    private synchronized void start() {
+        if (task != null)
+            return;
+        try {
+            task = scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    tick();
+                }
+            }, Meter.TICK_INTERVAL, Meter.TICK_INTERVAL, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // the scheduler has been shut down: meters are only updated when read
+        }
+    }
+}
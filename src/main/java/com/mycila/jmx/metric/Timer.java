@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the number of timed events and their total duration, in striped {@link Counter}s.
+ * <pre>
+ * long start = timer.start();
+ * try {
+ *     ...
+ * } finally {
+ *     timer.stop(start);
+ * }
+ * </pre>
+ * Exported as the <code>long</code> attributes <code>&lt;name&gt;Count</code> and <code>&lt;name&gt;TotalTime</code>
+ * and the <code>double</code> attribute <code>&lt;name&gt;MeanTime</code>, durations being in nanoseconds.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+public final class Timer {
+
+    private final Counter count = new Counter();
+    private final Counter totalTime = new Counter();
+
+    /**
+     * @return A start time to give to {@link #stop(long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Record the time elapsed since the given start time
+     *
+     * @return The time elapsed, in nanoseconds
+     */
+    public long stop(long start) {
+        long duration = System.nanoTime() - start;
+        update(duration);
+        return duration;
+    }
+
+    public void update(long duration, TimeUnit unit) {
+        update(unit.toNanos(duration));
+    }
+
+    private void update(long nanos) {
+        count.increment();
+        totalTime.add(nanos);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The total time recorded, in nanoseconds
+     */
+    public long getTotalTime() {
+        return totalTime.get();
+    }
+
+    /**
+     * @return The mean time, in nanoseconds, or 0 if nothing has been recorded
+     */
+    public double getMeanTime() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotalTime() / count;
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", totalTime=" + getTotalTime() + "ns";
+    }
+}
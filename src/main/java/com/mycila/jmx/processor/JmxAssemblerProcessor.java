@@ -0,0 +1,436 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.processor;
+
+import com.mycila.jmx.AnnotationMetadataAssembler;
+import com.mycila.jmx.GeneratedMetadataAssembler;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.mycila.jmx.annotation.JmxProperty;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a {@link GeneratedMetadataAssembler} for each class annotated by {@link JmxBean} using the default
+ * {@link AnnotationMetadataAssembler}, in the package of the class. It is registered as a service, and only
+ * runs when enabled by the {@value #OPTION} option (<code>javac -Amycila.jmx.assemblers</code>): otherwise the
+ * metadata is assembled by reflection at runtime. Classes which are not accessible from their
+ * package (i.e. private nested classes) are skipped, and so are the members which are not accessible (i.e.
+ * private ones), which are accessed by reflection at runtime.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@SupportedAnnotationTypes("com.mycila.jmx.annotation.JmxBean")
+@SupportedOptions(JmxAssemblerProcessor.OPTION)
+public final class JmxAssemblerProcessor extends AbstractProcessor {
+
+    public static final String OPTION = "mycila.jmx.assemblers";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!isEnabled())
+            return false;
+        for (TypeElement bean : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(JmxBean.class))) {
+            if (bean.getKind() != ElementKind.CLASS || !hasDefaultAssembler(bean) || !isAccessible(bean, packageOf(bean)))
+                continue;
+            try {
+                generate(bean);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot generate the JMX assembler: " + e.getMessage(), bean);
+            }
+        }
+        return false;
+    }
+
+    private boolean isEnabled() {
+        Map<String, String> options = processingEnv.getOptions();
+        return options.containsKey(OPTION) && !"false".equals(options.get(OPTION));
+    }
+
+    private void generate(TypeElement bean) throws IOException {
+        PackageElement pkg = packageOf(bean);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(bean).toString();
+        String simpleName = binaryName.substring(binaryName.lastIndexOf('.') + 1) + GeneratedMetadataAssembler.SUFFIX;
+        Model model = new Model(bean, pkg);
+        PrintWriter out = new PrintWriter(processingEnv.getFiler().createSourceFile(binaryName + GeneratedMetadataAssembler.SUFFIX, bean).openWriter());
+        try {
+            if (!pkg.isUnnamed())
+                out.println("package " + pkg.getQualifiedName() + ";");
+            out.println();
+            out.println("/**");
+            out.println(" * Assembles the metadata of {@link " + bean.getQualifiedName() + "}.");
+            out.println(" * Generated by " + JmxAssemblerProcessor.class.getName() + ": do not edit.");
+            out.println(" */");
+            out.println("@SuppressWarnings({\"unchecked\", \"rawtypes\"})");
+            out.println("public final class " + simpleName + " extends " + GeneratedMetadataAssembler.class.getName() + " {");
+            out.println();
+            out.println("    public " + simpleName + "() {");
+            out.println("        super(" + erasure(bean.asType()) + ".class);");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected java.util.Collection<java.lang.reflect.Field> getFields() throws java.lang.NoSuchFieldException {");
+            out.println("        java.util.List<java.lang.reflect.Field> fields = new java.util.ArrayList<java.lang.reflect.Field>(" + model.fields.size() + ");");
+            if (!model.fields.isEmpty())
+                declareClasses(out, model.fieldDepth());
+            for (Member field : model.fields)
+                out.println("        fields.add(c" + field.depth + ".getDeclaredField(\"" + field.element.getSimpleName() + "\"));");
+            out.println("        return fields;");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected java.util.Collection<java.lang.reflect.Method> getMethods() throws java.lang.NoSuchMethodException {");
+            if (model.listableOperations()) {
+                out.println("        java.util.List<java.lang.reflect.Method> methods = new java.util.ArrayList<java.lang.reflect.Method>(" + model.operations.size() + ");");
+                if (!model.operations.isEmpty())
+                    declareClasses(out, model.operationDepth());
+                for (Member operation : model.operations)
+                    out.println("        methods.add(c" + operation.depth + ".getDeclaredMethod(\"" + operation.element.getSimpleName() + "\"" + prefix(parameterClasses((ExecutableElement) operation.element)) + "));");
+                out.println("        return methods;");
+            } else
+                out.println("        return null;");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected int getFieldIndex(java.lang.reflect.Field field) {");
+            if (!model.accessedFields.isEmpty()) {
+                out.println("        java.lang.Class<?> c = field.getDeclaringClass();");
+                out.println("        java.lang.String name = field.getName();");
+            }
+            for (int i = 0; i < model.accessedFields.size(); i++) {
+                Member field = model.accessedFields.get(i);
+                out.println("        if (c == " + erasure(field.declaringType.asType()) + ".class && name.equals(\"" + field.element.getSimpleName() + "\"))");
+                out.println("            return " + i + ";");
+            }
+            out.println("        return -1;");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected java.lang.Object readField(int index, java.lang.Object managedResource) {");
+            out.println("        switch (index) {");
+            for (int i = 0; i < model.accessedFields.size(); i++)
+                out.println("            case " + i + ": return " + target(model.accessedFields.get(i)) + ";");
+            out.println("            default: throw new java.lang.IllegalArgumentException(\"Invalid field: \" + index);");
+            out.println("        }");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected boolean writeField(int index, java.lang.Object managedResource, java.lang.Object value) {");
+            out.println("        switch (index) {");
+            for (int i = 0; i < model.accessedFields.size(); i++) {
+                Member field = model.accessedFields.get(i);
+                if (!field.element.getModifiers().contains(Modifier.FINAL))
+                    out.println("            case " + i + ": " + target(field) + " = " + unbox(field.element.asType(), "value") + "; return true;");
+            }
+            out.println("            default: return false;");
+            out.println("        }");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected int getMethodIndex(java.lang.reflect.Method method) {");
+            if (!model.accessedMethods.isEmpty()) {
+                out.println("        java.lang.Class<?> c = method.getDeclaringClass();");
+                out.println("        java.lang.String name = method.getName();");
+            }
+            for (int i = 0; i < model.accessedMethods.size(); i++) {
+                Member method = model.accessedMethods.get(i);
+                out.println("        if (c == " + erasure(method.declaringType.asType()) + ".class && name.equals(\"" + method.element.getSimpleName() + "\")"
+                    + " && java.util.Arrays.equals(method.getParameterTypes(), new java.lang.Class<?>[]{" + parameterClasses((ExecutableElement) method.element) + "}))");
+                out.println("            return " + i + ";");
+            }
+            out.println("        return -1;");
+            out.println("    }");
+
+            out.println();
+            out.println("    @Override");
+            out.println("    protected java.lang.Object invokeMethod(int index, java.lang.Object managedResource, java.lang.Object[] params) throws java.lang.Throwable {");
+            out.println("        switch (index) {");
+            for (int i = 0; i < model.accessedMethods.size(); i++) {
+                Member method = model.accessedMethods.get(i);
+                ExecutableElement executable = (ExecutableElement) method.element;
+                StringBuilder call = new StringBuilder(target(method)).append('(');
+                for (int p = 0; p < executable.getParameters().size(); p++)
+                    call.append(p == 0 ? "" : ", ").append(unbox(executable.getParameters().get(p).asType(), "params[" + p + "]"));
+                call.append(')');
+                if (executable.getReturnType().getKind() == TypeKind.VOID)
+                    out.println("            case " + i + ": " + call + "; return null;");
+                else
+                    out.println("            case " + i + ": return " + call + ";");
+            }
+            out.println("            default: throw new java.lang.IllegalArgumentException(\"Invalid method: \" + index);");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void declareClasses(PrintWriter out, int depth) {
+        for (int i = 0; i <= depth; i++)
+            out.println("        java.lang.Class<?> c" + i + " = " + (i == 0 ? "getManagedClass()" : "c" + (i - 1) + ".getSuperclass()") + ";");
+    }
+
+    private String parameterClasses(ExecutableElement method) {
+        StringBuilder sb = new StringBuilder();
+        for (VariableElement parameter : method.getParameters())
+            sb.append(sb.length() == 0 ? "" : ", ").append(erasure(parameter.asType())).append(".class");
+        return sb.toString();
+    }
+
+    private static String prefix(String arguments) {
+        return arguments.length() == 0 ? "" : ", " + arguments;
+    }
+
+    /**
+     * @return The expression of a member accessed on the managed resource
+     */
+    private String target(Member member) {
+        String owner = erasure(member.declaringType.asType());
+        return member.element.getModifiers().contains(Modifier.STATIC) ?
+            owner + "." + member.element.getSimpleName() :
+            "((" + owner + ") managedResource)." + member.element.getSimpleName();
+    }
+
+    private String unbox(TypeMirror type, String expression) {
+        if (type.getKind().isPrimitive()) {
+            TypeElement boxed = processingEnv.getTypeUtils().boxedClass(processingEnv.getTypeUtils().getPrimitiveType(type.getKind()));
+            return "((" + boxed.getQualifiedName() + ") " + expression + ")." + type.getKind().name().toLowerCase() + "Value()";
+        }
+        return "(" + erasure(type) + ") " + expression;
+    }
+
+    private String erasure(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private boolean hasDefaultAssembler(TypeElement bean) {
+        for (AnnotationMirror annotation : processingEnv.getElementUtils().getAllAnnotationMirrors(bean)) {
+            if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(JmxBean.class.getName()))
+                continue;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet())
+                if (value.getKey().getSimpleName().contentEquals("assembler"))
+                    return value.getValue().getValue().toString().equals(AnnotationMetadataAssembler.class.getName());
+        }
+        return true;
+    }
+
+    private PackageElement packageOf(Element element) {
+        return processingEnv.getElementUtils().getPackageOf(element);
+    }
+
+    /**
+     * @return true if the code of the given package can name the type
+     */
+    private boolean isAccessible(TypeElement type, PackageElement from) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            TypeElement t = (TypeElement) e;
+            if (t.getNestingKind() != NestingKind.TOP_LEVEL && t.getNestingKind() != NestingKind.MEMBER
+                || t.getModifiers().contains(Modifier.PRIVATE)
+                || !t.getModifiers().contains(Modifier.PUBLIC) && !packageOf(t).equals(from))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean isAccessible(TypeMirror type, PackageElement from) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return isAccessible(((ArrayType) type).getComponentType(), from);
+            case DECLARED:
+                return isAccessible((TypeElement) ((DeclaredType) type).asElement(), from);
+            case TYPEVAR:
+                return isAccessible(processingEnv.getTypeUtils().erasure(type), from);
+            default:
+                return type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID;
+        }
+    }
+
+    /**
+     * @return true if the code of the given package can access the member and name the types it uses
+     */
+    private boolean isAccessible(Member member, PackageElement from) {
+        Set<Modifier> modifiers = member.element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE)
+            || !isAccessible(member.declaringType, from)
+            || !modifiers.contains(Modifier.PUBLIC) && !packageOf(member.declaringType).equals(from))
+            return false;
+        if (member.element instanceof ExecutableElement) {
+            ExecutableElement method = (ExecutableElement) member.element;
+            for (VariableElement parameter : method.getParameters())
+                if (!isAccessible(parameter.asType(), from))
+                    return false;
+            return isAccessible(method.getReturnType(), from);
+        }
+        return isAccessible(member.element.asType(), from);
+    }
+
+    /**
+     * A member of the managed class or of one of its superclasses, at the given depth in the hierarchy
+     */
+    private static final class Member {
+        final Element element;
+        final TypeElement declaringType;
+        final int depth;
+
+        Member(Element element, TypeElement declaringType, int depth) {
+            this.element = element;
+            this.declaringType = declaringType;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * The exported members of a managed class, found like the {@link AnnotationMetadataAssembler} finds them
+     */
+    private final class Model {
+        final List<Member> fields = new ArrayList<Member>();
+        final List<Member> operations = new ArrayList<Member>();
+        final List<Member> accessedFields = new ArrayList<Member>();
+        final List<Member> accessedMethods = new ArrayList<Member>();
+        final PackageElement pkg;
+
+        Model(TypeElement bean, PackageElement pkg) {
+            this.pkg = pkg;
+            // the first method of each signature from the managed class, like ReflectionUtils.getDeclaredMethods()
+            Map<String, Member> methods = new LinkedHashMap<String, Member>();
+            int depth = 0;
+            for (TypeElement type = bean; type != null; type = superclass(type), depth++) {
+                // the fields of a superclass are exported only if it is annotated too
+                if (type.getAnnotation(JmxBean.class) != null)
+                    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements()))
+                        if (field.getAnnotation(JmxField.class) != null)
+                            fields.add(new Member(field, type, depth));
+                for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                    String signature = signature(method);
+                    if (!methods.containsKey(signature))
+                        methods.put(signature, new Member(method, type, depth));
+                }
+            }
+            // the accessors of the properties having at least one annotated accessor
+            Set<String> properties = new HashSet<String>();
+            for (Member method : methods.values())
+                if (method.element.getAnnotation(JmxProperty.class) != null && property((ExecutableElement) method.element) != null)
+                    properties.add(property((ExecutableElement) method.element));
+            for (Member method : methods.values()) {
+                if (method.element.getAnnotation(JmxMethod.class) != null)
+                    operations.add(method);
+                if (isAccessible(method, pkg)
+                    && (method.element.getAnnotation(JmxMethod.class) != null || properties.contains(property((ExecutableElement) method.element))))
+                    accessedMethods.add(method);
+            }
+            for (Member field : fields)
+                if (isAccessible(field, pkg))
+                    accessedFields.add(field);
+        }
+
+        int fieldDepth() {
+            int depth = 0;
+            for (Member field : fields)
+                depth = Math.max(depth, field.depth);
+            return depth;
+        }
+
+        int operationDepth() {
+            int depth = 0;
+            for (Member operation : operations)
+                depth = Math.max(depth, operation.depth);
+            return depth;
+        }
+
+        /**
+         * @return true if the parameter types of all the operations can be named
+         */
+        boolean listableOperations() {
+            for (Member operation : operations)
+                for (VariableElement parameter : ((ExecutableElement) operation.element).getParameters())
+                    if (!isAccessible(parameter.asType(), pkg))
+                        return false;
+            return true;
+        }
+
+        private TypeElement superclass(TypeElement type) {
+            TypeMirror superclass = type.getSuperclass();
+            return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+
+        private String signature(ExecutableElement method) {
+            StringBuilder sb = new StringBuilder(method.getSimpleName()).append('(');
+            for (VariableElement parameter : method.getParameters())
+                sb.append(erasure(parameter.asType())).append(',');
+            return sb.append(')').toString();
+        }
+
+        /**
+         * @return The name of the property of an accessor, like {@link com.mycila.jmx.BeanProperty} finds it, or null
+         */
+        private String property(ExecutableElement method) {
+            String name = method.getSimpleName().toString();
+            int params = method.getParameters().size();
+            TypeKind returned = method.getReturnType().getKind();
+            String suffix;
+            if (name.startsWith("is") && params == 0 && (returned == TypeKind.BOOLEAN || erasure(method.getReturnType()).equals(Boolean.class.getName())))
+                suffix = name.substring(2);
+            else if (name.startsWith("get") && params == 0 && returned != TypeKind.VOID)
+                suffix = name.substring(3);
+            else if (name.startsWith("set") && params == 1 && returned == TypeKind.VOID)
+                suffix = name.substring(3);
+            else
+                return null;
+            return suffix.length() == 0 ? suffix : Character.toLowerCase(suffix.charAt(0)) + suffix.substring(1);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.processor;
+
+import com.mycila.jmx.JmxBeanIndex;
+import com.mycila.jmx.annotation.JmxBean;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the names of the concrete classes annotated by {@link JmxBean} to {@link JmxBeanIndex#LOCATION}, so
+ * that they can be found at runtime without scanning the classpath. It is registered as a service, and only runs
+ * when enabled by the {@value #OPTION} option (<code>javac -Amycila.jmx.index</code>). The names already present in the index
+ * (i.e. from a previous incremental compilation) are kept, unless their class is not annotated anymore, in which
+ * case the index is rewritten without them, even if no class is annotated anymore. The classes which do not exist
+ * anymore are ignored when the index is loaded.
+ *
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+// all the compilations, so that the index is rewritten even when no class is annotated anymore
+@SupportedAnnotationTypes("*")
+@SupportedOptions(JmxBeanIndexProcessor.OPTION)
+public final class JmxBeanIndexProcessor extends AbstractProcessor {
+
+    public static final String OPTION = "mycila.jmx.index";
+
+    private final Set<String> names = new TreeSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (!isEnabled())
+            return false;
+        for (TypeElement bean : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(JmxBean.class)))
+            if (bean.getKind() == ElementKind.CLASS && !bean.getModifiers().contains(Modifier.ABSTRACT))
+                names.add(processingEnv.getElementUtils().getBinaryName(bean).toString());
+        if (roundEnv.processingOver()) {
+            try {
+                write();
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + JmxBeanIndex.LOCATION + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    private boolean isEnabled() {
+        Map<String, String> options = processingEnv.getOptions();
+        return options.containsKey(OPTION) && !"false".equals(options.get(OPTION));
+    }
+
+    /**
+     * @return true if the class is known to the compiler and is not a concrete class annotated by {@link JmxBean} anymore
+     */
+    private boolean isStale(String binaryName) {
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(binaryName.replace('$', '.'));
+        return type != null && (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT) || type.getAnnotation(JmxBean.class) == null);
+    }
+
+    /**
+     * Write the index, if there is a class to index or an index to rewrite
+     */
+    private void write() throws IOException {
+        boolean exists = false;
+        try {
+            FileObject existing = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", JmxBeanIndex.LOCATION);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), "UTF-8"));
+            exists = true;
+            try {
+                for (String line; (line = reader.readLine()) != null; ) {
+                    line = line.trim();
+                    if (line.length() > 0 && !line.startsWith("#") && !isStale(line))
+                        names.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ignored) {
+            // no index yet
+        }
+        if (!exists && names.isEmpty())
+            return;
+        FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", JmxBeanIndex.LOCATION);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(index.openOutputStream(), "UTF-8"));
+        try {
+            out.println("# Generated by " + JmxBeanIndexProcessor.class.getName());
+            for (String name : names)
+                out.println(name);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class AccessorsTest {
+
+    @Test
+    public void field_accessors() throws Throwable {
+        for (AttributeAccessor accessor : new AttributeAccessor[]{
+            Accessors.of(field("count")),
+            Accessors.reflective(field("count"))}) {
+            MyClass o = new MyClass();
+            assertEquals(1, accessor.get(o));
+            accessor.set(o, 2);
+            assertEquals(2, o.count);
+        }
+    }
+
+    @Test
+    public void final_field_accessors() throws Throwable {
+        MyClass o = new MyClass();
+        assertEquals("ro", Accessors.of(field("name")).get(o));
+        assertEquals("ro", Accessors.reflective(field("name")).get(o));
+    }
+
+    @Test
+    public void static_field_accessors() throws Throwable {
+        AttributeAccessor accessor = Accessors.of(field("shared"));
+        accessor.set(new MyClass(), "b");
+        assertEquals("b", accessor.get(new MyClass()));
+        assertEquals("b", Accessors.reflective(field("shared")).get(null));
+    }
+
+    @Test
+    public void property_accessors() throws Throwable {
+        BeanProperty property = BeanProperty.findProperty(MyClass.class, "value");
+        for (AttributeAccessor accessor : new AttributeAccessor[]{
+            Accessors.of(property),
+            Accessors.reflective(property)}) {
+            MyClass o = new MyClass();
+            accessor.set(o, 10L);
+            assertEquals(10L, accessor.get(o));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void property_accessors_exception() throws Throwable {
+        Accessors.of(BeanProperty.findProperty(MyClass.class, "failing")).get(new MyClass());
+    }
+
+    private static Field field(String name) {
+        return ReflectionUtils.findField(MyClass.class, name);
+    }
+
+    private static class MyClass {
+        private static String shared = "a";
+        private final String name = "ro";
+        private int count = 1;
+        private long value;
+
+        public long getValue() {
+            return value;
+        }
+
+        public void setValue(long value) {
+            this.value = value;
+        }
+
+        public String getFailing() {
+            throw new IllegalStateException("failing");
+        }
+    }
+}
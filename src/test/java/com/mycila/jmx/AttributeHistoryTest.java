@@ -0,0 +1,192 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.metric.Counter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class AttributeHistoryTest {
+
+    private static final String[] LAST = {String.class.getName(), int.class.getName()};
+    private static final String[] BETWEEN = {String.class.getName(), long.class.getName(), long.class.getName()};
+
+    @Test
+    public void metadata() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        AttributeHistory history = AttributeHistory.of(metadata);
+        assertEquals(Arrays.asList("queue", "hits"), history.getAttributes());
+        assertEquals(4, history.getCapacity());
+        assertEquals(8 * 4 * 3, history.getBytesPerResource());
+        assertEquals(2, metadata.getMBeanInfo().getOperations().length);
+        assertNull(AttributeHistory.of(new AnnotationMetadataAssembler().getMetadata(NoHistory.class)));
+    }
+
+    @Test
+    public void record_and_query() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        AttributeRecorder recorder = new AttributeRecorder(exporter.getScheduler(), 1, TimeUnit.HOURS, 1024);
+        exporter.setAttributeRecorder(recorder);
+        Service service = new Service();
+        ObjectName objectName = exporter.register(service);
+        assertEquals(1, recorder.size());
+        assertEquals(96, recorder.getAllocatedBytes());
+        ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) exporter.getScheduler();
+        assertEquals(1, scheduler.getQueue().size());
+        try {
+            CompositeData samples = (CompositeData) server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"queue", 10}, LAST);
+            assertEquals("queue", samples.get("attribute"));
+            assertEquals(0, ((long[]) samples.get("timestamps")).length);
+
+            long start = System.currentTimeMillis();
+            for (int i = 1; i <= 6; i++) {
+                service.queue = i;
+                service.hits.increment();
+                recorder.record();
+            }
+            long end = System.currentTimeMillis();
+
+            samples = (CompositeData) server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"queue", 10}, LAST);
+            assertArrayEquals(new double[]{3, 4, 5, 6}, (double[]) samples.get("values"), 0);
+            long[] timestamps = (long[]) samples.get("timestamps");
+            assertEquals(4, timestamps.length);
+            for (int i = 0; i < timestamps.length; i++)
+                assertTrue(timestamps[i] >= start && timestamps[i] <= end && (i == 0 || timestamps[i] >= timestamps[i - 1]));
+
+            samples = (CompositeData) server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"hits", 2}, LAST);
+            assertArrayEquals(new double[]{5, 6}, (double[]) samples.get("values"), 0);
+
+            samples = (CompositeData) server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"hits", start, end}, BETWEEN);
+            assertArrayEquals(new double[]{3, 4, 5, 6}, (double[]) samples.get("values"), 0);
+            samples = (CompositeData) server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"hits", end + 1, Long.MAX_VALUE}, BETWEEN);
+            assertEquals(0, ((double[]) samples.get("values")).length);
+
+            try {
+                server.invoke(objectName, AttributeHistory.OPERATION, new Object[]{"label", 1}, LAST);
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+
+            recorder.stop();
+            assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test
+    public void bounded_memory() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        AttributeRecorder recorder = new AttributeRecorder(exporter.getScheduler(), 1, TimeUnit.HOURS, 150);
+        exporter.setAttributeRecorder(recorder);
+        try {
+            ObjectName first = ObjectName.getInstance("app:type=History,id=1");
+            exporter.register(new Service(), first);
+            exporter.register(new Service(), ObjectName.getInstance("app:type=History,id=2"));
+            exporter.register(new NoHistory());
+            assertEquals(1, recorder.size());
+            assertEquals(96, recorder.getAllocatedBytes());
+
+            exporter.unregister(first);
+            assertEquals(0, recorder.size());
+            assertEquals(0, recorder.getAllocatedBytes());
+            exporter.register(new Service(), ObjectName.getInstance("app:type=History,id=3"));
+            assertEquals(1, recorder.size());
+            recorder.record();
+            assertEquals(96, recorder.getAllocatedBytes());
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test
+    public void recorded_while_registered() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setExportBehavior(ExportBehavior.SKIP_EXISTING);
+        try {
+            ObjectName objectName = ObjectName.getInstance("app:type=History,id=1");
+            exporter.register(new Service(), objectName);
+            exporter.register(new Service(), objectName);
+            assertEquals(1, exporter.getAttributeRecorder().size());
+            exporter.getMBeanServer().unregisterMBean(objectName);
+            assertEquals(0, exporter.getAttributeRecorder().size());
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test
+    public void invalid_capacity() throws Exception {
+        JmxAttribute attribute = new AnnotationMetadataAssembler().getMetadata(Service.class).getAttribute("queue");
+        try {
+            new AttributeHistory(Arrays.asList(attribute), 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new AttributeHistory(Arrays.asList(attribute), Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertFalse(AttributeHistory.isRecordable(new AnnotationMetadataAssembler().getMetadata(Service.class).getAttribute("label")));
+    }
+
+    @JmxBean(value = "app:type=History", history = 4)
+    public static class Service {
+        @JmxField
+        @JmxMetric
+        volatile int queue;
+
+        @JmxField
+        @JmxMetric
+        final Counter hits = new Counter();
+
+        @JmxField
+        volatile String label = "label";
+    }
+
+    @JmxBean("app:type=NoHistory")
+    public static class NoHistory {
+        @JmxField
+        @JmxMetric
+        volatile int queue;
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.swing.JButton;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class BeanUtilsTest {
+
+    @Test
+    public void properties_found_in_one_pass() throws Exception {
+        for (Class<?> c : new Class<?>[]{Thread.class, String.class, ArrayList.class, HashMap.class, JButton.class, Child.class, Runnable.class}) {
+            Set<BeanProperty> expected = new LinkedHashSet<BeanProperty>();
+            for (Method method : ReflectionUtils.getDeclaredMethods(c)) {
+                BeanProperty prop = BeanProperty.findProperty(c, method);
+                if (prop != null)
+                    expected.add(prop);
+            }
+            List<BeanProperty> actual = new ArrayList<BeanProperty>(BeanUtils.getProperties(c));
+            assertEquals(c.getName(), new ArrayList<BeanProperty>(expected).toString(), actual.toString());
+            int i = 0;
+            for (BeanProperty property : expected) {
+                assertEquals(property + " of " + c.getName(), property.getReadMethod(), actual.get(i).getReadMethod());
+                assertEquals(property + " of " + c.getName(), property.getWriteMethod(), actual.get(i++).getWriteMethod());
+            }
+        }
+    }
+
+    public static class Parent {
+        public Object getValue() {
+            return null;
+        }
+
+        public boolean isActive() {
+            return true;
+        }
+
+        public void setName(String name) {
+        }
+    }
+
+    public static class Child extends Parent {
+        @Override
+        public String getValue() {
+            return "";
+        }
+
+        public boolean getActive() {
+            return false;
+        }
+
+        public String getName() {
+            return "";
+        }
+
+        public void setName(int name) {
+        }
+
+        public int isBroken() {
+            return 0;
+        }
+
+        public void setBroken(int broken) {
+        }
+
+        public String geturl() {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxCached;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxProperty;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class CachedAttributeTest {
+
+    @Test
+    public void value_kept_until_ttl_expires() throws Exception {
+        Service service = new Service();
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, new AnnotationMetadataAssembler().getMetadata(Service.class));
+
+        assertEquals(1, mBean.getAttribute("Depth"));
+        assertEquals(1, mBean.getAttribute("Depth"));
+        assertEquals(1, service.calls.get());
+        assertEquals(1L, mBean.getAttribute("DepthCacheHits"));
+        assertEquals(1L, mBean.getAttribute("DepthCacheMisses"));
+
+        Thread.sleep(60);
+        assertEquals(2, mBean.getAttribute("Depth"));
+        assertEquals(2L, mBean.getAttribute("DepthCacheMisses"));
+    }
+
+    @Test
+    public void cache_per_instance() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        Service s1 = new Service();
+        Service s2 = new Service();
+        assertEquals(1, new DefaultDynamicMBean(s1, metadata).getAttribute("Depth"));
+        assertEquals(1, new DefaultDynamicMBean(s2, metadata).getAttribute("Depth"));
+        assertEquals(1, s1.calls.get());
+        assertEquals(1, s2.calls.get());
+    }
+
+    @Test
+    public void write_invalidates() throws Exception {
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Service(), new AnnotationMetadataAssembler().getMetadata(Service.class));
+        assertEquals("a", mBean.getAttribute("name"));
+        mBean.setAttribute(new Attribute("name", "b"));
+        assertEquals("b", mBean.getAttribute("name"));
+    }
+
+    @Test
+    public void ttl_in_descriptor() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        assertEquals(9, metadata.getMBeanInfo().getAttributes().length);
+        for (MBeanAttributeInfo info : metadata.getMBeanInfo().getAttributes())
+            if (info.getName().equals("Depth"))
+                assertEquals(50L, info.getDescriptor().getFieldValue("cacheTtl"));
+            else if (info.getName().equals("name"))
+                assertEquals(60000L, info.getDescriptor().getFieldValue("cacheTtl"));
+        assertNotNull(metadata.getAttribute("nameCacheHits"));
+    }
+
+    @Test
+    public void single_flight() throws Exception {
+        final Service service = new Service();
+        final DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, new AnnotationMetadataAssembler().getMetadata(Service.class));
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger errors = new AtomicInteger();
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        mBean.getAttribute("Slow");
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(0, errors.get());
+        assertEquals(1, service.slowCalls.get());
+        assertEquals(15L, mBean.getAttribute("SlowCacheHits"));
+    }
+
+    @Test
+    public void decorator() throws Exception {
+        CachedAttribute attribute = (CachedAttribute) new AnnotationMetadataAssembler().getMetadata(Service.class).getAttribute("Depth");
+        assertEquals(50, attribute.getTtl(TimeUnit.MILLISECONDS));
+        assertTrue(attribute.getDelegate() instanceof MBeanProperty);
+    }
+
+    @Test
+    public void null_value_cached() throws Exception {
+        Service service = new Service();
+        service.name = null;
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, new AnnotationMetadataAssembler().getMetadata(Service.class));
+        assertNull(mBean.getAttribute("name"));
+        service.name = "b";
+        assertNull(mBean.getAttribute("name"));
+        assertEquals(1L, mBean.getAttribute("nameCacheHits"));
+        assertEquals(1L, mBean.getAttribute("nameCacheMisses"));
+    }
+
+    @Test
+    public void counter_name_clash() throws Exception {
+        try {
+            new AnnotationMetadataAssembler().getMetadata(Clash.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("countCacheHits"));
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=CachedService")
+    public static class Service {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger slowCalls = new AtomicInteger();
+
+        @JmxField(access = Access.RW)
+        @JmxCached(ttl = 1, unit = TimeUnit.MINUTES)
+        String name = "a";
+
+        @JmxProperty
+        @JmxCached(ttl = 50)
+        public int getDepth() {
+            return calls.incrementAndGet();
+        }
+
+        @JmxProperty
+        @JmxCached(ttl = 1, unit = TimeUnit.MINUTES)
+        public int getSlow() throws InterruptedException {
+            Thread.sleep(200);
+            return slowCalls.incrementAndGet();
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Clash")
+    public static class Clash {
+        @JmxField
+        @JmxCached(ttl = 1, unit = TimeUnit.MINUTES)
+        int count;
+
+        @JmxField
+        long countCacheHits;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.ObjectName;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class CachingMetadataAssemblerTest {
+
+    @Test
+    public void metadata_built_once_per_class() throws Exception {
+        final AtomicInteger assembled = new AtomicInteger();
+        final JmxMetadataAssembler assembler = new PublicMetadataAssembler() {
+            @Override
+            public JmxMetadata getMetadata(Class<?> managedClass) {
+                assembled.incrementAndGet();
+                return super.getMetadata(managedClass);
+            }
+        };
+        MycilaJmxExporter exporter = new MycilaJmxExporter();
+        exporter.setMetadataAssembler(assembler);
+        exporter.setEnsureUnique(true);
+
+        ObjectName[] names = new ObjectName[100];
+        for (int i = 0; i < names.length; i++)
+            names[i] = exporter.register(new MyClass());
+        try {
+            assertEquals(1, assembled.get());
+            assertEquals(1, exporter.getMetadataAssembler().getStats().missCount());
+            assertEquals(99, exporter.getMetadataAssembler().getStats().hitCount());
+            assertSame(exporter.getMBeanServer().getMBeanInfo(names[0]), exporter.getMBeanServer().getMBeanInfo(names[99]));
+        } finally {
+            for (ObjectName name : names)
+                exporter.unregister(name);
+        }
+    }
+
+    @Test
+    public void invalidate() throws Exception {
+        CachingMetadataAssembler assembler = new CachingMetadataAssembler(new PublicMetadataAssembler());
+        JmxMetadata metadata = assembler.getMetadata(MyClass.class);
+        assertSame(metadata, assembler.getMetadata(MyClass.class));
+        assembler.invalidate(MyClass.class);
+        assertEquals(0, assembler.size());
+        assertEquals(1, assembler.getStats().hitCount());
+        assertEquals(1, assembler.getStats().missCount());
+    }
+
+    public static class MyClass {
+        public String name = "name";
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanInfo;
+import javax.management.RuntimeOperationsException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class DefaultDynamicMBeanTest {
+
+    private final DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Service(), new AnnotationMetadataAssembler().getMetadata(Service.class));
+
+    @Test
+    public void invoke_by_exported_name() throws Exception {
+        assertEquals("hello", mBean.invoke("greet", null, null));
+        assertEquals("hello", mBean.invoke("greet", new Object[0], new String[0]));
+        assertEquals("hello bob", mBean.invoke("greet", new Object[]{"bob"}, new String[]{"java.lang.String"}));
+        assertEquals(5, mBean.invoke("greet", new Object[]{2, 3}, new String[]{"int", "int"}));
+    }
+
+    @Test
+    public void invoke_by_method_name() throws Exception {
+        assertEquals("hello", mBean.invoke("hello", null, null));
+    }
+
+    @Test
+    public void exported_name_before_method_name() throws Exception {
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Renamed(), new AnnotationMetadataAssembler().getMetadata(Renamed.class));
+        assertEquals("reset", mBean.invoke("clear", null, null));
+        assertEquals("clear", mBean.invoke("wipe", null, null));
+    }
+
+    @Test
+    public void invoke_with_array_signature() throws Exception {
+        assertEquals(3, mBean.invoke("count", new Object[]{new String[]{"a", "b", "c"}}, new String[]{"[Ljava.lang.String;"}));
+        assertEquals(3, mBean.invoke("count", new Object[]{new String[]{"a", "b", "c"}}, new String[]{"java.lang.String[]"}));
+    }
+
+    @Test(expected = RuntimeOperationsException.class)
+    public void invoke_unknown_signature() throws Exception {
+        mBean.invoke("greet", new Object[]{1L}, new String[]{"long"});
+    }
+
+    @Test
+    public void bulk_read_skips_unknown_attributes() throws Exception {
+        String[] attributes = {"a", "unknown", "b", "a"};
+        String[] names = new String[attributes.length];
+        Object[] values = new Object[attributes.length];
+        assertEquals(3, mBean.getAttributes(attributes, names, values));
+        assertArrayEquals(new String[]{"a", "b", "a", null}, names);
+        assertArrayEquals(new Object[]{1, "b", 1, null}, values);
+
+        AttributeList list = mBean.getAttributes(attributes);
+        assertEquals(3, list.size());
+        assertEquals(new Attribute("b", "b"), list.asList().get(1));
+    }
+
+    @Test
+    public void attribute_slots() throws Exception {
+        IndexedJmxMetadata metadata = mBean.getIndexedJmxMetadata();
+        assertEquals(2, metadata.getAttributeCount());
+        assertEquals(-1, metadata.getAttributeSlot("unknown"));
+        for (int slot = 0; slot < metadata.getAttributeCount(); slot++) {
+            String name = metadata.getMBeanInfo().getAttributes()[slot].getName();
+            assertEquals(slot, metadata.getAttributeSlot(name));
+            assertSame(metadata.getAttribute(name), metadata.getAttribute(slot));
+        }
+    }
+
+    @Test
+    public void other_metadata_adapted() throws Exception {
+        final JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Service(), new JmxMetadata() {
+            @Override
+            public MBeanInfo getMBeanInfo() {
+                return metadata.getMBeanInfo();
+            }
+
+            @Override
+            public JmxAttribute getAttribute(String attribute) throws AttributeNotFoundException {
+                return metadata.getAttribute(attribute);
+            }
+
+            @Override
+            public JmxOperation getOperation(String operation, Class<?>... paramTypes) throws OperationNotFoundException {
+                return metadata.getOperation(operation, paramTypes);
+            }
+        });
+        assertEquals(2, mBean.getIndexedJmxMetadata().getAttributeCount());
+        assertEquals(1, mBean.getIndexedJmxMetadata().getAttributeSlot("b"));
+        assertEquals(2, mBean.getAttributes(new String[]{"a", "b"}).size());
+        assertEquals("hello bob", mBean.invoke("hello", new Object[]{"bob"}, new String[]{"java.lang.String"}));
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Service")
+    public static class Service {
+        @JmxField
+        int a = 1;
+
+        @JmxField
+        String b = "b";
+
+        @JmxMethod(name = "greet")
+        public String hello() {
+            return "hello";
+        }
+
+        @JmxMethod(name = "greet")
+        public String hello(String name) {
+            return "hello " + name;
+        }
+
+        @JmxMethod(name = "greet")
+        public int add(int a, int b) {
+            return a + b;
+        }
+
+        @JmxMethod
+        public int count(String... values) {
+            return values.length;
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Renamed")
+    public static class Renamed {
+        @JmxMethod(name = "wipe")
+        public String clear() {
+            return "clear";
+        }
+
+        @JmxMethod(name = "clear")
+        public String reset() {
+            return "reset";
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.cache.CacheLoader;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.mycila.jmx.annotation.JmxProperty;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class IntrospectionCacheTest {
+
+    @Test
+    public void declared_methods_are_cached() throws Exception {
+        class A {
+            public void go() {
+            }
+        }
+        IntrospectionCache<?> cache = IntrospectionCache.getSharedCaches().get("declaredMethods");
+        long hits = cache.getStats().hitCount();
+        Collection<Method> methods = ReflectionUtils.getDeclaredMethods(A.class);
+        assertSame(methods, ReflectionUtils.getDeclaredMethods(A.class));
+        assertTrue(cache.getStats().hitCount() > hits);
+    }
+
+    @Test
+    public void entries_survive_gc() throws Exception {
+        class A {
+        }
+        IntrospectionCache<Object> cache = IntrospectionCache.create("test", new CacheLoader<Class<?>, Object>() {
+            @Override
+            public Object load(Class<?> key) {
+                return new Object();
+            }
+        });
+        cache.get(A.class);
+        System.gc();
+        cache.get(A.class);
+        assertEquals(1, cache.getStats().missCount());
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void bean_properties_are_copied() throws Exception {
+        BeanProperty property = BeanUtils.getProperties(MyBean.class).iterator().next();
+        property.clearReadable();
+        property.clearWritable();
+        for (BeanProperty prop : BeanUtils.getProperties(MyBean.class))
+            assertTrue(prop.isReadable() || prop.isWritable());
+    }
+
+    @Test
+    public void assemblers_are_shared() throws Exception {
+        assertSame(Assemblers.get(MyBean.class), Assemblers.get(MyBean.class));
+    }
+
+    @Test
+    public void concurrent_introspection() throws Exception {
+        final Class<?>[] classes = {MyBean.class, MyBean2.class, MyBean3.class, Object.class, String.class, Thread.class, ArrayList.class};
+        final int threads = 16;
+        final int iterations = classes.length * 300;
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+            for (int t = 0; t < threads; t++) {
+                final int offset = t;
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        start.await();
+                        int n = 0;
+                        for (int i = 0; i < iterations; i++) {
+                            Class<?> c = classes[(i + offset) % classes.length];
+                            n += ReflectionUtils.getDeclaredMethods(c).size();
+                            n += BeanUtils.getProperties(c).size();
+                            n += Assemblers.get(c).getMetadata(c).getMBeanInfo().getAttributes().length;
+                        }
+                        return n;
+                    }
+                }));
+            }
+            start.countDown();
+            Integer expected = null;
+            for (Future<Integer> future : futures) {
+                Integer n = future.get(60, TimeUnit.SECONDS);
+                if (expected == null) expected = n;
+                assertEquals(expected, n);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (IntrospectionCache<?> cache : IntrospectionCache.getSharedCaches().values())
+            assertTrue(cache.toString(), cache.getStats().hitCount() > 0);
+    }
+
+    @JmxBean
+    public static class MyBean {
+        @JmxField
+        int field;
+
+        @JmxProperty
+        public String getName() {
+            return "";
+        }
+
+        @JmxMethod
+        public void go() {
+        }
+    }
+
+    @JmxBean
+    public static class MyBean2 extends MyBean {
+        @JmxField
+        long other;
+
+        @JmxProperty
+        public int getValue() {
+            return 0;
+        }
+
+        public void setValue(int value) {
+        }
+    }
+
+    public static class MyBean3 extends MyBean2 {
+        public String getDescription() {
+            return "";
+        }
+    }
+}
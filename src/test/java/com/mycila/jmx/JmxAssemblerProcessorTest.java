@@ -0,0 +1,227 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.processor.JmxAssemblerProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class JmxAssemblerProcessorTest {
+
+    private static final String IMPORTS = "package sample;\n" +
+        "import com.mycila.jmx.Access;\n" +
+        "import com.mycila.jmx.annotation.*;\n" +
+        "import com.mycila.jmx.metric.Counter;\n";
+
+    private File dir;
+    private ClassLoader loader;
+
+    @Before
+    public void compile() throws Exception {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("A JDK is required", compiler);
+        dir = File.createTempFile("mycila-jmx-", "");
+        assertTrue(dir.delete() && new File(dir, "sample").mkdirs());
+        File base = write("Base", IMPORTS +
+            "public class Base {\n" +
+            "    @JmxField(access = Access.RW) protected long total = 5;\n" +
+            "    @JmxMethod public String echo(String s) { return \"base:\" + s; }\n" +
+            "    @JmxMethod public int twice(int i) { return 2 * i; }\n" +
+            "}\n");
+        File bean = write("Bean", IMPORTS +
+            "@JmxBean(value = \"sample:type=Bean\", statistics = true)\n" +
+            "public class Bean extends Base {\n" +
+            "    @JmxField(access = Access.RW) volatile int count = 1;\n" +
+            "    @JmxField(access = Access.RW) private String secret = \"secret\";\n" +
+            "    @JmxField(access = Access.RW) static String shared = \"shared\";\n" +
+            "    @JmxField @JmxMetric final Counter hits = new Counter();\n" +
+            "    private double ratio = 0.5;\n" +
+            "    @JmxProperty(access = Access.RW) public double getRatio() { return ratio; }\n" +
+            "    public void setRatio(double ratio) { this.ratio = ratio; }\n" +
+            "    @JmxMethod public String echo(String s) { return \"bean:\" + s; }\n" +
+            "    @Override public int twice(int i) { return 3 * i; }\n" +
+            "    @JmxMethod public void reset(int count, Integer hits) { this.count = count; this.hits.add(hits); }\n" +
+            "    @JmxMethod public void fail() { throw new IllegalStateException(\"failed\"); }\n" +
+            "    @JmxMethod public long sum(long[] values) { long sum = 0; for (long v : values) sum += v; return sum; }\n" +
+            "}\n");
+        File sub = write("Sub", IMPORTS +
+            "public class Sub extends Bean {\n" +
+            "    @JmxField int other;\n" +
+            "}\n");
+        File custom = write("Custom", IMPORTS +
+            "@JmxBean(value = \"sample:type=Custom\", assembler = com.mycila.jmx.PublicMetadataAssembler.class)\n" +
+            "public class Custom {\n" +
+            "    public int getValue() { return 1; }\n" +
+            "}\n");
+        File outer = write("Outer", IMPORTS +
+            "public class Outer {\n" +
+            "    @JmxBean(\"sample:type=Nested\") public static class Nested { @JmxField int value; }\n" +
+            "    @JmxBean(\"sample:type=Hidden\") private static class Hidden { @JmxField int value; }\n" +
+            "}\n");
+        // the processor is found on the classpath
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = compiler.run(null, null, err, "-A" + JmxAssemblerProcessor.OPTION, "-cp", System.getProperty("java.class.path"), "-d", dir.getPath(), "-s", dir.getPath(),
+            base.getPath(), bean.getPath(), sub.getPath(), custom.getPath(), outer.getPath());
+        assertEquals(err.toString(), 0, status);
+        loader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    @After
+    public void delete() {
+        delete(dir);
+    }
+
+    @Test
+    public void generated_for_default_assembler() throws Exception {
+        assertTrue(new File(dir, "sample/Bean$JmxAssembler.class").exists());
+        assertTrue(new File(dir, "sample/Outer$Nested$JmxAssembler.class").exists());
+        assertTrue(new File(dir, "sample/Sub$JmxAssembler.class").exists());
+        assertFalse(new File(dir, "sample/Base$JmxAssembler.class").exists());
+        assertFalse(new File(dir, "sample/Custom$JmxAssembler.class").exists());
+        assertFalse(new File(dir, "sample/Outer$Hidden$JmxAssembler.class").exists());
+
+        Class<?> bean = loader.loadClass("sample.Bean");
+        JmxMetadataAssembler assembler = Assemblers.get(bean);
+        assertEquals("sample.Bean$JmxAssembler", assembler.getClass().getName());
+        assertSame(bean, ((GeneratedMetadataAssembler) assembler).getManagedClass());
+        assertTrue(Assemblers.get(loader.loadClass("sample.Outer$Nested")) instanceof GeneratedMetadataAssembler);
+        assertTrue(Assemblers.get(loader.loadClass("sample.Custom")) instanceof PublicMetadataAssembler);
+        assertTrue(Assemblers.get(loader.loadClass("sample.Base")) instanceof PublicMetadataAssembler);
+    }
+
+    @Test
+    public void disabled_by_default() throws Exception {
+        File plain = new File(dir, "plain");
+        assertTrue(plain.mkdirs());
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = ToolProvider.getSystemJavaCompiler().run(null, null, err, "-cp", System.getProperty("java.class.path"),
+            "-sourcepath", dir.getPath(), "-d", plain.getPath(), new File(dir, "sample/Bean.java").getPath());
+        assertEquals(err.toString(), 0, status);
+        assertTrue(new File(plain, "sample/Bean.class").exists());
+        assertFalse(new File(plain, "sample/Bean$JmxAssembler.class").exists());
+        // the metadata is then assembled by reflection
+        Class<?> bean = new URLClassLoader(new URL[]{plain.toURI().toURL()}, getClass().getClassLoader()).loadClass("sample.Bean");
+        JmxMetadataAssembler assembler = Assemblers.get(bean);
+        assertSame(AnnotationMetadataAssembler.class, assembler.getClass());
+        MBeanInfo reflective = assembler.getMetadata(bean).getMBeanInfo();
+        MBeanInfo generated = Assemblers.get(loader.loadClass("sample.Bean")).getMetadata(loader.loadClass("sample.Bean")).getMBeanInfo();
+        assertEquals(new HashSet<Object>(Arrays.asList(generated.getAttributes())), new HashSet<Object>(Arrays.asList(reflective.getAttributes())));
+        assertEquals(new HashSet<Object>(Arrays.asList(generated.getOperations())), new HashSet<Object>(Arrays.asList(reflective.getOperations())));
+    }
+
+    @Test
+    public void same_metadata_as_annotations() throws Exception {
+        Class<?> bean = loader.loadClass("sample.Bean");
+        MBeanInfo generated = Assemblers.get(bean).getMetadata(bean).getMBeanInfo();
+        MBeanInfo reflective = new AnnotationMetadataAssembler().getMetadata(bean).getMBeanInfo();
+        assertEquals(new HashSet<Object>(Arrays.asList(reflective.getAttributes())), new HashSet<Object>(Arrays.asList(generated.getAttributes())));
+        assertEquals(new HashSet<Object>(Arrays.asList(reflective.getOperations())), new HashSet<Object>(Arrays.asList(generated.getOperations())));
+        assertEquals(Arrays.asList(reflective.getNotifications()), Arrays.asList(generated.getNotifications()));
+        // the override of twice() is not annotated
+        assertEquals(4, generated.getOperations().length);
+    }
+
+    @Test
+    public void inherited_annotation() throws Exception {
+        Class<?> sub = loader.loadClass("sample.Sub");
+        GeneratedMetadataAssembler assembler = (GeneratedMetadataAssembler) Assemblers.get(sub);
+        assertSame(sub, assembler.getManagedClass());
+        MBeanInfo generated = assembler.getMetadata(sub).getMBeanInfo();
+        MBeanInfo reflective = new AnnotationMetadataAssembler().getMetadata(sub).getMBeanInfo();
+        assertEquals(new HashSet<Object>(Arrays.asList(reflective.getAttributes())), new HashSet<Object>(Arrays.asList(generated.getAttributes())));
+        assertEquals(new HashSet<Object>(Arrays.asList(reflective.getOperations())), new HashSet<Object>(Arrays.asList(generated.getOperations())));
+    }
+
+    @Test
+    public void direct_access() throws Exception {
+        Class<?> bean = loader.loadClass("sample.Bean");
+        DefaultDynamicMBean generated = new DefaultDynamicMBean(bean.newInstance(), Assemblers.get(bean).getMetadata(bean));
+        DefaultDynamicMBean reflective = new DefaultDynamicMBean(bean.newInstance(), new AnnotationMetadataAssembler().getMetadata(bean));
+        for (MBeanAttributeInfo attribute : generated.getMBeanInfo().getAttributes())
+            assertEquals(attribute.getName(), reflective.getAttribute(attribute.getName()), generated.getAttribute(attribute.getName()));
+
+        generated.setAttribute(new Attribute("count", 7));
+        generated.setAttribute(new Attribute("secret", "changed"));
+        generated.setAttribute(new Attribute("shared", "changed"));
+        generated.setAttribute(new Attribute("Ratio", 0.25));
+        assertEquals(7, generated.getAttribute("count"));
+        assertEquals("changed", generated.getAttribute("secret"));
+        assertEquals("changed", reflective.getAttribute("shared"));
+        assertEquals(0.25, generated.getAttribute("Ratio"));
+
+        assertEquals("bean:x", generated.invoke("echo", new Object[]{"x"}, new String[]{String.class.getName()}));
+        assertEquals(6L, generated.invoke("sum", new Object[]{new long[]{1, 2, 3}}, new String[]{long[].class.getName()}));
+        assertEquals(null, generated.invoke("reset", new Object[]{4, 2}, new String[]{int.class.getName(), Integer.class.getName()}));
+        assertEquals(4, generated.getAttribute("count"));
+        assertEquals(2L, generated.getAttribute("hits"));
+        assertEquals(1L, generated.getAttribute("resetCallCount"));
+        try {
+            generated.invoke("fail", new Object[0], new String[0]);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(1L, generated.getAttribute("failErrorCount"));
+    }
+
+    private File write(String name, String source) throws IOException {
+        File file = new File(dir, "sample/" + name + ".java");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(source.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
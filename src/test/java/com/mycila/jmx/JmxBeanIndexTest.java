@@ -0,0 +1,232 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.processor.JmxBeanIndexProcessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class JmxBeanIndexTest {
+
+    private static final String IMPORTS = "package sample;\n" +
+        "import com.mycila.jmx.annotation.*;\n";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("mycila-jmx-", "");
+        assertTrue(dir.delete() && new File(dir, "sample").mkdirs());
+        compile(write("Cache", IMPORTS +
+                "@JmxBean(\"sample:type=Cache\")\n" +
+                "public class Cache { @JmxField int size = 3; }\n"),
+            write("Pool", IMPORTS +
+                "@JmxBean(\"sample:type=Pool\")\n" +
+                "public class Pool { @JmxField int active = 2; public static class Bounded extends Pool {} }\n"),
+            write("Base", IMPORTS +
+                "@JmxBean(\"sample:type=Base\")\n" +
+                "public abstract class Base {}\n"),
+            write("Plain", IMPORTS +
+                "public class Plain {}\n"));
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void index_written_at_compile_time() throws Exception {
+        List<String> lines = Files.readAllLines(new File(dir, JmxBeanIndex.LOCATION).toPath(), Charset.forName("UTF-8"));
+        assertTrue(lines.get(0).startsWith("#"));
+        // abstract classes are not indexed, subclasses inherit the annotation
+        assertEquals(Arrays.asList("sample.Cache", "sample.Pool", "sample.Pool$Bounded"), lines.subList(1, lines.size()));
+    }
+
+    @Test
+    public void incremental_compilation_keeps_index() throws Exception {
+        compile(write("Queue", IMPORTS +
+            "@JmxBean(\"sample:type=Queue\")\n" +
+            "public class Queue {}\n"));
+        assertEquals(names("sample.Cache", "sample.Pool", "sample.Pool$Bounded", "sample.Queue"), names(JmxBeanIndex.load(loader()).getClasses()));
+    }
+
+    @Test
+    public void unannotated_classes_dropped() throws Exception {
+        // the index is rewritten even if no class is annotated anymore
+        compile(write("Cache", IMPORTS +
+            "public class Cache {}\n"));
+        assertEquals(names("sample.Pool", "sample.Pool$Bounded"), names(JmxBeanIndex.load(loader()).getClasses()));
+        assertFalse(Files.readAllLines(new File(dir, JmxBeanIndex.LOCATION).toPath(), Charset.forName("UTF-8")).contains("sample.Cache"));
+
+        compile(write("Pool", IMPORTS +
+            "public class Pool { public static class Bounded extends Pool {} }\n"),
+            write("Queue", IMPORTS +
+                "@JmxBean(\"sample:type=Queue\")\n" +
+                "public class Queue {}\n"));
+        List<String> lines = Files.readAllLines(new File(dir, JmxBeanIndex.LOCATION).toPath(), Charset.forName("UTF-8"));
+        assertEquals(Arrays.asList("sample.Queue"), lines.subList(1, lines.size()));
+        assertEquals(names("sample.Queue"), names(JmxBeanIndex.load(loader()).getClasses()));
+    }
+
+    @Test
+    public void missing_classes_ignored() throws Exception {
+        OutputStream out = new FileOutputStream(new File(dir, JmxBeanIndex.LOCATION), true);
+        try {
+            out.write("sample.Removed\n\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        JmxBeanIndex index = JmxBeanIndex.load(loader());
+        assertEquals(3, index.size());
+        assertFalse(index.contains(Object.class));
+    }
+
+    @Test
+    public void prepare_then_register() throws Exception {
+        ClassLoader loader = loader();
+        JmxBeanIndex index = JmxBeanIndex.load(loader);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+            exporter.setBatchExecutor(executor);
+            assertEquals(index.getClasses(), exporter.prepare(index.getClasses()));
+            assertEquals(3, exporter.getMetadataAssembler().getStats().missCount());
+
+            // the metadata is held by the exporter
+            System.gc();
+            List<Object> services = index.select(Arrays.asList(
+                loader.loadClass("sample.Cache").newInstance(),
+                loader.loadClass("sample.Plain").newInstance(),
+                loader.loadClass("sample.Pool").newInstance()));
+            assertEquals(2, services.size());
+            RegistrationReport report = exporter.registerAll(services);
+            assertTrue(report.toString(), report.isSuccessful());
+            assertEquals(3, exporter.getMetadataAssembler().getStats().missCount());
+            assertEquals(3, exporter.getMBeanServer().getAttribute(ObjectName.getInstance("sample:type=Cache"), "size"));
+            assertEquals(2, exporter.getMBeanServer().getAttribute(ObjectName.getInstance("sample:type=Pool"), "active"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void prepare_skips_failures() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setMetadataAssembler(new JmxMetadataAssembler() {
+            @Override
+            public JmxMetadata getMetadata(Class<?> managedClass) {
+                throw new IllegalStateException("cannot assemble " + managedClass.getName());
+            }
+        });
+        assertEquals(Collections.emptySet(), exporter.prepare(Collections.<Class<?>>singleton(String.class)));
+    }
+
+    private ClassLoader loader() throws IOException {
+        // the indexes of the classpath are hidden: only the one of the compiled samples is loaded
+        ClassLoader parent = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            public URL getResource(String name) {
+                return JmxBeanIndex.LOCATION.equals(name) ? null : super.getResource(name);
+            }
+
+            @Override
+            public Enumeration<URL> getResources(String name) throws IOException {
+                return JmxBeanIndex.LOCATION.equals(name) ? Collections.<URL>emptyEnumeration() : super.getResources(name);
+            }
+        };
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()}, parent);
+    }
+
+    private void compile(File... sources) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("A JDK is required", compiler);
+        String[] args = new String[sources.length + 5];
+        args[0] = "-A" + JmxBeanIndexProcessor.OPTION;
+        args[1] = "-cp";
+        args[2] = System.getProperty("java.class.path") + File.pathSeparator + dir.getPath();
+        args[3] = "-d";
+        args[4] = dir.getPath();
+        for (int i = 0; i < sources.length; i++)
+            args[i + 5] = sources[i].getPath();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        assertEquals(err.toString(), 0, compiler.run(null, null, err, args));
+    }
+
+    private File write(String name, String source) throws IOException {
+        File file = new File(dir, "sample/" + name + ".java");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(source.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static Set<String> names(String... names) {
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    private static Set<String> names(Set<Class<?>> classes) {
+        Set<String> names = new HashSet<String>();
+        for (Class<?> c : classes)
+            names.add(c.getName());
+        return names;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null)
+            for (File child : children)
+                delete(child);
+        file.delete();
+    }
+}
@@ -0,0 +1,217 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.inject.AbstractModule;
+import com.google.inject.CreationException;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class JmxModuleTest {
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> names = new ArrayList<ObjectName>();
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+    private final Executor manual = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+    };
+
+    @After
+    public void unregister() throws Exception {
+        for (ObjectName name : names)
+            if (server.isRegistered(name))
+                server.unregisterMBean(name);
+    }
+
+    @Test
+    public void registered_on_injection() throws Exception {
+        Injector injector = Guice.createInjector(new JmxModule());
+        Service service = injector.getInstance(Service.class);
+        assertTrue(server.isRegistered(name(service)));
+    }
+
+    @Test
+    public void deferred_registration() throws Exception {
+        Injector injector = Guice.createInjector(new JmxModule().deferRegistration(manual, 2));
+        JmxRegistrationQueue queue = injector.getInstance(JmxRegistrationQueue.class);
+        Service s1 = injector.getInstance(Service.class);
+        Service s2 = injector.getInstance(Service.class);
+        Service s3 = injector.getInstance(Service.class);
+        assertFalse(server.isRegistered(name(s1)));
+        assertEquals(3, queue.getPendingCount());
+        // a single drain is scheduled at a time
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+        assertTrue(server.isRegistered(name(s1)));
+        assertTrue(server.isRegistered(name(s2)));
+        assertTrue(server.isRegistered(name(s3)));
+        assertEquals(0, queue.getPendingCount());
+        assertTrue(queue.await(0, TimeUnit.SECONDS));
+        assertTrue(queue.getFailures().isEmpty());
+    }
+
+    @Test
+    public void held_until_released() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Injector injector = Guice.createInjector(new JmxModule().deferRegistration(executor).holdRegistration(), new AbstractModule() {
+                @Override
+                protected void configure() {
+                    bind(Singleton.class).asEagerSingleton();
+                }
+            });
+            JmxRegistrationQueue queue = injector.getInstance(JmxRegistrationQueue.class);
+            ObjectName name = name(injector.getInstance(Singleton.class));
+            assertTrue(queue.isHeld());
+            assertFalse(queue.await(100, TimeUnit.MILLISECONDS));
+            assertFalse(server.isRegistered(name));
+
+            queue.release();
+            assertTrue(queue.await(5, TimeUnit.SECONDS));
+            assertTrue(server.isRegistered(name));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void flush() throws Exception {
+        Injector injector = Guice.createInjector(new JmxModule().deferRegistration(manual).holdRegistration());
+        JmxRegistrationQueue queue = injector.getInstance(JmxRegistrationQueue.class);
+        Service service = injector.getInstance(Service.class);
+        assertTrue(tasks.isEmpty());
+
+        queue.flush();
+        assertTrue(server.isRegistered(name(service)));
+        assertEquals(0, queue.getPendingCount());
+        assertTrue(queue.isHeld());
+    }
+
+    @Test
+    public void failures_reported() throws Exception {
+        Injector injector = Guice.createInjector(new JmxModule().deferRegistration(manual));
+        JmxRegistrationQueue queue = injector.getInstance(JmxRegistrationQueue.class);
+        Service service = injector.getInstance(Service.class);
+        queue.add(service);
+        tasks.get(0).run();
+        assertTrue(server.isRegistered(name(service)));
+        assertEquals(1, queue.getFailures().size());
+        assertEquals(service, queue.getFailures().get(0).getManagedResource());
+        assertEquals(0, queue.getPendingCount());
+
+        assertEquals(1, queue.drainFailures().size());
+        assertTrue(queue.getFailures().isEmpty());
+        assertEquals(1, queue.getFailureCount());
+
+        // only the last failures are kept
+        for (int i = 0; i < JmxRegistrationQueue.MAX_FAILURES + 5; i++)
+            queue.add(service);
+        tasks.get(1).run();
+        assertEquals(JmxRegistrationQueue.MAX_FAILURES, queue.getFailures().size());
+        assertEquals(JmxRegistrationQueue.MAX_FAILURES + 6, queue.getFailureCount());
+        assertEquals(0, queue.getPendingCount());
+    }
+
+    @Test
+    public void errors_reported() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server) {
+            @Override
+            protected ObjectName getObjectName(Object managedResource) throws JmxExportException {
+                if (((Service) managedResource).id % 2 == 0)
+                    throw new AssertionError("even");
+                return super.getObjectName(managedResource);
+            }
+        };
+        JmxRegistrationQueue queue = new JmxRegistrationQueue(exporter, manual, 1);
+        List<Service> services = new ArrayList<Service>();
+        for (int i = 0; i < 4; i++) {
+            Service service = new Service();
+            services.add(service);
+            queue.add(service);
+        }
+        tasks.get(0).run();
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(2, queue.getFailureCount());
+        for (Service service : services)
+            assertEquals(service.id % 2 != 0, server.isRegistered(name(service)));
+        assertTrue(queue.getFailures().get(0).getException().getCause() instanceof AssertionError);
+        exporter.close();
+    }
+
+    @Test
+    public void hold_requires_deferred_registration() throws Exception {
+        try {
+            Guice.createInjector(new JmxModule().holdRegistration());
+            fail();
+        } catch (CreationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Registration can only be held when deferred"));
+        }
+    }
+
+    private ObjectName name(Service service) throws Exception {
+        ObjectName name = service.getObjectName();
+        names.add(name);
+        return name;
+    }
+
+    @JmxBean
+    public static class Service implements JmxSelfNaming {
+        @JmxField
+        final int id = IDS.incrementAndGet();
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.mycila.jmx.test:type=JmxModuleTest,id=" + id);
+        }
+    }
+
+    @JmxBean
+    public static class Singleton extends Service {
+    }
+}
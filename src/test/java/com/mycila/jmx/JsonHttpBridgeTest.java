@@ -0,0 +1,287 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class JsonHttpBridgeTest {
+
+    private MycilaJmxExporter exporter;
+    private JsonHttpBridge bridge;
+    private HttpServer server;
+    private String url;
+
+    @Before
+    public void setUp() throws Exception {
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.register(new Service(), ObjectName.getInstance("app:type=Service,name=a"));
+        exporter.register(new Service(), ObjectName.getInstance("app:type=Service,name=b"));
+        exporter.register(new Standard(), ObjectName.getInstance("app:type=Standard"));
+        bridge = new JsonHttpBridge(exporter);
+        bridge.setWritable(true);
+        server = bridge.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/jmx";
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void read() throws Exception {
+        Map<?, ?> response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=a&attribute=count");
+        assertEquals(200L, response.get("status"));
+        assertEquals(3L, response.get("value"));
+
+        response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=a&attribute=count,label,missing");
+        Map<?, ?> value = (Map<?, ?>) response.get("value");
+        assertEquals(2, value.size());
+        assertEquals("a \"label\"\n", value.get("label"));
+
+        response = (Map<?, ?>) get("/read?mbean=app:type=Standard");
+        assertEquals(Arrays.asList(1L, 2L, 3L), ((Map<?, ?>) response.get("value")).get("Values"));
+
+        response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=a&attribute=missing");
+        assertEquals(404L, response.get("status"));
+        response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=c");
+        assertEquals(404L, response.get("status"));
+        response = (Map<?, ?>) get("/read?mbean=:::");
+        assertEquals(400L, response.get("status"));
+    }
+
+    @Test
+    public void batch() throws Exception {
+        List<?> responses = (List<?>) post("[" +
+            "{\"type\":\"read\",\"mbean\":\"app:type=Service,*\",\"attribute\":[\"count\",\"ratio\"]}," +
+            "{\"type\":\"write\",\"mbean\":\"app:type=Service,name=b\",\"attribute\":\"count\",\"value\":\"10\"}," +
+            "{\"type\":\"exec\",\"mbean\":\"app:type=Service,name=b\",\"operation\":\"add\",\"arguments\":[5]}," +
+            "{\"type\":\"search\",\"mbean\":\"app:*\"}," +
+            "{\"type\":\"list\",\"mbean\":\"app:type=Service,name=a\"}," +
+            "{\"type\":\"unknown\"}," +
+            "42]");
+        assertEquals(7, responses.size());
+
+        Map<?, ?> values = (Map<?, ?>) ((Map<?, ?>) responses.get(0)).get("value");
+        assertEquals(2, values.size());
+        Map<?, ?> a = (Map<?, ?>) values.get("app:name=a,type=Service");
+        assertEquals(3L, a.get("count"));
+        assertNull(a.get("ratio"));
+        assertTrue(a.containsKey("ratio"));
+
+        assertEquals(3L, ((Map<?, ?>) responses.get(1)).get("value"));
+        assertEquals(15L, ((Map<?, ?>) responses.get(2)).get("value"));
+        assertEquals(3, ((List<?>) ((Map<?, ?>) responses.get(3)).get("value")).size());
+
+        Map<?, ?> info = (Map<?, ?>) ((Map<?, ?>) ((Map<?, ?>) responses.get(4)).get("value")).get("app:name=a,type=Service");
+        assertEquals(Service.class.getName(), info.get("class"));
+        assertEquals("int", ((Map<?, ?>) ((Map<?, ?>) info.get("attributes")).get("count")).get("type"));
+        assertEquals("add", ((Map<?, ?>) ((List<?>) info.get("operations")).get(0)).get("name"));
+
+        assertEquals(400L, ((Map<?, ?>) responses.get(5)).get("status"));
+        assertEquals("Invalid request type: unknown", ((Map<?, ?>) responses.get(5)).get("error"));
+        assertEquals(400L, ((Map<?, ?>) responses.get(6)).get("status"));
+    }
+
+    @Test
+    public void invalid_requests() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write("[{".getBytes("UTF-8"));
+        out.close();
+        assertEquals(400, connection.getResponseCode());
+
+        connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("DELETE");
+        assertEquals(405, connection.getResponseCode());
+    }
+
+    @Test
+    public void forbidden_writes() throws Exception {
+        Map<?, ?> response = (Map<?, ?>) get("/exec?mbean=app:type=Service,name=a&operation=add&arguments=[1]");
+        assertEquals(403L, response.get("status"));
+        response = (Map<?, ?>) get("/write?mbean=app:type=Service,name=a&attribute=count&value=1");
+        assertEquals(403L, response.get("status"));
+
+        String write = "{\"type\":\"write\",\"mbean\":\"app:type=Service,name=a\",\"attribute\":\"count\",\"value\":1}";
+        response = (Map<?, ?>) post(write, "text/plain");
+        assertEquals(403L, response.get("status"));
+        response = (Map<?, ?>) post(write, null);
+        assertEquals(403L, response.get("status"));
+        response = (Map<?, ?>) post("{\"type\":\"read\",\"mbean\":\"app:type=Service,name=a\",\"attribute\":\"count\"}", "text/plain");
+        assertEquals(3L, response.get("value"));
+
+        bridge.setWritable(false);
+        response = (Map<?, ?>) post(write);
+        assertEquals(403L, response.get("status"));
+        assertEquals("Writes and invocations are disabled", response.get("error"));
+        response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=a&attribute=count");
+        assertEquals(3L, response.get("value"));
+
+        bridge.setWritable(true);
+        response = (Map<?, ?>) post(write);
+        assertEquals(200L, response.get("status"));
+        response = (Map<?, ?>) get("/read?mbean=app:type=Service,name=a&attribute=count");
+        assertEquals(1L, response.get("value"));
+    }
+
+    @Test
+    public void limits() throws Exception {
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < Json.MAX_DEPTH; i++)
+            nested.append('[');
+        for (int i = 0; i < Json.MAX_DEPTH; i++)
+            nested.append(']');
+        Json.parse(nested.toString());
+        try {
+            Json.parse("[" + nested + "]");
+            throw new AssertionError();
+        } catch (IllegalArgumentException expected) {
+        }
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            deep.append('[');
+        try {
+            Json.parse(deep.toString());
+            throw new AssertionError();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(deep.toString().getBytes("UTF-8"));
+        out.close();
+        assertEquals(400, connection.getResponseCode());
+
+        byte[] body = new byte[JsonHttpBridge.MAX_BODY_SIZE];
+        Arrays.fill(body, (byte) ' ');
+        assertEquals(body.length, JsonHttpBridge.readBody(new ByteArrayInputStream(body)).length());
+        try {
+            JsonHttpBridge.readBody(new ByteArrayInputStream(Arrays.copyOf(body, body.length + 1)));
+            throw new AssertionError();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void parse_json() throws Exception {
+        Map<?, ?> map = (Map<?, ?>) Json.parse(" {\"a\" : [1, -2.5e1, true, false, null, \"\\u0041\\n\"], \"b\": {}} ");
+        assertEquals(Arrays.asList(1L, -25.0, true, false, null, "A\n"), map.get("a"));
+        assertEquals(0, ((Map<?, ?>) map.get("b")).size());
+        for (String invalid : new String[]{"", "{", "[1,]", "{\"a\" 1}", "tru", "\"a", "1 2"}) {
+            try {
+                Json.parse(invalid);
+                throw new AssertionError(invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private Object get(String path) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url + path).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(JsonHttpBridge.CONTENT_TYPE, connection.getContentType());
+        return Json.parse(read(connection.getInputStream()));
+    }
+
+    private Object post(String body) throws Exception {
+        return post(body, "application/json");
+    }
+
+    private Object post(String body, String contentType) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestMethod("POST");
+        if (contentType != null)
+            connection.setRequestProperty("Content-Type", contentType);
+        connection.setDoOutput(true);
+        OutputStream out = connection.getOutputStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        assertEquals(200, connection.getResponseCode());
+        return Json.parse(read(connection.getInputStream()));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] bytes = new byte[1024];
+        for (int n; (n = in.read(bytes)) != -1; )
+            body.write(bytes, 0, n);
+        in.close();
+        return body.toString("UTF-8");
+    }
+
+    @JmxBean
+    public static class Service {
+        @JmxField(access = Access.RW)
+        volatile int count = 3;
+
+        @JmxField
+        volatile String label = "a \"label\"\n";
+
+        @JmxField
+        volatile double ratio = Double.NaN;
+
+        @JmxMethod
+        public int add(int value) {
+            return count += value;
+        }
+    }
+
+    public interface StandardMBean {
+        int[] getValues();
+    }
+
+    public static class Standard implements StandardMBean {
+        @Override
+        public int[] getValues() {
+            return new int[]{1, 2, 3};
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.google.common.base.Supplier;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.DynamicMBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class LazyDynamicMBeanTest {
+
+    @Test
+    public void placeholder_until_registered() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        LazyDynamicMBean mBean = new LazyDynamicMBean(MyClass.class, factory(created));
+        assertEquals(MyClass.class.getName(), mBean.getMBeanInfo().getClassName());
+        assertEquals(0, mBean.getMBeanInfo().getAttributes().length);
+        assertFalse(mBean.isMaterialized());
+
+        mBean.postRegister(true);
+        assertTrue(mBean.getMBeanInfo().getAttributes().length > 0);
+        assertTrue(mBean.isMaterialized());
+        assertEquals(1, created.get());
+    }
+
+    @Test
+    public void created_once() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final LazyDynamicMBean mBean = new LazyDynamicMBean(MyClass.class, factory(created));
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger reads = new AtomicInteger();
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        if ("a".equals(mBean.getAttribute("name")))
+                            reads.incrementAndGet();
+                    } catch (Exception ignored) {
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(16, reads.get());
+        assertEquals(1, created.get());
+    }
+
+    private static Supplier<DynamicMBean> factory(final AtomicInteger created) {
+        return new Supplier<DynamicMBean>() {
+            @Override
+            public DynamicMBean get() {
+                created.incrementAndGet();
+                return new DefaultDynamicMBean(new MyClass(), new PublicMetadataAssembler().getMetadata(MyClass.class));
+            }
+        };
+    }
+
+    public static class MyClass {
+        public String name = "a";
+    }
+}
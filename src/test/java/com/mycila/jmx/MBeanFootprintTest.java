@@ -0,0 +1,128 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import com.mycila.jmx.annotation.JmxProperty;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.ImmutableDescriptor;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class MBeanFootprintTest {
+
+    private static final int COUNT = 10000;
+    // an MBeanInfo built per instance alone takes several KB
+    private static final long MAX_BYTES_PER_MBEAN = 1024;
+
+    @Test
+    public void mbean_info_shared_by_instances() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        ObjectName on1 = exporter.register(new Service(1));
+        ObjectName on2 = exporter.register(new Service(2));
+        MBeanInfo info = exporter.getMBeanServer().getMBeanInfo(on1);
+        assertSame(info, exporter.getMBeanServer().getMBeanInfo(on2));
+        for (MBeanAttributeInfo attribute : info.getAttributes()) {
+            assertTrue(attribute.getDescriptor() instanceof ImmutableDescriptor);
+            assertSame(attribute.getDescriptor(), attribute.getDescriptor());
+        }
+        assertSame(info.getOperations()[0].getDescriptor(), info.getOperations()[0].getDescriptor());
+    }
+
+    @Test
+    public void bytes_per_mbean() throws Exception {
+        Service[] services = new Service[COUNT];
+        for (int i = 0; i < COUNT; i++)
+            services[i] = new Service(i);
+
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        exporter.register(new Service(-1));
+        long empty = usedHeap();
+        for (Service service : services)
+            exporter.register(service);
+        long full = usedHeap();
+        long eager = (full - empty) / COUNT;
+        assertTrue("MBean footprint: " + eager + " bytes per registered MBean", eager < MAX_BYTES_PER_MBEAN);
+        // the MBeanServer delegate, the first Service and the others
+        assertEquals(COUNT + 2, server.getMBeanCount().intValue());
+
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setLazy(true);
+        exporter.register(new Service(-1));
+        empty = usedHeap();
+        for (Service service : services)
+            exporter.register(service);
+        full = usedHeap();
+        long lazy = (full - empty) / COUNT;
+        assertTrue("MBean footprint: " + lazy + " bytes per registered lazy MBean", lazy < MAX_BYTES_PER_MBEAN);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(20);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Footprint")
+    public static final class Service implements JmxSelfNaming {
+        @JmxField
+        private final int id;
+        @JmxField
+        private long hits;
+
+        Service(int id) {
+            this.id = id;
+        }
+
+        @JmxProperty
+        public long getHits() {
+            return hits;
+        }
+
+        @JmxMethod
+        public void reset() {
+            hits = 0;
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance("com.mycila.jmx.test:type=Footprint,id=" + id);
+        }
+    }
+}
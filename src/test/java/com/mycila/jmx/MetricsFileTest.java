@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.metric.Counter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class MetricsFileTest {
+
+    private File file;
+    private MycilaJmxExporter exporter;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("mycila-jmx-", ".metrics");
+        exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void publish_and_read() throws Exception {
+        Service service = new Service();
+        ObjectName objectName = exporter.register(service);
+        MetricsFile metricsFile = new MetricsFile(exporter, file);
+        metricsFile.update();
+        assertEquals(3, metricsFile.size());
+
+        MetricsFileReader reader = MetricsFileReader.open(file);
+        assertEquals(3, reader.getEntries().size());
+        assertEquals(1024 * 1024, reader.getCapacity());
+        assertTrue(reader.getPid() > 0);
+        assertTrue(reader.getUpdateTime() >= reader.getCreateTime());
+        assertFalse(reader.isClosed());
+        assertNull(reader.get(objectName, "label"));
+        MetricsFileReader.Entry queue = reader.get(objectName, "queue");
+        MetricsFileReader.Entry load = reader.get(objectName, "load");
+        MetricsFileReader.Entry hits = reader.get(objectName, "hits");
+        assertEquals(objectName, queue.getObjectName());
+        assertFalse(queue.isDouble());
+        assertTrue(load.isDouble());
+        assertEquals(10L, queue.getValue());
+        assertEquals(0.5, load.doubleValue(), 0);
+        assertEquals(0, hits.longValue());
+
+        // values are read from the mapped file
+        service.queue = 42;
+        service.load = 0.75;
+        service.hits.add(3);
+        metricsFile.update();
+        assertEquals(42, queue.longValue());
+        assertEquals(0.75, load.doubleValue(), 0);
+        assertEquals(3, hits.longValue());
+
+        ObjectName other = ObjectName.getInstance("app:type=Metrics,name=other");
+        exporter.register(new Service(), other);
+        metricsFile.update();
+        assertEquals(3, reader.refresh());
+        assertEquals(10, reader.get(other, "queue").longValue());
+
+        // removed entries are reused when an MBean is registered again
+        exporter.unregister(objectName);
+        metricsFile.update();
+        assertTrue(queue.isRemoved());
+        assertFalse(reader.get(other, "queue").isRemoved());
+        exporter.register(new Service());
+        metricsFile.update();
+        assertEquals(6, metricsFile.size());
+        assertEquals(0, reader.refresh());
+        assertFalse(queue.isRemoved());
+        assertEquals(10, queue.longValue());
+        assertSame(queue, reader.get(objectName, "queue"));
+
+        metricsFile.close();
+        assertTrue(reader.isClosed());
+    }
+
+    @Test
+    public void partially_visible_entry() throws Exception {
+        exporter.register(new Service());
+        MetricsFile metricsFile = new MetricsFile(exporter, file);
+        metricsFile.update();
+        MetricsFileReader reader = MetricsFileReader.open(file);
+        assertEquals(3, reader.getEntries().size());
+
+        // what a reader could see on a weak memory model: the count of entries before the entry
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        raf.close();
+        buffer.order(ByteOrder.nativeOrder());
+        int position = buffer.getInt(MetricsFileReader.USED);
+        buffer.putInt(MetricsFileReader.COUNT, 4);
+        assertEquals(0, reader.refresh());
+        buffer.putInt(position + MetricsFileReader.ENTRY_SIZE, 24);
+        buffer.put(position + MetricsFileReader.ENTRY_TYPE, MetricsFileReader.TYPE_LONG);
+        buffer.putShort(position + MetricsFileReader.ENTRY_OBJECT_NAME, (short) 4);
+        buffer.putShort(position + MetricsFileReader.ENTRY_ATTRIBUTE, (short) 1);
+        assertEquals(0, reader.refresh());
+        for (int i = 0; i < 4; i++)
+            buffer.put(position + MetricsFileReader.ENTRY_HEADER_SIZE + i, (byte) "a:b=".charAt(i));
+        assertEquals(0, reader.refresh());
+        buffer.put(position + MetricsFileReader.ENTRY_HEADER_SIZE + 4, (byte) 'c');
+        assertEquals(1, reader.refresh());
+        assertEquals("c", reader.getEntries().get(3).getAttribute());
+        metricsFile.close();
+    }
+
+    @Test
+    public void full() throws Exception {
+        exporter.register(new Service());
+        MetricsFile metricsFile = new MetricsFile(exporter, file, MetricsFileReader.HEADER_SIZE + 80);
+        metricsFile.update();
+        assertEquals(2, metricsFile.size());
+        assertEquals(1, metricsFile.getDroppedCount());
+        assertEquals(2, MetricsFileReader.open(file).getEntries().size());
+        metricsFile.close();
+    }
+
+    @Test
+    public void not_a_metrics_file() throws Exception {
+        try {
+            MetricsFileReader.open(file);
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void read_from_another_process() throws Exception {
+        Service service = new Service();
+        service.hits.add(7);
+        exporter.register(service);
+        MetricsFile metricsFile = new MetricsFile(exporter, file).start(10, TimeUnit.MILLISECONDS);
+        try {
+            while (MetricsFileReader.open(file).getUpdateTime() == 0)
+                Thread.sleep(10);
+            Process process = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                MetricsFileReader.class.getName(), file.getPath())
+                .redirectErrorStream(true)
+                .start();
+            List<String> lines = new ArrayList<String>();
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+            try {
+                for (String line; (line = in.readLine()) != null; )
+                    lines.add(line);
+            } finally {
+                in.close();
+            }
+            assertEquals(lines.toString(), 0, process.waitFor());
+            assertTrue(lines.toString(), lines.contains("app:type=Metrics queue 10"));
+            assertTrue(lines.toString(), lines.contains("app:type=Metrics load 0.5"));
+            assertTrue(lines.toString(), lines.contains("app:type=Metrics hits 7"));
+        } finally {
+            metricsFile.close();
+        }
+    }
+
+    @JmxBean("app:type=Metrics")
+    public static class Service {
+        @JmxField
+        @JmxMetric
+        volatile int queue = 10;
+
+        @JmxField
+        @JmxMetric
+        volatile double load = 0.5;
+
+        @JmxField
+        @JmxMetric
+        final Counter hits = new Counter();
+
+        @JmxField
+        volatile String label = "label";
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.metric.Counter;
+import com.mycila.jmx.metric.Gauge;
+import com.mycila.jmx.metric.Histogram;
+import com.mycila.jmx.metric.Meter;
+import com.mycila.jmx.metric.MeterTicker;
+import com.mycila.jmx.metric.Timer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.Attribute;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class MetricsTest {
+
+    @Test
+    public void counter_concurrent_updates() throws Exception {
+        final Counter counter = new Counter();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[16];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 100000; j++)
+                        counter.increment();
+                    counter.add(-10);
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(16 * (100000 - 10), counter.get());
+    }
+
+    @Test
+    public void gauge() throws Exception {
+        Gauge gauge = new Gauge();
+        gauge.set(10);
+        gauge.max(5);
+        assertEquals(10, gauge.get());
+        gauge.max(20);
+        gauge.min(15);
+        assertEquals(15, gauge.get());
+        assertEquals(12, gauge.add(-3));
+    }
+
+    @Test
+    public void timer() throws Exception {
+        Timer timer = new Timer();
+        assertEquals(0.0, timer.getMeanTime(), 0);
+        timer.update(1, TimeUnit.MILLISECONDS);
+        timer.update(3, TimeUnit.MILLISECONDS);
+        assertEquals(2, timer.getCount());
+        assertEquals(4000000, timer.getTotalTime());
+        assertEquals(2000000.0, timer.getMeanTime(), 0);
+    }
+
+    @Test
+    public void histogram() throws Exception {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getSnapshot().getValueAtPercentile(99));
+        for (int i = 1; i <= 10000; i++)
+            histogram.record(i, TimeUnit.MICROSECONDS);
+        Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(10000000, snapshot.getMax());
+        assertEquals(5000500.0, snapshot.getMean(), 0);
+        assertWithin(5000000, snapshot.getValueAtPercentile(50));
+        assertWithin(9000000, snapshot.getValueAtPercentile(90));
+        assertWithin(9990000, snapshot.getValueAtPercentile(99.9));
+        assertEquals(10000000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void histogram_buckets() throws Exception {
+        Histogram histogram = new Histogram(Long.MAX_VALUE, 5);
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getSnapshot().getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getSnapshot().getMax());
+        for (long value : new long[]{1, 31, 32, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE / 3}) {
+            histogram = new Histogram(Long.MAX_VALUE, 5);
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+            long p50 = histogram.getSnapshot().getValueAtPercentile(50);
+            assertTrue(value + " -> " + p50, p50 >= value && p50 - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void exported_as_attributes() throws Exception {
+        Service service = new Service();
+        service.requests.add(3);
+        service.connections.set(7);
+        service.latency.update(10, TimeUnit.NANOSECONDS);
+        service.sizes.record(10);
+        service.events.mark(4);
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, metadata);
+
+        assertEquals(3L, mBean.getAttribute("requests"));
+        assertEquals(7L, mBean.getAttribute("connections"));
+        assertEquals(1L, mBean.getAttribute("latencyCount"));
+        assertEquals(10L, mBean.getAttribute("latencyTotalTime"));
+        assertEquals(10.0, mBean.getAttribute("latencyMeanTime"));
+        assertEquals(1L, mBean.getAttribute("sizesCount"));
+        assertEquals(10L, mBean.getAttribute("sizesP999"));
+        assertEquals(10.0, mBean.getAttribute("sizesMean"));
+        assertEquals(4L, mBean.getAttribute("eventsCount"));
+        assertEquals(0.0, mBean.getAttribute("eventsOneMinuteRate"));
+        assertTrue((Double) mBean.getAttribute("eventsMeanRate") > 0);
+        assertEquals(18, metadata.getMBeanInfo().getAttributes().length);
+
+        for (MBeanAttributeInfo info : metadata.getMBeanInfo().getAttributes()) {
+            assertFalse(info.isWritable());
+            if (info.getName().equals("requests")) {
+                assertEquals("long", info.getType());
+                assertEquals("counter", info.getDescriptor().getFieldValue("metricType"));
+                assertEquals("requests", info.getDescriptor().getFieldValue("units"));
+            } else if (info.getName().equals("latencyMeanTime")) {
+                assertEquals("double", info.getType());
+                assertEquals("gauge", info.getDescriptor().getFieldValue("metricType"));
+                assertEquals("nanoseconds", info.getDescriptor().getFieldValue("units"));
+            } else if (info.getName().equals("eventsFiveMinuteRate")) {
+                assertEquals("double", info.getType());
+                assertEquals("meter", info.getDescriptor().getFieldValue("metricType"));
+                assertEquals("events/second", info.getDescriptor().getFieldValue("units"));
+            } else if (info.getName().equals("sizesP99")) {
+                assertEquals("long", info.getType());
+                assertEquals("histogram", info.getDescriptor().getFieldValue("metricType"));
+                assertEquals("bytes", info.getDescriptor().getFieldValue("units"));
+            }
+        }
+    }
+
+    @Test
+    public void meters_ticked_by_exporter() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter();
+        exporter.setEnsureUnique(true);
+        ObjectName objectName = exporter.register(new Service());
+        ScheduledThreadPoolExecutor scheduler = (ScheduledThreadPoolExecutor) exporter.getScheduler();
+        try {
+            assertEquals(1, exporter.getMeterTicker().size());
+            assertEquals(1, scheduler.getQueue().size());
+            ClassLoader contextClassLoader = scheduler.submit(new Callable<ClassLoader>() {
+                @Override
+                public ClassLoader call() {
+                    return Thread.currentThread().getContextClassLoader();
+                }
+            }).get();
+            assertNull(contextClassLoader);
+
+            // the default ticker is stopped when replaced
+            exporter.setMeterTicker(new MeterTicker(scheduler));
+            assertEquals(0, scheduler.getQueue().size());
+        } finally {
+            exporter.unregister(objectName);
+            exporter.close();
+        }
+        assertTrue(scheduler.isShutdown());
+    }
+
+    @Test
+    public void meters_ticked_while_registered() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setExportBehavior(ExportBehavior.SKIP_EXISTING);
+        try {
+            ObjectName objectName = exporter.register(new Service());
+            exporter.register(new Service());
+            assertEquals(1, exporter.getMeterTicker().size());
+            exporter.unregister(objectName);
+            assertEquals(0, exporter.getMeterTicker().size());
+
+            exporter.setLazy(true);
+            objectName = exporter.register(new Service());
+            assertEquals(1, exporter.getMeterTicker().size());
+            exporter.getMBeanServer().unregisterMBean(objectName);
+            assertEquals(0, exporter.getMeterTicker().size());
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test(expected = ReflectionException.class)
+    public void read_only() throws Exception {
+        new DefaultDynamicMBean(new Service(), new AnnotationMetadataAssembler().getMetadata(Service.class)).setAttribute(new Attribute("requests", 1L));
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Metrics")
+    public static class Service {
+        @JmxField
+        @JmxMetric(unit = "requests")
+        final Counter requests = new Counter();
+
+        @JmxField
+        final Gauge connections = new Gauge();
+
+        @JmxField
+        final Timer latency = new Timer();
+
+        @JmxField
+        @JmxMetric(type = MetricType.HISTOGRAM, unit = "bytes")
+        final Histogram sizes = new Histogram();
+
+        @JmxField
+        final Meter events = new Meter();
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 1/32 of " + expected, Math.abs(actual - expected) <= expected / 32);
+    }
+}
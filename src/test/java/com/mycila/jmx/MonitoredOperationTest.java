@@ -0,0 +1,146 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMethod;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanAttributeInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class MonitoredOperationTest {
+
+    @Test
+    public void invocations_recorded() throws Exception {
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Service(), new AnnotationMetadataAssembler().getMetadata(Service.class));
+        assertEquals(0L, mBean.getAttribute("reindexCallCount"));
+
+        assertEquals(3, mBean.invoke("reindex", new Object[]{3}, new String[]{int.class.getName()}));
+        assertEquals("done", mBean.invoke("reindex", new Object[0], new String[0]));
+        try {
+            mBean.invoke("reindex", new Object[]{-1}, new String[]{int.class.getName()});
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("negative count", e.getMessage());
+        }
+
+        assertEquals(3L, mBean.getAttribute("reindexCallCount"));
+        assertEquals(1L, mBean.getAttribute("reindexErrorCount"));
+        long total = (Long) mBean.getAttribute("reindexTotalTime");
+        long max = (Long) mBean.getAttribute("reindexMaxTime");
+        assertTrue(max > 0 && total >= max);
+        assertEquals(0L, mBean.getAttribute("clearCallCount"));
+    }
+
+    @Test
+    public void statistics_per_instance() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        DefaultDynamicMBean m1 = new DefaultDynamicMBean(new Service(), metadata);
+        DefaultDynamicMBean m2 = new DefaultDynamicMBean(new Service(), metadata);
+        m1.invoke("clear", new Object[0], new String[0]);
+        assertEquals(1L, m1.getAttribute("clearCallCount"));
+        assertEquals(0L, m2.getAttribute("clearCallCount"));
+    }
+
+    @Test
+    public void statistics_shared_with_direct_invocations() throws Exception {
+        Service service = new Service();
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, metadata);
+        mBean.invoke("clear", new Object[0], new String[0]);
+        metadata.getOperation("clear").invoke(service);
+        assertEquals(2L, mBean.getAttribute("clearCallCount"));
+    }
+
+    @Test
+    public void statistic_name_clash() throws Exception {
+        try {
+            new AnnotationMetadataAssembler().getMetadata(Clash.class);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("clearCallCount"));
+        }
+    }
+
+    @Test
+    public void exported_attributes() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        assertEquals(8, metadata.getMBeanInfo().getAttributes().length);
+        for (MBeanAttributeInfo info : metadata.getMBeanInfo().getAttributes()) {
+            assertEquals("long", info.getType());
+            assertFalse(info.isWritable());
+            if (info.getName().endsWith("Time"))
+                assertEquals("nanoseconds", info.getDescriptor().getFieldValue("units"));
+        }
+        assertEquals("counter", metadata.getAttribute("reindexCallCount").getMetadata().getDescriptor().getFieldValue("metricType"));
+        assertEquals("gauge", metadata.getAttribute("reindexMaxTime").getMetadata().getDescriptor().getFieldValue("metricType"));
+    }
+
+    @Test
+    public void disabled_by_default() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Unmonitored.class);
+        assertEquals(0, metadata.getMBeanInfo().getAttributes().length);
+        assertFalse(metadata.getOperation("clear") instanceof MonitoredOperation);
+    }
+
+    @JmxBean(value = "com.mycila.jmx.test:type=Monitored", statistics = true)
+    public static class Service {
+        @JmxMethod
+        public int reindex(int count) {
+            if (count < 0)
+                throw new IllegalArgumentException("negative count");
+            return count;
+        }
+
+        @JmxMethod
+        public String reindex() {
+            return "done";
+        }
+
+        @JmxMethod
+        public void clear() {
+        }
+    }
+
+    @JmxBean(value = "com.mycila.jmx.test:type=Clash", statistics = true)
+    public static class Clash {
+        @JmxField
+        long clearCallCount;
+
+        @JmxMethod
+        public void clear() {
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Unmonitored")
+    public static class Unmonitored {
+        @JmxMethod
+        public void clear() {
+        }
+    }
+}
@@ -17,12 +17,24 @@ package com.mycila.jmx;
 
 import org.junit.Test;
 
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.mycila.jmx.Throws.fire;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -109,4 +121,176 @@ public final class MycilaJmxExporterTest {
         }, fire(JmxExportException.class, "Unable to generate ObjectName for MBean [com.mycila.jmx.MycilaJmxExporterTest$5$1]"));
     }
 
+    @Test
+    public void test_register_all() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setExportBehavior(ExportBehavior.FAIL_ON_EXISTING);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        exporter.setBatchExecutor(executor);
+
+        List<Object> beans = new ArrayList<Object>();
+        for (int i = 0; i < 1000; i++)
+            beans.add(i % 2 == 0 ? new Named("a:type=A,id=" + i) : new OtherNamed("a:type=B,id=" + i));
+        beans.add(new Named("a:type=A,id=0"));
+        beans.add(new Named("----"));
+        try {
+            RegistrationReport report = exporter.registerAll(beans);
+            assertFalse(report.isSuccessful());
+            assertEquals(1000, report.getRegistered().size());
+            for (int i = 0; i < 1000; i++)
+                assertEquals(((Named) beans.get(i)).getObjectName(), report.getRegistered().get(i));
+            assertEquals(2, report.getFailures().size());
+            assertTrue(report.getFailures().get(0).getManagedResource() == beans.get(1000));
+            assertEquals("Unable to register MBean [com.mycila.jmx.ContextualDynamicMBean] with object name [a:type=A,id=0]", report.getFailures().get(0).getException().getMessage());
+            assertEquals("Unable to generate ObjectName for MBean [com.mycila.jmx.MycilaJmxExporterTest$Named]", report.getFailures().get(1).getException().getMessage());
+            assertEquals(1000, exporter.getMBeanServer().queryNames(ObjectName.getInstance("a:*"), null).size());
+            assertEquals(2, exporter.getMetadataAssembler().size());
+
+            exporter.setExportBehavior(ExportBehavior.SKIP_EXISTING);
+            report = exporter.registerAll(beans.subList(0, 10));
+            assertTrue(report.isSuccessful());
+            assertTrue(report.getRegistered().isEmpty());
+            assertEquals(10, report.getSkipped().size());
+            assertEquals(((Named) beans.get(3)).getObjectName(), report.getSkipped().get(3));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_lazy() throws Exception {
+        final AtomicInteger assembled = new AtomicInteger();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setMetadataAssembler(new PublicMetadataAssembler() {
+            @Override
+            public JmxMetadata getMetadata(Class<?> managedClass) {
+                assembled.incrementAndGet();
+                return super.getMetadata(managedClass);
+            }
+        });
+        exporter.setLazy(true);
+
+        ObjectName on = ObjectName.getInstance("a:type=lazy");
+        Object bean = new Object() {
+            public String val = "0";
+        };
+        exporter.register(bean, on);
+        assertTrue(exporter.getMBeanServer().isRegistered(on));
+        assertEquals(0, assembled.get());
+
+        assertEquals("0", exporter.getMBeanServer().getAttribute(on, "val"));
+        assertEquals(1, assembled.get());
+        assertSame(exporter.getMetadataAssembler().getMetadata(bean.getClass()).getMBeanInfo(), exporter.getMBeanServer().getMBeanInfo(on));
+        assertEquals(1, assembled.get());
+    }
+
+    @Test
+    public void test_snapshot() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setMetadataAssembler(new PublicMetadataAssembler());
+        List<Object> beans = new ArrayList<Object>();
+        for (int i = 0; i < 1000; i++)
+            beans.add(new Counter("a:type=Counter,id=" + i, i));
+        assertTrue(exporter.registerAll(beans).isSuccessful());
+        exporter.register(new Standard(), ObjectName.getInstance("a:type=Standard"));
+        exporter.register(new Counter("b:type=Counter", -1));
+        exporter.unregister(ObjectName.getInstance("a:type=Counter,id=999"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (MBeanSnapshot snapshot : new MBeanSnapshot[]{exporter.snapshot(ObjectName.getInstance("a:*")), exporter.snapshot(ObjectName.getInstance("a:*"), pool)}) {
+                assertEquals(1000, snapshot.size());
+                assertEquals(2, snapshot.getTables().size());
+                for (MBeanSnapshot.Table table : snapshot) {
+                    if (table.getClassName().equals(Standard.class.getName())) {
+                        assertEquals(1, table.getRowCount());
+                        assertEquals(1, table.getColumnCount());
+                        assertEquals("Value", table.getAttribute(0));
+                        assertEquals(42, table.getValue(0, 0));
+                    } else {
+                        assertEquals(Counter.class.getName(), table.getClassName());
+                        assertEquals(999, table.getRowCount());
+                        int column = table.getColumn("count");
+                        assertEquals(-1, table.getColumn("name"));
+                        for (int row = 0; row < table.getRowCount(); row++)
+                            assertEquals(table.getObjectName(row).getKeyProperty("id"), String.valueOf(table.getValue(row, column)));
+                    }
+                }
+                assertEquals(7, snapshot.getValue(ObjectName.getInstance("a:type=Counter,id=7"), "count"));
+                assertNull(snapshot.getValue(ObjectName.getInstance("a:type=Counter,id=999"), "count"));
+            }
+            assertEquals(1001, exporter.snapshot(null, pool).size());
+
+            // unregistered without the exporter
+            ObjectName objectName = ObjectName.getInstance("a:type=Counter,id=7");
+            exporter.getMBeanServer().unregisterMBean(objectName);
+            assertNull(exporter.exportedMBean(objectName));
+            assertEquals(1000, exporter.snapshot(null, pool).size());
+
+            exporter.close();
+            exporter.getMBeanServer().unregisterMBean(ObjectName.getInstance("a:type=Counter,id=8"));
+            assertNotNull(exporter.exportedMBean(ObjectName.getInstance("a:type=Counter,id=8")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static class Counter extends Named {
+        public int count;
+
+        public Counter(String name, int count) {
+            super(name);
+            this.count = count;
+        }
+    }
+
+    public interface StandardMBean {
+        int getValue();
+    }
+
+    @Test
+    public void test_collected() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        exporter.setMetadataAssembler(new PublicMetadataAssembler());
+        exporter.register(new Counter("a:type=Counter,id=1", 1));
+        exporter.register(new Counter("a:type=Counter,id=2", 2));
+        WeakReference<MycilaJmxExporter> reference = new WeakReference<MycilaJmxExporter>(exporter);
+        exporter = null;
+        for (int i = 0; i < 100 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+        // the listener of the collected exporter removes itself
+        server.unregisterMBean(ObjectName.getInstance("a:type=Counter,id=1"));
+        server.unregisterMBean(ObjectName.getInstance("a:type=Counter,id=2"));
+    }
+
+    public static class Standard implements StandardMBean {
+        @Override
+        public int getValue() {
+            return 42;
+        }
+    }
+
+    public static class Named implements JmxSelfNaming {
+        private final String name;
+
+        public Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public ObjectName getObjectName() throws MalformedObjectNameException {
+            return ObjectName.getInstance(name);
+        }
+    }
+
+    public static class OtherNamed extends Named {
+        public OtherNamed(String name) {
+            super(name);
+        }
+    }
+
 }
@@ -0,0 +1,254 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxNotification;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class NotificationPublisherTest {
+
+    @Test
+    public void declared_in_mbean_info() throws Exception {
+        MBeanNotificationInfo[] infos = new AnnotationMetadataAssembler().getMetadata(Service.class).getMBeanInfo().getNotifications();
+        assertEquals(2, infos.length);
+        for (MBeanNotificationInfo info : infos) {
+            if (info.getNotifTypes().length == 2) {
+                assertArrayEquals(new String[]{"cache.rebuilt", "cache.cleared"}, info.getNotifTypes());
+                assertEquals(Notification.class.getName(), info.getName());
+                assertEquals("Cache events", info.getDescription());
+            } else
+                assertEquals(AttributeChangeNotification.class.getName(), info.getName());
+        }
+    }
+
+    @Test
+    public void delivered_to_mbean_server_listeners() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        Service service = new Service();
+        ObjectName objectName = new MycilaJmxExporter(server).register(service);
+        assertEquals(2, server.getMBeanInfo(objectName).getNotifications().length);
+
+        Recorder recorder = new Recorder();
+        server.addNotificationListener(objectName, recorder, null, "handback");
+        service.events.publish("cache.rebuilt", "rebuilt in 10ms", 10);
+
+        Notification notification = recorder.received.poll(5, TimeUnit.SECONDS);
+        assertEquals("cache.rebuilt", notification.getType());
+        assertEquals(objectName, notification.getSource());
+        assertEquals(10, notification.getUserData());
+        assertEquals(1, notification.getSequenceNumber());
+
+        server.removeNotificationListener(objectName, recorder);
+        service.events.publish("cache.cleared", "cleared");
+        service.events.publish("cache.rebuilt", "rebuilt");
+        Thread.sleep(50);
+        assertNull(recorder.received.poll());
+    }
+
+    @Test
+    public void lazy_mbean() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        exporter.setLazy(true);
+        Service service = new Service();
+        ObjectName objectName = exporter.register(service);
+        Recorder recorder = new Recorder();
+        server.addNotificationListener(objectName, recorder, null, null);
+        service.events.publish("cache.cleared", "cleared");
+        assertEquals("cache.cleared", recorder.received.poll(5, TimeUnit.SECONDS).getType());
+    }
+
+    @Test
+    public void no_publisher() throws Exception {
+        // generic clients subscribe to all the emitters
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(new Object(), new PublicMetadataAssembler().getMetadata(Object.class));
+        Recorder recorder = new Recorder();
+        mBean.addNotificationListener(recorder, null, null);
+        assertEquals(0, mBean.getNotificationInfo().length);
+        mBean.removeNotificationListener(recorder);
+        try {
+            mBean.removeNotificationListener(recorder);
+            fail();
+        } catch (ListenerNotFoundException expected) {
+        }
+    }
+
+    @Test
+    public void failing_listener() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test-failing", 16);
+        NotificationPublisher publisher = new NotificationPublisher(dispatcher, OverflowPolicy.DROP);
+        final BlockingQueue<Boolean> noClassLoader = new LinkedBlockingQueue<Boolean>();
+        publisher.addNotificationListener(new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                noClassLoader.add(Thread.currentThread().getContextClassLoader() == null);
+                throw new AssertionError("listener failed");
+            }
+        }, null, null);
+        Recorder recorder = new Recorder();
+        publisher.addNotificationListener(recorder, null, null);
+        try {
+            publisher.publish("a", "1");
+            publisher.publish("a", "2");
+            assertEquals("1", recorder.next().getMessage());
+            assertEquals("2", recorder.next().getMessage());
+            assertEquals(Boolean.TRUE, noClassLoader.poll(5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void drop_when_full() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test-drop", 2);
+        NotificationPublisher publisher = new NotificationPublisher(dispatcher, OverflowPolicy.DROP);
+        SlowListener listener = new SlowListener();
+        publisher.addNotificationListener(listener, null, null);
+        try {
+            publisher.publish("a", "1");
+            listener.entered.await();
+            for (int i = 2; i <= 6; i++)
+                publisher.publish("a", String.valueOf(i));
+            assertEquals(3, publisher.getDroppedCount());
+            assertEquals(3, dispatcher.getDroppedCount());
+            listener.release.countDown();
+            assertEquals("1", listener.next().getMessage());
+            assertEquals("2", listener.next().getMessage());
+            assertEquals("3", listener.next().getMessage());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void coalesce_pending_notifications() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test-coalesce", 2);
+        NotificationPublisher publisher = new NotificationPublisher(dispatcher, OverflowPolicy.COALESCE);
+        SlowListener listener = new SlowListener();
+        publisher.addNotificationListener(listener, null, null);
+        try {
+            publisher.publish("a", "1");
+            listener.entered.await();
+            for (int i = 2; i <= 6; i++)
+                publisher.publish("a", String.valueOf(i));
+            publisher.publish("b", "7");
+            // one slot queued per type
+            assertEquals(2, dispatcher.size());
+            assertEquals(4, publisher.getCoalescedCount());
+            assertEquals(0, publisher.getDroppedCount());
+            listener.release.countDown();
+            assertEquals("1", listener.next().getMessage());
+            assertEquals("6", listener.next().getMessage());
+            assertEquals("7", listener.next().getMessage());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void block_until_queued() throws Exception {
+        NotificationDispatcher dispatcher = new NotificationDispatcher("test-block", 1);
+        final NotificationPublisher publisher = new NotificationPublisher(dispatcher, OverflowPolicy.BLOCK);
+        SlowListener listener = new SlowListener();
+        publisher.addNotificationListener(listener, null, null);
+        try {
+            publisher.publish("a", "1");
+            listener.entered.await();
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 2; i <= 4; i++)
+                        publisher.publish("a", String.valueOf(i));
+                }
+            };
+            thread.start();
+            thread.join(100);
+            assertTrue(thread.isAlive());
+            listener.release.countDown();
+            thread.join(5000);
+            for (int i = 1; i <= 4; i++)
+                assertEquals(String.valueOf(i), listener.next().getMessage());
+            assertEquals(0, publisher.getDroppedCount());
+        } finally {
+            dispatcher.shutdown();
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Notifications")
+    public static class Service {
+        @JmxNotification(value = {"cache.rebuilt", "cache.cleared"}, description = "Cache events")
+        final NotificationPublisher events = new NotificationPublisher();
+
+        @JmxNotification(value = AttributeChangeNotification.ATTRIBUTE_CHANGE, notificationClass = AttributeChangeNotification.class)
+        final NotificationPublisher changes = new NotificationPublisher();
+    }
+
+    static class Recorder implements NotificationListener {
+        final BlockingQueue<Notification> received = new LinkedBlockingQueue<Notification>();
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            received.add(notification);
+        }
+
+        Notification next() throws InterruptedException {
+            return received.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    static final class SlowListener extends Recorder {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            super.handleNotification(notification, handback);
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxMetric;
+import com.mycila.jmx.metric.Counter;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class OpenMetricsEndpointTest {
+
+    @Test
+    public void sanitize() throws Exception {
+        assertEquals("request_count", OpenMetricsEndpoint.sanitize("requestCount", true));
+        assertEquals("sizes_p99", OpenMetricsEndpoint.sanitize("sizesP99", true));
+        assertEquals("events_per_second", OpenMetricsEndpoint.sanitize("events/second", true));
+        assertEquals("_1st", OpenMetricsEndpoint.sanitize("1st", true));
+        assertEquals("a_b", OpenMetricsEndpoint.sanitize("a-.b", false));
+        assertEquals("Type", OpenMetricsEndpoint.sanitize("Type", false));
+    }
+
+    @Test
+    public void write_metrics() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        Server server = new Server();
+        server.hits.add(3);
+        exporter.register(server);
+        exporter.register(new Server(), ObjectName.getInstance("app:type=Server,name=\"b\\\"\""));
+        exporter.register(new Server(), ObjectName.getInstance("other:type=Server"));
+
+        OpenMetricsEndpoint endpoint = new OpenMetricsEndpoint(exporter, ObjectName.getInstance("app:*"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        endpoint.writeTo(out);
+        String text = out.toString("UTF-8");
+        String a = "{domain=\"app\",name=\"a\",type=\"Server\"}";
+        String b = "{domain=\"app\",name=\"b\\\"\",type=\"Server\"}";
+        assertEquals(1, count(text, "# TYPE server_hits counter\n"));
+        assertEquals(1, count(text, "server_hits_total" + a + " 3\n"));
+        assertEquals(1, count(text, "server_hits_total" + b + " 0\n"));
+        assertEquals(1, count(text, "# TYPE server_requests counter\n# HELP server_requests Requests served\n"));
+        assertEquals(1, count(text, "server_requests_total" + a + " 12\n"));
+        assertEquals(1, count(text, "# TYPE memory_heap_used_bytes gauge\n# UNIT memory_heap_used_bytes bytes\n"));
+        assertEquals(1, count(text, "memory_heap_used_bytes" + a + " 1.5\n"));
+        assertEquals(1, count(text, "server_up" + a + " 1\n"));
+        assertEquals(1, count(text, "server_ratio" + a + " NaN\n"));
+        assertEquals(0, count(text, "status"));
+        assertEquals(0, count(text, "other"));
+        assertEquals(10, count(text, "\nserver_") + count(text, "\nmemory_"));
+        assertEquals(true, text.endsWith("\n# EOF\n"));
+
+        out.reset();
+        endpoint.writeTo(out);
+        assertEquals(text, out.toString("UTF-8"));
+    }
+
+    @Test
+    public void serve_over_http() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.register(new Server());
+        HttpServer server = new OpenMetricsEndpoint(exporter).start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        try {
+            URL url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals(OpenMetricsEndpoint.CONTENT_TYPE, connection.getContentType());
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            for (int n; (n = in.read(bytes)) != -1; )
+                body.write(bytes, 0, n);
+            in.close();
+            assertEquals(1, count(body.toString("UTF-8"), "server_requests_total{domain=\"app\",name=\"a\",type=\"Server\"} 12\n"));
+
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod("DELETE");
+            assertEquals(405, connection.getResponseCode());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static int count(String text, String part) {
+        int count = 0;
+        for (int i = text.indexOf(part); i != -1; i = text.indexOf(part, i + 1))
+            count++;
+        return count;
+    }
+
+    @JmxBean("app:type=Server,name=a")
+    public static class Server {
+        @JmxField
+        @JmxMetric
+        final Counter hits = new Counter();
+
+        @JmxField(description = "Requests served")
+        @JmxMetric(type = MetricType.COUNTER)
+        volatile long requestsTotal = 12;
+
+        @JmxField
+        @JmxMetric(category = "memory", unit = "bytes")
+        volatile double heapUsed = 1.5;
+
+        @JmxField
+        volatile boolean up = true;
+
+        @JmxField
+        volatile double ratio = Double.NaN;
+
+        @JmxField
+        volatile String status = "OK";
+    }
+}
@@ -19,6 +19,8 @@ import org.junit.Test;
 
 import javax.management.Attribute;
 import javax.management.AttributeNotFoundException;
+import javax.management.Descriptor;
+import javax.management.MBeanOperationInfo;
 import javax.management.ObjectName;
 import javax.management.ReflectionException;
 import javax.management.RuntimeMBeanException;
@@ -258,4 +260,32 @@ public final class PublicMetadataAssemblerTest extends JmxTest {
         server.getAttribute(on, "Class");
     }
 
+    @Test
+    public void operation_roles() throws Exception {
+        ObjectName on = register(new Object() {
+            public String getName() {
+                return "";
+            }
+
+            public void setName(String name) {
+            }
+
+            public void run() {
+            }
+        });
+        for (MBeanOperationInfo info : server.getMBeanInfo(on).getOperations()) {
+            Descriptor desc = info.getDescriptor();
+            if (info.getName().equals("getName") || info.getName().equals("getClass")) {
+                assertEquals("getter", desc.getFieldValue("role"));
+                assertEquals(4, desc.getFieldValue("visibility"));
+            } else if (info.getName().equals("setName")) {
+                assertEquals("setter", desc.getFieldValue("role"));
+                assertEquals(4, desc.getFieldValue("visibility"));
+            } else {
+                assertEquals("operation", desc.getFieldValue("role"));
+                assertEquals(1, desc.getFieldValue("visibility"));
+            }
+        }
+    }
+
 }
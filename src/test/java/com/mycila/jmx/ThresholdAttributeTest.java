@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx;
+
+import com.mycila.jmx.annotation.JmxBean;
+import com.mycila.jmx.annotation.JmxCached;
+import com.mycila.jmx.annotation.JmxField;
+import com.mycila.jmx.annotation.JmxProperty;
+import com.mycila.jmx.annotation.JmxThreshold;
+import com.mycila.jmx.metric.Counter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.management.AttributeChangeNotification;
+import javax.management.Descriptor;
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class ThresholdAttributeTest {
+
+    @Test
+    public void metadata() throws Exception {
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Service.class);
+        assertTrue(metadata.getAttribute("queueSize") instanceof ThresholdAttribute);
+        Descriptor desc = metadata.getAttribute("queueSize").getMetadata().getDescriptor();
+        assertEquals(100.0, desc.getFieldValue("thresholdHigh"));
+        assertEquals(10.0, desc.getFieldValue("thresholdLow"));
+        assertNull(desc.getFieldValue("thresholdDelta"));
+        MBeanNotificationInfo[] notifications = metadata.getMBeanInfo().getNotifications();
+        assertEquals(1, notifications.length);
+        assertEquals(AttributeChangeNotification.ATTRIBUTE_CHANGE, notifications[0].getNotifTypes()[0]);
+        assertFalse(new DefaultDynamicMBean(new Object(), new PublicMetadataAssembler().getMetadata(Object.class)).hasThresholds());
+    }
+
+    @Test
+    public void thresholds_with_hysteresis() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        MycilaJmxExporter exporter = new MycilaJmxExporter(server);
+        Service service = new Service();
+        ObjectName objectName = exporter.register(service);
+        AttributeSampler sampler = exporter.getAttributeSampler();
+        assertEquals(1, sampler.size());
+        Recorder recorder = new Recorder();
+        server.addNotificationListener(objectName, recorder, null, null);
+        try {
+            sample(sampler, service, 50);
+            sample(sampler, service, 120);
+            AttributeChangeNotification notification = recorder.next();
+            assertEquals(objectName, notification.getSource());
+            assertEquals("queueSize", notification.getAttributeName());
+            assertEquals("int", notification.getAttributeType());
+            assertEquals(50, notification.getOldValue());
+            assertEquals(120, notification.getNewValue());
+            assertTrue(notification.getMessage().contains("high threshold"));
+
+            // not re-armed until the value goes down to the low threshold
+            sample(sampler, service, 90);
+            sample(sampler, service, 130);
+            sample(sampler, service, 5);
+            notification = recorder.next();
+            assertEquals(5, notification.getNewValue());
+            assertTrue(notification.getMessage().contains("low threshold"));
+            sample(sampler, service, 150);
+            assertEquals(150, recorder.next().getNewValue());
+            assertNull(recorder.received.poll(50, TimeUnit.MILLISECONDS));
+        } finally {
+            exporter.unregister(objectName);
+            exporter.close();
+        }
+        assertEquals(0, sampler.size());
+    }
+
+    @Test
+    public void sampled_while_registered() throws Exception {
+        MycilaJmxExporter exporter = new MycilaJmxExporter(MBeanServerFactory.newMBeanServer());
+        exporter.setExportBehavior(ExportBehavior.FAIL_ON_EXISTING);
+        try {
+            ObjectName objectName = exporter.register(new Service());
+            try {
+                exporter.register(new Service());
+                fail();
+            } catch (JmxExportException ignored) {
+            }
+            assertEquals(1, exporter.getAttributeSampler().size());
+            exporter.getMBeanServer().unregisterMBean(objectName);
+            assertEquals(0, exporter.getAttributeSampler().size());
+
+            exporter.setLazy(true);
+            objectName = exporter.register(new Service());
+            assertEquals(0, exporter.getAttributeSampler().size());
+            exporter.getMBeanServer().getAttribute(objectName, "queueSize");
+            assertEquals(1, exporter.getAttributeSampler().size());
+        } finally {
+            exporter.close();
+        }
+    }
+
+    @Test
+    public void delta() throws Exception {
+        Service service = new Service();
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, new AnnotationMetadataAssembler().getMetadata(Service.class));
+        Recorder recorder = new Recorder();
+        mBean.addNotificationListener(recorder, null, "handback");
+        service.load = 1.0;
+        mBean.sampleThresholds();
+        service.load = 1.4;
+        mBean.sampleThresholds();
+        service.load = 1.6;
+        mBean.sampleThresholds();
+        AttributeChangeNotification notification = recorder.next();
+        assertEquals("Load", notification.getAttributeName());
+        assertEquals(1.4, notification.getOldValue());
+        assertEquals(1.6, notification.getNewValue());
+        service.load = 2.0;
+        mBean.sampleThresholds();
+        assertNull(recorder.received.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void sampled_only_with_listeners() throws Exception {
+        Service service = new Service();
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(service, new AnnotationMetadataAssembler().getMetadata(Service.class));
+        mBean.sampleThresholds();
+        assertEquals(0, service.reads.get());
+        Recorder recorder = new Recorder();
+        mBean.addNotificationListener(recorder, null, null);
+        mBean.sampleThresholds();
+        assertEquals(1, service.reads.get());
+        mBean.removeNotificationListener(recorder);
+        mBean.sampleThresholds();
+        assertEquals(1, service.reads.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_thresholds() throws Exception {
+        new AnnotationMetadataAssembler().getMetadata(Invalid.class);
+    }
+
+    @Test
+    public void cached_threshold() throws Exception {
+        Cached cached = new Cached();
+        JmxMetadata metadata = new AnnotationMetadataAssembler().getMetadata(Cached.class);
+        assertTrue(metadata.getAttribute("Size") instanceof ThresholdAttribute);
+        DefaultDynamicMBean mBean = new DefaultDynamicMBean(cached, metadata);
+        cached.size = 5;
+        assertEquals(5, mBean.getAttribute("Size"));
+        cached.size = 6;
+        assertEquals(5, mBean.getAttribute("Size"));
+        assertEquals(1L, mBean.getAttribute("SizeCacheHits"));
+        assertEquals(1L, mBean.getAttribute("SizeCacheMisses"));
+    }
+
+    @Test
+    public void invalid_members() throws Exception {
+        for (Class<?> c : new Class<?>[]{OnMetric.class, CachedMetric.class, NonNumeric.class, WriteOnly.class})
+            try {
+                new AnnotationMetadataAssembler().getMetadata(c);
+                fail(c.getName());
+            } catch (IllegalArgumentException ignored) {
+            }
+    }
+
+    private static void sample(AttributeSampler sampler, Service service, int queueSize) {
+        service.queueSize = queueSize;
+        sampler.sample();
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=Thresholds")
+    public static class Service {
+        final AtomicInteger reads = new AtomicInteger();
+        volatile double load;
+
+        @JmxField
+        @JmxThreshold(high = 100, low = 10)
+        volatile int queueSize;
+
+        @JmxProperty
+        @JmxThreshold(delta = 0.5)
+        public double getLoad() {
+            reads.incrementAndGet();
+            return load;
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=InvalidThresholds")
+    public static class Invalid {
+        @JmxField
+        @JmxThreshold(high = 10, low = 100)
+        int value;
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=CachedThresholds")
+    public static class Cached {
+        volatile int size;
+
+        @JmxProperty
+        @JmxCached(ttl = 1, unit = TimeUnit.HOURS)
+        @JmxThreshold(high = 10)
+        public int getSize() {
+            return size;
+        }
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=OnMetric")
+    public static class OnMetric {
+        @JmxField
+        @JmxThreshold(high = 10)
+        final Counter requests = new Counter();
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=CachedMetric")
+    public static class CachedMetric {
+        @JmxField
+        @JmxCached(ttl = 1)
+        final Counter requests = new Counter();
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=NonNumeric")
+    public static class NonNumeric {
+        @JmxField
+        @JmxThreshold(high = 10)
+        String value;
+    }
+
+    @JmxBean("com.mycila.jmx.test:type=WriteOnly")
+    public static class WriteOnly {
+        @JmxProperty
+        @JmxThreshold(high = 10)
+        public void setValue(int value) {
+        }
+    }
+
+    static final class Recorder implements NotificationListener {
+        final BlockingQueue<Notification> received = new LinkedBlockingQueue<Notification>();
+
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            received.add(notification);
+        }
+
+        AttributeChangeNotification next() throws InterruptedException {
+            return (AttributeChangeNotification) received.poll(5, TimeUnit.SECONDS);
+        }
+    }
+}
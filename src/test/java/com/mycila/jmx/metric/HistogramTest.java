@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class HistogramTest {
+
+    @Test
+    public void snapshot_reused_until_recorded() throws Exception {
+        Histogram histogram = new Histogram();
+        histogram.record(100);
+        Histogram.Snapshot snapshot = histogram.getSnapshot();
+        assertSame(snapshot, histogram.getSnapshot());
+        histogram.record(200);
+        Histogram.Snapshot next = histogram.getSnapshot();
+        assertNotSame(snapshot, next);
+        assertEquals(2, next.getCount());
+        assertEquals(1, snapshot.getCount());
+    }
+
+    @Test
+    public void interval() throws Exception {
+        // reads are simulated in the future so that the test does not depend on the scheduling
+        long start = System.nanoTime();
+        long interval = TimeUnit.MINUTES.toNanos(1);
+        Histogram histogram = new Histogram(1000000, 5, 1, TimeUnit.MINUTES);
+        histogram.record(100);
+        assertEquals(0, histogram.getSnapshot(start).getCount());
+
+        Histogram.Snapshot snapshot = histogram.getSnapshot(start + 2 * interval);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(100, snapshot.getMin());
+        assertEquals(100, snapshot.getValueAtPercentile(50));
+        histogram.record(5000);
+        assertSame(snapshot, histogram.getSnapshot(start + 3 * interval - 1));
+
+        snapshot = histogram.getSnapshot(start + 4 * interval);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(5000.0, snapshot.getMean(), 0);
+        assertEquals(5000, snapshot.getMax());
+        assertEquals(4992, snapshot.getMin());
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2010 Mycila (mathieu.carbou@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mycila.jmx.metric;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Mathieu Carbou (mathieu.carbou@gmail.com)
+ */
+@RunWith(JUnit4.class)
+public final class MeterTest {
+
+    @Test
+    public void moving_averages() throws Exception {
+        // ticks are simulated in the future so that reading the rates does not tick
+        long start = System.nanoTime();
+        Meter meter = new Meter(start);
+        meter.mark(60);
+        meter.tick(start + Meter.TICK_INTERVAL - 1);
+        assertEquals(60, meter.getCount());
+
+        // 60 events in the first 5 seconds
+        meter.tick(start + Meter.TICK_INTERVAL);
+        assertEquals(12.0, meter.getOneMinuteRate(), 0.0001);
+        assertEquals(12.0, meter.getFiveMinuteRate(), 0.0001);
+        assertEquals(12.0, meter.getFifteenMinuteRate(), 0.0001);
+
+        // then one idle minute
+        meter.tick(start + Meter.TICK_INTERVAL + TimeUnit.MINUTES.toNanos(1));
+        assertEquals(12 * Math.exp(-1), meter.getOneMinuteRate(), 0.0001);
+        assertEquals(12 * Math.exp(-1 / 5.0), meter.getFiveMinuteRate(), 0.0001);
+        assertEquals(12 * Math.exp(-1 / 15.0), meter.getFifteenMinuteRate(), 0.0001);
+    }
+
+    @Test
+    public void ticker() throws Exception {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        try {
+            MeterTicker ticker = new MeterTicker(scheduler);
+            Meter meter = new Meter(System.nanoTime() - Meter.TICK_INTERVAL);
+            meter.mark(5);
+            ticker.add(meter);
+            ticker.add(meter);
+            assertEquals(1, ticker.size());
+            assertEquals(1, scheduler.getQueue().size());
+            ticker.tick();
+            ticker.stop();
+            assertEquals(0, scheduler.getQueue().size());
+            assertEquals(1.0, meter.getOneMinuteRate(), 0.0001);
+            ticker.remove(meter);
+            assertEquals(0, ticker.size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+}